@@ -0,0 +1,273 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.handler.Handler;
+import javax.xml.ws.soap.SOAPBinding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.axis2.Axis2SOAPStackIntegration;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
+import be.vlaanderen.informatievlaanderen.security.handler.LoggingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the throughput of the JAX-WS SOAP handler chain with the Axis2
+ * handlers, for messages with a large SOAP body. The Axis2 handlers leave the
+ * AXIOM body unbuilt, whereas the JAX-WS handlers force it into SAAJ.
+ */
+public class Axis2SOAPStackIntegrationTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(Axis2SOAPStackIntegrationTest.class);
+
+	private static final int PORT = 9192;
+
+	private static final String ADDRESS = "http://localhost:" + PORT + "/echo";
+
+	private static final QName SERVICE_NAME = new QName("urn:test", "Echo");
+
+	private static final QName PORT_NAME = new QName("urn:test", "EchoPort");
+
+	private static final int BODY_SIZE = 256 * 1024;
+
+	private static final int WARM_UP_ITERATIONS = 100;
+
+	private static final int ITERATIONS = 500;
+
+	private static HttpServer httpServer;
+
+	private static String request;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		StringBuilder requestBuilder = new StringBuilder(
+				"<echo xmlns=\"urn:test\">");
+		while (requestBuilder.length() < BODY_SIZE) {
+			requestBuilder.append("<item>hello world</item>");
+		}
+		requestBuilder.append("</echo>");
+		request = requestBuilder.toString();
+
+		httpServer = HttpServer.create(new InetSocketAddress(PORT), 0);
+		httpServer.createContext("/echo", new EchoHandler());
+		httpServer.start();
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		httpServer.stop(0);
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		SecurityTokenProvider securityTokenProvider = new StubSecurityTokenProvider();
+
+		Dispatch<Source> handlerDispatch = createDispatch();
+		List<Handler> handlerChain = handlerDispatch.getBinding()
+				.getHandlerChain();
+		handlerChain.add(new SecureConversationHandler(securityTokenProvider,
+				null));
+		handlerChain.add(new WSSecurityHandler());
+		handlerChain.add(new LoggingHandler());
+		handlerDispatch.getBinding().setHandlerChain(handlerChain);
+
+		Dispatch<Source> axis2Dispatch = createDispatch();
+		new Axis2SOAPStackIntegration().enable(axis2Dispatch,
+				securityTokenProvider, null, true);
+
+		invoke(handlerDispatch, WARM_UP_ITERATIONS);
+		invoke(axis2Dispatch, WARM_UP_ITERATIONS);
+
+		long handlerTime = invoke(handlerDispatch, ITERATIONS);
+		long axis2Time = invoke(axis2Dispatch, ITERATIONS);
+
+		LOG.info("JAX-WS handlers: " + ITERATIONS * 1000000000L / handlerTime
+				+ " requests per second");
+		LOG.info("Axis2 handlers: " + ITERATIONS * 1000000000L / axis2Time
+				+ " requests per second");
+	}
+
+	@Test
+	public void testRefuseX509Credentials() throws Exception {
+		// setup
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		Dispatch<Source> dispatch = createDispatch();
+		new Axis2SOAPStackIntegration().enable(dispatch,
+				new StubSecurityTokenProvider(), null, true);
+
+		// prepare
+		WSSecurityHandler.setCredentials(dispatch.getRequestContext(),
+				keyPair.getPrivate(), certificate);
+
+		// operate & verify
+		try {
+			dispatch.invoke(new StreamSource(new StringReader(request)));
+			fail();
+		} catch (WebServiceException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFallbackToHandlerChain() throws Exception {
+		// setup
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				"https://localhost/sts", certificate, keyPair.getPrivate());
+		informatieVlaanderenSecurity.setSOAPStackIntegration(true);
+		Dispatch<Source> handlerDispatch = createDispatch();
+		Dispatch<Source> axis2Dispatch = createDispatch();
+
+		// operate
+		informatieVlaanderenSecurity.enable(handlerDispatch, false, null);
+		informatieVlaanderenSecurity
+				.setInboundSecurityMode(InboundSecurityMode.TIMESTAMP_ONLY);
+		informatieVlaanderenSecurity.enable(axis2Dispatch, false, null,
+				WSSecurityMode.STREAMING);
+
+		// verify
+		assertFalse(handlerDispatch.getBinding().getHandlerChain().isEmpty());
+		assertTrue(axis2Dispatch.getBinding().getHandlerChain().isEmpty());
+	}
+
+	private Dispatch<Source> createDispatch() {
+		Service service = Service.create(SERVICE_NAME);
+		service.addPort(PORT_NAME, SOAPBinding.SOAP11HTTP_BINDING, ADDRESS);
+		Dispatch<Source> dispatch = service.createDispatch(PORT_NAME,
+				Source.class, Service.Mode.PAYLOAD);
+		dispatch.getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY, ADDRESS);
+		return dispatch;
+	}
+
+	private long invoke(Dispatch<Source> dispatch, int iterations) {
+		long time = System.nanoTime();
+		for (int idx = 0; idx < iterations; idx++) {
+			dispatch.invoke(new StreamSource(new StringReader(request)));
+		}
+		return System.nanoTime() - time;
+	}
+
+	private static class StubSecurityTokenProvider implements
+			SecurityTokenProvider {
+
+		private final SecurityToken securityToken;
+
+		public StubSecurityTokenProvider() {
+			byte[] key = new byte[256 / 8];
+			new SecureRandom().nextBytes(key);
+			this.securityToken = new SecurityToken();
+			this.securityToken.setKey(key);
+			this.securityToken.setAttachedReference("urn:uuid:sct-test");
+		}
+
+		public SecurityToken getSecurityToken(String serviceRealm) {
+			return this.securityToken;
+		}
+
+		public SecurityToken getSecureConversationToken(String location,
+				String serviceRealm) {
+			return this.securityToken;
+		}
+	}
+
+	/**
+	 * Answers every request with a small SOAP response that carries a fresh
+	 * WS-Security timestamp.
+	 */
+	private static class EchoHandler implements HttpHandler {
+
+		public void handle(HttpExchange httpExchange) {
+			try {
+				InputStream inputStream = httpExchange.getRequestBody();
+				byte[] buffer = new byte[4096];
+				while (-1 != inputStream.read(buffer)) {
+					// drain the request
+				}
+				SimpleDateFormat dateFormat = new SimpleDateFormat(
+						"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+				dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+				long now = System.currentTimeMillis();
+				String response = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+						+ "<s:Header><o:Security s:mustUnderstand=\"1\" xmlns:o=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd\">"
+						+ "<u:Timestamp u:Id=\"_0\" xmlns:u=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd\">"
+						+ "<u:Created>"
+						+ dateFormat.format(new Date(now))
+						+ "</u:Created><u:Expires>"
+						+ dateFormat.format(new Date(now + 5 * 60 * 1000))
+						+ "</u:Expires></u:Timestamp></o:Security></s:Header>"
+						+ "<s:Body><echoResponse xmlns=\"urn:test\"/></s:Body></s:Envelope>";
+				byte[] responseBytes = response.getBytes("UTF-8");
+				httpExchange.getResponseHeaders().set("Content-Type",
+						"text/xml; charset=UTF-8");
+				httpExchange.sendResponseHeaders(200, responseBytes.length);
+				OutputStream outputStream = httpExchange.getResponseBody();
+				outputStream.write(responseBytes);
+				outputStream.close();
+			} catch (Exception e) {
+				LOG.error("echo error: " + e.getMessage(), e);
+			} finally {
+				httpExchange.close();
+			}
+		}
+	}
+}
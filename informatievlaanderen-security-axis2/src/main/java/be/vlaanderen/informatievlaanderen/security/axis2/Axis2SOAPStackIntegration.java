@@ -0,0 +1,113 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.axis2;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+import javax.xml.ws.BindingProvider;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.vlaanderen.informatievlaanderen.security.handler.SOAPStackIntegration;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+
+/**
+ * Enables the Informatie Vlaanderen security on Axis2 JAX-WS stubs via the
+ * {@link SecurityOutHandler} and {@link SecurityInHandler}, instead of via
+ * JAX-WS SOAP handlers.
+ * <p>
+ * The Axis2 handlers are added to the global phases of the client Axis2
+ * configuration when that configuration gets created, by the
+ * {@link SecurityClientConfigurationFactory}. Enabling the security on a stub
+ * only sets the configuration of the handlers on the request context of the
+ * stub. Stubs of an Axis2 configuration without the handlers are not
+ * supported, and keep using the JAX-WS handler chain.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class Axis2SOAPStackIntegration implements SOAPStackIntegration {
+
+	private static final Log LOG = LogFactory
+			.getLog(Axis2SOAPStackIntegration.class);
+
+	public boolean isSupported(BindingProvider bindingProvider) {
+		org.apache.axis2.jaxws.BindingProvider axis2BindingProvider = getBindingProvider(bindingProvider);
+		if (null == axis2BindingProvider) {
+			return false;
+		}
+		ConfigurationContext configurationContext = axis2BindingProvider
+				.getEndpointDescription().getServiceDescription()
+				.getAxisConfigContext();
+		if (false == SecurityClientConfigurationFactory
+				.hasHandlers(configurationContext.getAxisConfiguration())) {
+			LOG.warn("Axis2 client configuration lacks the security handlers");
+			return false;
+		}
+		return true;
+	}
+
+	public void enable(BindingProvider bindingProvider,
+			SecurityTokenProvider securityTokenProvider, String serviceRealm,
+			boolean useWsSecureConversation) {
+		SecurityHandlerConfiguration configuration = (SecurityHandlerConfiguration) bindingProvider
+				.getRequestContext().get(
+						SecurityHandlerConfiguration.CONTEXT_ATTRIBUTE);
+		if (null != configuration) {
+			LOG.warn("security already enabled");
+			if (securityTokenProvider != configuration
+					.getSecurityTokenProvider()) {
+				throw new SecurityException(
+						"security on JAX-WS stub already enabled by another InformatieVlaanderenSecurity instance");
+			}
+			return;
+		}
+		LOG.debug("enabling security via Axis2 handlers");
+		bindingProvider.getRequestContext().put(
+				SecurityHandlerConfiguration.CONTEXT_ATTRIBUTE,
+				new SecurityHandlerConfiguration(securityTokenProvider,
+						serviceRealm, useWsSecureConversation));
+	}
+
+	public void disable(BindingProvider bindingProvider) {
+		bindingProvider.getRequestContext().remove(
+				SecurityHandlerConfiguration.CONTEXT_ATTRIBUTE);
+	}
+
+	private static org.apache.axis2.jaxws.BindingProvider getBindingProvider(
+			BindingProvider bindingProvider) {
+		if (bindingProvider instanceof org.apache.axis2.jaxws.BindingProvider) {
+			// Axis2 dispatch
+			return (org.apache.axis2.jaxws.BindingProvider) bindingProvider;
+		}
+		if (false == Proxy.isProxyClass(bindingProvider.getClass())) {
+			return null;
+		}
+		InvocationHandler invocationHandler = Proxy
+				.getInvocationHandler(bindingProvider);
+		if (invocationHandler instanceof org.apache.axis2.jaxws.BindingProvider) {
+			// Axis2 port proxy
+			return (org.apache.axis2.jaxws.BindingProvider) invocationHandler;
+		}
+		return null;
+	}
+}
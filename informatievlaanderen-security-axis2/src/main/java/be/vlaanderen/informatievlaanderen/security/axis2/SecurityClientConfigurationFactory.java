@@ -0,0 +1,123 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.axis2;
+
+import java.util.List;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.engine.Handler;
+import org.apache.axis2.engine.Phase;
+import org.apache.axis2.jaxws.ClientConfigurationFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Axis2 JAX-WS client configuration factory that adds the
+ * {@link SecurityOutHandler} and {@link SecurityInHandler} to the global phases
+ * of the client Axis2 configuration, right after the configuration got
+ * created. So the phases are complete before any JAX-WS client sends messages
+ * through them.
+ * <p>
+ * Registered via the
+ * <code>META-INF/services/org.apache.axis2.metadata.registry.MetadataFactoryRegistry</code>
+ * file of this module. The handlers do nothing for JAX-WS ports on which the
+ * security was not enabled via the {@link Axis2SOAPStackIntegration}.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityClientConfigurationFactory extends
+		ClientConfigurationFactory {
+
+	private static final Log LOG = LogFactory
+			.getLog(SecurityClientConfigurationFactory.class);
+
+	private static final String SECURITY_PHASE = "Security";
+
+	private ConfigurationContext configurationContext;
+
+	@Override
+	public synchronized ConfigurationContext getClientConfigurationContext() {
+		ConfigurationContext configurationContext = super
+				.getClientConfigurationContext();
+		if (configurationContext != this.configurationContext) {
+			addHandlers(configurationContext.getAxisConfiguration());
+			this.configurationContext = configurationContext;
+		}
+		return configurationContext;
+	}
+
+	private static void addHandlers(AxisConfiguration axisConfiguration) {
+		Phase outPhase = getPhase(axisConfiguration.getOutFlowPhases(), false);
+		if (false == hasHandler(outPhase, SecurityOutHandler.class)) {
+			LOG.debug("adding security out handler to phase: "
+					+ outPhase.getPhaseName());
+			outPhase.addHandler(new SecurityOutHandler());
+		}
+		Phase inPhase = getPhase(axisConfiguration.getInFlowPhases(), true);
+		if (false == hasHandler(inPhase, SecurityInHandler.class)) {
+			LOG.debug("adding security in handler to phase: "
+					+ inPhase.getPhaseName());
+			inPhase.addHandler(new SecurityInHandler());
+		}
+	}
+
+	/**
+	 * Checks whether the security handlers are part of the given Axis2
+	 * configuration.
+	 * 
+	 * @param axisConfiguration
+	 *            the client Axis2 configuration.
+	 * @return <code>true</code> if both handlers are present.
+	 */
+	static boolean hasHandlers(AxisConfiguration axisConfiguration) {
+		return hasHandler(
+				getPhase(axisConfiguration.getOutFlowPhases(), false),
+				SecurityOutHandler.class)
+				&& hasHandler(
+						getPhase(axisConfiguration.getInFlowPhases(), true),
+						SecurityInHandler.class);
+	}
+
+	/**
+	 * Gives back the Security phase, or else the first or last phase.
+	 */
+	private static Phase getPhase(List<Phase> phases, boolean first) {
+		for (Phase phase : phases) {
+			if (SECURITY_PHASE.equals(phase.getPhaseName())) {
+				return phase;
+			}
+		}
+		if (first) {
+			return phases.get(0);
+		}
+		return phases.get(phases.size() - 1);
+	}
+
+	private static boolean hasHandler(Phase phase,
+			Class<? extends Handler> handlerClass) {
+		for (Handler handler : phase.getHandlers()) {
+			if (handlerClass.isInstance(handler)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.axis2;
+
+import java.util.Iterator;
+
+import javax.xml.namespace.QName;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPHeader;
+import org.apache.axiom.soap.SOAPHeaderBlock;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.HandlerDescription;
+import org.apache.axis2.handlers.AbstractHandler;
+import org.apache.axis2.util.XMLUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+/**
+ * Axis2 handler that checks the WS-Security timestamp and the WS-Addressing
+ * RelatesTo header of inbound messages, like the {@link WSSecurityHandler}
+ * and the
+ * {@link be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler}
+ * do.
+ * <p>
+ * Only the AXIOM SOAP header is built. The SOAP body is left to be built, or
+ * streamed, by the JAX-WS layer.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityInHandler extends AbstractHandler {
+
+	private static final Log LOG = LogFactory.getLog(SecurityInHandler.class);
+
+	private static final QName SECURITY_HEADER = new QName(
+			WSConstants.WS_SECURITY_NAMESPACE, "Security");
+
+	private static final QName RELATES_TO_HEADER = new QName(
+			WSConstants.WS_ADDR_NAMESPACE, "RelatesTo");
+
+	private static final QName ACTION_HEADER = new QName(
+			WSConstants.WS_ADDR_NAMESPACE, "Action");
+
+	private static final QName TO_HEADER = new QName(
+			WSConstants.WS_ADDR_NAMESPACE, "To");
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	/**
+	 * Default constructor.
+	 */
+	public SecurityInHandler() {
+		this.wsSecurityHandler = new WSSecurityHandler();
+		init(new HandlerDescription(SecurityInHandler.class.getSimpleName()));
+	}
+
+	public InvocationResponse invoke(MessageContext msgContext)
+			throws AxisFault {
+		if (msgContext.isServerSide()
+				|| null == msgContext
+						.getProperty(SecurityHandlerConfiguration.CONTEXT_ATTRIBUTE)) {
+			return InvocationResponse.CONTINUE;
+		}
+		SOAPEnvelope envelope = msgContext.getEnvelope();
+		SOAPHeader soapHeader = envelope.getHeader();
+		if (null == soapHeader) {
+			throw AxisFault.makeFault(new SecurityException(
+					"no WS-Security header"));
+		}
+		checkRelatesTo(msgContext, soapHeader);
+		SOAPHeaderBlock securityHeader = getHeaderBlock(soapHeader,
+				SECURITY_HEADER);
+		if (null == securityHeader) {
+			throw AxisFault.makeFault(new SecurityException(
+					"no WS-Security header"));
+		}
+		try {
+			this.wsSecurityHandler.verifySecurityHeader(XMLUtils
+					.toDOM(securityHeader));
+		} catch (Exception e) {
+			throw AxisFault.makeFault(e);
+		}
+		securityHeader.setProcessed();
+		markProcessed(soapHeader, ACTION_HEADER);
+		markProcessed(soapHeader, TO_HEADER);
+		return InvocationResponse.CONTINUE;
+	}
+
+	private void checkRelatesTo(MessageContext msgContext,
+			SOAPHeader soapHeader) throws AxisFault {
+		String messageId = (String) msgContext
+				.getProperty(SecurityOutHandler.MESSAGE_ID_PROPERTY);
+		if (null == messageId) {
+			// no WS-Addressing on the request
+			return;
+		}
+		LOG.debug("checking RelatesTo message id: " + messageId);
+		SOAPHeaderBlock relatesToHeader = getHeaderBlock(soapHeader,
+				RELATES_TO_HEADER);
+		if (null == relatesToHeader) {
+			return;
+		}
+		if (false == messageId.equals(relatesToHeader.getText().trim())) {
+			throw new AxisFault("incorrect a:RelatesTo value");
+		}
+		relatesToHeader.setProcessed();
+	}
+
+	private static void markProcessed(SOAPHeader soapHeader, QName name) {
+		SOAPHeaderBlock headerBlock = getHeaderBlock(soapHeader, name);
+		if (null != headerBlock) {
+			headerBlock.setProcessed();
+		}
+	}
+
+	private static SOAPHeaderBlock getHeaderBlock(SOAPHeader soapHeader,
+			QName name) {
+		Iterator<?> iterator = soapHeader.getChildrenWithName(name);
+		while (iterator.hasNext()) {
+			OMElement element = (OMElement) iterator.next();
+			if (element instanceof SOAPHeaderBlock) {
+				return (SOAPHeaderBlock) element;
+			}
+		}
+		return null;
+	}
+}
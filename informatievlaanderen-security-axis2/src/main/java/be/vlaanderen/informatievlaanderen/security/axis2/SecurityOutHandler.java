@@ -0,0 +1,245 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.axis2;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.ws.BindingProvider;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.ElementHelper;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axiom.soap.SOAPHeader;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.context.OperationContext;
+import org.apache.axis2.description.HandlerDescription;
+import org.apache.axis2.handlers.AbstractHandler;
+import org.apache.axis2.util.XMLUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+/**
+ * Axis2 handler that does what the {@link WSAddressingHandler}, the
+ * {@link be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler}
+ * or
+ * {@link be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler}
+ * and the {@link WSSecurityHandler} do on outbound messages, directly on the
+ * AXIOM SOAP header.
+ * <p>
+ * The SOAP body is never accessed, so AXIOM does not build it before it gets
+ * serialized. As the WS-Security header is signed before being added to the
+ * AXIOM tree, no DOM ID attributes are needed. Requests that carry X509
+ * credentials via
+ * {@link WSSecurityHandler#setCredentials(java.util.Map, java.security.PrivateKey, java.security.cert.X509Certificate)}
+ * are refused.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityOutHandler extends AbstractHandler {
+
+	private static final Log LOG = LogFactory.getLog(SecurityOutHandler.class);
+
+	static final String MESSAGE_ID_PROPERTY = SecurityOutHandler.class
+			.getName() + ".messageId";
+
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+
+	static {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		DOCUMENT_BUILDER_FACTORY = documentBuilderFactory;
+	}
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	/**
+	 * Default constructor.
+	 */
+	public SecurityOutHandler() {
+		this.wsSecurityHandler = new WSSecurityHandler();
+		init(new HandlerDescription(SecurityOutHandler.class.getSimpleName()));
+	}
+
+	public InvocationResponse invoke(MessageContext msgContext)
+			throws AxisFault {
+		if (msgContext.isServerSide()) {
+			return InvocationResponse.CONTINUE;
+		}
+		SecurityHandlerConfiguration configuration = (SecurityHandlerConfiguration) msgContext
+				.getProperty(SecurityHandlerConfiguration.CONTEXT_ATTRIBUTE);
+		if (null == configuration) {
+			return InvocationResponse.CONTINUE;
+		}
+		Map<String, Object> properties = new PropertiesView(msgContext);
+		if (null != WSSecurityHandler.getCertificate(properties)) {
+			throw AxisFault.makeFault(new SecurityException(
+					"X509 request signing requires the JAX-WS handler chain"));
+		}
+		SOAPEnvelope envelope = msgContext.getEnvelope();
+		SOAPFactory factory = (SOAPFactory) envelope.getOMFactory();
+		SOAPHeader soapHeader = envelope.getHeader();
+		if (null == soapHeader) {
+			soapHeader = factory.createSOAPHeader(envelope);
+		}
+		try {
+			Document document = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder()
+					.newDocument();
+			/*
+			 * The detached SOAP header element gives the headers the same
+			 * in-scope SOAP namespace as they will have within the AXIOM
+			 * envelope.
+			 */
+			String soapNamespace = factory.getSoapVersionURI();
+			Element domSoapHeader = document.createElementNS(soapNamespace,
+					"soapenv:Header");
+			domSoapHeader.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+					"xmlns:soapenv", soapNamespace);
+			document.appendChild(domSoapHeader);
+			addAddressingHeaders(msgContext, properties, domSoapHeader,
+					factory, soapHeader);
+			addSecurityHeader(msgContext, configuration, domSoapHeader,
+					factory, soapHeader);
+		} catch (AxisFault e) {
+			throw e;
+		} catch (Exception e) {
+			LOG.error("outbound exception: " + e.getMessage(), e);
+			throw AxisFault.makeFault(e);
+		}
+		/*
+		 * The response message context only sees the properties of the
+		 * operation context.
+		 */
+		OperationContext operationContext = msgContext.getOperationContext();
+		if (null != operationContext) {
+			operationContext.setProperty(
+					SecurityHandlerConfiguration.CONTEXT_ATTRIBUTE,
+					configuration);
+		}
+		return InvocationResponse.CONTINUE;
+	}
+
+	private void addSecurityHeader(MessageContext msgContext,
+			SecurityHandlerConfiguration configuration, Element domSoapHeader,
+			SOAPFactory factory, SOAPHeader soapHeader) throws Exception {
+		String location = (String) msgContext
+				.getProperty(BindingProvider.ENDPOINT_ADDRESS_PROPERTY);
+		if (null == location && null != msgContext.getTo()) {
+			location = msgContext.getTo().getAddress();
+		}
+		String serviceRealm = configuration.getServiceRealm();
+		if (null == serviceRealm) {
+			serviceRealm = location;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("location: " + location);
+			LOG.debug("service realm: " + serviceRealm);
+		}
+
+		SecurityToken securityToken;
+		if (configuration.isUseWsSecureConversation()) {
+			securityToken = configuration.getSecurityTokenProvider()
+					.getSecureConversationToken(location, serviceRealm);
+		} else {
+			securityToken = configuration.getSecurityTokenProvider()
+					.getSecurityToken(serviceRealm);
+		}
+
+		this.wsSecurityHandler.writeSecurityHeader(domSoapHeader,
+				ImmutableSecurityToken.getSharedKey(securityToken),
+				securityToken.getAttachedReference(),
+				securityToken.getToken(),
+				false == configuration.isUseWsSecureConversation());
+		addHeaderBlock((Element) domSoapHeader.getLastChild(), factory,
+				soapHeader);
+	}
+
+	private static void addHeaderBlock(Element element, SOAPFactory factory,
+			SOAPHeader soapHeader) throws Exception {
+		OMElement omElement = XMLUtils.toOM(element);
+		soapHeader.addChild(ElementHelper.toSOAPHeaderBlock(omElement,
+				factory));
+	}
+
+	private void addAddressingHeaders(MessageContext msgContext,
+			Map<String, Object> properties, Element domSoapHeader,
+			SOAPFactory factory, SOAPHeader soapHeader) throws Exception {
+		String action = WSAddressingHandler.getAction(properties);
+		if (null == action) {
+			return;
+		}
+		String to = WSAddressingHandler.getTo(properties);
+		LOG.debug("adding WS-Addressing headers");
+		String messageId = WSAddressingHandler.appendHeaders(domSoapHeader,
+				action, to);
+		OperationContext operationContext = msgContext.getOperationContext();
+		if (null != operationContext) {
+			operationContext.setProperty(MESSAGE_ID_PROPERTY, messageId);
+		}
+		Node headerNode = domSoapHeader.getFirstChild();
+		while (null != headerNode) {
+			addHeaderBlock((Element) headerNode, factory, soapHeader);
+			headerNode = headerNode.getNextSibling();
+		}
+	}
+
+	/**
+	 * Read-only view on the properties of an Axis2 message context, including
+	 * the ones inherited from its options and parent contexts. Only supports
+	 * looking up single properties, which is all the handler accessors do.
+	 */
+	private static class PropertiesView extends AbstractMap<String, Object> {
+
+		private final MessageContext msgContext;
+
+		PropertiesView(MessageContext msgContext) {
+			this.msgContext = msgContext;
+		}
+
+		@Override
+		public Object get(Object key) {
+			return this.msgContext.getProperty((String) key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return null != get(key);
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+/**
+ * Typical outbound SOAP 1.2 messages of the Informatie Vlaanderen web services,
+ * as they reach the SOAP handlers: the WS-Addressing headers are already in
+ * place, the WS-Security header is not.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum BenchmarkMessage {
+
+	CRAB(
+			"https://crab.beta.agiv.be/read/crabreadservice.svc/wsfed",
+			"http://Gisvl.CrabDecentraal.CrabRead/ICrabRead/ListStraatnaamByGemeente",
+			"<ListStraatnaamByGemeente xmlns=\"http://Gisvl.CrabDecentraal.CrabRead\">"
+					+ "<gemeente>Vilvoorde</gemeente>"
+					+ "<sorteerVeld>0</sorteerVeld>"
+					+ "</ListStraatnaamByGemeente>"),
+
+	GIPOD(
+			"https://service.beta.gipod.vlaanderen.be/soap/GipodService.svc/wsfed",
+			"http://www.agiv.be/Gipod/2010/06/service/IGipodService/GetWerkopdracht",
+			"<GetWerkopdracht xmlns=\"http://www.agiv.be/Gipod/2010/06/service\">"
+					+ "<request xmlns:g=\"http://www.agiv.be/Gipod/2010/06\">"
+					+ "<g:GipodId>1234567</g:GipodId>" + "</request>"
+					+ "</GetWerkopdracht>");
+
+	private final String location;
+
+	private final String action;
+
+	private final byte[] message;
+
+	private BenchmarkMessage(String location, String action, String body) {
+		this.location = location;
+		this.action = action;
+		String envelope = "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\""
+				+ " xmlns:a=\"http://www.w3.org/2005/08/addressing\">"
+				+ "<s:Header>"
+				+ "<a:Action s:mustUnderstand=\"1\">"
+				+ action
+				+ "</a:Action>"
+				+ "<a:MessageID>urn:uuid:5f1c8a62-2c3e-4a4e-9f55-0d1b3e6f7a21</a:MessageID>"
+				+ "<a:ReplyTo><a:Address>http://www.w3.org/2005/08/addressing/anonymous</a:Address></a:ReplyTo>"
+				+ "<a:To s:mustUnderstand=\"1\">"
+				+ location
+				+ "</a:To>"
+				+ "</s:Header>"
+				+ "<s:Body>"
+				+ body
+				+ "</s:Body>" + "</s:Envelope>";
+		try {
+			this.message = envelope.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gives back the location of the web service.
+	 * 
+	 * @return the service location.
+	 */
+	public String getLocation() {
+		return this.location;
+	}
+
+	/**
+	 * Gives back the WS-Addressing action of the message.
+	 * 
+	 * @return the action.
+	 */
+	public String getAction() {
+		return this.action;
+	}
+
+	/**
+	 * Parses a fresh copy of the message, as the handlers modify it.
+	 * 
+	 * @param messageFactory
+	 *            a SOAP 1.2 message factory.
+	 * @return the parsed SOAP message.
+	 * @throws SOAPException
+	 */
+	public SOAPMessage parse(MessageFactory messageFactory)
+			throws SOAPException {
+		SOAPMessage soapMessage;
+		try {
+			soapMessage = messageFactory.createMessage(null,
+					new ByteArrayInputStream(this.message));
+		} catch (IOException e) {
+			throw new SOAPException(e);
+		}
+		soapMessage.getSOAPPart().getEnvelope();
+		return soapMessage;
+	}
+}
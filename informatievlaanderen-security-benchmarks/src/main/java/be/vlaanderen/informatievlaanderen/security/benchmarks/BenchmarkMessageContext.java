@@ -0,0 +1,71 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.util.HashMap;
+import java.util.Set;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+/**
+ * Minimal SOAP message context for running JAX-WS handlers outside of a JAX-WS
+ * runtime.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class BenchmarkMessageContext extends HashMap<String, Object> implements
+		SOAPMessageContext {
+
+	private static final long serialVersionUID = 1L;
+
+	private SOAPMessage soapMessage;
+
+	BenchmarkMessageContext(boolean outbound) {
+		put(MessageContext.MESSAGE_OUTBOUND_PROPERTY, outbound);
+	}
+
+	public SOAPMessage getMessage() {
+		return this.soapMessage;
+	}
+
+	public void setMessage(SOAPMessage soapMessage) {
+		this.soapMessage = soapMessage;
+	}
+
+	public Object[] getHeaders(QName header, JAXBContext context,
+			boolean allRoles) {
+		throw new UnsupportedOperationException();
+	}
+
+	public Set<String> getRoles() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setScope(String name, Scope scope) {
+	}
+
+	public Scope getScope(String name) {
+		return Scope.HANDLER;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.soap.SOAPPart;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.handler.soap.SOAPHandler;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.apache.ws.security.message.WSSecHeader;
+import org.apache.ws.security.message.WSSecTimestamp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponse;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponseParser;
+import be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.FusedSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.HandlerChainLayout;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
+import be.vlaanderen.informatievlaanderen.security.handler.LoggingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+/**
+ * Compares a complete request/response round trip through the separate
+ * handler chain and through the {@link FusedSecurityHandler}. The handlers
+ * run the way the JAX-WS runtime does: in order for the CRAB request, in
+ * reverse order for a response carrying a WS-Security timestamp. The parse
+ * benchmark gives the cost of parsing both messages, which is to be
+ * subtracted from the roundTrip results.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandlerChainBenchmark {
+
+	private static final String RESPONSE = "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\">"
+			+ "<s:Body><ListStraatnaamByGemeenteResponse xmlns=\"http://Gisvl.CrabDecentraal.CrabRead\"/></s:Body>"
+			+ "</s:Envelope>";
+
+	@Param({ "SEPARATE", "FUSED" })
+	private HandlerChainLayout handlerChainLayout;
+
+	@Param({ "DOM", "STREAMING" })
+	private WSSecurityMode wsSecurityMode;
+
+	@Param({ "FULL", "TIMESTAMP_ONLY" })
+	private InboundSecurityMode inboundSecurityMode;
+
+	private MessageFactory messageFactory;
+
+	private byte[] response;
+
+	private List<SOAPHandler<SOAPMessageContext>> handlerChain;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.messageFactory = MessageFactory
+				.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+		// the timestamp remains valid during the whole trial
+		this.response = createResponse();
+
+		RequestSecurityTokenResponse tokenResponse = RequestSecurityTokenResponseParser
+				.parse(RSTSResponse.parse(
+						RSTSResponse.createDocumentBuilderFactory(),
+						RSTSResponse.load()));
+		byte[] key = new byte[256 / 8];
+		new SecureRandom().nextBytes(key);
+		final SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(key);
+		securityToken.setAttachedReference(tokenResponse
+				.getAttachedReference());
+		securityToken.setToken(tokenResponse.getRequestedSecurityToken());
+		SecurityTokenProvider securityTokenProvider = new SecurityTokenProvider() {
+
+			public SecurityToken getSecurityToken(String serviceRealm) {
+				return securityToken;
+			}
+
+			public SecurityToken getSecureConversationToken(String location,
+					String serviceRealm) {
+				return securityToken;
+			}
+		};
+
+		this.handlerChain = new LinkedList<SOAPHandler<SOAPMessageContext>>();
+		if (HandlerChainLayout.FUSED == this.handlerChainLayout) {
+			this.handlerChain.add(new FusedSecurityHandler(
+					securityTokenProvider, null, false, this.wsSecurityMode,
+					this.inboundSecurityMode));
+		} else {
+			this.handlerChain.add(new AuthenticationHandler(
+					securityTokenProvider, null));
+			this.handlerChain.add(new WSSecurityHandler(this.wsSecurityMode,
+					this.inboundSecurityMode));
+			this.handlerChain.add(new LoggingHandler());
+		}
+	}
+
+	@Benchmark
+	public SOAPMessage parse() throws SOAPException, IOException {
+		BenchmarkMessage.CRAB.parse(this.messageFactory);
+		return parseResponse();
+	}
+
+	@Benchmark
+	public SOAPMessage roundTrip() throws SOAPException, IOException {
+		BenchmarkMessageContext requestContext = new BenchmarkMessageContext(
+				true);
+		requestContext.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
+				BenchmarkMessage.CRAB.getLocation());
+		requestContext.setMessage(BenchmarkMessage.CRAB
+				.parse(this.messageFactory));
+		for (SOAPHandler<SOAPMessageContext> handler : this.handlerChain) {
+			handler.handleMessage(requestContext);
+		}
+
+		BenchmarkMessageContext responseContext = new BenchmarkMessageContext(
+				false);
+		responseContext.setMessage(parseResponse());
+		for (int idx = this.handlerChain.size() - 1; idx >= 0; idx--) {
+			this.handlerChain.get(idx).handleMessage(responseContext);
+		}
+		return responseContext.getMessage();
+	}
+
+	private SOAPMessage parseResponse() throws SOAPException, IOException {
+		SOAPMessage soapMessage = this.messageFactory.createMessage(null,
+				new ByteArrayInputStream(this.response));
+		soapMessage.getSOAPPart().getEnvelope();
+		return soapMessage;
+	}
+
+	private byte[] createResponse() throws Exception {
+		SOAPMessage soapMessage = this.messageFactory.createMessage(null,
+				new ByteArrayInputStream(RESPONSE.getBytes("UTF-8")));
+		SOAPPart soapPart = soapMessage.getSOAPPart();
+		WSSecHeader wsSecHeader = new WSSecHeader();
+		wsSecHeader.insertSecurityHeader(soapPart);
+		WSSecTimestamp wsSecTimestamp = new WSSecTimestamp();
+		wsSecTimestamp.build(soapPart, wsSecHeader);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		soapMessage.writeTo(outputStream);
+		return outputStream.toByteArray();
+	}
+}
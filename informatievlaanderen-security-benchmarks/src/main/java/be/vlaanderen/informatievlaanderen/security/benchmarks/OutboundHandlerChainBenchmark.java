@@ -0,0 +1,128 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.ws.BindingProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponse;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponseParser;
+import be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+/**
+ * Measures the outbound handler chain, AuthenticationHandler followed by
+ * WSSecurityHandler, on typical CRAB and GIPOD request messages. The security
+ * token is the one of the recorded R-STS response, with a random key. The
+ * parse benchmark gives the cost of parsing the message itself, which is to be
+ * subtracted from the handlerChain results.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutboundHandlerChainBenchmark {
+
+	@Param({ "CRAB", "GIPOD" })
+	private BenchmarkMessage message;
+
+	@Param({ "DOM", "STREAMING" })
+	private WSSecurityMode wsSecurityMode;
+
+	private MessageFactory messageFactory;
+
+	private AuthenticationHandler authenticationHandler;
+
+	private WSSecurityHandler wsSecurityHandler;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.messageFactory = MessageFactory
+				.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+
+		RequestSecurityTokenResponse tokenResponse = RequestSecurityTokenResponseParser
+				.parse(RSTSResponse.parse(
+						RSTSResponse.createDocumentBuilderFactory(),
+						RSTSResponse.load()));
+		byte[] key = new byte[256 / 8];
+		new SecureRandom().nextBytes(key);
+		final SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(key);
+		securityToken.setAttachedReference(tokenResponse
+				.getAttachedReference());
+		securityToken.setToken(tokenResponse.getRequestedSecurityToken());
+		SecurityTokenProvider securityTokenProvider = new SecurityTokenProvider() {
+
+			public SecurityToken getSecurityToken(String serviceRealm) {
+				return securityToken;
+			}
+
+			public SecurityToken getSecureConversationToken(String location,
+					String serviceRealm) {
+				return securityToken;
+			}
+		};
+
+		this.authenticationHandler = new AuthenticationHandler(
+				securityTokenProvider, null);
+		this.wsSecurityHandler = new WSSecurityHandler(this.wsSecurityMode);
+	}
+
+	@Benchmark
+	public SOAPMessage parse() throws SOAPException {
+		return this.message.parse(this.messageFactory);
+	}
+
+	@Benchmark
+	public SOAPMessage handlerChain() throws SOAPException {
+		BenchmarkMessageContext context = new BenchmarkMessageContext(true);
+		context.put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
+				this.message.getLocation());
+		context.setMessage(this.message.parse(this.messageFactory));
+		this.authenticationHandler.handleMessage(context);
+		this.wsSecurityHandler.handleMessage(context);
+		return context.getMessage();
+	}
+}
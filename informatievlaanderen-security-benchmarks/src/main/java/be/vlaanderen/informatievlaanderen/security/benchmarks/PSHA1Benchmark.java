@@ -0,0 +1,72 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ws.security.conversation.ConversationException;
+import org.apache.ws.security.conversation.dkalgo.P_SHA1;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the PSHA1 computed key derivation out of the client and server
+ * entropy, as done by the RSTSClient and the SecureConversationClient for
+ * every issued token.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PSHA1Benchmark {
+
+	private byte[] clientEntropy;
+
+	private byte[] serverEntropy;
+
+	@Setup
+	public void setUp() {
+		SecureRandom secureRandom = new SecureRandom();
+		this.clientEntropy = new byte[256 / 8];
+		secureRandom.nextBytes(this.clientEntropy);
+		this.serverEntropy = new byte[256 / 8];
+		secureRandom.nextBytes(this.serverEntropy);
+	}
+
+	@Benchmark
+	public byte[] createKey() throws ConversationException {
+		P_SHA1 p_SHA1 = new P_SHA1();
+		return p_SHA1.createKey(this.clientEntropy, this.serverEntropy, 0,
+				256 / 8);
+	}
+}
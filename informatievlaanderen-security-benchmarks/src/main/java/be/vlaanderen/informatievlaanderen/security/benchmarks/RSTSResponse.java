@@ -0,0 +1,93 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+
+/**
+ * Gives access to the recorded R-STS response of the client test resources.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class RSTSResponse {
+
+	private static final String RESOURCE = "/r-sts-response.xml";
+
+	private RSTSResponse() {
+		super();
+	}
+
+	/**
+	 * Loads the raw R-STS response SOAP message.
+	 */
+	static byte[] load() throws IOException {
+		InputStream inputStream = RSTSResponse.class
+				.getResourceAsStream(RESOURCE);
+		if (null == inputStream) {
+			throw new IOException("missing resource: " + RESOURCE);
+		}
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while (-1 != (count = inputStream.read(buffer))) {
+				outputStream.write(buffer, 0, count);
+			}
+			return outputStream.toByteArray();
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	/**
+	 * Parses the given R-STS response SOAP message, and gives back the
+	 * trust:RequestSecurityTokenResponseCollection element.
+	 */
+	static Element parse(DocumentBuilderFactory documentBuilderFactory,
+			byte[] response) throws Exception {
+		Document document = documentBuilderFactory.newDocumentBuilder().parse(
+				new ByteArrayInputStream(response));
+		NodeList nodeList = document.getElementsByTagNameNS(
+				WSConstants.WSTRUST_NAMESPACE,
+				"RequestSecurityTokenResponseCollection");
+		return (Element) nodeList.item(0);
+	}
+
+	/**
+	 * Gives back a namespace aware DOM builder factory.
+	 */
+	static DocumentBuilderFactory createDocumentBuilderFactory() {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		return documentBuilderFactory;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponse;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponseParser;
+
+/**
+ * Measures the parsing of the R-STS response, as done by the RSTSClient. The
+ * parse benchmark only covers the {@link RequestSecurityTokenResponseParser}
+ * on an already parsed DOM tree. The parseDocument benchmark includes the
+ * DOM parsing of the raw response.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestSecurityTokenResponseParserBenchmark {
+
+	private DocumentBuilderFactory documentBuilderFactory;
+
+	private byte[] response;
+
+	private Element responseElement;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.documentBuilderFactory = RSTSResponse
+				.createDocumentBuilderFactory();
+		this.response = RSTSResponse.load();
+		this.responseElement = RSTSResponse.parse(this.documentBuilderFactory,
+				this.response);
+	}
+
+	@Benchmark
+	public RequestSecurityTokenResponse parse() {
+		return RequestSecurityTokenResponseParser.parse(this.responseElement);
+	}
+
+	@Benchmark
+	public RequestSecurityTokenResponse parseDocument() throws Exception {
+		return RequestSecurityTokenResponseParser.parse(RSTSResponse.parse(
+				this.documentBuilderFactory, this.response));
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the security benchmarks, with the GC profiler enabled so that the
+ * allocation rate per operation (gc.alloc.rate.norm) is reported next to the
+ * timings. Run via:
+ * 
+ * <pre>
+ * mvn package -Pbenchmarks -pl informatievlaanderen-security-benchmarks -am
+ * java -jar informatievlaanderen-security-benchmarks/target/benchmarks.jar [JMH options] [regexp]
+ * </pre>
+ * 
+ * For example, <code>OutboundHandlerChain -p wsSecurityMode=STREAMING</code>
+ * only runs the streaming handler chain benchmarks. All regular JMH command
+ * line options apply.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityBenchmarks {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		Options options = new OptionsBuilder().parent(commandLineOptions)
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+}
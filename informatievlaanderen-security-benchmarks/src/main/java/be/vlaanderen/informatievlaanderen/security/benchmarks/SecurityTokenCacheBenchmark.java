@@ -0,0 +1,112 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+
+/**
+ * Measures the token cache hits of
+ * {@link InformatieVlaanderenSecurity#getSecurityToken(String)}, with all
+ * threads sharing a single InformatieVlaanderenSecurity instance, as the
+ * service ports of a web application do. The token is fetched once from an
+ * embedded STS before the measurement, so only the cache lookup is measured.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecurityTokenCacheBenchmark {
+
+	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/benchmark/service";
+
+	private LocalSTS localSTS;
+
+	private InformatieVlaanderenSecurity informatieVlaanderenSecurity;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.localSTS = new LocalSTS();
+		this.localSTS.start();
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		this.informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				this.localSTS.getLocation(), certificate, keyPair.getPrivate());
+		this.informatieVlaanderenSecurity.getSecurityToken(SERVICE_REALM);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.localSTS.stop();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public SecurityToken threads01() {
+		return this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public SecurityToken threads04() {
+		return this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public SecurityToken threads16() {
+		return this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public SecurityToken threads64() {
+		return this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+	}
+}
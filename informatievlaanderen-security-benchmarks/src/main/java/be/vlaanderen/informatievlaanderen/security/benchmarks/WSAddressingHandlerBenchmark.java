@@ -0,0 +1,106 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
+
+/**
+ * Measures the construction of the outbound WS-Addressing headers on a WS-Trust
+ * request, as sent to the STS. The parse benchmark gives the cost of parsing
+ * the message itself, which is to be subtracted from the addHeaders results.
+ * The addHeadersShared benchmark runs one thread per processor on a single
+ * handler instance, like the STS client port pools do, so that contention on
+ * the message identifier generation shows up.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WSAddressingHandlerBenchmark {
+
+	private static final String REQUEST = "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\">"
+			+ "<soap:Body><RequestSecurityToken xmlns=\"http://docs.oasis-open.org/ws-sx/ws-trust/200512\"/></soap:Body>"
+			+ "</soap:Envelope>";
+
+	private MessageFactory messageFactory;
+
+	private byte[] request;
+
+	private WSAddressingHandler wsAddressingHandler;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.messageFactory = MessageFactory
+				.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL);
+		this.request = REQUEST.getBytes("UTF-8");
+		this.wsAddressingHandler = new WSAddressingHandler();
+		this.wsAddressingHandler
+				.setAddressing(
+						"http://docs.oasis-open.org/ws-sx/ws-trust/200512/RST/Issue",
+						"https://auth.beta.agiv.be/sts/Services/SalvadorSecurityTokenServiceConfiguration.svc/IWSTrust13");
+	}
+
+	@Benchmark
+	public SOAPMessage parse() throws SOAPException, IOException {
+		SOAPMessage soapMessage = this.messageFactory.createMessage(null,
+				new ByteArrayInputStream(this.request));
+		soapMessage.getSOAPPart().getEnvelope();
+		return soapMessage;
+	}
+
+	@Benchmark
+	public SOAPMessage addHeaders() throws SOAPException, IOException {
+		BenchmarkMessageContext context = new BenchmarkMessageContext(true);
+		context.setMessage(parse());
+		this.wsAddressingHandler.handleMessage(context);
+		return context.getMessage();
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public SOAPMessage addHeadersShared() throws SOAPException, IOException {
+		return addHeaders();
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.util.Date;
+
+import org.w3c.dom.Element;
+
+/**
+ * Immutable security token, as kept within the token cache. Can safely be
+ * shared between threads.
+ * <p>
+ * The refresh deadline, the moment the token enters its retirement window, is
+ * computed once at construction, so that checking whether a cached token can
+ * still be used boils down to comparing two <code>long</code> values.
+ * <p>
+ * All setters throw an {@link UnsupportedOperationException}. The proof of
+ * possession key is given back as a copy. The token DOM element cannot be
+ * copied cheaply and is shared between all users of the token, so it must not
+ * be modified.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public final class ImmutableSecurityToken extends SecurityToken {
+
+	private final long createdTime;
+
+	private final long expiresTime;
+
+	private final long retirementDuration;
+
+	private final long refreshDeadline;
+
+	/**
+	 * Main constructor. Copies the given security token, including its parent
+	 * security tokens.
+	 * 
+	 * @param securityToken
+	 *            the security token to copy.
+	 * @param retirementDuration
+	 *            the duration in milliseconds, before expiration, during which
+	 *            the token should no longer be used.
+	 */
+	public ImmutableSecurityToken(SecurityToken securityToken,
+			long retirementDuration) {
+		Date created = securityToken.getCreated();
+		Date expires = securityToken.getExpires();
+		if (null == expires) {
+			throw new IllegalArgumentException("token expiry date required");
+		}
+		this.createdTime = null == created ? 0 : created.getTime();
+		this.expiresTime = expires.getTime();
+		this.retirementDuration = retirementDuration;
+		this.refreshDeadline = this.expiresTime - retirementDuration;
+		byte[] key = securityToken.getKey();
+		super.setKey(null == key ? null : key.clone());
+		super.setCreated(null == created ? null : new Date(this.createdTime));
+		super.setExpires(new Date(this.expiresTime));
+		super.setToken(securityToken.getToken());
+		super.setAttachedReference(securityToken.getAttachedReference());
+		super.setUnattachedReference(securityToken.getUnattachedReference());
+		super.setRealm(securityToken.getRealm());
+		super.setStsLocation(securityToken.getStsLocation());
+		SecurityToken parentSecurityToken = securityToken
+				.getParentSecurityToken();
+		if (null != parentSecurityToken
+				&& false == parentSecurityToken instanceof ImmutableSecurityToken) {
+			parentSecurityToken = new ImmutableSecurityToken(
+					parentSecurityToken, retirementDuration);
+		}
+		super.setParentSecurityToken(parentSecurityToken);
+	}
+
+	/**
+	 * Gives back an immutable version of the given security token. An
+	 * immutable security token is given back as is. Other security tokens get
+	 * copied without retirement duration, for token stores that do not know
+	 * the retirement duration of their users.
+	 * 
+	 * @param securityToken
+	 *            the security token, can be <code>null</code>.
+	 * @return the immutable security token, or <code>null</code>.
+	 */
+	public static ImmutableSecurityToken valueOf(SecurityToken securityToken) {
+		if (securityToken instanceof ImmutableSecurityToken) {
+			return (ImmutableSecurityToken) securityToken;
+		}
+		return valueOf(securityToken, 0);
+	}
+
+	/**
+	 * Gives back an immutable version of the given security token.
+	 * 
+	 * @param securityToken
+	 *            the security token, can be <code>null</code>.
+	 * @param retirementDuration
+	 *            the token retirement duration in milliseconds.
+	 * @return the immutable security token, or <code>null</code>.
+	 */
+	public static ImmutableSecurityToken valueOf(SecurityToken securityToken,
+			long retirementDuration) {
+		if (null == securityToken) {
+			return null;
+		}
+		if (securityToken instanceof ImmutableSecurityToken) {
+			ImmutableSecurityToken immutableSecurityToken = (ImmutableSecurityToken) securityToken;
+			if (immutableSecurityToken.retirementDuration == retirementDuration) {
+				return immutableSecurityToken;
+			}
+		}
+		return new ImmutableSecurityToken(securityToken, retirementDuration);
+	}
+
+	/**
+	 * Checks whether the token can still be used, i.e. whether it did not yet
+	 * enter its retirement window.
+	 * 
+	 * @param now
+	 *            the current time, in epoch millis.
+	 * @return <code>true</code> if the token can still be used.
+	 */
+	public boolean isUsable(long now) {
+		return now < this.refreshDeadline;
+	}
+
+	/**
+	 * Gives back the moment, in epoch millis, at which the token enters its
+	 * retirement window.
+	 * 
+	 * @return the refresh deadline.
+	 */
+	public long getRefreshDeadline() {
+		return this.refreshDeadline;
+	}
+
+	/**
+	 * Gives back the token retirement duration used to compute the refresh
+	 * deadline.
+	 * 
+	 * @return duration in milliseconds.
+	 */
+	public long getRetirementDuration() {
+		return this.retirementDuration;
+	}
+
+	/**
+	 * Gives back the creation time of the token, in epoch millis.
+	 * 
+	 * @return the creation time, or 0 if unknown.
+	 */
+	public long getCreatedTime() {
+		return this.createdTime;
+	}
+
+	/**
+	 * Gives back the expiry time of the token, in epoch millis.
+	 * 
+	 * @return the expiry time.
+	 */
+	public long getExpiresTime() {
+		return this.expiresTime;
+	}
+
+	/**
+	 * Gives back a copy of the proof of possession key.
+	 * 
+	 * @see #getSharedKey(SecurityToken)
+	 */
+	@Override
+	public byte[] getKey() {
+		byte[] key = super.getKey();
+		if (null == key) {
+			return null;
+		}
+		return key.clone();
+	}
+
+	/**
+	 * Gives back the proof of possession key of the given token without
+	 * copying it. The key is shared and must not be modified. Meant for the
+	 * handlers that sign every outbound message with the key of a cached
+	 * token.
+	 * 
+	 * @param securityToken
+	 *            the security token.
+	 * @return the proof of possession key.
+	 */
+	public static byte[] getSharedKey(SecurityToken securityToken) {
+		if (securityToken instanceof ImmutableSecurityToken) {
+			return ((ImmutableSecurityToken) securityToken).getKeyReference();
+		}
+		return securityToken.getKey();
+	}
+
+	private byte[] getKeyReference() {
+		return super.getKey();
+	}
+
+	/**
+	 * Gives back the token DOM element. The element is shared and must not be
+	 * modified. Use {@link org.w3c.dom.Document#importNode(org.w3c.dom.Node, boolean)}
+	 * to put a copy of it into another document.
+	 */
+	@Override
+	public Element getToken() {
+		return super.getToken();
+	}
+
+	@Override
+	public Date getCreated() {
+		if (null == super.getCreated()) {
+			return null;
+		}
+		return new Date(this.createdTime);
+	}
+
+	@Override
+	public Date getExpires() {
+		return new Date(this.expiresTime);
+	}
+
+	@Override
+	public void setKey(byte[] key) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setCreated(Date created) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setExpires(Date expires) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setToken(Element requestedSecurityToken) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setAttachedReference(String attachedReference) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setUnattachedReference(String unattachedReference) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setRealm(String realm) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setStsLocation(String stsLocation) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setParentSecurityToken(SecurityToken parentSecurityToken) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default token store, keeping the security tokens on the Java heap. Security
+ * tokens are indexed per credential, location, and realm, so that a lookup does
+ * not need to allocate a composite key.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public class InMemoryTokenStore implements TokenStore {
+
+	private static final TokenLease NO_LEASE = new TokenLease() {
+
+		public void release() {
+		}
+	};
+
+	// credential -> location -> realm -> token
+	private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, SecurityToken>>> securityTokens;
+
+	/**
+	 * Default constructor.
+	 */
+	public InMemoryTokenStore() {
+		this.securityTokens = new ConcurrentHashMap<String, ConcurrentMap<String, ConcurrentMap<String, SecurityToken>>>();
+	}
+
+	public SecurityToken getSecurityToken(String credential, String realm,
+			String location) {
+		ConcurrentMap<String, ConcurrentMap<String, SecurityToken>> locationTokens = this.securityTokens
+				.get(credential);
+		if (null == locationTokens) {
+			return null;
+		}
+		ConcurrentMap<String, SecurityToken> realmTokens = locationTokens
+				.get(location);
+		if (null == realmTokens) {
+			return null;
+		}
+		return realmTokens.get(realm);
+	}
+
+	public void storeSecurityToken(String credential, String realm,
+			String location, SecurityToken securityToken) {
+		ConcurrentMap<String, ConcurrentMap<String, SecurityToken>> locationTokens = this.securityTokens
+				.get(credential);
+		if (null == locationTokens) {
+			ConcurrentMap<String, ConcurrentMap<String, SecurityToken>> newLocationTokens = new ConcurrentHashMap<String, ConcurrentMap<String, SecurityToken>>();
+			locationTokens = this.securityTokens.putIfAbsent(credential,
+					newLocationTokens);
+			if (null == locationTokens) {
+				locationTokens = newLocationTokens;
+			}
+		}
+		ConcurrentMap<String, SecurityToken> realmTokens = locationTokens
+				.get(location);
+		if (null == realmTokens) {
+			ConcurrentMap<String, SecurityToken> newRealmTokens = new ConcurrentHashMap<String, SecurityToken>();
+			realmTokens = locationTokens.putIfAbsent(location, newRealmTokens);
+			if (null == realmTokens) {
+				realmTokens = newRealmTokens;
+			}
+		}
+		realmTokens.put(realm, securityToken);
+	}
+
+	public void removeSecurityToken(String credential, String realm,
+			String location) {
+		ConcurrentMap<String, ConcurrentMap<String, SecurityToken>> locationTokens = this.securityTokens
+				.get(credential);
+		if (null == locationTokens) {
+			return;
+		}
+		ConcurrentMap<String, SecurityToken> realmTokens = locationTokens
+				.get(location);
+		if (null == realmTokens) {
+			return;
+		}
+		realmTokens.remove(realm);
+	}
+
+	public boolean isShared() {
+		return false;
+	}
+
+	public TokenLease lease(String credential, String realm,
+			String location, boolean wait) {
+		/*
+		 * The token store is not shared with other processes, and within this
+		 * process the InformatieVlaanderenSecurity component already
+		 * serializes the renewal of a security token.
+		 */
+		return NO_LEASE;
+	}
+}
@@ -25,18 +25,38 @@ import java.io.InputStream;
 import java.net.Proxy;
 import java.net.ProxySelector;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.PrivateKey;
 import java.security.Provider;
 import java.security.Security;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.xml.ws.Binding;
 import javax.xml.ws.BindingProvider;
@@ -45,18 +65,22 @@ import javax.xml.ws.soap.SOAPFaultException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.joda.time.DateTime;
-import org.joda.time.Duration;
 
 import be.vlaanderen.informatievlaanderen.security.client.ClientProxySelector;
 import be.vlaanderen.informatievlaanderen.security.client.RSTSClient;
 import be.vlaanderen.informatievlaanderen.security.client.SecureConversationClient;
+import be.vlaanderen.informatievlaanderen.security.client.SecurityTokenServiceFactory;
 import be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.FusedSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.HandlerChainLayout;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
 import be.vlaanderen.informatievlaanderen.security.handler.LoggingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SOAPStackIntegration;
 import be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler;
 import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenConsumer;
 import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
 import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
 import be.vlaanderen.informatievlaanderen.security.handler.InformatieVlaanderenSOAPHandler;
 
 /**
@@ -82,6 +106,39 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 
 	public static final long DEFAULT_TOKEN_RETIREMENT_DURATION = 1000 * 60 * 5;
 
+	/**
+	 * Default number of background token refresh worker threads.
+	 */
+	public static final int DEFAULT_TOKEN_REFRESH_WORKERS = 2;
+
+	/**
+	 * Default duration of the window, right before the token retirement window,
+	 * within which background token refreshes are spread.
+	 */
+	public static final long DEFAULT_TOKEN_REFRESH_AHEAD_DURATION = 1000 * 60;
+
+	/**
+	 * Default delay before a failed background token refresh is retried.
+	 */
+	public static final long DEFAULT_TOKEN_REFRESH_RETRY_DELAY = 1000 * 30;
+
+	/**
+	 * Default duration after which an unused cached token gets evicted.
+	 */
+	public static final long DEFAULT_TOKEN_IDLE_TIMEOUT = 1000 * 60 * 60;
+
+	/**
+	 * Default maximum number of cached R-STS tokens, and of cached secure
+	 * conversation tokens.
+	 */
+	public static final int DEFAULT_MAX_CACHED_TOKENS = 256;
+
+	/**
+	 * Default maximum number of concurrent token requests during
+	 * {@link #refreshSecurityTokens()}.
+	 */
+	public static final int DEFAULT_TOKEN_REFRESH_CONCURRENCY = 4;
+
 	/**
 	 * R-STS Beta Realm.
 	 */
@@ -96,15 +153,45 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 
 	private final String rStsLocation;	
 
+	// keeps R-STS tokens apart from tokens of a web service at that location
+	private final String rStsTokenLocation;
+
 	private final X509Certificate certificate;
 
 	private final PrivateKey privateKey;
 
-	// key = service location
-	private final Map<String, SecurityToken> secureConversationTokens;	
+	private final String credential;
+
+	private volatile TokenStore tokenStore;
+
+	// key = service realm and location
+	private final ConcurrentMap<String, TokenCacheEntry> secureConversationEntries;
 
 	// key = service realm
-	private final Map<String, SecurityToken> rStsSecurityTokens;
+	private final ConcurrentMap<String, TokenCacheEntry> rStsEntries;
+
+	// key = service location
+	private final ConcurrentMap<String, SecureConversationClient> secureConversationClients;
+
+	private volatile RSTSClient rStsClient;
+
+	private volatile long tokenIdleTimeout = DEFAULT_TOKEN_IDLE_TIMEOUT;
+
+	private volatile long tokenRefreshRetryDelay = DEFAULT_TOKEN_REFRESH_RETRY_DELAY;
+
+	private volatile int maxCachedTokens = DEFAULT_MAX_CACHED_TOKENS;
+
+	private volatile int tokenRefreshConcurrency = DEFAULT_TOKEN_REFRESH_CONCURRENCY;
+
+	private volatile Executor tokenExecutor;
+
+	private volatile HandlerChainLayout handlerChainLayout = HandlerChainLayout.SEPARATE;
+
+	private volatile InboundSecurityMode inboundSecurityMode = InboundSecurityMode.FULL;
+
+	private volatile boolean soapStackIntegration;
+
+	private static final List<SOAPStackIntegration> soapStackIntegrations = loadSOAPStackIntegrations();
 
 	private static ClientProxySelector clientProxySelector;
 
@@ -116,6 +203,10 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 
 	private final List<STSListener> stsListeners;
 
+	private volatile TokenRefreshScheduler tokenRefreshScheduler;
+
+	private volatile TokenSnapshot tokenSnapshot;
+
 	static {
 		ProxySelector defaultProxySelector = ProxySelector.getDefault();
 		InformatieVlaanderenSecurity.clientProxySelector = new ClientProxySelector(
@@ -154,6 +245,7 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	public InformatieVlaanderenSecurity(String rStsLocation, File pkcs12File, String pkcs12Password)
 			throws SecurityException {		
 		this.rStsLocation = rStsLocation;		
+		this.rStsTokenLocation = "R-STS " + rStsLocation;
 
 		InputStream pkcs12InputStream;
 		try {
@@ -183,8 +275,11 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 					+ e.getMessage(), e);
 		}
 		this.externalIpStsClient = null;
-		this.secureConversationTokens = new ConcurrentHashMap<String, SecurityToken>();
-		this.rStsSecurityTokens = new ConcurrentHashMap<String, SecurityToken>();
+		this.credential = getCredential(this.certificate, null);
+		this.tokenStore = new InMemoryTokenStore();
+		this.secureConversationEntries = new ConcurrentHashMap<String, TokenCacheEntry>();
+		this.rStsEntries = new ConcurrentHashMap<String, TokenCacheEntry>();
+		this.secureConversationClients = new ConcurrentHashMap<String, SecureConversationClient>();
 		this.stsListeners = new CopyOnWriteArrayList<STSListener>();
 	}
 
@@ -208,11 +303,15 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 			ExternalIPSTSClient externalIpStsClient,
 			X509Certificate certificate, PrivateKey privateKey) {		
 		this.rStsLocation = rStsLocation;		
+		this.rStsTokenLocation = "R-STS " + rStsLocation;
 		this.certificate = certificate;
 		this.privateKey = privateKey;
 		this.externalIpStsClient = externalIpStsClient;
-		this.secureConversationTokens = new ConcurrentHashMap<String, SecurityToken>();
-		this.rStsSecurityTokens = new ConcurrentHashMap<String, SecurityToken>();
+		this.credential = getCredential(certificate, externalIpStsClient);
+		this.tokenStore = new InMemoryTokenStore();
+		this.secureConversationEntries = new ConcurrentHashMap<String, TokenCacheEntry>();
+		this.rStsEntries = new ConcurrentHashMap<String, TokenCacheEntry>();
+		this.secureConversationClients = new ConcurrentHashMap<String, SecureConversationClient>();
 		this.stsListeners = new CopyOnWriteArrayList<STSListener>();
 	}
 
@@ -249,6 +348,103 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 		this.proxyType = proxyType;
 	}
 
+	/**
+	 * Gives back whether the SOAP stack integrations found on the classpath are
+	 * used by the enable methods.
+	 * 
+	 * @return <code>true</code> if the SOAP stack integrations are used.
+	 */
+	public boolean isSOAPStackIntegration() {
+		return this.soapStackIntegration;
+	}
+
+	/**
+	 * Sets whether the enable methods use a SOAP stack integration, like the
+	 * CXF interceptors, for the JAX-WS stubs that it supports. Default is
+	 * <code>false</code>. When disabled, or when no integration supports the
+	 * JAX-WS stub, the JAX-WS SOAP handler chain is used. Only affects JAX-WS
+	 * stubs that get enabled afterwards.
+	 * <p>
+	 * The SOAP stack integrations only do what the handler chain does for
+	 * {@link WSSecurityMode#STREAMING}, {@link HandlerChainLayout#SEPARATE}
+	 * and {@link InboundSecurityMode#TIMESTAMP_ONLY}, and do not log the SOAP
+	 * messages. For any other configuration, or when the debug logging of the
+	 * {@link LoggingHandler} is active, the handler chain is used anyway.
+	 * Requests that carry X509 credentials via
+	 * {@link WSSecurityHandler#setCredentials(java.util.Map, PrivateKey, X509Certificate)}
+	 * are refused by the SOAP stack integrations.
+	 * 
+	 * @param soapStackIntegration
+	 *            <code>true</code> to use the SOAP stack integrations.
+	 * @see SOAPStackIntegration
+	 */
+	public void setSOAPStackIntegration(boolean soapStackIntegration) {
+		this.soapStackIntegration = soapStackIntegration;
+	}
+
+	private static List<SOAPStackIntegration> loadSOAPStackIntegrations() {
+		List<SOAPStackIntegration> soapStackIntegrations = new LinkedList<SOAPStackIntegration>();
+		Iterator<SOAPStackIntegration> soapStackIntegrationIterator = ServiceLoader
+				.load(SOAPStackIntegration.class,
+						InformatieVlaanderenSecurity.class.getClassLoader())
+				.iterator();
+		while (true) {
+			try {
+				if (false == soapStackIntegrationIterator.hasNext()) {
+					break;
+				}
+				SOAPStackIntegration soapStackIntegration = soapStackIntegrationIterator
+						.next();
+				LOG.debug("SOAP stack integration: "
+						+ soapStackIntegration.getClass().getName());
+				soapStackIntegrations.add(soapStackIntegration);
+			} catch (ServiceConfigurationError e) {
+				// SOAP stack itself not on the classpath
+				LOG.warn("SOAP stack integration not available: "
+						+ e.getMessage());
+			} catch (LinkageError e) {
+				LOG.warn("SOAP stack integration not available: "
+						+ e.getMessage());
+			}
+		}
+		return soapStackIntegrations;
+	}
+
+	private SOAPStackIntegration getSOAPStackIntegration(
+			BindingProvider bindingProvider, WSSecurityMode wsSecurityMode) {
+		if (false == this.soapStackIntegration) {
+			return null;
+		}
+		if (WSSecurityMode.STREAMING != wsSecurityMode
+				|| HandlerChainLayout.SEPARATE != this.handlerChainLayout
+				|| InboundSecurityMode.TIMESTAMP_ONLY != this.inboundSecurityMode) {
+			LOG.debug("configuration requires the handler chain");
+			return null;
+		}
+		if (LogFactory.getLog(LoggingHandler.class).isDebugEnabled()) {
+			LOG.debug("message logging requires the handler chain");
+			return null;
+		}
+		for (SOAPStackIntegration soapStackIntegration : soapStackIntegrations) {
+			if (isSupported(soapStackIntegration, bindingProvider)) {
+				return soapStackIntegration;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isSupported(
+			SOAPStackIntegration soapStackIntegration,
+			BindingProvider bindingProvider) {
+		try {
+			return soapStackIntegration.isSupported(bindingProvider);
+		} catch (LinkageError e) {
+			LOG.warn("SOAP stack integration not available: "
+					+ e.getMessage());
+			return false;
+		}
+	}
+
 	/**
 	 * Enable the Informatie Vlaanderen security on the given JAX-WS binding provider. Each
 	 * JAX-WS port can be casted to a JAX-WS binding provider.
@@ -282,6 +478,9 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
  JAX-WS stub. This method will only decorate the Informatie Vlaanderen Security framework
  once on the given JAX-WS stub. If the JAX-WS stub is already decorated by
  another InformatieVlaanderenSecurity instance a {@link SecurityException} will be thrown.
+	 * <p>
+	 * The security tokens are selected per request, so a single secured JAX-WS
+	 * stub can be used by multiple threads at once.
 	 * 
 	 * @param bindingProvider
 	 *            the JAX-WS binding provider on which to enable the Informatie Vlaanderen
@@ -297,11 +496,34 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	 */
 	public void enable(BindingProvider bindingProvider,
 			boolean useWsSecureConversation, String serviceRealm) {
+		enable(bindingProvider, useWsSecureConversation, serviceRealm,
+				WSSecurityMode.DOM);
+	}
+
+	/**
+	 * Enable the Informatie Vlaanderen security on the given JAX-WS binding
+	 * provider, using the given mode to construct the WS-Security header.
+	 * 
+	 * @param bindingProvider
+	 *            the JAX-WS binding provider on which to enable the Informatie Vlaanderen
+	 *            security framework.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param wsSecurityMode
+	 *            the WS-Security header construction mode.
+	 * @see InformatieVlaanderenSecurity#enable(BindingProvider, boolean, String)
+	 * @see WSSecurityMode
+	 */
+	public void enable(BindingProvider bindingProvider,
+			boolean useWsSecureConversation, String serviceRealm,
+			WSSecurityMode wsSecurityMode) {
 		Binding binding = bindingProvider.getBinding();
 		List<Handler> handlerChain = binding.getHandlerChain();
 		for (Handler handler : handlerChain) {
-			if (handler instanceof SecureConversationHandler
-					|| handler instanceof AuthenticationHandler) {
+			if (handler instanceof SecurityTokenConsumer) {
 				LOG.warn("security already enabled");
 				SecurityTokenConsumer securityTokenConsumer = (SecurityTokenConsumer) handler;
 				if (this != securityTokenConsumer.getSecurityTokenProvider()) {
@@ -311,15 +533,27 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 				return;
 			}
 		}
-		WSSecurityHandler wsSecurityHandler = new WSSecurityHandler();
+		SOAPStackIntegration soapStackIntegration = getSOAPStackIntegration(
+				bindingProvider, wsSecurityMode);
+		if (null != soapStackIntegration) {
+			soapStackIntegration.enable(bindingProvider, this, serviceRealm,
+					useWsSecureConversation);
+			return;
+		}
+		if (HandlerChainLayout.FUSED == this.handlerChainLayout) {
+			handlerChain.add(new FusedSecurityHandler(this, serviceRealm,
+					useWsSecureConversation, wsSecurityMode,
+					this.inboundSecurityMode));
+			binding.setHandlerChain(handlerChain);
+			return;
+		}
 		if (useWsSecureConversation) {
-			handlerChain.add(new SecureConversationHandler(this,
-					wsSecurityHandler, serviceRealm));
+			handlerChain.add(new SecureConversationHandler(this, serviceRealm));
 		} else {
-			handlerChain.add(new AuthenticationHandler(this, wsSecurityHandler,
-					serviceRealm));
+			handlerChain.add(new AuthenticationHandler(this, serviceRealm));
 		}
-		handlerChain.add(wsSecurityHandler);
+		handlerChain.add(new WSSecurityHandler(wsSecurityMode,
+				this.inboundSecurityMode));
 		handlerChain.add(new LoggingHandler());
 		binding.setHandlerChain(handlerChain);
 	}
@@ -337,6 +571,11 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	 */
 	public void disable(BindingProvider bindingProvider) {
 		LOG.debug("disabling Informatie Vlaanderen security...");
+		for (SOAPStackIntegration soapStackIntegration : soapStackIntegrations) {
+			if (isSupported(soapStackIntegration, bindingProvider)) {
+				soapStackIntegration.disable(bindingProvider);
+			}
+		}
 		Binding binding = bindingProvider.getBinding();
 		List<Handler> handlerChain = binding.getHandlerChain();
 		Iterator<Handler> handlerIterator = handlerChain.iterator();
@@ -423,13 +662,63 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	 * Gives back a map of secure conversation tokens, indexed via the location
 	 * of the web service for which the tokens apply.
 	 * <p>
-	 * The map can be empty if no WS-SecureConversation is used.
+	 * The map can be empty if no WS-SecureConversation is used. The map is a
+	 * copy of the secure conversation tokens currently held by the token
+	 * store.
 	 * 
 	 * @return a map of secure conversation tokens indexed per web service
 	 *         location.
 	 */
 	public Map<String, SecurityToken> getSecureConversationTokens() {
-		return this.secureConversationTokens;
+		Map<String, SecurityToken> secureConversationTokens = new HashMap<String, SecurityToken>();
+		TokenStore store = this.tokenStore;
+		for (TokenCacheEntry entry : this.secureConversationEntries.values()) {
+			SecurityToken secureConversationToken = store.getSecurityToken(
+					this.credential, entry.getRealm(), entry.getLocation());
+			if (null != secureConversationToken) {
+				secureConversationTokens.put(entry.getLocation(),
+						secureConversationToken);
+			}
+		}
+		return secureConversationTokens;
+	}
+
+	/**
+	 * Gives back the identifier of the credential under which the security
+	 * tokens are kept within the token store.
+	 * 
+	 * @return the credential identifier.
+	 */
+	public String getCredential() {
+		return this.credential;
+	}
+
+	/**
+	 * Gives back the token store holding the cached security tokens.
+	 * 
+	 * @return the token store.
+	 */
+	public TokenStore getTokenStore() {
+		return this.tokenStore;
+	}
+
+	/**
+	 * Sets the token store holding the cached security tokens. By default the
+	 * security tokens are kept in memory. Use a {@link SharedMemoryTokenStore}
+	 * to share the security tokens between all JVMs on the same host that use
+	 * the same credential.
+	 * <p>
+	 * Tokens cached in the previous token store are not migrated, so best
+	 * called right after construction of this component.
+	 * 
+	 * @param tokenStore
+	 *            the token store.
+	 */
+	public void setTokenStore(TokenStore tokenStore) {
+		if (null == tokenStore) {
+			throw new IllegalArgumentException("token store required");
+		}
+		this.tokenStore = tokenStore;
 	}
 
 	/**
@@ -521,6 +810,12 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	 * web service location, this method will fetch new tokens from 
          * R-STS, and the WS-SecureConversation enabled web service. This method
 	 * might also notify the registered STS listeners in case of STS activity.
+	 * <p>
+	 * Only one secure conversation token request per web service location is
+	 * sent out at any time. Concurrent callers wait for that request to
+	 * complete, or keep using the cached token if it did not expire yet. With
+	 * a token store shared between processes, this holds for all these
+	 * processes together.
 	 * 
 	 * @param location
 	 *            the location of the web service for which the token should
@@ -531,43 +826,524 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	 */
 	public SecurityToken getSecureConversationToken(String location,
 			String serviceRealm) {
-		SecurityToken secureConversationToken = this.secureConversationTokens
-				.get(location);
-		if (requireNewToken(secureConversationToken)) {
-			secureConversationToken = refreshSecureConversationToken(location,
-					serviceRealm);
+		TokenCacheEntry entry = getCacheEntry(this.secureConversationEntries,
+				getSecureConversationKey(location, serviceRealm), serviceRealm,
+				location, true);
+		SecurityToken secureConversationToken = this.tokenStore
+				.getSecurityToken(this.credential, serviceRealm, location);
+		if (false == requireNewToken(secureConversationToken)) {
+			return secureConversationToken;
+		}
+		Lock lock = entry.getLock();
+		if (false == acquireLock(lock, secureConversationToken)) {
+			LOG.debug("secure conversation token refresh in progress, reusing: "
+					+ secureConversationToken.getAttachedReference());
+			return secureConversationToken;
+		}
+		try {
+			// another thread might have refreshed the token in the meantime
+			secureConversationToken = this.tokenStore.getSecurityToken(
+					this.credential, serviceRealm, location);
+			if (false == requireNewToken(secureConversationToken)) {
+				return secureConversationToken;
+			}
+			return renewSecureConversationToken(location, serviceRealm,
+					secureConversationToken,
+					false == isValid(secureConversationToken));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Only to be called while holding the lock of the token cache entry. The
+	 * token store lease keeps processes that share the token store from all
+	 * requesting a new token at the same time. Gives back the current token if
+	 * another process is renewing it and we do not wait, or the token that
+	 * another process stored in the meantime.
+	 */
+	private SecurityToken renewSecureConversationToken(String location,
+			String serviceRealm, SecurityToken currentToken, boolean wait) {
+		// obtained before the lease, so that we never hold two leases
+		SecurityToken rStsSecurityToken = getSecurityToken(serviceRealm);
+		TokenLease lease = this.tokenStore.lease(this.credential, serviceRealm,
+				location, wait);
+		if (null == lease) {
+			LOG.debug("secure conversation token renewed elsewhere, reusing: "
+					+ currentToken.getAttachedReference());
+			return currentToken;
+		}
+		try {
+			SecurityToken secureConversationToken = this.tokenStore
+					.getSecurityToken(this.credential, serviceRealm, location);
+			if (secureConversationToken != currentToken
+					&& false == requireNewToken(secureConversationToken)) {
+				LOG.debug("secure conversation token renewed elsewhere for: "
+						+ location);
+				scheduleSecureConversationTokenRefresh(location, serviceRealm,
+						secureConversationToken);
+				return secureConversationToken;
+			}
+			return refreshSecureConversationToken(location, serviceRealm,
+					rStsSecurityToken);
+		} finally {
+			lease.release();
 		}
-		return secureConversationToken;
 	}
 
 	private SecurityToken refreshSecureConversationToken(String location,
-			String serviceRealm) {
+			String serviceRealm, SecurityToken rStsSecurityToken) {
 		InformatieVlaanderenSecurity.clientProxySelector.setProxy(location, this.proxyHost,
 				this.proxyPort, this.proxyType);
-		/*
-		 * New clients here since JAX-WS is not thread safe.
-		 */
-		SecurityToken rStsSecurityToken = getSecurityToken(serviceRealm);
 
 		notifySecureConversationListeners();
-		SecureConversationClient secureConversationClient = new SecureConversationClient(
-				location);
-		SecurityToken secureConversationToken = secureConversationClient
-				.getSecureConversationToken(rStsSecurityToken);
+		SecureConversationClient secureConversationClient = getSecureConversationClient(location);
+		SecurityToken secureConversationToken = new ImmutableSecurityToken(
+				secureConversationClient
+						.getSecureConversationToken(rStsSecurityToken),
+				this.tokenRetirementDuration);
 
-		this.secureConversationTokens.put(location, secureConversationToken);
+		this.tokenStore.storeSecurityToken(this.credential, serviceRealm,
+				location, secureConversationToken);
+		scheduleSecureConversationTokenRefresh(location, serviceRealm,
+				secureConversationToken);
+		TokenSnapshot snapshot = this.tokenSnapshot;
+		if (null != snapshot) {
+			snapshot.store(this.credential,
+					TokenSnapshot.SECURE_CONVERSATION_CACHE, location,
+					secureConversationToken);
+		}
 		return secureConversationToken;
 	}
 
+	/**
+	 * Gives back the R-STS security token for the given service realm. In case
+	 * the token cache does not yet hold a valid token for the given service
+	 * realm, this method will fetch a new token from the R-STS.
+	 * <p>
+	 * Only one R-STS token request per service realm is sent out at any time.
+	 * Concurrent callers wait for that request to complete, or keep using the
+	 * cached token if it did not expire yet. With a token store shared between
+	 * processes, this holds for all these processes together.
+	 * 
+	 * @param serviceRealm
+	 *            the service realm.
+	 * @return the R-STS security token.
+	 */
 	public SecurityToken getSecurityToken(String serviceRealm) {
-		SecurityToken rStsSecurityToken = this.rStsSecurityTokens
-				.get(serviceRealm);
+		TokenCacheEntry entry = getCacheEntry(this.rStsEntries, serviceRealm,
+				serviceRealm, this.rStsTokenLocation, false);
+		SecurityToken rStsSecurityToken = this.tokenStore.getSecurityToken(
+				this.credential, serviceRealm, this.rStsTokenLocation);
 		if (false == requireNewToken(rStsSecurityToken)) {
 			return rStsSecurityToken;
 		}
-		
-		rStsSecurityToken = refreshRSTSSecurityToken(serviceRealm);
-		return rStsSecurityToken;
+		Lock lock = entry.getLock();
+		if (false == acquireLock(lock, rStsSecurityToken)) {
+			LOG.debug("R-STS token refresh in progress, reusing: "
+					+ rStsSecurityToken.getAttachedReference());
+			return rStsSecurityToken;
+		}
+		try {
+			// another thread might have refreshed the token in the meantime
+			rStsSecurityToken = this.tokenStore.getSecurityToken(
+					this.credential, serviceRealm, this.rStsTokenLocation);
+			if (false == requireNewToken(rStsSecurityToken)) {
+				return rStsSecurityToken;
+			}
+			return renewRSTSSecurityToken(serviceRealm, rStsSecurityToken,
+					false == isValid(rStsSecurityToken));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Only to be called while holding the lock of the token cache entry.
+	 * 
+	 * @see #renewSecureConversationToken(String, String, SecurityToken,
+	 * boolean)
+	 */
+	private SecurityToken renewRSTSSecurityToken(String serviceRealm,
+			SecurityToken currentToken, boolean wait) {
+		TokenLease lease = this.tokenStore.lease(this.credential, serviceRealm,
+				this.rStsTokenLocation, wait);
+		if (null == lease) {
+			LOG.debug("R-STS token renewed elsewhere, reusing: "
+					+ currentToken.getAttachedReference());
+			return currentToken;
+		}
+		try {
+			SecurityToken rStsSecurityToken = this.tokenStore
+					.getSecurityToken(this.credential, serviceRealm,
+							this.rStsTokenLocation);
+			if (rStsSecurityToken != currentToken
+					&& false == requireNewToken(rStsSecurityToken)) {
+				LOG.debug("R-STS token renewed elsewhere for realm: "
+						+ serviceRealm);
+				scheduleRSTSSecurityTokenRefresh(serviceRealm, rStsSecurityToken);
+				return rStsSecurityToken;
+			}
+			return refreshRSTSSecurityToken(serviceRealm);
+		} finally {
+			lease.release();
+		}
+	}
+
+	/**
+	 * Asynchronous version of {@link #getSecurityToken(String)}. A cached
+	 * token is returned as an already completed future. Otherwise the token is
+	 * requested via the token executor. Concurrent asynchronous callers share
+	 * the same pending request, but every caller gets its own future. So a
+	 * caller cancelling or completing its future does not affect the others.
+	 * 
+	 * @param serviceRealm
+	 *            the service realm.
+	 * @return the future R-STS security token.
+	 * @see InformatieVlaanderenSecurity#setTokenExecutor(Executor)
+	 */
+	public CompletableFuture<SecurityToken> getSecurityTokenAsync(
+			final String serviceRealm) {
+		TokenCacheEntry entry = getCacheEntry(this.rStsEntries, serviceRealm,
+				serviceRealm, this.rStsTokenLocation, false);
+		SecurityToken rStsSecurityToken = this.tokenStore.getSecurityToken(
+				this.credential, serviceRealm, this.rStsTokenLocation);
+		if (false == requireNewToken(rStsSecurityToken)) {
+			return CompletableFuture.completedFuture(rStsSecurityToken);
+		}
+		return requestAsync(entry, new Supplier<SecurityToken>() {
+
+			public SecurityToken get() {
+				return getSecurityToken(serviceRealm);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link #getSecureConversationToken(String, String)}. A cached token is
+	 * returned as an already completed future. Otherwise the token is
+	 * requested via the token executor. Concurrent asynchronous callers share
+	 * the same pending request, but every caller gets its own future. So a
+	 * caller cancelling or completing its future does not affect the others.
+	 * 
+	 * @param location
+	 *            the location of the web service for which the token should
+	 *            apply.
+	 * @param serviceRealm
+	 *            service realm.
+	 * @return the future secure conversation token.
+	 * @see InformatieVlaanderenSecurity#setTokenExecutor(Executor)
+	 */
+	public CompletableFuture<SecurityToken> getSecureConversationTokenAsync(
+			final String location, final String serviceRealm) {
+		TokenCacheEntry entry = getCacheEntry(this.secureConversationEntries,
+				getSecureConversationKey(location, serviceRealm), serviceRealm,
+				location, true);
+		SecurityToken secureConversationToken = this.tokenStore
+				.getSecurityToken(this.credential, serviceRealm, location);
+		if (false == requireNewToken(secureConversationToken)) {
+			return CompletableFuture.completedFuture(secureConversationToken);
+		}
+		return requestAsync(entry, new Supplier<SecurityToken>() {
+
+			public SecurityToken get() {
+				return getSecureConversationToken(location, serviceRealm);
+			}
+		});
+	}
+
+	private CompletableFuture<SecurityToken> requestAsync(
+			TokenCacheEntry entry, final Supplier<SecurityToken> request) {
+		final AtomicReference<CompletableFuture<SecurityToken>> pendingRequest = entry
+				.getPendingRequest();
+		while (true) {
+			CompletableFuture<SecurityToken> future = pendingRequest.get();
+			if (null != future) {
+				return future.thenApply(Function.<SecurityToken> identity());
+			}
+			final CompletableFuture<SecurityToken> newFuture = new CompletableFuture<SecurityToken>();
+			if (false == pendingRequest.compareAndSet(null, newFuture)) {
+				continue;
+			}
+			try {
+				getTokenExecutor().execute(new Runnable() {
+
+					public void run() {
+						try {
+							newFuture.complete(request.get());
+						} catch (Throwable e) {
+							newFuture.completeExceptionally(e);
+						} finally {
+							pendingRequest.compareAndSet(newFuture, null);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				pendingRequest.compareAndSet(newFuture, null);
+				newFuture.completeExceptionally(e);
+			}
+			// the shared future is never handed out to a caller
+			return newFuture.thenApply(Function.<SecurityToken> identity());
+		}
+	}
+
+	private Executor getTokenExecutor() {
+		Executor executor = this.tokenExecutor;
+		if (null != executor) {
+			return executor;
+		}
+		synchronized (this) {
+			if (null == this.tokenExecutor) {
+				this.tokenExecutor = Executors
+						.newCachedThreadPool(new ThreadFactory() {
+
+							private final AtomicInteger threadNumber = new AtomicInteger();
+
+							public Thread newThread(Runnable runnable) {
+								Thread thread = new Thread(runnable,
+										"informatievlaanderen-token-request-"
+												+ this.threadNumber
+														.incrementAndGet());
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+			}
+			return this.tokenExecutor;
+		}
+	}
+
+	/**
+	 * Sets the executor on which the asynchronous token requests, the token
+	 * refreshes of {@link #refreshSecurityTokens()} and the cancellation of
+	 * evicted secure conversation tokens run. By default, a cached pool of
+	 * daemon threads is used. Token requests block
+	 * for a full STS round trip, so the executor should not be a pool that is
+	 * reserved for non-blocking work.
+	 * 
+	 * @param tokenExecutor
+	 *            the token executor.
+	 * @see InformatieVlaanderenSecurity#getSecurityTokenAsync(String)
+	 * @see InformatieVlaanderenSecurity#getSecureConversationTokenAsync(String,
+	 *      String)
+	 */
+	public void setTokenExecutor(Executor tokenExecutor) {
+		if (null == tokenExecutor) {
+			throw new IllegalArgumentException("token executor required");
+		}
+		this.tokenExecutor = tokenExecutor;
+	}
+
+	private TokenCacheEntry getCacheEntry(
+			ConcurrentMap<String, TokenCacheEntry> entries, String key,
+			String realm, String location, boolean secureConversation) {
+		long now = System.currentTimeMillis();
+		TokenCacheEntry entry = entries.get(key);
+		if (null != entry) {
+			entry.touch(now);
+			return entry;
+		}
+		TokenCacheEntry newEntry = new TokenCacheEntry(realm, location, now);
+		entry = entries.putIfAbsent(key, newEntry);
+		if (null != entry) {
+			entry.touch(now);
+			return entry;
+		}
+		if (entries.size() > this.maxCachedTokens) {
+			evictLeastRecentlyUsed(entries, newEntry, secureConversation);
+		}
+		return newEntry;
+	}
+
+	private void evictLeastRecentlyUsed(
+			ConcurrentMap<String, TokenCacheEntry> entries,
+			TokenCacheEntry newEntry, boolean secureConversation) {
+		String evictKey = null;
+		TokenCacheEntry evictEntry = null;
+		for (Map.Entry<String, TokenCacheEntry> mapEntry : entries.entrySet()) {
+			TokenCacheEntry entry = mapEntry.getValue();
+			if (entry == newEntry) {
+				continue;
+			}
+			if (null == evictEntry
+					|| entry.getLastUsed() < evictEntry.getLastUsed()) {
+				evictKey = mapEntry.getKey();
+				evictEntry = entry;
+			}
+		}
+		if (null != evictEntry) {
+			LOG.debug("token cache full");
+			evict(entries, evictKey, evictEntry, secureConversation);
+		}
+	}
+
+	/**
+	 * Evicts the cached tokens that have not been used during the token idle
+	 * timeout. Evicted secure conversation tokens get cancelled, unless the
+	 * token store is shared with other processes. This also
+	 * happens automatically during {@link #refreshSecurityTokens()}, and
+	 * before every background token refresh.
+	 * 
+	 * @see InformatieVlaanderenSecurity#setTokenIdleTimeout(long)
+	 */
+	public void evictIdleTokens() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, TokenCacheEntry> mapEntry : this.rStsEntries
+				.entrySet()) {
+			if (mapEntry.getValue().isIdle(now, this.tokenIdleTimeout)) {
+				evict(this.rStsEntries, mapEntry.getKey(), mapEntry.getValue(),
+						false);
+			}
+		}
+		for (Map.Entry<String, TokenCacheEntry> mapEntry : this.secureConversationEntries
+				.entrySet()) {
+			if (mapEntry.getValue().isIdle(now, this.tokenIdleTimeout)) {
+				evict(this.secureConversationEntries, mapEntry.getKey(),
+						mapEntry.getValue(), true);
+			}
+		}
+	}
+
+	private void evict(ConcurrentMap<String, TokenCacheEntry> entries,
+			String key, TokenCacheEntry entry, boolean secureConversation) {
+		Lock lock = entry.getLock();
+		if (false == lock.tryLock()) {
+			// token request in progress, so not idle
+			return;
+		}
+		SecurityToken securityToken;
+		try {
+			if (false == entries.remove(key, entry)) {
+				return;
+			}
+			LOG.debug("evicting token for realm " + entry.getRealm()
+					+ " issued by " + entry.getLocation());
+			securityToken = removeSecurityToken(entry, secureConversation);
+		} finally {
+			lock.unlock();
+		}
+		if (secureConversation && null != securityToken) {
+			cancelEvictedToken(entry.getLocation(), securityToken);
+		}
+	}
+
+	private void cancelEvictedToken(final String location,
+			final SecurityToken securityToken) {
+		// the cancel round trip to the STS stays off the evicting thread
+		Runnable cancelTask = new Runnable() {
+
+			public void run() {
+				try {
+					cancelSecureConversationToken(location, securityToken);
+				} catch (Exception e) {
+					LOG.warn("error cancelling evicted secure conversation token: "
+							+ e.getMessage());
+				}
+			}
+		};
+		try {
+			getTokenExecutor().execute(cancelTask);
+		} catch (RejectedExecutionException e) {
+			LOG.warn("evicted secure conversation token not cancelled: "
+					+ e.getMessage());
+		}
+	}
+
+	private SecurityToken removeSecurityToken(TokenCacheEntry entry,
+			boolean secureConversation) {
+		TokenStore store = this.tokenStore;
+		SecurityToken securityToken = null;
+		// other processes might still use the token of a shared token store
+		if (false == store.isShared()) {
+			securityToken = store.getSecurityToken(this.credential,
+					entry.getRealm(), entry.getLocation());
+			store.removeSecurityToken(this.credential, entry.getRealm(),
+					entry.getLocation());
+		}
+		TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+		TokenSnapshot snapshot = this.tokenSnapshot;
+		if (secureConversation) {
+			if (null != scheduler) {
+				scheduler.cancel(getSecureConversationKey(
+						entry.getLocation(), entry.getRealm()));
+			}
+			if (null != snapshot) {
+				snapshot.remove(this.credential,
+						TokenSnapshot.SECURE_CONVERSATION_CACHE,
+						entry.getLocation());
+			}
+		} else {
+			if (null != scheduler) {
+				scheduler.cancel(getRSTSRefreshKey(entry.getRealm()));
+			}
+			if (null != snapshot) {
+				snapshot.remove(this.credential, TokenSnapshot.R_STS_CACHE,
+						entry.getRealm());
+			}
+		}
+		return securityToken;
+	}
+
+	private void cancelSecureConversationToken(String location,
+			SecurityToken secureConversationToken) {
+		LOG.debug("cancelling secure conversation token: "
+				+ secureConversationToken.getAttachedReference());
+		SecureConversationClient secureConversationClient = getSecureConversationClient(location);
+		try {
+			secureConversationClient
+					.cancelSecureConversationToken(secureConversationToken);
+		} catch (SOAPFaultException e) {
+			// in case token is expired
+			LOG.warn("SOAP fault: " + e.getMessage());
+		}
+	}
+
+	private SecureConversationClient getSecureConversationClient(
+			String location) {
+		SecureConversationClient secureConversationClient = this.secureConversationClients
+				.get(location);
+		if (null != secureConversationClient) {
+			return secureConversationClient;
+		}
+		secureConversationClient = new SecureConversationClient(location);
+		SecureConversationClient existingSecureConversationClient = this.secureConversationClients
+				.putIfAbsent(location, secureConversationClient);
+		if (null != existingSecureConversationClient) {
+			return existingSecureConversationClient;
+		}
+		return secureConversationClient;
+	}
+
+	private RSTSClient getRSTSClient() {
+		RSTSClient client = this.rStsClient;
+		if (null == client) {
+			synchronized (this) {
+				client = this.rStsClient;
+				if (null == client) {
+					client = new RSTSClient(this.rStsLocation);
+					this.rStsClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	private boolean acquireLock(Lock lock, SecurityToken currentToken) {
+		/*
+		 * A token that is not yet expired can still be used while another
+		 * thread is busy refreshing it.
+		 */
+		if (isValid(currentToken)) {
+			return lock.tryLock();
+		}
+		lock.lock();
+		return true;
+	}
+
+	private static boolean isValid(SecurityToken securityToken) {
+		return null != securityToken
+				&& getExpiresTime(securityToken) > System.currentTimeMillis();
 	}
 
 	/**
@@ -576,89 +1352,537 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 	 * security tokens. The returned expiry date can be used to program a timer
 	 * at which the method should be called again. Don't forget to take the
 	 * token retirement duration into account when programming such a timer.
+	 * <p>
+	 * Tokens that have not been used during the token idle timeout are evicted
+	 * instead of refreshed. The remaining tokens are refreshed concurrently on
+	 * the token executor, with at most {@link #getTokenRefreshConcurrency()}
+	 * token requests at the same time.
 	 * 
 	 * @return the expiry date of the token that expires next in line.
+	 * @see InformatieVlaanderenSecurity#startTokenRefresh(int, long)
+	 * @see InformatieVlaanderenSecurity#evictIdleTokens()
 	 */
 	public Date refreshSecurityTokens() {		
 		Date expiryDate = new Date();
-		Set<String> serviceRealms = this.rStsSecurityTokens.keySet();		
-		for (String serviceRealm : serviceRealms) {
-			SecurityToken rStsSecurityToken = refreshRSTSSecurityToken(serviceRealm);
-			Date rStsExpiryDate = rStsSecurityToken.getExpires();
-			if (rStsExpiryDate.before(expiryDate)) {
-				expiryDate = rStsExpiryDate;
-			}
+		evictIdleTokens();
+		List<Callable<SecurityToken>> refreshTasks = new LinkedList<Callable<SecurityToken>>();
+		for (final TokenCacheEntry entry : this.rStsEntries.values()) {
+			refreshTasks.add(new Callable<SecurityToken>() {
+
+				public SecurityToken call() throws Exception {
+					Lock lock = entry.getLock();
+					lock.lock();
+					try {
+						return renewRSTSSecurityToken(entry.getRealm(),
+								tokenStore.getSecurityToken(credential,
+										entry.getRealm(), rStsTokenLocation), true);
+					} finally {
+						lock.unlock();
+					}
+				}
+			});
+		}
+		for (final TokenCacheEntry entry : this.secureConversationEntries
+				.values()) {
+			refreshTasks.add(new Callable<SecurityToken>() {
+
+				public SecurityToken call() throws Exception {
+					Lock lock = entry.getLock();
+					lock.lock();
+					try {
+						return renewSecureConversationToken(
+								entry.getLocation(), entry.getRealm(),
+								tokenStore.getSecurityToken(credential,
+										entry.getRealm(), entry.getLocation()),
+								true);
+					} finally {
+						lock.unlock();
+					}
+				}
+			});
 		}
-		Set<String> serviceLocations = this.secureConversationTokens.keySet();
-		if (serviceLocations.isEmpty()) {
+		if (refreshTasks.isEmpty()) {
 			return expiryDate;
 		}
-		for (String serviceLocation : serviceLocations) {
-			SecurityToken secureConversationToken = this.secureConversationTokens
-					.get(serviceLocation);
-			SecurityToken rStsSecurityToken = secureConversationToken
-					.getParentSecurityToken();
-			String serviceRealm = rStsSecurityToken.getRealm();
-			secureConversationToken = refreshSecureConversationToken(
-					serviceLocation, serviceRealm);
-			Date sctExpiryDate = secureConversationToken.getExpires();
-			if (sctExpiryDate.before(expiryDate)) {
-				expiryDate = sctExpiryDate;
+		Executor executor = getTokenExecutor();
+		final Semaphore permits = new Semaphore(this.tokenRefreshConcurrency);
+		List<Future<SecurityToken>> refreshFutures = new LinkedList<Future<SecurityToken>>();
+		RuntimeException refreshException = null;
+		try {
+			for (Callable<SecurityToken> refreshTask : refreshTasks) {
+				permits.acquire();
+				FutureTask<SecurityToken> refreshFuture = new FutureTask<SecurityToken>(
+						refreshTask) {
+
+					@Override
+					protected void done() {
+						permits.release();
+					}
+				};
+				try {
+					executor.execute(refreshFuture);
+				} catch (RejectedExecutionException e) {
+					permits.release();
+					throw new SecurityException("token refresh rejected: "
+							+ e.getMessage());
+				}
+				refreshFutures.add(refreshFuture);
 			}
+			for (Future<SecurityToken> refreshFuture : refreshFutures) {
+				SecurityToken securityToken;
+				try {
+					securityToken = refreshFuture.get();
+				} catch (ExecutionException e) {
+					LOG.error("token refresh error: " + e.getCause().getMessage(),
+							e.getCause());
+					if (null == refreshException) {
+						refreshException = toRuntimeException(e.getCause());
+					}
+					continue;
+				}
+				Date tokenExpiryDate = securityToken.getExpires();
+				if (tokenExpiryDate.before(expiryDate)) {
+					expiryDate = tokenExpiryDate;
+				}
+			}
+		} catch (InterruptedException e) {
+			// refreshes already running complete on the token executor
+			Thread.currentThread().interrupt();
+			throw new SecurityException("token refresh interrupted");
+		}
+		if (null != refreshException) {
+			throw refreshException;
 		}
 		return expiryDate;
 	}
 
+	private static RuntimeException toRuntimeException(Throwable throwable) {
+		if (throwable instanceof RuntimeException) {
+			return (RuntimeException) throwable;
+		}
+		return new SecurityException(throwable.getMessage(), throwable);
+	}
+
 	private SecurityToken refreshRSTSSecurityToken(String serviceRealm) {
 		SecurityToken rStsSecurityToken;
 		notifyRSTSListeners();
 		InformatieVlaanderenSecurity.clientProxySelector.setProxy(this.rStsLocation,
 				this.proxyHost, this.proxyPort, this.proxyType);
-		RSTSClient rStsClient = new RSTSClient(this.rStsLocation);
-		rStsSecurityToken = rStsClient.getSecurityToken(this.getCertificate(),this.privateKey,serviceRealm);
-		this.rStsSecurityTokens.put(serviceRealm, rStsSecurityToken);
+		RSTSClient rStsClient = getRSTSClient();
+		rStsSecurityToken = new ImmutableSecurityToken(rStsClient.getSecurityToken(
+				this.getCertificate(), this.privateKey, serviceRealm),
+				this.tokenRetirementDuration);
+		this.tokenStore.storeSecurityToken(this.credential, serviceRealm,
+				this.rStsTokenLocation, rStsSecurityToken);
+		scheduleRSTSSecurityTokenRefresh(serviceRealm, rStsSecurityToken);
+		TokenSnapshot snapshot = this.tokenSnapshot;
+		if (null != snapshot) {
+			snapshot.store(this.credential, TokenSnapshot.R_STS_CACHE,
+					serviceRealm, rStsSecurityToken);
+		}
 		return rStsSecurityToken;
-	}	
+	}
+
+	/**
+	 * Prepares the WS-Trust clients towards the R-STS and towards the given
+	 * WS-SecureConversation enabled web services. Call this at application
+	 * startup, so that the first token request does not have to load the
+	 * WS-Trust service model.
+	 * 
+	 * @param locations
+	 *            the locations of the WS-SecureConversation enabled web
+	 *            services.
+	 */
+	public void warmUp(String... locations) {
+		SecurityTokenServiceFactory.warmUp(this.rStsLocation);
+		getRSTSClient();
+		SecurityTokenServiceFactory.warmUp(locations);
+		for (String location : locations) {
+			getSecureConversationClient(location);
+		}
+	}
+
+	/**
+	 * Sets the token snapshot used to persist the cached security tokens. The
+	 * still valid tokens of the snapshot are loaded into the token cache right
+	 * away, so that a restarted application does not have to request them
+	 * again from the STS services. Afterwards, every change to the token cache
+	 * is written to the snapshot.
+	 * <p>
+	 * Best called right after construction of this component.
+	 * 
+	 * @param tokenSnapshot
+	 *            the token snapshot, or <code>null</code> to stop persisting
+	 *            the security tokens.
+	 */
+	public synchronized void setTokenSnapshot(TokenSnapshot tokenSnapshot) {
+		this.tokenSnapshot = tokenSnapshot;
+		if (null == tokenSnapshot) {
+			return;
+		}
+		for (Map.Entry<String, SecurityToken> rStsSecurityTokenEntry : tokenSnapshot
+				.getTokens(this.credential, TokenSnapshot.R_STS_CACHE)
+				.entrySet()) {
+			String serviceRealm = rStsSecurityTokenEntry.getKey();
+			SecurityToken rStsSecurityToken = new ImmutableSecurityToken(
+					rStsSecurityTokenEntry.getValue(),
+					this.tokenRetirementDuration);
+			if (null != this.tokenStore.getSecurityToken(this.credential,
+					serviceRealm, this.rStsTokenLocation)) {
+				continue;
+			}
+			LOG.debug("restoring R-STS token for realm: " + serviceRealm);
+			getCacheEntry(this.rStsEntries, serviceRealm, serviceRealm,
+					this.rStsTokenLocation, false);
+			this.tokenStore.storeSecurityToken(this.credential, serviceRealm,
+					this.rStsTokenLocation, rStsSecurityToken);
+			scheduleRSTSSecurityTokenRefresh(serviceRealm, rStsSecurityToken);
+		}
+		for (Map.Entry<String, SecurityToken> secureConversationTokenEntry : tokenSnapshot
+				.getTokens(this.credential,
+						TokenSnapshot.SECURE_CONVERSATION_CACHE).entrySet()) {
+			String location = secureConversationTokenEntry.getKey();
+			SecurityToken secureConversationToken = new ImmutableSecurityToken(
+					secureConversationTokenEntry.getValue(),
+					this.tokenRetirementDuration);
+			String serviceRealm = secureConversationToken
+					.getParentSecurityToken().getRealm();
+			if (null != this.tokenStore.getSecurityToken(this.credential,
+					serviceRealm, location)) {
+				continue;
+			}
+			LOG.debug("restoring secure conversation token for: " + location);
+			getCacheEntry(this.secureConversationEntries,
+					getSecureConversationKey(location, serviceRealm),
+					serviceRealm, location, true);
+			this.tokenStore.storeSecurityToken(this.credential, serviceRealm,
+					location, secureConversationToken);
+			scheduleSecureConversationTokenRefresh(location, serviceRealm,
+					secureConversationToken);
+		}
+	}
+
+	/**
+	 * Starts the background refresh of the cached security tokens, using the
+	 * default settings.
+	 * 
+	 * @see InformatieVlaanderenSecurity#startTokenRefresh(int, long)
+	 */
+	public void startTokenRefresh() {
+		startTokenRefresh(DEFAULT_TOKEN_REFRESH_WORKERS,
+				DEFAULT_TOKEN_REFRESH_AHEAD_DURATION);
+	}
+
+	/**
+	 * Starts the background refresh of the cached security tokens. Once
+	 * started, every cached R-STS and secure conversation token gets renewed
+	 * by a background worker thread before it enters its retirement window.
+	 * This way the threads that invoke the secured web services do not have
+	 * to wait on the STS services.
+	 * <p>
+	 * The refresh of each token is scheduled at a random moment within the
+	 * refresh-ahead window that precedes the token retirement window.
+	 * 
+	 * @param workers
+	 *            the maximum number of concurrent background refreshes.
+	 * @param refreshAheadDuration
+	 *            the duration in milliseconds of the refresh-ahead window.
+	 * @see InformatieVlaanderenSecurity#stopTokenRefresh()
+	 * @see InformatieVlaanderenSecurity#getTokenRetirementDuration()
+	 */
+	public void startTokenRefresh(int workers, long refreshAheadDuration) {
+		TokenRefreshScheduler previousScheduler;
+		synchronized (this) {
+			previousScheduler = this.tokenRefreshScheduler;
+			this.tokenRefreshScheduler = new TokenRefreshScheduler(workers,
+					refreshAheadDuration);
+			scheduleTokenRefreshes();
+		}
+		if (null != previousScheduler) {
+			previousScheduler.shutdown();
+		}
+	}
+
+	private void scheduleTokenRefreshes() {
+		TokenStore store = this.tokenStore;
+		for (TokenCacheEntry entry : this.rStsEntries.values()) {
+			SecurityToken rStsSecurityToken = store.getSecurityToken(
+					this.credential, entry.getRealm(), entry.getLocation());
+			if (null != rStsSecurityToken) {
+				scheduleRSTSSecurityTokenRefresh(entry.getRealm(),
+						rStsSecurityToken);
+			}
+		}
+		for (TokenCacheEntry entry : this.secureConversationEntries.values()) {
+			SecurityToken secureConversationToken = store.getSecurityToken(
+					this.credential, entry.getRealm(), entry.getLocation());
+			if (null != secureConversationToken) {
+				scheduleSecureConversationTokenRefresh(entry.getLocation(),
+						entry.getRealm(), secureConversationToken);
+			}
+		}
+	}
+
+	/**
+	 * Stops the background refresh of the cached security tokens. Pending
+	 * refreshes are cancelled. Refreshes that are already talking to the STS
+	 * are allowed to complete, so this method can block for a few seconds.
+	 * 
+	 * @see InformatieVlaanderenSecurity#startTokenRefresh(int, long)
+	 */
+	public void stopTokenRefresh() {
+		TokenRefreshScheduler scheduler;
+		synchronized (this) {
+			scheduler = this.tokenRefreshScheduler;
+			if (null == scheduler) {
+				return;
+			}
+			this.tokenRefreshScheduler = null;
+		}
+		scheduler.shutdown();
+	}
+
+	private void scheduleRSTSSecurityTokenRefresh(final String serviceRealm,
+			SecurityToken rStsSecurityToken) {
+		TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+		if (null == scheduler) {
+			return;
+		}
+		long retirementTime = getRetirementTime(rStsSecurityToken);
+		if (retirementTime <= System.currentTimeMillis()) {
+			LOG.warn("token lifetime shorter than token retirement duration, no background refresh");
+			return;
+		}
+		scheduler.schedule(getRSTSRefreshKey(serviceRealm),
+				retirementTime, new Runnable() {
+
+					public void run() {
+						backgroundRefreshRSTSSecurityToken(serviceRealm);
+					}
+				});
+	}
+
+	private void scheduleSecureConversationTokenRefresh(final String location,
+			final String serviceRealm, SecurityToken secureConversationToken) {
+		TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+		if (null == scheduler) {
+			return;
+		}
+		long retirementTime = getRetirementTime(secureConversationToken);
+		if (retirementTime <= System.currentTimeMillis()) {
+			LOG.warn("token lifetime shorter than token retirement duration, no background refresh");
+			return;
+		}
+		scheduler.schedule(
+				getSecureConversationKey(location, serviceRealm),
+				retirementTime, new Runnable() {
+
+					public void run() {
+						backgroundRefreshSecureConversationToken(location,
+								serviceRealm);
+					}
+				});
+	}
+
+	private void backgroundRefreshRSTSSecurityToken(final String serviceRealm) {
+		TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+		if (null == scheduler) {
+			return;
+		}
+		TokenCacheEntry entry = this.rStsEntries.get(serviceRealm);
+		if (null == entry) {
+			// evicted in the meantime
+			return;
+		}
+		if (entry.isIdle(System.currentTimeMillis(), this.tokenIdleTimeout)) {
+			evict(this.rStsEntries, serviceRealm, entry, false);
+			return;
+		}
+		Lock lock = entry.getLock();
+		lock.lock();
+		try {
+			SecurityToken rStsSecurityToken = this.tokenStore
+					.getSecurityToken(this.credential, serviceRealm,
+							this.rStsTokenLocation);
+			if (false == requireBackgroundRefresh(scheduler, rStsSecurityToken)) {
+				if (null != rStsSecurityToken) {
+					// renewed in the meantime, maybe by another process
+					scheduleRSTSSecurityTokenRefresh(serviceRealm,
+							rStsSecurityToken);
+				}
+				return;
+			}
+			LOG.debug("background refresh of R-STS token for realm: "
+					+ serviceRealm);
+			renewRSTSSecurityToken(serviceRealm, rStsSecurityToken, true);
+		} catch (Exception e) {
+			LOG.error("background R-STS token refresh error: " + e.getMessage(),
+					e);
+			scheduler.scheduleDelayed(getRSTSRefreshKey(serviceRealm),
+					this.tokenRefreshRetryDelay, new Runnable() {
+
+						public void run() {
+							backgroundRefreshRSTSSecurityToken(serviceRealm);
+						}
+					});
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void backgroundRefreshSecureConversationToken(
+			final String location, final String serviceRealm) {
+		TokenRefreshScheduler scheduler = this.tokenRefreshScheduler;
+		if (null == scheduler) {
+			return;
+		}
+		String key = getSecureConversationKey(location, serviceRealm);
+		TokenCacheEntry entry = this.secureConversationEntries.get(key);
+		if (null == entry) {
+			// evicted in the meantime
+			return;
+		}
+		if (entry.isIdle(System.currentTimeMillis(), this.tokenIdleTimeout)) {
+			evict(this.secureConversationEntries, key, entry, true);
+			return;
+		}
+		Lock lock = entry.getLock();
+		lock.lock();
+		try {
+			SecurityToken secureConversationToken = this.tokenStore
+					.getSecurityToken(this.credential, serviceRealm, location);
+			if (false == requireBackgroundRefresh(scheduler,
+					secureConversationToken)) {
+				if (null != secureConversationToken) {
+					// renewed in the meantime, maybe by another process
+					scheduleSecureConversationTokenRefresh(location,
+							serviceRealm, secureConversationToken);
+				}
+				return;
+			}
+			LOG.debug("background refresh of secure conversation token for: "
+					+ location);
+			renewSecureConversationToken(location, serviceRealm,
+					secureConversationToken, true);
+		} catch (Exception e) {
+			LOG.error("background secure conversation token refresh error: "
+					+ e.getMessage(), e);
+			scheduler.scheduleDelayed(
+					getSecureConversationKey(location, serviceRealm),
+					this.tokenRefreshRetryDelay, new Runnable() {
+
+						public void run() {
+							backgroundRefreshSecureConversationToken(location,
+									serviceRealm);
+						}
+					});
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean requireBackgroundRefresh(TokenRefreshScheduler scheduler,
+			SecurityToken securityToken) {
+		if (null == securityToken) {
+			// token got removed from the cache in the meantime
+			return false;
+		}
+		long refreshTime = getRetirementTime(securityToken)
+				- scheduler.getRefreshAheadDuration();
+		// else the token has already been refreshed by another thread
+		return refreshTime <= System.currentTimeMillis();
+	}
+
+	private long getRetirementTime(SecurityToken securityToken) {
+		return getExpiresTime(securityToken) - this.tokenRetirementDuration;
+	}
+
+	private static String getRSTSRefreshKey(String serviceRealm) {
+		return "R-STS " + serviceRealm;
+	}
+
+	private static String getSecureConversationKey(String location,
+			String serviceRealm) {
+		return "SCT " + serviceRealm + " " + location;
+	}
+
+	private static String getCredential(X509Certificate certificate,
+			ExternalIPSTSClient externalIpStsClient) {
+		if (null == certificate) {
+			// tokens of an external IP-STS client cannot be shared
+			return "ipsts:" + externalIpStsClient.getClass().getName() + "@"
+					+ Integer.toHexString(System
+							.identityHashCode(externalIpStsClient));
+		}
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(
+					certificate.getEncoded());
+		} catch (Exception e) {
+			throw new SecurityException("certificate digest error: "
+					+ e.getMessage(), e);
+		}
+		StringBuilder credential = new StringBuilder("x509:");
+		for (byte digestByte : digest) {
+			credential.append(Integer.toHexString((digestByte & 0xff) | 0x100)
+					.substring(1));
+		}
+		return credential.toString();
+	}
 
 	private boolean requireNewToken(SecurityToken securityToken) {
 		if (null == securityToken) {
 			return true;
 		}
-		DateTime now = new DateTime();
-		DateTime expires = new DateTime(securityToken.getExpires());
-		Duration duration = new Duration(now, expires);
-		LOG.debug("token validity: " + duration);
-		if (duration.isLongerThan(new Duration(this.tokenRetirementDuration))) {
+		long now = System.currentTimeMillis();
+		boolean usable;
+		if (securityToken instanceof ImmutableSecurityToken
+				&& ((ImmutableSecurityToken) securityToken)
+						.getRetirementDuration() == this.tokenRetirementDuration) {
+			usable = ((ImmutableSecurityToken) securityToken).isUsable(now);
+		} else {
+			usable = getExpiresTime(securityToken) - now >
+					this.tokenRetirementDuration;
+		}
+		if (usable && LOG.isDebugEnabled()) {
 			LOG.debug("reusing security token: "
 					+ securityToken.getAttachedReference());
-			return false;
 		}
-		return true;
+		return false == usable;
+	}
+
+	private static long getExpiresTime(SecurityToken securityToken) {
+		if (securityToken instanceof ImmutableSecurityToken) {
+			return ((ImmutableSecurityToken) securityToken).getExpiresTime();
+		}
+		return securityToken.getExpires().getTime();
 	}
 
 	/**
 	 * Cancels all secure conversation tokens currently present within the token
 	 * cache. Cancelling tokens on the server-side reduces load on the Informatie Vlaanderen web
 	 * services.
+	 * <p>
+	 * With a shared token store, the tokens are only dropped from this
+	 * component, as other processes might still use them.
+	 * 
+	 * @see TokenStore#isShared()
 	 */
 	public void cancelSecureConversationTokens() {
-		for (Map.Entry<String, SecurityToken> secureConversationTokenEntry : this.secureConversationTokens
+		for (Map.Entry<String, TokenCacheEntry> mapEntry : this.secureConversationEntries
 				.entrySet()) {
-			String location = secureConversationTokenEntry.getKey();
-			SecurityToken secureConversationToken = secureConversationTokenEntry
-					.getValue();
-			this.secureConversationTokens.remove(location);
-			LOG.debug("cancelling secure conversation token: "
-					+ secureConversationToken.getAttachedReference());
-			SecureConversationClient secureConversationClient = new SecureConversationClient(
-					location);
-			try {
-				secureConversationClient
-						.cancelSecureConversationToken(secureConversationToken);
-			} catch (SOAPFaultException e) {
-				// in case token is expired
-				LOG.warn("SOAP fault: " + e.getMessage());
+			TokenCacheEntry entry = mapEntry.getValue();
+			if (false == this.secureConversationEntries.remove(
+					mapEntry.getKey(), entry)) {
+				continue;
+			}
+			SecurityToken secureConversationToken = removeSecurityToken(entry,
+					true);
+			if (null == secureConversationToken) {
+				continue;
 			}
+			cancelSecureConversationToken(entry.getLocation(),
+					secureConversationToken);
 		}
 	}
 
@@ -683,6 +1907,156 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 		this.tokenRetirementDuration = tokenRetirementDuration;
 	}
 
+	/**
+	 * Gives back the delay in milliseconds before a failed background token
+	 * refresh is retried. Default is 30 seconds.
+	 * 
+	 * @return delay in milliseconds.
+	 */
+	public long getTokenRefreshRetryDelay() {
+		return this.tokenRefreshRetryDelay;
+	}
+
+	/**
+	 * Sets the delay in milliseconds before a failed background token refresh
+	 * is retried.
+	 * 
+	 * @param tokenRefreshRetryDelay
+	 *            delay in milliseconds.
+	 * @see InformatieVlaanderenSecurity#startTokenRefresh(int, long)
+	 */
+	public void setTokenRefreshRetryDelay(long tokenRefreshRetryDelay) {
+		if (tokenRefreshRetryDelay < 0) {
+			throw new IllegalArgumentException("invalid retry delay: "
+					+ tokenRefreshRetryDelay);
+		}
+		this.tokenRefreshRetryDelay = tokenRefreshRetryDelay;
+	}
+
+	/**
+	 * Gives back the duration in milliseconds after which an unused cached
+	 * token gets evicted. Default is 1 hour.
+	 * 
+	 * @return duration in milliseconds.
+	 */
+	public long getTokenIdleTimeout() {
+		return this.tokenIdleTimeout;
+	}
+
+	/**
+	 * Sets the duration in milliseconds after which an unused cached token
+	 * gets evicted. Evicted secure conversation tokens get cancelled.
+	 * 
+	 * @param tokenIdleTimeout
+	 *            duration in milliseconds.
+	 * @see InformatieVlaanderenSecurity#evictIdleTokens()
+	 */
+	public void setTokenIdleTimeout(long tokenIdleTimeout) {
+		this.tokenIdleTimeout = tokenIdleTimeout;
+	}
+
+	/**
+	 * Gives back the maximum number of cached R-STS tokens, and of cached
+	 * secure conversation tokens.
+	 * 
+	 * @return the maximum number of cached tokens.
+	 */
+	public int getMaxCachedTokens() {
+		return this.maxCachedTokens;
+	}
+
+	/**
+	 * Sets the maximum number of cached R-STS tokens, and of cached secure
+	 * conversation tokens. When exceeded, the least recently used token gets
+	 * evicted.
+	 * 
+	 * @param maxCachedTokens
+	 *            the maximum number of cached tokens.
+	 */
+	public void setMaxCachedTokens(int maxCachedTokens) {
+		if (maxCachedTokens < 1) {
+			throw new IllegalArgumentException("invalid maximum: "
+					+ maxCachedTokens);
+		}
+		this.maxCachedTokens = maxCachedTokens;
+	}
+
+	/**
+	 * Gives back the maximum number of concurrent token requests during
+	 * {@link #refreshSecurityTokens()}.
+	 * 
+	 * @return the maximum number of concurrent token requests.
+	 */
+	public int getTokenRefreshConcurrency() {
+		return this.tokenRefreshConcurrency;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent token requests during
+	 * {@link #refreshSecurityTokens()}.
+	 * 
+	 * @param tokenRefreshConcurrency
+	 *            the maximum number of concurrent token requests.
+	 */
+	public void setTokenRefreshConcurrency(int tokenRefreshConcurrency) {
+		if (tokenRefreshConcurrency < 1) {
+			throw new IllegalArgumentException("invalid concurrency: "
+					+ tokenRefreshConcurrency);
+		}
+		this.tokenRefreshConcurrency = tokenRefreshConcurrency;
+	}
+
+	/**
+	 * Gives back the layout of the handler chain installed by the enable
+	 * methods.
+	 * 
+	 * @return the handler chain layout.
+	 */
+	public HandlerChainLayout getHandlerChainLayout() {
+		return this.handlerChainLayout;
+	}
+
+	/**
+	 * Sets the layout of the handler chain installed by the enable methods.
+	 * Only affects JAX-WS stubs that get enabled afterwards.
+	 * 
+	 * @param handlerChainLayout
+	 *            the handler chain layout.
+	 * @see HandlerChainLayout
+	 */
+	public void setHandlerChainLayout(HandlerChainLayout handlerChainLayout) {
+		if (null == handlerChainLayout) {
+			throw new IllegalArgumentException("missing handler chain layout");
+		}
+		this.handlerChainLayout = handlerChainLayout;
+	}
+
+	/**
+	 * Gives back the way the WS-Security header of inbound messages is
+	 * verified.
+	 * 
+	 * @return the inbound security mode.
+	 */
+	public InboundSecurityMode getInboundSecurityMode() {
+		return this.inboundSecurityMode;
+	}
+
+	/**
+	 * Sets the way the WS-Security header of inbound messages is verified.
+	 * Default is {@link InboundSecurityMode#FULL}. Only affects JAX-WS stubs
+	 * that get enabled afterwards.
+	 * 
+	 * @param inboundSecurityMode
+	 *            the inbound security mode.
+	 * @see InboundSecurityMode
+	 */
+	public void setInboundSecurityMode(InboundSecurityMode inboundSecurityMode) {
+		if (null == inboundSecurityMode) {
+			throw new IllegalArgumentException("missing inbound security mode");
+		}
+		this.inboundSecurityMode = inboundSecurityMode;
+	}
+
 	/**
 	 * Enable the Informatie Vlaanderen security on the given JAX-WS binding provider. Each
 	 * JAX-WS port can be casted to a JAX-WS binding provider.
@@ -733,4 +2107,84 @@ public class InformatieVlaanderenSecurity implements SecurityTokenProvider {
 			boolean useWsSecureConversation) {
 		enable(bindingProvider, serviceLocation, useWsSecureConversation, null);
 	}
+
+	/**
+	 * Enable the Informatie Vlaanderen security on the given JAX-WS binding
+	 * provider, using the given mode to construct the WS-Security header. The
+	 * JAX-WS port will also be configured to use the service at the given
+	 * service location.
+	 * 
+	 * @param bindingProvider
+	 *            the JAX-WS binding provider on which to enable the Informatie Vlaanderen
+	 *            security framework.
+	 * @param serviceLocation
+	 *            the location of the web service.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param wsSecurityMode
+	 *            the WS-Security header construction mode.
+	 * @see WSSecurityMode
+	 */
+	public void enable(BindingProvider bindingProvider, String serviceLocation,
+			boolean useWsSecureConversation, String serviceRealm,
+			WSSecurityMode wsSecurityMode) {
+		bindingProvider.getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY, serviceLocation);
+		enable(bindingProvider, useWsSecureConversation, serviceRealm,
+				wsSecurityMode);
+	}
+
+	/**
+	 * Creates a pool of JAX-WS ports on which the Informatie Vlaanderen security
+	 * is enabled. Ports are created via the given factory, typically a method
+	 * reference to a getter of the JAX-WS service, and are decorated only once.
+	 * 
+	 * @param portFactory
+	 *            the factory of new JAX-WS ports.
+	 * @param serviceLocation
+	 *            the location of the web service.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @param maxSize
+	 *            the maximum number of ports handed out at the same time.
+	 * @return the secured port pool.
+	 * @see SecurePortPool#warmUp(int)
+	 */
+	public <T> SecurePortPool<T> securePorts(Supplier<T> portFactory,
+			String serviceLocation, String serviceRealm,
+			boolean useWsSecureConversation, int maxSize) {
+		return new SecurePortPool<T>(this, portFactory, serviceLocation,
+				serviceRealm, useWsSecureConversation, maxSize);
+	}
+
+	/**
+	 * Creates a pool of JAX-WS ports on which the Informatie Vlaanderen security
+	 * is enabled, handing out at most {@link SecurePortPool#DEFAULT_MAX_SIZE}
+	 * ports at the same time.
+	 * 
+	 * @param portFactory
+	 *            the factory of new JAX-WS ports.
+	 * @param serviceLocation
+	 *            the location of the web service.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @return the secured port pool.
+	 * @see InformatieVlaanderenSecurity#securePorts(Supplier, String, String,
+	 *      boolean, int)
+	 */
+	public <T> SecurePortPool<T> securePorts(Supplier<T> portFactory,
+			String serviceLocation, String serviceRealm,
+			boolean useWsSecureConversation) {
+		return securePorts(portFactory, serviceLocation, serviceRealm,
+				useWsSecureConversation, SecurePortPool.DEFAULT_MAX_SIZE);
+	}
 }
@@ -0,0 +1,64 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+/**
+ * A secured JAX-WS port borrowed from a {@link SecurePortPool}. Closing this
+ * object gives the port back to the pool, so it is best used within a
+ * try-with-resources block.
+ * 
+ * @author Frank Cornelis
+ * 
+ * @param <T>
+ *            the JAX-WS port type.
+ * @see SecurePortPool#acquire()
+ */
+public class SecurePort<T> implements AutoCloseable {
+
+	private final SecurePortPool<T> securePortPool;
+
+	private T port;
+
+	SecurePort(SecurePortPool<T> securePortPool, T port) {
+		this.securePortPool = securePortPool;
+		this.port = port;
+	}
+
+	/**
+	 * Gives back the secured JAX-WS port.
+	 * 
+	 * @return the JAX-WS port.
+	 */
+	public T getPort() {
+		if (null == this.port) {
+			throw new IllegalStateException("port already given back");
+		}
+		return this.port;
+	}
+
+	/**
+	 * Gives back the port to the pool. Calling this method more than once has
+	 * no effect.
+	 */
+	public void close() {
+		T port = this.port;
+		this.port = null;
+		this.securePortPool.release(port);
+	}
+}
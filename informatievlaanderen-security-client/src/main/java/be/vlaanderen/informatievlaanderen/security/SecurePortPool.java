@@ -0,0 +1,296 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.xml.ws.BindingProvider;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Bounded pool of JAX-WS ports on which the Informatie Vlaanderen security is
+ * already enabled. Creating a JAX-WS port and decorating it with the security
+ * handlers is expensive, so ports are created once and then handed out over
+ * and over again.
+ * <p>
+ * Ports can be borrowed and returned explicitly:
+ * 
+ * <pre>
+ * ICrabRead port = pool.borrow();
+ * try {
+ * 	port.listGewesten(...);
+ * } finally {
+ * 	pool.release(port);
+ * }
+ * </pre>
+ * 
+ * or via a scoped {@link SecurePort}:
+ * 
+ * <pre>
+ * try (SecurePort&lt;ICrabRead&gt; securePort = pool.acquire()) {
+ * 	securePort.getPort().listGewesten(...);
+ * }
+ * </pre>
+ * 
+ * At most <code>maxSize</code> ports are handed out at the same time. Further
+ * borrowers wait until a port gets returned. Ports that are not currently
+ * borrowed from the pool, for example ports that were already released, are
+ * ignored when given back.
+ * 
+ * @author Frank Cornelis
+ * 
+ * @param <T>
+ *            the JAX-WS port type.
+ * @see InformatieVlaanderenSecurity#securePorts(Supplier, String, String,
+ *      boolean)
+ */
+public class SecurePortPool<T> {
+
+	private static final Log LOG = LogFactory.getLog(SecurePortPool.class);
+
+	/**
+	 * The default maximum number of ports handed out at the same time.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 16;
+
+	private final InformatieVlaanderenSecurity informatieVlaanderenSecurity;
+
+	private final Supplier<T> portFactory;
+
+	private final String location;
+
+	private final String serviceRealm;
+
+	private final boolean useWsSecureConversation;
+
+	private final int maxSize;
+
+	private final Semaphore permits;
+
+	private final Queue<T> idlePorts;
+
+	private final Set<T> borrowedPorts;
+
+	private final AtomicInteger createdPorts;
+
+	SecurePortPool(InformatieVlaanderenSecurity informatieVlaanderenSecurity,
+			Supplier<T> portFactory, String location, String serviceRealm,
+			boolean useWsSecureConversation, int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("max size should be positive");
+		}
+		this.informatieVlaanderenSecurity = informatieVlaanderenSecurity;
+		this.portFactory = portFactory;
+		this.location = location;
+		this.serviceRealm = serviceRealm;
+		this.useWsSecureConversation = useWsSecureConversation;
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize);
+		this.idlePorts = new ConcurrentLinkedQueue<T>();
+		this.borrowedPorts = Collections.newSetFromMap(Collections
+				.synchronizedMap(new IdentityHashMap<T, Boolean>()));
+		this.createdPorts = new AtomicInteger();
+	}
+
+	/**
+	 * Borrows a secured port from this pool. Waits until a port becomes
+	 * available when all ports are in use. The port should be given back via
+	 * {@link SecurePortPool#release(Object)}.
+	 * 
+	 * @return the secured JAX-WS port.
+	 */
+	public T borrow() {
+		try {
+			this.permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for port");
+		}
+		return take();
+	}
+
+	/**
+	 * Borrows a secured port from this pool, waiting at most the given time
+	 * when all ports are in use.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait.
+	 * @param unit
+	 *            the time unit of the timeout.
+	 * @return the secured JAX-WS port, or <code>null</code> if no port became
+	 *         available in time.
+	 */
+	public T borrow(long timeout, TimeUnit unit) {
+		try {
+			if (false == this.permits.tryAcquire(timeout, unit)) {
+				return null;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for port");
+		}
+		return take();
+	}
+
+	/**
+	 * Gives back a port that was borrowed from this pool. Giving back a port
+	 * twice has no effect.
+	 * 
+	 * @param port
+	 *            the borrowed port.
+	 */
+	public void release(T port) {
+		if (false == giveBack(port)) {
+			return;
+		}
+		this.idlePorts.offer(port);
+		this.permits.release();
+	}
+
+	/**
+	 * Gives back a borrowed port that should not be used anymore, for example
+	 * because it got into a bad state. A fresh port will be created when
+	 * needed.
+	 * 
+	 * @param port
+	 *            the borrowed port.
+	 */
+	public void invalidate(T port) {
+		if (false == giveBack(port)) {
+			return;
+		}
+		this.createdPorts.decrementAndGet();
+		this.permits.release();
+	}
+
+	/**
+	 * Borrows a secured port for use within a try-with-resources block. The
+	 * port is given back to this pool when the returned {@link SecurePort} gets
+	 * closed.
+	 * 
+	 * @return the scoped secured port.
+	 */
+	public SecurePort<T> acquire() {
+		return new SecurePort<T>(this, borrow());
+	}
+
+	/**
+	 * Creates up to the given number of secured ports in advance, and loads
+	 * the STS clients used by these ports. The security tokens themselves are
+	 * not requested. Use
+	 * {@link InformatieVlaanderenSecurity#prefetchTokens(String, String, boolean)}
+	 * for that.
+	 * 
+	 * @param ports
+	 *            the number of ports to create. Limited to the maximum size of
+	 *            this pool.
+	 */
+	public void warmUp(int ports) {
+		if (this.useWsSecureConversation) {
+			this.informatieVlaanderenSecurity.warmUp(this.location);
+		} else {
+			this.informatieVlaanderenSecurity.warmUp();
+		}
+		int count = Math.min(ports, this.maxSize) - this.createdPorts.get();
+		if (count <= 0) {
+			return;
+		}
+		if (false == this.permits.tryAcquire(count)) {
+			LOG.debug("ports in use, skipping warm-up");
+			return;
+		}
+		try {
+			for (int idx = 0; idx < count; idx++) {
+				this.idlePorts.offer(createPort());
+			}
+		} finally {
+			this.permits.release(count);
+		}
+	}
+
+	/**
+	 * Gives back the maximum number of ports handed out at the same time.
+	 * 
+	 * @return the maximum size of this pool.
+	 */
+	public int getMaxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * Gives back the number of ports that are ready to be borrowed without
+	 * creating a new port.
+	 * 
+	 * @return the number of idle ports.
+	 */
+	public int getIdleCount() {
+		return this.idlePorts.size();
+	}
+
+	private T take() {
+		T port = this.idlePorts.poll();
+		if (null == port) {
+			try {
+				port = createPort();
+			} catch (RuntimeException e) {
+				this.permits.release();
+				throw e;
+			}
+		}
+		this.borrowedPorts.add(port);
+		return port;
+	}
+
+	private boolean giveBack(T port) {
+		if (null == port) {
+			return false;
+		}
+		if (false == this.borrowedPorts.remove(port)) {
+			LOG.warn("ignoring port that is not borrowed from this pool");
+			return false;
+		}
+		return true;
+	}
+
+	private T createPort() {
+		T port = this.portFactory.get();
+		if (false == port instanceof BindingProvider) {
+			throw new IllegalArgumentException("not a JAX-WS port: "
+					+ port.getClass().getName());
+		}
+		this.informatieVlaanderenSecurity.enable((BindingProvider) port,
+				this.location, this.useWsSecureConversation, this.serviceRealm);
+		int createdPorts = this.createdPorts.incrementAndGet();
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("created secured port " + createdPorts + " for "
+					+ this.location);
+		}
+		return port;
+	}
+}
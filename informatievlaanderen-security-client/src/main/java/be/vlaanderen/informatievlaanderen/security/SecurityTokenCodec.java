@@ -0,0 +1,269 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Date;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Binary encoding and AES-GCM encryption of security tokens, as used by the
+ * token stores that keep security tokens outside of the Java heap.
+ *
+ * @author Frank Cornelis
+ *
+ */
+class SecurityTokenCodec {
+
+	static final int IV_SIZE = 12;
+
+	static final int MAX_SIZE = 1024 * 1024;
+
+	private static final String CIPHER_ALGO = "AES/GCM/NoPadding";
+
+	private static final int TAG_SIZE = 128;
+
+	private static final int MAX_PARENT_DEPTH = 8;
+
+	private final SecretKey secretKey;
+
+	private final SecureRandom secureRandom;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param secretKey
+	 *            the AES key used to encrypt the encoded security tokens.
+	 */
+	SecurityTokenCodec(SecretKey secretKey) {
+		this.secretKey = secretKey;
+		this.secureRandom = new SecureRandom();
+	}
+
+	/**
+	 * Encrypts the given data. The result is the random IV followed by the
+	 * cipher text.
+	 *
+	 * @param data
+	 * @return the encrypted data.
+	 * @throws GeneralSecurityException
+	 */
+	byte[] encrypt(byte[] data) throws GeneralSecurityException {
+		byte[] iv = new byte[IV_SIZE];
+		this.secureRandom.nextBytes(iv);
+		Cipher cipher = Cipher.getInstance(CIPHER_ALGO);
+		cipher.init(Cipher.ENCRYPT_MODE, this.secretKey, new GCMParameterSpec(
+				TAG_SIZE, iv));
+		byte[] cipherText = cipher.doFinal(data);
+		byte[] result = new byte[IV_SIZE + cipherText.length];
+		System.arraycopy(iv, 0, result, 0, IV_SIZE);
+		System.arraycopy(cipherText, 0, result, IV_SIZE, cipherText.length);
+		return result;
+	}
+
+	/**
+	 * Decrypts data as produced by {@link #encrypt(byte[])}.
+	 *
+	 * @param data
+	 * @param offset
+	 * @param length
+	 * @return the plain data.
+	 * @throws GeneralSecurityException
+	 *             in case of a wrong key or tampered data.
+	 */
+	byte[] decrypt(byte[] data, int offset, int length)
+			throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(CIPHER_ALGO);
+		cipher.init(Cipher.DECRYPT_MODE, this.secretKey, new GCMParameterSpec(
+				TAG_SIZE, data, offset, IV_SIZE));
+		return cipher.doFinal(data, offset + IV_SIZE, length - IV_SIZE);
+	}
+
+	/**
+	 * Writes the given security token, including its parent security tokens.
+	 *
+	 * @param dataOutputStream
+	 * @param securityToken
+	 * @throws Exception
+	 */
+	static void writeToken(DataOutputStream dataOutputStream,
+			SecurityToken securityToken) throws Exception {
+		writeToken(dataOutputStream, securityToken, 0);
+	}
+
+	/**
+	 * Reads a security token as written by
+	 * {@link #writeToken(DataOutputStream, SecurityToken)}.
+	 *
+	 * @param dataInputStream
+	 * @return the security token.
+	 * @throws Exception
+	 */
+	static SecurityToken readToken(DataInputStream dataInputStream)
+			throws Exception {
+		return readToken(dataInputStream, 0);
+	}
+
+	private static void writeToken(DataOutputStream dataOutputStream,
+			SecurityToken securityToken, int depth) throws Exception {
+		writeBytes(dataOutputStream, securityToken.getKey());
+		writeDate(dataOutputStream, securityToken.getCreated());
+		writeDate(dataOutputStream, securityToken.getExpires());
+		writeBytes(dataOutputStream, toBytes(securityToken.getToken()));
+		writeString(dataOutputStream, securityToken.getAttachedReference());
+		writeString(dataOutputStream, securityToken.getUnattachedReference());
+		writeString(dataOutputStream, securityToken.getRealm());
+		writeString(dataOutputStream, securityToken.getStsLocation());
+		SecurityToken parentSecurityToken = securityToken
+				.getParentSecurityToken();
+		if (null != parentSecurityToken && depth < MAX_PARENT_DEPTH) {
+			dataOutputStream.writeBoolean(true);
+			writeToken(dataOutputStream, parentSecurityToken, depth + 1);
+		} else {
+			dataOutputStream.writeBoolean(false);
+		}
+	}
+
+	private static SecurityToken readToken(DataInputStream dataInputStream,
+			int depth) throws Exception {
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(readBytes(dataInputStream));
+		securityToken.setCreated(readDate(dataInputStream));
+		securityToken.setExpires(readDate(dataInputStream));
+		securityToken.setToken(toElement(readBytes(dataInputStream)));
+		securityToken.setAttachedReference(readString(dataInputStream));
+		securityToken.setUnattachedReference(readString(dataInputStream));
+		securityToken.setRealm(readString(dataInputStream));
+		securityToken.setStsLocation(readString(dataInputStream));
+		if (dataInputStream.readBoolean()) {
+			if (depth >= MAX_PARENT_DEPTH) {
+				throw new IOException("token parent chain too long");
+			}
+			securityToken.setParentSecurityToken(readToken(dataInputStream,
+					depth + 1));
+		}
+		return securityToken;
+	}
+
+	private static void writeBytes(DataOutputStream dataOutputStream,
+			byte[] data) throws IOException {
+		if (null == data) {
+			dataOutputStream.writeInt(-1);
+			return;
+		}
+		dataOutputStream.writeInt(data.length);
+		dataOutputStream.write(data);
+	}
+
+	private static byte[] readBytes(DataInputStream dataInputStream)
+			throws IOException {
+		int size = dataInputStream.readInt();
+		if (-1 == size) {
+			return null;
+		}
+		if (size < 0 || size > MAX_SIZE) {
+			throw new IOException("invalid size: " + size);
+		}
+		byte[] data = new byte[size];
+		dataInputStream.readFully(data);
+		return data;
+	}
+
+	private static void writeDate(DataOutputStream dataOutputStream, Date date)
+			throws IOException {
+		if (null == date) {
+			dataOutputStream.writeBoolean(false);
+			return;
+		}
+		dataOutputStream.writeBoolean(true);
+		dataOutputStream.writeLong(date.getTime());
+	}
+
+	private static Date readDate(DataInputStream dataInputStream)
+			throws IOException {
+		if (false == dataInputStream.readBoolean()) {
+			return null;
+		}
+		return new Date(dataInputStream.readLong());
+	}
+
+	private static void writeString(DataOutputStream dataOutputStream,
+			String value) throws IOException {
+		if (null == value) {
+			dataOutputStream.writeBoolean(false);
+			return;
+		}
+		dataOutputStream.writeBoolean(true);
+		dataOutputStream.writeUTF(value);
+	}
+
+	private static String readString(DataInputStream dataInputStream)
+			throws IOException {
+		if (false == dataInputStream.readBoolean()) {
+			return null;
+		}
+		return dataInputStream.readUTF();
+	}
+
+	private static byte[] toBytes(Element element) throws Exception {
+		if (null == element) {
+			return null;
+		}
+		Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		transformer.transform(new DOMSource(element), new StreamResult(
+				outputStream));
+		return outputStream.toByteArray();
+	}
+
+	private static Element toElement(byte[] data) throws Exception {
+		if (null == data) {
+			return null;
+		}
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		DocumentBuilder documentBuilder = documentBuilderFactory
+				.newDocumentBuilder();
+		Document document = documentBuilder.parse(new ByteArrayInputStream(
+				data));
+		return document.getDocumentElement();
+	}
+}
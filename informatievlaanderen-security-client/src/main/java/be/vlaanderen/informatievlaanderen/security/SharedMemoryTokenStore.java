@@ -0,0 +1,702 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Token store backed by a memory-mapped file, so that all JVMs on the same
+ * host can share the security tokens. Once one process obtained a security
+ * token from the STS, the other processes using the same credential simply
+ * reuse it.
+ * <p>
+ * The file holds a fixed number of fixed-size slots, addressed via open
+ * addressing on the token key. Every slot carries a sequence number that is
+ * odd while the slot is being written. Readers never lock: they read the
+ * sequence number, copy the slot, verify the slot checksum, and check that
+ * the sequence number did not change in the meantime. Decoded security tokens
+ * are kept per slot and sequence number, so a lookup of an unchanged token
+ * does not decode anything. As these are shared between threads, the store
+ * gives back immutable security tokens. Writers serialize via a file lock.
+ * A slot that stays torn or corrupt, as left behind by a crashed writer, is
+ * treated as a miss and gets replaced by a tombstone.
+ * <p>
+ * Token renewal is leased per token key via a file lock on a single byte past
+ * the slots, so that only one process requests a new security token from the
+ * STS while the other processes wait for it.
+ * <p>
+ * The security tokens themselves are AES-GCM encrypted, as they contain
+ * proof-of-possession keys. All processes sharing the file need the same
+ * secret key.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public class SharedMemoryTokenStore implements TokenStore {
+
+	private static final Log LOG = LogFactory
+			.getLog(SharedMemoryTokenStore.class);
+
+	/**
+	 * Default number of token slots.
+	 */
+	public static final int DEFAULT_SLOTS = 128;
+
+	/**
+	 * Default size of a token slot, in bytes.
+	 */
+	public static final int DEFAULT_SLOT_SIZE = 32 * 1024;
+
+	private static final int MAGIC = 0x49565453;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int FILE_HEADER_SIZE = 64;
+
+	private static final int SEQUENCE_OFFSET = 0;
+
+	private static final int CHECKSUM_OFFSET = 8;
+
+	private static final int LENGTH_OFFSET = 12;
+
+	private static final int DATA_OFFSET = 16;
+
+	private static final byte EMPTY_SLOT = 0;
+
+	private static final byte USED_SLOT = 1;
+
+	private static final byte REMOVED_SLOT = 2;
+
+	// in-memory only, for a consistent slot in an unknown format
+	private static final byte UNKNOWN_SLOT = -1;
+
+	/*
+	 * A writer keeps a slot odd for only a few microseconds, so a slot that
+	 * stays odd beyond a few attempts was left behind by a crashed writer.
+	 */
+	private static final int MAX_READ_ATTEMPTS = 8;
+
+	private static final long LEASE_POLL_INTERVAL = 20;
+
+	/*
+	 * File locks are held on behalf of the whole JVM, and overlapping file
+	 * locks within a JVM are refused. So threads, and token store instances on
+	 * the same file, first serialize on a JVM wide lock per file region.
+	 */
+	private static final ConcurrentMap<String, ReentrantLock> regionLocks = new ConcurrentHashMap<String, ReentrantLock>();
+
+	private final int slots;
+
+	private final int slotSize;
+
+	private final SecurityTokenCodec securityTokenCodec;
+
+	private final RandomAccessFile randomAccessFile;
+
+	private final FileChannel fileChannel;
+
+	private final MappedByteBuffer buffer;
+
+	private final AtomicReferenceArray<Slot> decodedSlots;
+
+	private final long size;
+
+	private final String path;
+
+	private final ReentrantLock slotsLock;
+
+	/**
+	 * Main constructor, using the default number of slots and slot size.
+	 *
+	 * @param file
+	 *            the shared token file.
+	 * @param secretKey
+	 *            the AES key used to encrypt the security tokens.
+	 * @throws SecurityException
+	 *             gets thrown in case the file cannot be mapped.
+	 */
+	public SharedMemoryTokenStore(File file, SecretKey secretKey)
+			throws SecurityException {
+		this(file, secretKey, DEFAULT_SLOTS, DEFAULT_SLOT_SIZE);
+	}
+
+	/**
+	 * Constructor. All processes sharing the file should use the same number
+	 * of slots and slot size.
+	 *
+	 * @param file
+	 *            the shared token file.
+	 * @param secretKey
+	 *            the AES key used to encrypt the security tokens.
+	 * @param slots
+	 *            the number of token slots.
+	 * @param slotSize
+	 *            the size of a token slot, in bytes. Should fit a secure
+	 *            conversation token together with its R-STS token.
+	 * @throws SecurityException
+	 *             gets thrown in case the file cannot be mapped.
+	 */
+	public SharedMemoryTokenStore(File file, SecretKey secretKey, int slots,
+			int slotSize) throws SecurityException {
+		if (slots < 1 || slotSize <= DATA_OFFSET) {
+			throw new IllegalArgumentException("invalid token store geometry");
+		}
+		this.slots = slots;
+		this.slotSize = slotSize;
+		this.securityTokenCodec = new SecurityTokenCodec(secretKey);
+		this.decodedSlots = new AtomicReferenceArray<Slot>(slots);
+		long size = FILE_HEADER_SIZE + (long) slots * slotSize;
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("token store too large");
+		}
+		this.size = size;
+		try {
+			this.path = file.getCanonicalPath();
+			this.slotsLock = getRegionLock(0);
+			this.randomAccessFile = new RandomAccessFile(file, "rw");
+			this.fileChannel = this.randomAccessFile.getChannel();
+			FileLock fileLock = lockSlots();
+			try {
+				if (0 == this.fileChannel.size()) {
+					ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+					header.putInt(MAGIC);
+					header.putInt(FORMAT_VERSION);
+					header.putInt(slots);
+					header.putInt(slotSize);
+					header.rewind();
+					this.fileChannel.write(header, 0);
+					this.randomAccessFile.setLength(size);
+				}
+				if (this.fileChannel.size() != size) {
+					throw new IOException("token store size mismatch");
+				}
+				this.buffer = this.fileChannel.map(
+						FileChannel.MapMode.READ_WRITE, 0, size);
+			} finally {
+				unlockSlots(fileLock);
+			}
+		} catch (IOException e) {
+			LOG.error("error opening token store: " + e.getMessage(), e);
+			throw new SecurityException("error opening token store: "
+					+ e.getMessage(), e);
+		}
+		if (MAGIC != this.buffer.getInt(0)
+				|| FORMAT_VERSION != this.buffer.getInt(4)
+				|| slots != this.buffer.getInt(8)
+				|| slotSize != this.buffer.getInt(12)) {
+			close();
+			throw new SecurityException("incompatible token store file: "
+					+ file.getAbsolutePath());
+		}
+	}
+
+	public SecurityToken getSecurityToken(String credential, String realm,
+			String location) {
+		int hash = getHash(credential, realm, location);
+		for (int probe = 0; probe < this.slots; probe++) {
+			int slotIndex = getSlotIndex(hash, probe);
+			Slot slot = readSlot(slotIndex);
+			if (null == slot) {
+				// slot unreadable, keep looking
+				repairSlot(slotIndex);
+				continue;
+			}
+			if (EMPTY_SLOT == slot.state) {
+				return null;
+			}
+			if (USED_SLOT == slot.state
+					&& slot.matches(credential, realm, location)) {
+				// null if encrypted with another key
+				return slot.securityToken;
+			}
+		}
+		return null;
+	}
+
+	public synchronized void storeSecurityToken(String credential,
+			String realm, String location, SecurityToken securityToken) {
+		securityToken = ImmutableSecurityToken.valueOf(securityToken);
+		byte[] data;
+		try {
+			data = encodeSlot(USED_SLOT, credential, realm, location,
+					securityToken);
+		} catch (Exception e) {
+			LOG.error("error encoding security token: " + e.getMessage(), e);
+			return;
+		}
+		if (DATA_OFFSET + data.length > this.slotSize) {
+			LOG.warn("security token too large for token store slot: "
+					+ data.length);
+			return;
+		}
+		try {
+			FileLock fileLock = lockSlots();
+			try {
+				int slotIndex = findSlot(credential, realm, location, true);
+				if (-1 == slotIndex) {
+					LOG.warn("no token store slot available");
+					return;
+				}
+				long sequence = writeSlot(slotIndex, data);
+				// no need to decode our own token again
+				this.decodedSlots.set(slotIndex, new Slot(sequence, USED_SLOT,
+						credential, realm, location, securityToken
+								.getExpires().getTime(), securityToken));
+			} finally {
+				unlockSlots(fileLock);
+			}
+		} catch (IOException e) {
+			LOG.error("error locking token store: " + e.getMessage(), e);
+		}
+	}
+
+	public synchronized void removeSecurityToken(String credential,
+			String realm, String location) {
+		try {
+			FileLock fileLock = lockSlots();
+			try {
+				int slotIndex = findSlot(credential, realm, location, false);
+				if (-1 == slotIndex) {
+					return;
+				}
+				// tombstone keeps the probe sequences of other keys intact
+				writeSlot(slotIndex,
+						encodeSlot(REMOVED_SLOT, "", "", "", null));
+			} finally {
+				unlockSlots(fileLock);
+			}
+		} catch (Exception e) {
+			LOG.error("error removing security token: " + e.getMessage(), e);
+		}
+	}
+
+	public boolean isShared() {
+		return true;
+	}
+
+	public TokenLease lease(String credential, String realm,
+			String location, boolean wait) {
+		int hash = getHash(credential, realm, location);
+		// locking a region beyond the end of the file is allowed
+		long position = this.size + (hash & 0xffffffffL);
+		ReentrantLock regionLock = getRegionLock(position);
+		if (wait) {
+			regionLock.lock();
+		} else if (false == regionLock.tryLock()) {
+			return null;
+		}
+		try {
+			while (true) {
+				/*
+				 * An interrupt during a file lock operation closes the file
+				 * channel, so we poll instead of blocking on the file lock.
+				 */
+				if (Thread.currentThread().isInterrupted()) {
+					throw new SecurityException(
+							"interrupted while leasing security token");
+				}
+				FileLock fileLock = this.fileChannel
+						.tryLock(position, 1, false);
+				if (null != fileLock) {
+					return new FileLease(fileLock, regionLock);
+				}
+				if (false == wait) {
+					regionLock.unlock();
+					return null;
+				}
+				Thread.sleep(LEASE_POLL_INTERVAL);
+			}
+		} catch (InterruptedException e) {
+			regionLock.unlock();
+			Thread.currentThread().interrupt();
+			throw new SecurityException(
+					"interrupted while leasing security token");
+		} catch (IOException e) {
+			/*
+			 * We still serialize within this JVM. At worst another process
+			 * requests a token at the same time.
+			 */
+			LOG.warn("error leasing security token: " + e.getMessage());
+			return new FileLease(null, regionLock);
+		} catch (RuntimeException e) {
+			regionLock.unlock();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes the token store file.
+	 */
+	public synchronized void close() {
+		try {
+			this.randomAccessFile.close();
+		} catch (IOException e) {
+			LOG.warn("error closing token store: " + e.getMessage());
+		}
+	}
+
+	private static int getHash(String credential, String realm,
+			String location) {
+		int result = credential.hashCode();
+		result = 31 * result + realm.hashCode();
+		result = 31 * result + location.hashCode();
+		return result;
+	}
+
+	private ReentrantLock getRegionLock(long position) {
+		String key = this.path + "@" + position;
+		ReentrantLock regionLock = regionLocks.get(key);
+		if (null == regionLock) {
+			ReentrantLock newRegionLock = new ReentrantLock();
+			regionLock = regionLocks.putIfAbsent(key, newRegionLock);
+			if (null == regionLock) {
+				regionLock = newRegionLock;
+			}
+		}
+		return regionLock;
+	}
+
+	private FileLock lockSlots() throws IOException {
+		this.slotsLock.lock();
+		try {
+			return this.fileChannel.lock(0, this.size, false);
+		} catch (IOException e) {
+			this.slotsLock.unlock();
+			throw e;
+		} catch (RuntimeException e) {
+			this.slotsLock.unlock();
+			throw e;
+		}
+	}
+
+	private void unlockSlots(FileLock fileLock) throws IOException {
+		try {
+			fileLock.release();
+		} finally {
+			this.slotsLock.unlock();
+		}
+	}
+
+	/*
+	 * Writers hold the file lock, so a slot that is still unreadable once we
+	 * hold the file lock was left behind by a crashed writer. The lookup does
+	 * not wait for other writers, it only tries the file lock.
+	 */
+	private void repairSlot(int slotIndex) {
+		if (false == this.slotsLock.tryLock()) {
+			return;
+		}
+		try {
+			FileLock fileLock = this.fileChannel.tryLock(0, this.size, false);
+			if (null == fileLock) {
+				return;
+			}
+			try {
+				if (null != readSlot(slotIndex)) {
+					return;
+				}
+				LOG.warn("replacing unreadable token store slot " + slotIndex);
+				writeSlot(slotIndex,
+						encodeSlot(REMOVED_SLOT, "", "", "", null));
+			} finally {
+				fileLock.release();
+			}
+		} catch (Exception e) {
+			LOG.error("error repairing token store slot: " + e.getMessage(), e);
+		} finally {
+			this.slotsLock.unlock();
+		}
+	}
+
+	private int getSlotIndex(int hash, int probe) {
+		return (int) (((hash & 0xffffffffL) + probe) % this.slots);
+	}
+
+	private int getSlotOffset(int slotIndex) {
+		return FILE_HEADER_SIZE + slotIndex * this.slotSize;
+	}
+
+	/*
+	 * Only to be called while holding the file lock. Gives back the slot that
+	 * holds the given key. If no such slot exists, and a free slot is
+	 * requested, gives back the first free slot of the probe sequence, or else
+	 * the slot holding the token that expires first. Slots of other processes
+	 * that we cannot decode are never considered free.
+	 */
+	private int findSlot(String credential, String realm, String location,
+			boolean free) {
+		int hash = getHash(credential, realm, location);
+		long now = System.currentTimeMillis();
+		int freeSlotIndex = -1;
+		int victimSlotIndex = -1;
+		long victimExpires = Long.MAX_VALUE;
+		for (int probe = 0; probe < this.slots; probe++) {
+			int slotIndex = getSlotIndex(hash, probe);
+			Slot slot = readSlot(slotIndex);
+			if (null == slot) {
+				// torn or corrupt, left behind by a crashed writer
+				if (-1 == freeSlotIndex) {
+					freeSlotIndex = slotIndex;
+				}
+				continue;
+			}
+			if (UNKNOWN_SLOT == slot.state) {
+				// consistent, so owned by a process using another format
+				continue;
+			}
+			if (EMPTY_SLOT == slot.state) {
+				if (-1 == freeSlotIndex) {
+					freeSlotIndex = slotIndex;
+				}
+				break;
+			}
+			if (USED_SLOT == slot.state
+					&& slot.matches(credential, realm, location)) {
+				return slotIndex;
+			}
+			if (REMOVED_SLOT == slot.state || slot.expires <= now) {
+				if (-1 == freeSlotIndex) {
+					freeSlotIndex = slotIndex;
+				}
+			} else if (slot.expires < victimExpires) {
+				victimExpires = slot.expires;
+				victimSlotIndex = slotIndex;
+			}
+		}
+		if (false == free) {
+			return -1;
+		}
+		if (-1 != freeSlotIndex) {
+			return freeSlotIndex;
+		}
+		LOG.warn("token store full, evicting token that expires first");
+		return victimSlotIndex;
+	}
+
+	private long writeSlot(int slotIndex, byte[] data) {
+		int offset = getSlotOffset(slotIndex);
+		long sequence = this.buffer.getLong(offset + SEQUENCE_OFFSET);
+		if (0 == (sequence & 1)) {
+			sequence++;
+		}
+		// odd sequence number marks the slot as being written
+		this.buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		this.buffer.putInt(offset + CHECKSUM_OFFSET, (int) crc.getValue());
+		this.buffer.putInt(offset + LENGTH_OFFSET, data.length);
+		ByteBuffer slotBuffer = this.buffer.duplicate();
+		slotBuffer.position(offset + DATA_OFFSET);
+		slotBuffer.put(data);
+		this.buffer.putLong(offset + SEQUENCE_OFFSET, sequence + 1);
+		return sequence + 1;
+	}
+
+	/*
+	 * Gives back null in case no consistent view of the slot can be obtained,
+	 * i.e. in case of a torn write or a checksum failure. A consistent slot
+	 * that cannot be decoded is still given back, as it belongs to another
+	 * process.
+	 */
+	private Slot readSlot(int slotIndex) {
+		int offset = getSlotOffset(slotIndex);
+		for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+			long sequence = this.buffer.getLong(offset + SEQUENCE_OFFSET);
+			if (0 != (sequence & 1)) {
+				Thread.yield();
+				continue;
+			}
+			Slot slot = this.decodedSlots.get(slotIndex);
+			if (null != slot && slot.sequence == sequence) {
+				return slot;
+			}
+			int checksum = this.buffer.getInt(offset + CHECKSUM_OFFSET);
+			int length = this.buffer.getInt(offset + LENGTH_OFFSET);
+			if (length < 0 || length > this.slotSize - DATA_OFFSET) {
+				continue;
+			}
+			byte[] data = new byte[length];
+			ByteBuffer slotBuffer = this.buffer.duplicate();
+			slotBuffer.position(offset + DATA_OFFSET);
+			slotBuffer.get(data);
+			if (sequence != this.buffer.getLong(offset + SEQUENCE_OFFSET)) {
+				continue;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			if (checksum != (int) crc.getValue()) {
+				continue;
+			}
+			try {
+				slot = decodeSlot(sequence, data);
+			} catch (Exception e) {
+				LOG.debug("cannot decode token store slot " + slotIndex + ": "
+						+ e.getMessage());
+				slot = new Slot(sequence, UNKNOWN_SLOT, null, null, null, 0,
+						null);
+			}
+			this.decodedSlots.set(slotIndex, slot);
+			return slot;
+		}
+		return null;
+	}
+
+	private byte[] encodeSlot(byte state, String credential, String realm,
+			String location, SecurityToken securityToken) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+		dataOutputStream.writeByte(state);
+		dataOutputStream.writeUTF(credential);
+		dataOutputStream.writeUTF(realm);
+		dataOutputStream.writeUTF(location);
+		if (null != securityToken) {
+			dataOutputStream.writeLong(securityToken.getExpires().getTime());
+			ByteArrayOutputStream tokenOutputStream = new ByteArrayOutputStream();
+			DataOutputStream tokenDataOutputStream = new DataOutputStream(
+					tokenOutputStream);
+			SecurityTokenCodec.writeToken(tokenDataOutputStream, securityToken);
+			tokenDataOutputStream.flush();
+			byte[] encryptedToken = this.securityTokenCodec
+					.encrypt(tokenOutputStream.toByteArray());
+			dataOutputStream.writeInt(encryptedToken.length);
+			dataOutputStream.write(encryptedToken);
+		}
+		dataOutputStream.flush();
+		return outputStream.toByteArray();
+	}
+
+	private Slot decodeSlot(long sequence, byte[] data) throws Exception {
+		if (0 == data.length) {
+			return new Slot(sequence, EMPTY_SLOT, null, null, null, 0, null);
+		}
+		DataInputStream dataInputStream = new DataInputStream(
+				new ByteArrayInputStream(data));
+		byte state = dataInputStream.readByte();
+		String credential = dataInputStream.readUTF();
+		String realm = dataInputStream.readUTF();
+		String location = dataInputStream.readUTF();
+		if (USED_SLOT != state) {
+			return new Slot(sequence, state, credential, realm, location, 0,
+					null);
+		}
+		long expires = dataInputStream.readLong();
+		int encryptedTokenSize = dataInputStream.readInt();
+		if (encryptedTokenSize <= SecurityTokenCodec.IV_SIZE
+				|| encryptedTokenSize > data.length) {
+			throw new IOException("invalid token size: " + encryptedTokenSize);
+		}
+		byte[] encryptedToken = new byte[encryptedTokenSize];
+		dataInputStream.readFully(encryptedToken);
+		SecurityToken securityToken;
+		try {
+			byte[] token = this.securityTokenCodec.decrypt(encryptedToken, 0,
+					encryptedToken.length);
+			securityToken = ImmutableSecurityToken.valueOf(SecurityTokenCodec
+					.readToken(new DataInputStream(new ByteArrayInputStream(
+							token))));
+		} catch (Exception e) {
+			/*
+			 * Most likely written by a process with another secret key. The
+			 * slot header remains usable to select an eviction victim.
+			 */
+			LOG.debug("cannot decrypt token store slot: " + e.getMessage());
+			securityToken = null;
+		}
+		return new Slot(sequence, state, credential, realm, location, expires,
+				securityToken);
+	}
+
+	private static final class FileLease implements TokenLease {
+
+		private final FileLock fileLock;
+
+		private final ReentrantLock regionLock;
+
+		FileLease(FileLock fileLock, ReentrantLock regionLock) {
+			this.fileLock = fileLock;
+			this.regionLock = regionLock;
+		}
+
+		public void release() {
+			try {
+				if (null != this.fileLock) {
+					this.fileLock.release();
+				}
+			} catch (IOException e) {
+				LOG.warn("error releasing token lease: " + e.getMessage());
+			} finally {
+				this.regionLock.unlock();
+			}
+		}
+	}
+
+	private static final class Slot {
+
+		private final long sequence;
+
+		private final byte state;
+
+		private final String credential;
+
+		private final String realm;
+
+		private final String location;
+
+		private final long expires;
+
+		private final SecurityToken securityToken;
+
+		Slot(long sequence, byte state, String credential, String realm,
+				String location, long expires, SecurityToken securityToken) {
+			this.sequence = sequence;
+			this.state = state;
+			this.credential = credential;
+			this.realm = realm;
+			this.location = location;
+			this.expires = expires;
+			this.securityToken = securityToken;
+		}
+
+		boolean matches(String credential, String realm, String location) {
+			return this.credential.equals(credential)
+					&& this.realm.equals(realm)
+					&& this.location.equals(location);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bookkeeping of a cached security token: the key under which the token is
+ * stored, the lock that serializes the token requests, the asynchronous token
+ * request in progress, and the last time the token was used.
+ *
+ * @author Frank Cornelis
+ *
+ */
+class TokenCacheEntry {
+
+	/*
+	 * Avoids that every invocation writes to the same memory location.
+	 */
+	private static final long TOUCH_RESOLUTION = 1000;
+
+	private final String realm;
+
+	private final String location;
+
+	private final Lock lock;
+
+	private final AtomicReference<CompletableFuture<SecurityToken>> pendingRequest;
+
+	private volatile long lastUsed;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param realm
+	 *            the service realm.
+	 * @param location
+	 *            the location of the STS or web service that issues the
+	 *            token.
+	 * @param now
+	 *            the current time, in epoch millis.
+	 */
+	TokenCacheEntry(String realm, String location, long now) {
+		this.realm = realm;
+		this.location = location;
+		this.lock = new ReentrantLock();
+		this.pendingRequest = new AtomicReference<CompletableFuture<SecurityToken>>();
+		this.lastUsed = now;
+	}
+
+	String getRealm() {
+		return this.realm;
+	}
+
+	String getLocation() {
+		return this.location;
+	}
+
+	Lock getLock() {
+		return this.lock;
+	}
+
+	/**
+	 * Gives back the asynchronous token request in progress, to be shared by
+	 * all asynchronous callers.
+	 *
+	 * @return the pending request holder.
+	 */
+	AtomicReference<CompletableFuture<SecurityToken>> getPendingRequest() {
+		return this.pendingRequest;
+	}
+
+	long getLastUsed() {
+		return this.lastUsed;
+	}
+
+	/**
+	 * Marks the token as used.
+	 *
+	 * @param now
+	 *            the current time, in epoch millis.
+	 */
+	void touch(long now) {
+		if (now - this.lastUsed >= TOUCH_RESOLUTION) {
+			this.lastUsed = now;
+		}
+	}
+
+	/**
+	 * Checks whether the token has not been used for longer than the given
+	 * idle timeout.
+	 *
+	 * @param now
+	 *            the current time, in epoch millis.
+	 * @param idleTimeout
+	 *            the idle timeout in milliseconds.
+	 * @return <code>true</code> if the token is idle.
+	 */
+	boolean isIdle(long now, long idleTimeout) {
+		return now - this.lastUsed > idleTimeout;
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+/**
+ * Lease on the renewal of a security token, as handed out by a
+ * {@link TokenStore}. While a lease is held, no other holder of the token
+ * store, in this or in another process, gets a lease for the same token.
+ *
+ * @author Frank Cornelis
+ *
+ * @see TokenStore#lease(String, String, String, boolean)
+ */
+public interface TokenLease {
+
+	/**
+	 * Releases the lease, so that another holder of the token store can renew
+	 * the token.
+	 */
+	void release();
+}
@@ -0,0 +1,189 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Scheduler for the background refresh of cached security tokens. Refresh tasks
+ * are kept in a queue ordered by their refresh time, and are executed by a
+ * bounded pool of daemon worker threads.
+ * <p>
+ * Each task is scheduled at a random moment within the refresh-ahead window
+ * that precedes the token retirement window. This jitter avoids that all
+ * tokens obtained around the same time also hit the STS at the same time.
+ *
+ * @author Frank Cornelis
+ *
+ */
+class TokenRefreshScheduler {
+
+	private static final Log LOG = LogFactory
+			.getLog(TokenRefreshScheduler.class);
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private static final long SHUTDOWN_TIMEOUT = 1000 * 10;
+
+	private final ScheduledThreadPoolExecutor executor;
+
+	private final long refreshAheadDuration;
+
+	private final Random random;
+
+	private final Map<String, ScheduledFuture<?>> tasks;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param workers
+	 *            the maximum number of concurrent refresh operations.
+	 * @param refreshAheadDuration
+	 *            the duration in milliseconds of the window, right before the
+	 *            token retirement window, within which a token gets refreshed.
+	 */
+	TokenRefreshScheduler(int workers, long refreshAheadDuration) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("at least one worker required");
+		}
+		final int poolNumber = POOL_NUMBER.incrementAndGet();
+		this.executor = new ScheduledThreadPoolExecutor(workers,
+				new ThreadFactory() {
+
+					private final AtomicInteger threadNumber = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"informatievlaanderen-token-refresh-"
+										+ poolNumber + "-"
+										+ this.threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// pending refreshes are dropped on shutdown
+		this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.executor.setRemoveOnCancelPolicy(true);
+		this.refreshAheadDuration = refreshAheadDuration;
+		this.random = new Random();
+		this.tasks = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+	}
+
+	/**
+	 * Gives back the refresh-ahead duration in milliseconds.
+	 *
+	 * @return the refresh-ahead duration.
+	 */
+	long getRefreshAheadDuration() {
+		return this.refreshAheadDuration;
+	}
+
+	/**
+	 * Schedules the refresh of a token. Any refresh that was already scheduled
+	 * under the same key is cancelled.
+	 *
+	 * @param key
+	 *            the key identifying the cached token.
+	 * @param retirementTime
+	 *            the time (epoch millis) at which the token enters its
+	 *            retirement window.
+	 * @param task
+	 *            the refresh task.
+	 */
+	void schedule(String key, long retirementTime, Runnable task) {
+		long jitter = 0;
+		if (this.refreshAheadDuration > 0) {
+			jitter = (long) (this.random.nextDouble() * this.refreshAheadDuration);
+		}
+		long delay = retirementTime - jitter - System.currentTimeMillis();
+		scheduleDelayed(key, Math.max(0, delay), task);
+	}
+
+	/**
+	 * Schedules a task after the given delay, without jitter. Used for retries.
+	 *
+	 * @param key
+	 *            the key identifying the cached token.
+	 * @param delay
+	 *            the delay in milliseconds.
+	 * @param task
+	 *            the refresh task.
+	 */
+	void scheduleDelayed(String key, long delay, Runnable task) {
+		if (this.executor.isShutdown()) {
+			return;
+		}
+		LOG.debug("scheduling token refresh for " + key + " in " + delay
+				+ " ms");
+		ScheduledFuture<?> future;
+		try {
+			future = this.executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// scheduler got shut down concurrently
+			return;
+		}
+		ScheduledFuture<?> previousFuture = this.tasks.put(key, future);
+		if (null != previousFuture && previousFuture != future) {
+			previousFuture.cancel(false);
+		}
+	}
+
+	/**
+	 * Cancels the scheduled refresh for the given key, if any.
+	 *
+	 * @param key
+	 *            the key identifying the cached token.
+	 */
+	void cancel(String key) {
+		ScheduledFuture<?> future = this.tasks.remove(key);
+		if (null != future) {
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Stops the scheduler. Pending refreshes are cancelled. Refresh operations
+	 * that are already running are not interrupted, since that could leave the
+	 * STS connection in an undefined state. This method waits a bounded time
+	 * for them to complete.
+	 */
+	void shutdown() {
+		this.executor.shutdown();
+		this.tasks.clear();
+		try {
+			if (false == this.executor.awaitTermination(SHUTDOWN_TIMEOUT,
+					TimeUnit.MILLISECONDS)) {
+				LOG.warn("token refresh still running after shutdown");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
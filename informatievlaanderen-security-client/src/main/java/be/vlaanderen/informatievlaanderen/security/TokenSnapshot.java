@@ -0,0 +1,412 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Encrypted on-disk snapshot of cached security tokens. Allows a restarted
+ * Informatie Vlaanderen security component to reuse the security tokens it
+ * obtained before, instead of requesting all of them again from the STS
+ * services.
+ * <p>
+ * The snapshot is an append-only journal. Every token that enters or leaves
+ * the token cache is written as a separate AES-GCM encrypted record. When
+ * opening the snapshot, the journal is replayed, expired tokens are skipped,
+ * and the file is compacted to the remaining tokens.
+ * <p>
+ * The tokens are kept per credential, so several Informatie Vlaanderen
+ * security components with different credentials can share a snapshot without
+ * restoring each other's tokens. A snapshot file should only be opened by one
+ * token snapshot at a time.
+ * <p>
+ * The snapshot contains proof-of-possession keys, so it should only be
+ * readable by the application itself.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public class TokenSnapshot {
+
+	private static final Log LOG = LogFactory.getLog(TokenSnapshot.class);
+
+	/**
+	 * Snapshot cache holding the R-STS security tokens, indexed per service
+	 * realm.
+	 */
+	public static final String R_STS_CACHE = "R-STS";
+
+	/**
+	 * Snapshot cache holding the secure conversation tokens, indexed per web
+	 * service location.
+	 */
+	public static final String SECURE_CONVERSATION_CACHE = "SCT";
+
+	private static final int COMPACTION_THRESHOLD = 256;
+
+	private static final byte PUT_RECORD = 1;
+
+	private static final byte REMOVE_RECORD = 2;
+
+	private final File file;
+
+	private final SecurityTokenCodec securityTokenCodec;
+
+	// key = cache, credential, cache key
+	private final Map<String, Map<String, Map<String, SecurityToken>>> caches;
+
+	private FileChannel fileChannel;
+
+	private int recordCount;
+
+	/**
+	 * Main constructor. Opens the snapshot file, or creates a new one. The
+	 * tokens that are still valid can be retrieved via
+	 * {@link TokenSnapshot#getTokens(String, String)}.
+	 *
+	 * @param file
+	 *            the snapshot file.
+	 * @param secretKey
+	 *            the AES key used to encrypt the snapshot.
+	 * @throws SecurityException
+	 *             gets thrown in case the snapshot file cannot be opened.
+	 */
+	public TokenSnapshot(File file, SecretKey secretKey)
+			throws SecurityException {
+		this.file = file;
+		this.securityTokenCodec = new SecurityTokenCodec(secretKey);
+		this.caches = new HashMap<String, Map<String, Map<String, SecurityToken>>>();
+		this.caches.put(R_STS_CACHE,
+				new HashMap<String, Map<String, SecurityToken>>());
+		this.caches.put(SECURE_CONVERSATION_CACHE,
+				new HashMap<String, Map<String, SecurityToken>>());
+		try {
+			load();
+			compact();
+		} catch (IOException e) {
+			LOG.error("error opening token snapshot: " + e.getMessage(), e);
+			throw new SecurityException("error opening token snapshot: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the still valid security tokens of the given cache that were
+	 * issued to the given credential, as loaded from the snapshot file.
+	 *
+	 * @param credential
+	 *            the credential identifier.
+	 * @param cache
+	 *            the snapshot cache.
+	 * @return a map of immutable security tokens.
+	 * @see TokenSnapshot#R_STS_CACHE
+	 * @see TokenSnapshot#SECURE_CONVERSATION_CACHE
+	 */
+	public synchronized Map<String, SecurityToken> getTokens(
+			String credential, String cache) {
+		Map<String, SecurityToken> tokens = new HashMap<String, SecurityToken>();
+		Map<String, SecurityToken> credentialTokens = getCache(cache).get(
+				credential);
+		if (null == credentialTokens) {
+			return tokens;
+		}
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, SecurityToken> tokenEntry : credentialTokens
+				.entrySet()) {
+			if (isExpired(tokenEntry.getValue(), now)) {
+				continue;
+			}
+			tokens.put(tokenEntry.getKey(), tokenEntry.getValue());
+		}
+		return tokens;
+	}
+
+	/**
+	 * Adds the given security token to the snapshot.
+	 *
+	 * @param credential
+	 *            the identifier of the credential to which the token was
+	 *            issued.
+	 * @param cache
+	 *            the snapshot cache.
+	 * @param key
+	 *            the cache key.
+	 * @param securityToken
+	 *            the security token.
+	 */
+	public synchronized void store(String credential, String cache,
+			String key, SecurityToken securityToken) {
+		getTokens(getCache(cache), credential).put(key,
+				ImmutableSecurityToken.valueOf(securityToken));
+		try {
+			ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+			DataOutputStream dataOutputStream = new DataOutputStream(
+					recordOutputStream);
+			dataOutputStream.writeByte(PUT_RECORD);
+			dataOutputStream.writeUTF(credential);
+			dataOutputStream.writeUTF(cache);
+			dataOutputStream.writeUTF(key);
+			SecurityTokenCodec.writeToken(dataOutputStream, securityToken);
+			dataOutputStream.flush();
+			append(recordOutputStream.toByteArray());
+		} catch (Exception e) {
+			LOG.error("error writing token snapshot: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Removes the security token from the snapshot.
+	 *
+	 * @param credential
+	 *            the identifier of the credential to which the token was
+	 *            issued.
+	 * @param cache
+	 *            the snapshot cache.
+	 * @param key
+	 *            the cache key.
+	 */
+	public synchronized void remove(String credential, String cache,
+			String key) {
+		Map<String, SecurityToken> credentialTokens = getCache(cache).get(
+				credential);
+		if (null == credentialTokens || null == credentialTokens.remove(key)) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+			DataOutputStream dataOutputStream = new DataOutputStream(
+					recordOutputStream);
+			dataOutputStream.writeByte(REMOVE_RECORD);
+			dataOutputStream.writeUTF(credential);
+			dataOutputStream.writeUTF(cache);
+			dataOutputStream.writeUTF(key);
+			dataOutputStream.flush();
+			append(recordOutputStream.toByteArray());
+		} catch (Exception e) {
+			LOG.error("error writing token snapshot: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Closes the snapshot file.
+	 */
+	public synchronized void close() {
+		if (null == this.fileChannel) {
+			return;
+		}
+		try {
+			this.fileChannel.close();
+		} catch (IOException e) {
+			LOG.warn("error closing token snapshot: " + e.getMessage());
+		}
+		this.fileChannel = null;
+	}
+
+	private Map<String, Map<String, SecurityToken>> getCache(String cache) {
+		Map<String, Map<String, SecurityToken>> tokens = this.caches
+				.get(cache);
+		if (null == tokens) {
+			throw new IllegalArgumentException("unknown cache: " + cache);
+		}
+		return tokens;
+	}
+
+	private static Map<String, SecurityToken> getTokens(
+			Map<String, Map<String, SecurityToken>> tokens, String credential) {
+		Map<String, SecurityToken> credentialTokens = tokens.get(credential);
+		if (null == credentialTokens) {
+			credentialTokens = new HashMap<String, SecurityToken>();
+			tokens.put(credential, credentialTokens);
+		}
+		return credentialTokens;
+	}
+
+	private void load() throws IOException {
+		if (false == this.file.exists()) {
+			return;
+		}
+		DataInputStream dataInputStream = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(this.file)));
+		try {
+			while (true) {
+				byte[] record;
+				try {
+					int recordSize = dataInputStream.readInt();
+					if (recordSize <= SecurityTokenCodec.IV_SIZE
+							|| recordSize > SecurityTokenCodec.MAX_SIZE) {
+						LOG.warn("corrupt token snapshot record, ignoring remainder");
+						break;
+					}
+					byte[] encryptedRecord = new byte[recordSize];
+					dataInputStream.readFully(encryptedRecord);
+					record = this.securityTokenCodec.decrypt(encryptedRecord, 0,
+							encryptedRecord.length);
+				} catch (EOFException e) {
+					// also covers a record that was only partially written
+					break;
+				} catch (GeneralSecurityException e) {
+					LOG.warn("token snapshot record cannot be decrypted, ignoring remainder");
+					break;
+				}
+				try {
+					replay(record);
+				} catch (IOException e) {
+					// e.g. a record of an older snapshot format
+					LOG.warn("unreadable token snapshot record: "
+							+ e.getMessage());
+				}
+			}
+		} finally {
+			dataInputStream.close();
+		}
+	}
+
+	private void replay(byte[] record) throws IOException {
+		DataInputStream dataInputStream = new DataInputStream(
+				new ByteArrayInputStream(record));
+		byte recordType = dataInputStream.readByte();
+		String credential = dataInputStream.readUTF();
+		String cache = dataInputStream.readUTF();
+		String key = dataInputStream.readUTF();
+		Map<String, Map<String, SecurityToken>> cacheTokens = this.caches
+				.get(cache);
+		if (null == cacheTokens) {
+			LOG.warn("unknown token snapshot cache: " + cache);
+			return;
+		}
+		Map<String, SecurityToken> tokens = getTokens(cacheTokens, credential);
+		if (REMOVE_RECORD == recordType) {
+			tokens.remove(key);
+			return;
+		}
+		SecurityToken securityToken;
+		try {
+			securityToken = ImmutableSecurityToken.valueOf(SecurityTokenCodec
+					.readToken(dataInputStream));
+		} catch (Exception e) {
+			LOG.warn("error reading snapshot token: " + e.getMessage());
+			return;
+		}
+		tokens.put(key, securityToken);
+	}
+
+	private void compact() throws IOException {
+		close();
+		long now = System.currentTimeMillis();
+		File compactFile = new File(this.file.getPath() + ".tmp");
+		compactFile.delete();
+		this.fileChannel = new RandomAccessFile(compactFile, "rw")
+				.getChannel();
+		this.recordCount = 0;
+		for (Map.Entry<String, Map<String, Map<String, SecurityToken>>> cacheEntry : this.caches
+				.entrySet()) {
+			String cache = cacheEntry.getKey();
+			for (Map.Entry<String, Map<String, SecurityToken>> credentialEntry : cacheEntry
+					.getValue().entrySet()) {
+				String credential = credentialEntry.getKey();
+				Map<String, SecurityToken> tokens = credentialEntry.getValue();
+				Map<String, SecurityToken> validTokens = new HashMap<String, SecurityToken>();
+				for (Map.Entry<String, SecurityToken> tokenEntry : tokens
+						.entrySet()) {
+					if (false == isExpired(tokenEntry.getValue(), now)) {
+						validTokens.put(tokenEntry.getKey(),
+								tokenEntry.getValue());
+					}
+				}
+				tokens.clear();
+				for (Map.Entry<String, SecurityToken> tokenEntry : validTokens
+						.entrySet()) {
+					store(credential, cache, tokenEntry.getKey(),
+							tokenEntry.getValue());
+				}
+			}
+		}
+		this.fileChannel.force(true);
+		close();
+		// the live journal stays intact until the compacted one replaces it
+		try {
+			Files.move(compactFile.toPath(), this.file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			LOG.warn("atomic move not supported for token snapshot: "
+					+ this.file.getAbsolutePath());
+			Files.move(compactFile.toPath(), this.file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		this.fileChannel = new RandomAccessFile(this.file, "rw").getChannel();
+		this.fileChannel.position(this.fileChannel.size());
+	}
+
+	private void append(byte[] record) throws IOException,
+			GeneralSecurityException {
+		if (null == this.fileChannel) {
+			return;
+		}
+		byte[] encryptedRecord = this.securityTokenCodec.encrypt(record);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + encryptedRecord.length);
+		buffer.putInt(encryptedRecord.length);
+		buffer.put(encryptedRecord);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			this.fileChannel.write(buffer);
+		}
+		this.recordCount++;
+		int liveRecords = 0;
+		for (Map<String, Map<String, SecurityToken>> cacheTokens : this.caches
+				.values()) {
+			for (Map<String, SecurityToken> tokens : cacheTokens.values()) {
+				liveRecords += tokens.size();
+			}
+		}
+		if (this.recordCount > COMPACTION_THRESHOLD
+				&& this.recordCount > liveRecords * 4) {
+			LOG.debug("compacting token snapshot");
+			compact();
+		}
+	}
+
+	private static boolean isExpired(SecurityToken securityToken, long now) {
+		Date expires = securityToken.getExpires();
+		return null == expires || expires.getTime() <= now;
+	}
+}
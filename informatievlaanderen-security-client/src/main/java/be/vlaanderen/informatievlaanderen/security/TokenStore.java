@@ -0,0 +1,116 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security;
+
+/**
+ * Storage of the security tokens that are cached by the
+ * {@link InformatieVlaanderenSecurity} component. Security tokens are stored
+ * per credential, service realm, and location of the STS or web service that
+ * issued the token.
+ * <p>
+ * Implementations should be thread-safe, and should make the lookup of a
+ * security token as cheap as possible, since it happens on every secured web
+ * service invocation.
+ * <p>
+ * Token stores that are shared between processes hand out leases, so that
+ * only one of these processes requests a new security token from the STS while
+ * the others wait for, and reuse, that token.
+ *
+ * @author Frank Cornelis
+ *
+ * @see InMemoryTokenStore
+ * @see SharedMemoryTokenStore
+ */
+public interface TokenStore {
+
+	/**
+	 * Gives back the stored security token.
+	 *
+	 * @param credential
+	 *            the credential identifier.
+	 * @param realm
+	 *            the service realm.
+	 * @param location
+	 *            the location of the STS or web service that issued the
+	 *            token.
+	 * @return the security token, or <code>null</code> if not present.
+	 */
+	SecurityToken getSecurityToken(String credential, String realm,
+			String location);
+
+	/**
+	 * Stores a security token, replacing any security token stored under the
+	 * same key.
+	 *
+	 * @param credential
+	 *            the credential identifier.
+	 * @param realm
+	 *            the service realm.
+	 * @param location
+	 *            the location of the STS or web service that issued the
+	 *            token.
+	 * @param securityToken
+	 *            the security token.
+	 */
+	void storeSecurityToken(String credential, String realm, String location,
+			SecurityToken securityToken);
+
+	/**
+	 * Removes a security token.
+	 *
+	 * @param credential
+	 *            the credential identifier.
+	 * @param realm
+	 *            the service realm.
+	 * @param location
+	 *            the location of the STS or web service that issued the
+	 *            token.
+	 */
+	void removeSecurityToken(String credential, String realm, String location);
+
+	/**
+	 * Whether the stored security tokens are shared with other processes.
+	 * Evicting a security token from a shared token store neither removes nor
+	 * cancels the token, as other processes might still use it.
+	 *
+	 * @return <code>true</code> if shared with other processes.
+	 */
+	boolean isShared();
+
+	/**
+	 * Leases the renewal of a security token. The caller should look up the
+	 * stored security token again once it holds the lease, since another
+	 * holder of the token store might have renewed the token in the meantime.
+	 *
+	 * @param credential
+	 *            the credential identifier.
+	 * @param realm
+	 *            the service realm.
+	 * @param location
+	 *            the location of the STS or web service that issues the
+	 *            token.
+	 * @param wait
+	 *            whether to wait for a lease held by another holder of the
+	 *            token store.
+	 * @return the lease, or <code>null</code> when not waiting and the lease
+	 *         is held by another holder of the token store.
+	 */
+	TokenLease lease(String credential, String realm, String location,
+			boolean wait);
+}
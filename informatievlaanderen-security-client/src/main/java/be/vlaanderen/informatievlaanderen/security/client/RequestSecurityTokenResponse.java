@@ -0,0 +1,142 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.client;
+
+import java.util.Date;
+
+import org.w3c.dom.Element;
+
+/**
+ * The relevant parts of a WS-Trust RequestSecurityTokenResponse, as extracted
+ * by the {@link RequestSecurityTokenResponseParser}.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class RequestSecurityTokenResponse {
+
+	private byte[] entropy;
+
+	private byte[] proofToken;
+
+	private Date created;
+
+	private Date expires;
+
+	private String attachedReference;
+
+	private String unattachedReference;
+
+	private Element requestedSecurityToken;
+
+	private boolean requestedTokenCancelled;
+
+	/**
+	 * Gives back the server entropy, if any.
+	 * 
+	 * @return the trust:Entropy/trust:BinarySecret value.
+	 */
+	public byte[] getEntropy() {
+		return this.entropy;
+	}
+
+	void setEntropy(byte[] entropy) {
+		this.entropy = entropy;
+	}
+
+	/**
+	 * Gives back the proof-of-possession key, if any.
+	 * 
+	 * @return the trust:RequestedProofToken/trust:BinarySecret value.
+	 */
+	public byte[] getProofToken() {
+		return this.proofToken;
+	}
+
+	void setProofToken(byte[] proofToken) {
+		this.proofToken = proofToken;
+	}
+
+	public Date getCreated() {
+		return this.created;
+	}
+
+	void setCreated(Date created) {
+		this.created = created;
+	}
+
+	public Date getExpires() {
+		return this.expires;
+	}
+
+	void setExpires(Date expires) {
+		this.expires = expires;
+	}
+
+	/**
+	 * Gives back the attached reference. This is the wsse:KeyIdentifier value,
+	 * or the wsse:Reference/@URI value, of the trust:RequestedAttachedReference
+	 * element.
+	 * 
+	 * @return the attached reference.
+	 */
+	public String getAttachedReference() {
+		return this.attachedReference;
+	}
+
+	void setAttachedReference(String attachedReference) {
+		this.attachedReference = attachedReference;
+	}
+
+	/**
+	 * Gives back the unattached reference. This is the wsse:KeyIdentifier
+	 * value, or the wsse:Reference/@URI value, of the
+	 * trust:RequestedUnattachedReference element.
+	 * 
+	 * @return the unattached reference.
+	 */
+	public String getUnattachedReference() {
+		return this.unattachedReference;
+	}
+
+	void setUnattachedReference(String unattachedReference) {
+		this.unattachedReference = unattachedReference;
+	}
+
+	/**
+	 * Gives back the requested security token.
+	 * 
+	 * @return the token as DOM element.
+	 */
+	public Element getRequestedSecurityToken() {
+		return this.requestedSecurityToken;
+	}
+
+	void setRequestedSecurityToken(Element requestedSecurityToken) {
+		this.requestedSecurityToken = requestedSecurityToken;
+	}
+
+	public boolean isRequestedTokenCancelled() {
+		return this.requestedTokenCancelled;
+	}
+
+	void setRequestedTokenCancelled(boolean requestedTokenCancelled) {
+		this.requestedTokenCancelled = requestedTokenCancelled;
+	}
+}
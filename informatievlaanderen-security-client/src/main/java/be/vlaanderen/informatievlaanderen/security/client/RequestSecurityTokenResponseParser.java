@@ -0,0 +1,181 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.client;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Parser for WS-Trust RequestSecurityTokenResponse messages. The parser
+ * extracts entropy, lifetime, references, proof token and requested security
+ * token in a single forward pass over the response, without JAXB.
+ * <p>
+ * The SOAP handlers already hold the message as SAAJ DOM tree, hence the
+ * parser walks the DOM siblings directly instead of searching the tree per
+ * element.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class RequestSecurityTokenResponseParser {
+
+	/*
+	 * Joda formatters are immutable and thread-safe.
+	 */
+	private static final DateTimeFormatter DATE_TIME_PARSER = ISODateTimeFormat
+			.dateTimeParser();
+
+	private RequestSecurityTokenResponseParser() {
+		super();
+	}
+
+	/**
+	 * Parses the given WS-Trust response element. In case of a
+	 * RequestSecurityTokenResponseCollection only the first
+	 * RequestSecurityTokenResponse is parsed.
+	 * 
+	 * @param element
+	 *            the trust:RequestSecurityTokenResponseCollection or
+	 *            trust:RequestSecurityTokenResponse element.
+	 * @return the parsed response, or <code>null</code> if the element is not a
+	 *         WS-Trust response.
+	 */
+	public static RequestSecurityTokenResponse parse(Element element) {
+		if (isTrustElement(element, "RequestSecurityTokenResponseCollection")) {
+			element = getFirstChildElement(element);
+		}
+		if (false == isTrustElement(element, "RequestSecurityTokenResponse")) {
+			return null;
+		}
+		RequestSecurityTokenResponse response = new RequestSecurityTokenResponse();
+		for (Node node = element.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			Element childElement = (Element) node;
+			if (false == WSConstants.WSTRUST_NAMESPACE.equals(childElement
+					.getNamespaceURI())) {
+				continue;
+			}
+			String localName = childElement.getLocalName();
+			if ("Entropy".equals(localName)) {
+				response.setEntropy(getBinarySecret(childElement));
+			} else if ("RequestedProofToken".equals(localName)) {
+				response.setProofToken(getBinarySecret(childElement));
+			} else if ("Lifetime".equals(localName)) {
+				parseLifetime(childElement, response);
+			} else if ("RequestedAttachedReference".equals(localName)) {
+				response.setAttachedReference(getReference(childElement));
+			} else if ("RequestedUnattachedReference".equals(localName)) {
+				response.setUnattachedReference(getReference(childElement));
+			} else if ("RequestedSecurityToken".equals(localName)) {
+				response.setRequestedSecurityToken(getFirstChildElement(childElement));
+			} else if ("RequestedTokenCancelled".equals(localName)) {
+				response.setRequestedTokenCancelled(true);
+			}
+		}
+		return response;
+	}
+
+	private static void parseLifetime(Element lifetimeElement,
+			RequestSecurityTokenResponse response) {
+		for (Node node = lifetimeElement.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			Element childElement = (Element) node;
+			if (false == WSConstants.WS_SECURITY_UTILITY_NAMESPACE
+					.equals(childElement.getNamespaceURI())) {
+				continue;
+			}
+			String localName = childElement.getLocalName();
+			if ("Created".equals(localName)) {
+				response.setCreated(DATE_TIME_PARSER.parseDateTime(
+						childElement.getTextContent()).toDate());
+			} else if ("Expires".equals(localName)) {
+				response.setExpires(DATE_TIME_PARSER.parseDateTime(
+						childElement.getTextContent()).toDate());
+			}
+		}
+	}
+
+	private static byte[] getBinarySecret(Element element) {
+		for (Node node = element.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			if (isTrustElement((Element) node, "BinarySecret")) {
+				return DatatypeConverter.parseBase64Binary(node
+						.getTextContent());
+			}
+		}
+		return null;
+	}
+
+	private static String getReference(Element requestedReferenceElement) {
+		Element securityTokenReferenceElement = getFirstChildElement(requestedReferenceElement);
+		if (null == securityTokenReferenceElement) {
+			return null;
+		}
+		for (Node node = securityTokenReferenceElement.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			Element childElement = (Element) node;
+			if (false == WSConstants.WS_SECURITY_NAMESPACE.equals(childElement
+					.getNamespaceURI())) {
+				continue;
+			}
+			String localName = childElement.getLocalName();
+			if ("KeyIdentifier".equals(localName)) {
+				return childElement.getTextContent();
+			}
+			if ("Reference".equals(localName)) {
+				return childElement.getAttribute("URI");
+			}
+		}
+		return null;
+	}
+
+	private static Element getFirstChildElement(Element element) {
+		for (Node node = element.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE == node.getNodeType()) {
+				return (Element) node;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isTrustElement(Element element, String localName) {
+		if (null == element) {
+			return false;
+		}
+		return WSConstants.WSTRUST_NAMESPACE.equals(element.getNamespaceURI())
+				&& localName.equals(element.getLocalName());
+	}
+}
@@ -19,41 +19,25 @@
 package be.vlaanderen.informatievlaanderen.security.client;
 
 import java.security.SecureRandom;
+import java.util.HashMap;
 import java.util.List;
-
-import javax.xml.bind.JAXBElement;
-import javax.xml.namespace.QName;
-import javax.xml.ws.Binding;
-import javax.xml.ws.BindingProvider;
-import javax.xml.ws.handler.Handler;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.ws.security.conversation.ConversationException;
 import org.apache.ws.security.conversation.dkalgo.P_SHA1;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
-import org.w3c.dom.Element;
 
 import be.vlaanderen.informatievlaanderen.security.SecurityToken;
-import be.vlaanderen.informatievlaanderen.security.handler.LoggingHandler;
 import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
 import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
-import be.vlaanderen.informatievlaanderen.security.handler.WSTrustHandler;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wsse.ReferenceType;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wsse.SecurityTokenReferenceType;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.BinarySecretType;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.CancelTargetType;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.EntropyType;
-import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.LifetimeType;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.ObjectFactory;
-import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.RequestSecurityTokenResponseCollectionType;
-import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.RequestSecurityTokenResponseType;
 import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.RequestSecurityTokenType;
-import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.RequestedReferenceType;
-import be.vlaanderen.informatievlaanderen.security.jaxws.wstrust.SecurityTokenService;
-import be.vlaanderen.informatievlaanderen.security.jaxws.wstrust.SecurityTokenService_Service;
 
 /**
  * JAX-WS based WS-SecureConversation client. Via this client one can setup
@@ -70,7 +54,7 @@ public class SecureConversationClient {
 
 	private final String location;
 
-	private final SecurityTokenService port;
+	private final SecurityTokenServicePortPool portPool;
 
 	private final ObjectFactory objectFactory;
 
@@ -78,38 +62,17 @@ public class SecureConversationClient {
 
 	private final be.vlaanderen.informatievlaanderen.security.jaxb.wsse.ObjectFactory wssObjectFactory;
 
-	private final WSAddressingHandler wsAddressingHandler;
-
-	private final WSTrustHandler wsTrustHandler;
-
-	private final WSSecurityHandler wsSecurityHandler;
-
 	/**
 	 * Main constructor. The given location is the same as where the actual
-	 * business web service is running.
+	 * business web service is running. A single client can be used by
+	 * concurrent threads.
 	 * 
 	 * @param location
 	 *            the location of the WS-SecureConversation enabled web service.
 	 */
 	public SecureConversationClient(String location) {
 		this.location = location;
-		SecurityTokenService_Service service = SecurityTokenServiceFactory
-				.getInstance();
-		this.port = service.getSecurityTokenServicePort();
-		BindingProvider bindingProvider = (BindingProvider) this.port;
-		bindingProvider.getRequestContext().put(
-				BindingProvider.ENDPOINT_ADDRESS_PROPERTY, location);
-
-		Binding binding = bindingProvider.getBinding();
-		List<Handler> handlerChain = binding.getHandlerChain();
-		this.wsTrustHandler = new WSTrustHandler();
-		handlerChain.add(this.wsTrustHandler);
-		this.wsAddressingHandler = new WSAddressingHandler();
-		handlerChain.add(this.wsAddressingHandler);
-		this.wsSecurityHandler = new WSSecurityHandler();
-		handlerChain.add(this.wsSecurityHandler);
-		handlerChain.add(new LoggingHandler());
-		binding.setHandlerChain(handlerChain);
+		this.portPool = SecurityTokenServiceFactory.getPortPool(location);
 
 		this.objectFactory = new ObjectFactory();
 		this.wssObjectFactory = new be.vlaanderen.informatievlaanderen.security.jaxb.wsse.ObjectFactory();
@@ -149,147 +112,54 @@ public class SecureConversationClient {
 				this.objectFactory.createBinarySecret(binarySecret));
 		binarySecret.setType(WSConstants.SECRET_TYPE_NONCE);
 		byte[] entropyData = new byte[256 / 8];
-		this.secureRandom.setSeed(System.currentTimeMillis());
 		this.secureRandom.nextBytes(entropyData);
 		binarySecret.setValue(entropyData);
 
 		requestSecurityTokenContent.add(this.objectFactory.createKeySize(256L));
 
-		BindingProvider bindingProvider = (BindingProvider) this.port;
-		this.wsAddressingHandler.setAddressing(
+		Map<String, Object> requestProperties = new HashMap<String, Object>();
+		WSAddressingHandler.setAddressing(requestProperties,
 				WSConstants.SEC_CONV_ISSUE_ACTION, this.location);
-		this.wsSecurityHandler.setKey(rStsSecurityToken.getKey(),
+		WSSecurityHandler.setKey(requestProperties,
+				rStsSecurityToken.getKey(),
 				rStsSecurityToken.getAttachedReference(),
-				rStsSecurityToken.getToken());
+				rStsSecurityToken.getToken(), true);
 
-		RequestSecurityTokenResponseCollectionType requestSecurityTokenResponseCollection = this.port
-				.requestSecurityToken(requestSecurityToken);
+		RequestSecurityTokenResponse requestSecurityTokenResponse = this.portPool
+				.requestSecurityToken(this.objectFactory
+						.createRequestSecurityToken(requestSecurityToken),
+						requestProperties);
 
 		SecurityToken securityToken = new SecurityToken();
-
-		List<RequestSecurityTokenResponseType> requestSecurityTokenResponseList = requestSecurityTokenResponseCollection
-				.getRequestSecurityTokenResponse();
-		RequestSecurityTokenResponseType requestSecurityTokenResponse = requestSecurityTokenResponseList
-				.get(0);
-		List<Object> requestSecurityTokenResponseContent = requestSecurityTokenResponse
-				.getAny();
-		for (Object contentObject : requestSecurityTokenResponseContent) {
-			LOG.debug("content object: " + contentObject.getClass().getName());
-			if (contentObject instanceof Element) {
-				Element contentElement = (Element) contentObject;
-				LOG.debug("element name: " + contentElement.getLocalName());
+		byte[] serverSecret = requestSecurityTokenResponse.getEntropy();
+		if (null != serverSecret) {
+			P_SHA1 p_SHA1 = new P_SHA1();
+			byte[] key;
+			try {
+				key = p_SHA1.createKey(entropyData, serverSecret, 0, 256 / 8);
+			} catch (ConversationException e) {
+				LOG.error(e);
+				return null;
 			}
-			if (contentObject instanceof JAXBElement) {
-				JAXBElement jaxbElement = (JAXBElement) contentObject;
-				QName qname = jaxbElement.getName();
-				if (WSConstants.ENTROPY_QNAME.equals(qname)) {
-					LOG.debug("trust:Entropy");
-					EntropyType serverEntropy = (EntropyType) jaxbElement
-							.getValue();
-					List<Object> entropyContent = serverEntropy.getAny();
-					for (Object entropyObject : entropyContent) {
-						if (entropyObject instanceof JAXBElement) {
-							JAXBElement entropyElement = (JAXBElement) entropyObject;
-							if (WSConstants.BINARY_SECRET_QNAME
-									.equals(entropyElement.getName())) {
-								BinarySecretType serverBinarySecret = (BinarySecretType) entropyElement
-										.getValue();
-								byte[] serverSecret = serverBinarySecret
-										.getValue();
-								P_SHA1 p_SHA1 = new P_SHA1();
-								byte[] key;
-								try {
-									key = p_SHA1.createKey(entropyData,
-											serverSecret, 0, 256 / 8);
-								} catch (ConversationException e) {
-									LOG.error(e);
-									return null;
-								}
-								LOG.debug("client secret size: "
-										+ entropyData.length);
-								LOG.debug("server secret size: "
-										+ serverSecret.length);
-								LOG.debug("key size: " + key.length);
-								securityToken.setKey(key);
-							}
-						}
-					}
-				} else if (WSConstants.LIFETIME_QNAME.equals(qname)) {
-					LOG.debug("trust:Lifetime");
-					LifetimeType lifetime = (LifetimeType) jaxbElement
-							.getValue();
-					String createdValue = lifetime.getCreated().getValue();
-					DateTimeFormatter dateTimeFormatter = ISODateTimeFormat
-							.dateTimeParser();
-					DateTime created = dateTimeFormatter
-							.parseDateTime(createdValue);
-					securityToken.setCreated(created.toDate());
-					String expiresString = lifetime.getExpires().getValue();
-					DateTime expires = dateTimeFormatter
-							.parseDateTime(expiresString);
-					securityToken.setExpires(expires.toDate());
-				} else if (WSConstants.REQUESTED_ATTACHED_REFERENCE_QNAME
-						.equals(qname)) {
-					RequestedReferenceType requestedReference = (RequestedReferenceType) jaxbElement
-							.getValue();
-					SecurityTokenReferenceType securityTokenReference = requestedReference
-							.getSecurityTokenReference();
-					List<Object> securityTokenReferenceContent = securityTokenReference
-							.getAny();
-					for (Object securityTokenReferenceObject : securityTokenReferenceContent) {
-						LOG.debug("SecurityTokenReference object: "
-								+ securityTokenReferenceObject.getClass()
-										.getName());
-						if (securityTokenReferenceObject instanceof JAXBElement) {
-							JAXBElement securityTokenReferenceElement = (JAXBElement) securityTokenReferenceObject;
-							LOG.debug("SecurityTokenReference element: "
-									+ securityTokenReferenceElement.getName());
-							if (WSConstants.REFERENCE_QNAME
-									.equals(securityTokenReferenceElement
-											.getName())) {
-								ReferenceType reference = (ReferenceType) securityTokenReferenceElement
-										.getValue();
-								String tokenIdentifier = reference.getURI()
-										.substring(1);
-								securityToken
-										.setAttachedReference(tokenIdentifier);
-							}
-						}
-					}
-				} else if (WSConstants.REQUESTED_UNATTACHED_REFERENCE_QNAME
-						.equals(qname)) {
-					RequestedReferenceType requestedReference = (RequestedReferenceType) jaxbElement
-							.getValue();
-					SecurityTokenReferenceType securityTokenReference = requestedReference
-							.getSecurityTokenReference();
-					List<Object> securityTokenReferenceContent = securityTokenReference
-							.getAny();
-					for (Object securityTokenReferenceObject : securityTokenReferenceContent) {
-						LOG.debug("SecurityTokenReference object: "
-								+ securityTokenReferenceObject.getClass()
-										.getName());
-						if (securityTokenReferenceObject instanceof JAXBElement) {
-							JAXBElement securityTokenReferenceElement = (JAXBElement) securityTokenReferenceObject;
-							LOG.debug("SecurityTokenReference element: "
-									+ securityTokenReferenceElement.getName());
-							if (WSConstants.REFERENCE_QNAME
-									.equals(securityTokenReferenceElement
-											.getName())) {
-								ReferenceType reference = (ReferenceType) securityTokenReferenceElement
-										.getValue();
-								String tokenIdentifier = reference.getURI();
-								securityToken
-										.setUnattachedReference(tokenIdentifier);
-							}
-						}
-					}
-				}
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("client secret size: " + entropyData.length);
+				LOG.debug("server secret size: " + serverSecret.length);
+				LOG.debug("key size: " + key.length);
 			}
+			securityToken.setKey(key);
 		}
-
-		Element requestedSecurityToken = this.wsTrustHandler
-				.getRequestedSecurityToken();
-		securityToken.setToken(requestedSecurityToken);
+		securityToken.setCreated(requestSecurityTokenResponse.getCreated());
+		securityToken.setExpires(requestSecurityTokenResponse.getExpires());
+		String attachedReference = requestSecurityTokenResponse
+				.getAttachedReference();
+		if (null != attachedReference) {
+			// local reference: #identifier
+			securityToken.setAttachedReference(attachedReference.substring(1));
+		}
+		securityToken.setUnattachedReference(requestSecurityTokenResponse
+				.getUnattachedReference());
+		securityToken.setToken(requestSecurityTokenResponse
+				.getRequestedSecurityToken());
 		securityToken.setStsLocation(this.location);
 		securityToken.setRealm(this.location); // what else?
 		securityToken.setParentSecurityToken(rStsSecurityToken);
@@ -328,35 +198,19 @@ public class SecureConversationClient {
 		reference.setURI(secureConversationToken.getUnattachedReference());
 		reference.setValueType(WSConstants.SECURE_CONVERSATION_TOKEN_TYPE);
 
-		BindingProvider bindingProvider = (BindingProvider) this.port;
-		this.wsAddressingHandler.setAddressing(
+		Map<String, Object> requestProperties = new HashMap<String, Object>();
+		WSAddressingHandler.setAddressing(requestProperties,
 				WSConstants.SEC_CONV_CANCEL_ACTION, this.location);
-		this.wsSecurityHandler.setKey(secureConversationToken.getKey(),
+		WSSecurityHandler.setKey(requestProperties,
+				secureConversationToken.getKey(),
 				secureConversationToken.getAttachedReference(),
 				secureConversationToken.getToken(), false);
 
-		RequestSecurityTokenResponseCollectionType requestSecurityTokenResponseCollection = this.port
-				.requestSecurityToken(requestSecurityToken);
-
-		List<RequestSecurityTokenResponseType> requestSecurityTokenResponseList = requestSecurityTokenResponseCollection
-				.getRequestSecurityTokenResponse();
-		RequestSecurityTokenResponseType requestSecurityTokenResponse = requestSecurityTokenResponseList
-				.get(0);
-		List<Object> requestSecurityTokenResponseContent = requestSecurityTokenResponse
-				.getAny();
-		boolean tokenCancelled = false;
-		for (Object contentObject : requestSecurityTokenResponseContent) {
-			LOG.debug("content object: " + contentObject.getClass().getName());
-			if (contentObject instanceof JAXBElement) {
-				JAXBElement jaxbElement = (JAXBElement) contentObject;
-				QName qname = jaxbElement.getName();
-				LOG.debug("qname: " + qname);
-				if (WSConstants.REQUESTED_TOKEN_CANCELLED_QNAME.equals(qname)) {
-					tokenCancelled = true;
-				}
-			}
-		}
-		if (false == tokenCancelled) {
+		RequestSecurityTokenResponse requestSecurityTokenResponse = this.portPool
+				.requestSecurityToken(this.objectFactory
+						.createRequestSecurityToken(requestSecurityToken),
+						requestProperties);
+		if (false == requestSecurityTokenResponse.isRequestedTokenCancelled()) {
 			throw new RuntimeException("token not cancelled");
 		}
 	}
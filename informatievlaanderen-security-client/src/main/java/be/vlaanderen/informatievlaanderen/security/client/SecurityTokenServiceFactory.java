@@ -19,9 +19,14 @@
 package be.vlaanderen.informatievlaanderen.security.client;
 
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import javax.xml.namespace.QName;
 
+import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.ObjectFactory;
 import be.vlaanderen.informatievlaanderen.security.jaxws.wstrust.SecurityTokenService_Service;
 
 /**
@@ -29,6 +34,12 @@ import be.vlaanderen.informatievlaanderen.security.jaxws.wstrust.SecurityTokenSe
  * part of the JAR and is thus platform independent. The client JAR also comes
  * with a JAX-WS catalog to ensure that all required XML schemas can be resolved
  * locally.
+ * <p>
+ * Parsing the WSDL and building the JAX-WS runtime model is expensive, so the
+ * service model is created only once per class loader. The WS-Trust ports
+ * themselves are pooled per STS location. Call
+ * {@link SecurityTokenServiceFactory#warmUp(String...)} at application
+ * startup to pay these costs before the first token request.
  * 
  * @author Frank Cornelis
  * 
@@ -37,16 +48,44 @@ public class SecurityTokenServiceFactory {
 
 	public static final String WSDL_RESOURCE = "/ws-trust-1.3.wsdl";
 
+	private static final ConcurrentMap<String, SecurityTokenServicePortPool> portPools = new ConcurrentHashMap<String, SecurityTokenServicePortPool>();
+
+	private static volatile SecurityTokenService_Service service;
+
+	private static volatile JAXBContext jaxbContext;
+
 	private SecurityTokenServiceFactory() {
 		super();
 	}
 
 	/**
-	 * Gives back a new instance of the WS-Trust JAX-WS client stub.
+	 * Gives back the shared instance of the WS-Trust JAX-WS client stub. The
+	 * returned service is shared by all WS-Trust clients, so it should not be
+	 * reconfigured. Use {@link SecurityTokenServiceFactory#newInstance()} when
+	 * a private instance is required.
 	 * 
 	 * @return the JAX-WS client stub.
 	 */
 	public static SecurityTokenService_Service getInstance() {
+		SecurityTokenService_Service instance = service;
+		if (null == instance) {
+			synchronized (SecurityTokenServiceFactory.class) {
+				instance = service;
+				if (null == instance) {
+					instance = newInstance();
+					service = instance;
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Gives back a new instance of the WS-Trust JAX-WS client stub.
+	 * 
+	 * @return the JAX-WS client stub.
+	 */
+	public static SecurityTokenService_Service newInstance() {
 		URL wsdlLocation = SecurityTokenService_Service.class
 				.getResource(WSDL_RESOURCE);
 		if (null == wsdlLocation) {
@@ -60,4 +99,69 @@ public class SecurityTokenServiceFactory {
 				wsdlLocation, serviceName);
 		return service;
 	}
+
+	/**
+	 * Loads the WS-Trust service model and prepares a WS-Trust port for each of
+	 * the given STS locations.
+	 * 
+	 * @param locations
+	 *            the locations of the WS-Trust web services.
+	 */
+	public static void warmUp(String... locations) {
+		getInstance();
+		getJAXBContext();
+		for (String location : locations) {
+			getPortPool(location).warmUp();
+		}
+	}
+
+	/**
+	 * Gives back the JAXB context used to marshal WS-Trust requests.
+	 * 
+	 * @return the JAXB context.
+	 */
+	static JAXBContext getJAXBContext() {
+		JAXBContext context = jaxbContext;
+		if (null == context) {
+			synchronized (SecurityTokenServiceFactory.class) {
+				context = jaxbContext;
+				if (null == context) {
+					try {
+						context = JAXBContext
+								.newInstance(
+										ObjectFactory.class,
+										be.vlaanderen.informatievlaanderen.security.jaxb.wspolicy.ObjectFactory.class,
+										be.vlaanderen.informatievlaanderen.security.jaxb.wsaddr.ObjectFactory.class,
+										be.vlaanderen.informatievlaanderen.security.jaxb.wsse.ObjectFactory.class);
+					} catch (JAXBException e) {
+						throw new RuntimeException("JAXB error: "
+								+ e.getMessage(), e);
+					}
+					jaxbContext = context;
+				}
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Gives back the pool of WS-Trust ports for the given STS location.
+	 * 
+	 * @param location
+	 *            the location of the WS-Trust web service.
+	 * @return the port pool.
+	 */
+	static SecurityTokenServicePortPool getPortPool(String location) {
+		SecurityTokenServicePortPool portPool = portPools.get(location);
+		if (null != portPool) {
+			return portPool;
+		}
+		portPool = new SecurityTokenServicePortPool(location);
+		SecurityTokenServicePortPool existingPortPool = portPools.putIfAbsent(
+				location, portPool);
+		if (null != existingPortPool) {
+			return existingPortPool;
+		}
+		return portPool;
+	}
 }
@@ -0,0 +1,191 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.ws.Binding;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.handler.Handler;
+
+import org.w3c.dom.Document;
+
+import be.vlaanderen.informatievlaanderen.security.handler.LoggingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSTrustHandler;
+import be.vlaanderen.informatievlaanderen.security.jaxb.wstrust.RequestSecurityTokenType;
+import be.vlaanderen.informatievlaanderen.security.jaxws.wstrust.SecurityTokenService_Service;
+
+/**
+ * Pool of WS-Trust JAX-WS ports towards a single STS location. JAX-WS ports
+ * are not thread-safe, so every request borrows a port for its own exclusive
+ * use. All ports share the same, stateless, handler instances. Per-request
+ * handler state is passed via the request context of the borrowed port.
+ * <p>
+ * The ports are payload dispatchers. The WS-Trust response is parsed by the
+ * {@link WSTrustHandler}, so it never gets unmarshalled via JAXB.
+ * <p>
+ * Pools are shared by all WS-Trust clients and are managed by
+ * {@link SecurityTokenServiceFactory}.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class SecurityTokenServicePortPool {
+
+	private static final int MAX_IDLE_PORTS = 8;
+
+	private static final QName PORT_NAME = new QName(
+			WSConstants.WSTRUST_NAMESPACE, "SecurityTokenServicePort");
+
+	private final String location;
+
+	private final List<Handler> handlers;
+
+	private final Queue<Dispatch<Source>> idlePorts;
+
+	private final AtomicInteger idlePortCount;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param location
+	 *            the location of the WS-Trust web service.
+	 */
+	SecurityTokenServicePortPool(String location) {
+		this.location = location;
+		this.handlers = new ArrayList<Handler>();
+		this.handlers.add(new WSTrustHandler());
+		this.handlers.add(new WSAddressingHandler());
+		this.handlers.add(new WSSecurityHandler());
+		this.handlers.add(new LoggingHandler());
+		this.idlePorts = new ConcurrentLinkedQueue<Dispatch<Source>>();
+		this.idlePortCount = new AtomicInteger();
+	}
+
+	/**
+	 * Sends a WS-Trust request via a pooled port.
+	 * 
+	 * @param request
+	 *            the WS-Trust request.
+	 * @param requestProperties
+	 *            the per-request handler state, see
+	 *            {@link WSAddressingHandler#setAddressing(Map, String, String)}
+	 *            and
+	 *            {@link WSSecurityHandler#setKey(Map, byte[], String, org.w3c.dom.Element, boolean)}
+	 *            .
+	 * @return the parsed WS-Trust response.
+	 */
+	RequestSecurityTokenResponse requestSecurityToken(
+			JAXBElement<RequestSecurityTokenType> request,
+			Map<String, Object> requestProperties) {
+		Source requestSource = toSource(request);
+		Dispatch<Source> port = borrowPort();
+		try {
+			Map<String, Object> requestContext = port.getRequestContext();
+			requestContext.putAll(requestProperties);
+			try {
+				port.invoke(requestSource);
+			} finally {
+				for (String requestProperty : requestProperties.keySet()) {
+					requestContext.remove(requestProperty);
+				}
+			}
+			RequestSecurityTokenResponse response = WSTrustHandler
+					.getResponse(port.getResponseContext());
+			if (null == response) {
+				throw new RuntimeException(
+						"missing WS-Trust RequestSecurityTokenResponse");
+			}
+			return response;
+		} finally {
+			returnPort(port);
+		}
+	}
+
+	/**
+	 * Makes sure that at least one port is ready for use.
+	 */
+	void warmUp() {
+		if (this.idlePortCount.get() > 0) {
+			return;
+		}
+		returnPort(createPort());
+	}
+
+	private Dispatch<Source> borrowPort() {
+		Dispatch<Source> port = this.idlePorts.poll();
+		if (null != port) {
+			this.idlePortCount.decrementAndGet();
+			return port;
+		}
+		return createPort();
+	}
+
+	private void returnPort(Dispatch<Source> port) {
+		if (this.idlePortCount.incrementAndGet() > MAX_IDLE_PORTS) {
+			this.idlePortCount.decrementAndGet();
+			return;
+		}
+		this.idlePorts.offer(port);
+	}
+
+	private Dispatch<Source> createPort() {
+		SecurityTokenService_Service service = SecurityTokenServiceFactory
+				.getInstance();
+		Dispatch<Source> port = service.createDispatch(PORT_NAME,
+				Source.class, Service.Mode.PAYLOAD);
+		port.getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY, this.location);
+
+		Binding binding = port.getBinding();
+		List<Handler> handlerChain = binding.getHandlerChain();
+		handlerChain.addAll(this.handlers);
+		binding.setHandlerChain(handlerChain);
+		return port;
+	}
+
+	private static Source toSource(JAXBElement<?> request) {
+		DOMResult domResult = new DOMResult();
+		try {
+			Marshaller marshaller = SecurityTokenServiceFactory
+					.getJAXBContext().createMarshaller();
+			marshaller.marshal(request, domResult);
+		} catch (JAXBException e) {
+			throw new RuntimeException("JAXB error: " + e.getMessage(), e);
+		}
+		Document document = (Document) domResult.getNode();
+		return new DOMSource(document.getDocumentElement());
+	}
+}
@@ -29,11 +29,15 @@ import javax.xml.ws.handler.soap.SOAPMessageContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
 import be.vlaanderen.informatievlaanderen.security.SecurityToken;
 
 /**
  * A JAX-WS SOAP handler that provides web service authentication via a security
  * token.
+ * <p>
+ * The security token is passed to the {@link WSSecurityHandler} via the SOAP
+ * message context. So a single handler chain can serve concurrent requests.
  * 
  * @author Frank Cornelis
  * 
@@ -46,8 +50,6 @@ public class AuthenticationHandler implements InformatieVlaanderenSOAPHandler,
 
 	private final SecurityTokenProvider securityTokenProvider;
 
-	private final WSSecurityHandler wsSecurityHandler;
-
 	private final String serviceRealm;
 
 	/**
@@ -59,18 +61,36 @@ public class AuthenticationHandler implements InformatieVlaanderenSOAPHandler,
 	 * @param securityTokenProvider
 	 *            the Informatie Vlaanderen Security component from which to retrieve the
 	 *            security token to be used during web service calls.
-	 * @param wsSecurityHandler
-	 *            the WS-Security handler.
 	 * @param serviceRealm
 	 *            the optional service realm.
 	 */
 	public AuthenticationHandler(SecurityTokenProvider securityTokenProvider,
-			WSSecurityHandler wsSecurityHandler, String serviceRealm) {
+			String serviceRealm) {
 		this.securityTokenProvider = securityTokenProvider;
-		this.wsSecurityHandler = wsSecurityHandler;
 		this.serviceRealm = serviceRealm;
 	}
 
+	/**
+	 * Constructor.
+	 * 
+	 * @param securityTokenProvider
+	 *            the Informatie Vlaanderen Security component from which to retrieve the
+	 *            security token to be used during web service calls.
+	 * @param wsSecurityHandler
+	 *            the WS-Security handler. Not used anymore.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @deprecated the security token is passed via the SOAP message context.
+	 *             Use
+	 *             {@link AuthenticationHandler#AuthenticationHandler(SecurityTokenProvider, String)}
+	 *             instead.
+	 */
+	@Deprecated
+	public AuthenticationHandler(SecurityTokenProvider securityTokenProvider,
+			WSSecurityHandler wsSecurityHandler, String serviceRealm) {
+		this(securityTokenProvider, serviceRealm);
+	}
+
 	public boolean handleMessage(SOAPMessageContext context) {
 		Boolean outboundProperty = (Boolean) context
 				.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY);
@@ -95,12 +115,15 @@ public class AuthenticationHandler implements InformatieVlaanderenSOAPHandler,
 					.get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY);
 			serviceRealm = location;
 		}
-		LOG.debug("service realm: " + serviceRealm);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("service realm: " + serviceRealm);
+		}
 
 		SecurityToken securityToken = this.securityTokenProvider
 				.getSecurityToken(serviceRealm);
 
-		this.wsSecurityHandler.setKey(securityToken.getKey(),
+		WSSecurityHandler.setKey(context,
+				ImmutableSecurityToken.getSharedKey(securityToken),
 				securityToken.getAttachedReference(), securityToken.getToken(),
 				true);
 	}
@@ -0,0 +1,192 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.ProtocolException;
+import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+
+/**
+ * A JAX-WS SOAP handler that combines the {@link AuthenticationHandler} or
+ * {@link SecureConversationHandler}, the {@link WSSecurityHandler} and the
+ * {@link LoggingHandler} into a single handler.
+ * <p>
+ * The security token is selected and the WS-Security header is added within a
+ * single handler invocation per message. The security token is handed over
+ * directly, instead of via the SOAP message context.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public class FusedSecurityHandler implements InformatieVlaanderenSOAPHandler,
+		SecurityTokenConsumer {
+
+	private static final Log LOG = LogFactory
+			.getLog(FusedSecurityHandler.class);
+
+	private final SecurityTokenProvider securityTokenProvider;
+
+	private final String serviceRealm;
+
+	private final boolean useWsSecureConversation;
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	private final LoggingHandler loggingHandler;
+
+	/**
+	 * Constructor. The WS-Security header of inbound messages gets fully
+	 * processed.
+	 *
+	 * @param securityTokenProvider
+	 *            the Informatie Vlaanderen Security component from which to
+	 *            retrieve the security tokens to be used during web service
+	 *            calls.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @param wsSecurityMode
+	 *            the WS-Security header construction mode.
+	 */
+	public FusedSecurityHandler(SecurityTokenProvider securityTokenProvider,
+			String serviceRealm, boolean useWsSecureConversation,
+			WSSecurityMode wsSecurityMode) {
+		this(securityTokenProvider, serviceRealm, useWsSecureConversation,
+				wsSecurityMode, InboundSecurityMode.FULL);
+	}
+
+	/**
+	 * Main constructor.
+	 * <p>
+	 * If no service realm is specified, the service location will be used as
+	 * service realm towards the R-STS.
+	 *
+	 * @param securityTokenProvider
+	 *            the Informatie Vlaanderen Security component from which to
+	 *            retrieve the security tokens to be used during web service
+	 *            calls.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @param wsSecurityMode
+	 *            the WS-Security header construction mode.
+	 * @param inboundSecurityMode
+	 *            the WS-Security header verification mode.
+	 */
+	public FusedSecurityHandler(SecurityTokenProvider securityTokenProvider,
+			String serviceRealm, boolean useWsSecureConversation,
+			WSSecurityMode wsSecurityMode,
+			InboundSecurityMode inboundSecurityMode) {
+		this.securityTokenProvider = securityTokenProvider;
+		this.serviceRealm = serviceRealm;
+		this.useWsSecureConversation = useWsSecureConversation;
+		this.wsSecurityHandler = new WSSecurityHandler(wsSecurityMode,
+				inboundSecurityMode);
+		this.loggingHandler = new LoggingHandler();
+	}
+
+	public boolean handleMessage(SOAPMessageContext context) {
+		Boolean outboundProperty = (Boolean) context
+				.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY);
+
+		if (true == outboundProperty.booleanValue()) {
+			try {
+				handleOutboundMessage(context);
+			} catch (Exception e) {
+				LOG.error("outbound exception: " + e.getMessage(), e);
+				throw new ProtocolException(e);
+			}
+			this.loggingHandler.handleMessage(context);
+		} else {
+			this.loggingHandler.handleMessage(context);
+			try {
+				this.wsSecurityHandler.handleInboundMessage(context);
+			} catch (Exception e) {
+				throw new ProtocolException(e);
+			}
+		}
+
+		return true;
+	}
+
+	private void handleOutboundMessage(SOAPMessageContext context)
+			throws Exception {
+		String location = (String) context
+				.get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY);
+		String serviceRealm;
+		if (null != this.serviceRealm) {
+			serviceRealm = this.serviceRealm;
+		} else {
+			serviceRealm = location;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("location: " + location);
+			LOG.debug("service realm: " + serviceRealm);
+		}
+
+		SecurityToken securityToken;
+		if (this.useWsSecureConversation) {
+			securityToken = this.securityTokenProvider
+					.getSecureConversationToken(location, serviceRealm);
+		} else {
+			securityToken = this.securityTokenProvider
+					.getSecurityToken(serviceRealm);
+		}
+
+		this.wsSecurityHandler.secureMessage(context,
+				ImmutableSecurityToken.getSharedKey(securityToken),
+				securityToken.getAttachedReference(), securityToken.getToken(),
+				false == this.useWsSecureConversation, null, null);
+	}
+
+	public boolean handleFault(SOAPMessageContext context) {
+		return this.loggingHandler.handleFault(context);
+	}
+
+	public void close(MessageContext context) {
+	}
+
+	public Set<QName> getHeaders() {
+		return this.wsSecurityHandler.getHeaders();
+	}
+
+	/**
+	 * Gives back the security token provider instance that this handler will
+	 * use to acquire security tokens.
+	 *
+	 * @return the security token provider instance.
+	 */
+	public SecurityTokenProvider getSecurityTokenProvider() {
+		return this.securityTokenProvider;
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+/**
+ * The layout of the JAX-WS handler chain installed on secured JAX-WS stubs.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum HandlerChainLayout {
+
+	/**
+	 * Separate handlers for token selection, WS-Security and logging. This is
+	 * the default.
+	 */
+	SEPARATE,
+
+	/**
+	 * A single {@link FusedSecurityHandler} that does token selection,
+	 * WS-Security and logging within one handler invocation per message.
+	 */
+	FUSED
+}
@@ -0,0 +1,297 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.soap.SOAPPart;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+
+/**
+ * Reads the WS-Security timestamp and the WS-Addressing RelatesTo values of an
+ * inbound SOAP message, looking at the SOAP header only.
+ * <p>
+ * As long as the SAAJ message was not parsed yet, the header is read via a
+ * StAX reader that stops at the start of the SOAP body, so no DOM tree gets
+ * built at all. Otherwise only the header child elements of the existing DOM
+ * tree are visited. Note that JAX-WS RI handlers always get an already parsed
+ * SAAJ message, so there the StAX reader is never used.
+ *
+ * @author Frank Cornelis
+ *
+ */
+class InboundHeaderReader {
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+	private final List<String> relatesTo;
+
+	private boolean securityHeader;
+
+	private boolean timestamp;
+
+	private String created;
+
+	private String expires;
+
+	private InboundHeaderReader() {
+		this.relatesTo = new LinkedList<String>();
+	}
+
+	private static XMLInputFactory createXMLInputFactory() {
+		XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+		// inbound messages are not authenticated, so no DTDs nor entities
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		xmlInputFactory.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return xmlInputFactory;
+	}
+
+	/**
+	 * Reads the headers of the given SOAP message.
+	 *
+	 * @param soapMessage
+	 *            the inbound SOAP message.
+	 * @return the header reader.
+	 * @throws SOAPException
+	 * @throws XMLStreamException
+	 */
+	static InboundHeaderReader read(SOAPMessage soapMessage)
+			throws SOAPException, XMLStreamException {
+		InboundHeaderReader headerReader = new InboundHeaderReader();
+		SOAPPart soapPart = soapMessage.getSOAPPart();
+		Source source = soapPart.getContent();
+		if (source instanceof StreamSource) {
+			try {
+				headerReader.readStream(source);
+			} finally {
+				// rewinds the SAAJ stream for whoever parses the message next
+				soapPart.getContent();
+			}
+		} else {
+			headerReader.readHeader(soapMessage.getSOAPHeader());
+		}
+		return headerReader;
+	}
+
+	/**
+	 * Reads the given WS-Security header element, as already parsed by the SOAP
+	 * stack.
+	 *
+	 * @param securityElement
+	 *            the wsse:Security header element.
+	 * @return the header reader.
+	 */
+	static InboundHeaderReader read(Element securityElement) {
+		InboundHeaderReader headerReader = new InboundHeaderReader();
+		headerReader.securityHeader = true;
+		headerReader.readSecurityHeader(securityElement);
+		return headerReader;
+	}
+
+	/**
+	 * Gives back whether the message has a WS-Security header.
+	 *
+	 * @return <code>true</code> in case of a WS-Security header.
+	 */
+	boolean hasSecurityHeader() {
+		return this.securityHeader;
+	}
+
+	/**
+	 * Gives back whether the WS-Security header has a timestamp.
+	 *
+	 * @return <code>true</code> in case of a WS-Security timestamp.
+	 */
+	boolean hasTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * Gives back the wsu:Created value of the WS-Security timestamp.
+	 *
+	 * @return the created value, or <code>null</code> if not present.
+	 */
+	String getCreated() {
+		return this.created;
+	}
+
+	/**
+	 * Gives back the wsu:Expires value of the WS-Security timestamp.
+	 *
+	 * @return the expires value, or <code>null</code> if not present.
+	 */
+	String getExpires() {
+		return this.expires;
+	}
+
+	/**
+	 * Gives back the values of all WS-Addressing RelatesTo headers.
+	 *
+	 * @return the RelatesTo values.
+	 */
+	List<String> getRelatesTo() {
+		return this.relatesTo;
+	}
+
+	private void readStream(Source source) throws XMLStreamException {
+		XMLStreamReader reader = XML_INPUT_FACTORY
+				.createXMLStreamReader(source);
+		try {
+			readEnvelope(reader);
+			if (XMLStreamConstants.START_ELEMENT != reader.nextTag()
+					|| false == "Header".equals(reader.getLocalName())) {
+				// no SOAP header, or directly the SOAP body
+				return;
+			}
+			while (XMLStreamConstants.START_ELEMENT == reader.nextTag()) {
+				String namespace = reader.getNamespaceURI();
+				String localName = reader.getLocalName();
+				if (WSConstants.WS_ADDR_NAMESPACE.equals(namespace)
+						&& "RelatesTo".equals(localName)) {
+					this.relatesTo.add(reader.getElementText().trim());
+				} else if (WSConstants.WS_SECURITY_NAMESPACE.equals(namespace)
+						&& "Security".equals(localName)) {
+					this.securityHeader = true;
+					readSecurityHeader(reader);
+				} else {
+					skipElement(reader);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void readEnvelope(XMLStreamReader reader)
+			throws XMLStreamException {
+		while (true) {
+			int event = reader.next();
+			if (XMLStreamConstants.START_ELEMENT == event) {
+				// soap:Envelope
+				return;
+			}
+			if (XMLStreamConstants.DTD == event) {
+				// as SOAP 1.1 and 1.2 both forbid a DTD
+				throw new XMLStreamException("DOCTYPE not allowed");
+			}
+			if (XMLStreamConstants.END_DOCUMENT == event) {
+				throw new XMLStreamException("no SOAP envelope");
+			}
+		}
+	}
+
+	private void readSecurityHeader(XMLStreamReader reader)
+			throws XMLStreamException {
+		while (XMLStreamConstants.START_ELEMENT == reader.nextTag()) {
+			if (false == this.timestamp
+					&& WSConstants.WS_SECURITY_UTILITY_NAMESPACE.equals(reader
+							.getNamespaceURI())
+					&& "Timestamp".equals(reader.getLocalName())) {
+				this.timestamp = true;
+				while (XMLStreamConstants.START_ELEMENT == reader.nextTag()) {
+					if ("Created".equals(reader.getLocalName())) {
+						this.created = reader.getElementText().trim();
+					} else if ("Expires".equals(reader.getLocalName())) {
+						this.expires = reader.getElementText().trim();
+					} else {
+						skipElement(reader);
+					}
+				}
+			} else {
+				skipElement(reader);
+			}
+		}
+	}
+
+	private static void skipElement(XMLStreamReader reader)
+			throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (XMLStreamConstants.START_ELEMENT == event) {
+				depth++;
+			} else if (XMLStreamConstants.END_ELEMENT == event) {
+				depth--;
+			}
+		}
+	}
+
+	private void readHeader(SOAPHeader soapHeader) {
+		if (null == soapHeader) {
+			return;
+		}
+		for (Node node = soapHeader.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			String namespace = node.getNamespaceURI();
+			String localName = node.getLocalName();
+			if (WSConstants.WS_ADDR_NAMESPACE.equals(namespace)
+					&& "RelatesTo".equals(localName)) {
+				this.relatesTo.add(node.getTextContent().trim());
+			} else if (WSConstants.WS_SECURITY_NAMESPACE.equals(namespace)
+					&& "Security".equals(localName)) {
+				this.securityHeader = true;
+				readSecurityHeader((Element) node);
+			}
+		}
+	}
+
+	private void readSecurityHeader(Element securityElement) {
+		for (Node node = securityElement.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			if (WSConstants.WS_SECURITY_UTILITY_NAMESPACE.equals(node
+					.getNamespaceURI())
+					&& "Timestamp".equals(node.getLocalName())) {
+				this.timestamp = true;
+				for (Node child = node.getFirstChild(); null != child; child = child
+						.getNextSibling()) {
+					if (Node.ELEMENT_NODE != child.getNodeType()) {
+						continue;
+					}
+					if ("Created".equals(child.getLocalName())) {
+						this.created = child.getTextContent().trim();
+					} else if ("Expires".equals(child.getLocalName())) {
+						this.expires = child.getTextContent().trim();
+					}
+				}
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+/**
+ * The way the {@link WSSecurityHandler} verifies the WS-Security header of
+ * inbound messages.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum InboundSecurityMode {
+
+	/**
+	 * The complete WS-Security header is processed by the WSS4J security
+	 * engine. This is the default.
+	 */
+	FULL,
+
+	/**
+	 * Only the WS-Security timestamp is read from the SOAP header, and checked
+	 * for presence, creation time and expiry. Everything else within the
+	 * WS-Security header is ignored: signatures are not verified, encrypted
+	 * parts are not decrypted, and security tokens, like username tokens or
+	 * binary security tokens, are not processed. Only use this mode towards
+	 * services of which the responses carry nothing but a timestamp, over a
+	 * channel that is already secured via TLS.
+	 * <p>
+	 * A SAAJ message that was not parsed yet is read via a StAX reader that
+	 * stops at the SOAP body. The JAX-WS RI however hands over SAAJ messages
+	 * that are already parsed, in which case only the SOAP header elements of
+	 * the DOM tree are visited. The gain then comes from skipping the WSS4J
+	 * security engine.
+	 */
+	TIMESTAMP_ONLY
+}
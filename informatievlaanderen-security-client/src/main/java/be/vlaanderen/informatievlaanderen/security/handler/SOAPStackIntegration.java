@@ -0,0 +1,80 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+import javax.xml.ws.BindingProvider;
+
+/**
+ * SOAP stack integration interface. Allows a SOAP stack specific module to
+ * secure a JAX-WS port natively, instead of via the JAX-WS SOAP handler chain.
+ * The JAX-WS SOAP handlers require the SOAP stack to convert each message to
+ * SAAJ, which a native integration can avoid.
+ * <p>
+ * Implementations are discovered via {@link java.util.ServiceLoader}. The
+ * {@link be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity}
+ * component only uses them when explicitly configured to, see
+ * {@link be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity#setSOAPStackIntegration(boolean)}.
+ * <p>
+ * Implementations write the WS-Security header like
+ * {@link WSSecurityMode#STREAMING} and verify inbound messages like
+ * {@link InboundSecurityMode#TIMESTAMP_ONLY}. They must refuse requests that
+ * carry X509 credentials, as they do not sign with them.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public interface SOAPStackIntegration {
+
+	/**
+	 * Checks whether this integration can secure the given JAX-WS port.
+	 * 
+	 * @param bindingProvider
+	 *            the JAX-WS port.
+	 * @return <code>true</code> if supported.
+	 */
+	boolean isSupported(BindingProvider bindingProvider);
+
+	/**
+	 * Enables the security on the given JAX-WS port.
+	 * 
+	 * @param bindingProvider
+	 *            the JAX-WS port.
+	 * @param securityTokenProvider
+	 *            the provider of the security tokens.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 * @throws SecurityException
+	 *             if the security was already enabled on the JAX-WS port via
+	 *             another security token provider.
+	 */
+	void enable(BindingProvider bindingProvider,
+			SecurityTokenProvider securityTokenProvider, String serviceRealm,
+			boolean useWsSecureConversation);
+
+	/**
+	 * Disables the security on the given JAX-WS port.
+	 * 
+	 * @param bindingProvider
+	 *            the JAX-WS port.
+	 */
+	void disable(BindingProvider bindingProvider);
+}
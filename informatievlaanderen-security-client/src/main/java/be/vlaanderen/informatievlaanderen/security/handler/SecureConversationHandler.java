@@ -29,6 +29,7 @@ import javax.xml.ws.handler.soap.SOAPMessageContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
 import be.vlaanderen.informatievlaanderen.security.SecurityToken;
 
 /**
@@ -37,7 +38,8 @@ import be.vlaanderen.informatievlaanderen.security.SecurityToken;
  * This JAX-WS handler adds a WS-Security SOAP header using a secure
  * conversation token that it retrieves from the Informatie Vlaanderen Security component.
  * Basically this JAX-WS handler configures a downstream WS-Security JAX-WS
- * handler using a secure conversation token.
+ * handler using a secure conversation token. The token is passed via the SOAP
+ * message context, so a single handler chain can serve concurrent requests.
  * 
  * @author Frank Cornelis
  * 
@@ -50,8 +52,6 @@ public class SecureConversationHandler implements InformatieVlaanderenSOAPHandle
 
 	private final SecurityTokenProvider securityTokenProvider;
 
-	private final WSSecurityHandler wsSecurityHandler;
-
 	private final String serviceRealm;
 
 	/**
@@ -60,17 +60,35 @@ public class SecureConversationHandler implements InformatieVlaanderenSOAPHandle
 	 * @param securityTokenProvider
 	 *            the Informatie Vlaanderen Security component from which to retrieve the secure
 	 *            conversation tokens to be used during web service calls.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 */
+	public SecureConversationHandler(
+			SecurityTokenProvider securityTokenProvider, String serviceRealm) {
+		this.securityTokenProvider = securityTokenProvider;
+		this.serviceRealm = serviceRealm;
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param securityTokenProvider
+	 *            the Informatie Vlaanderen Security component from which to retrieve the secure
+	 *            conversation tokens to be used during web service calls.
 	 * @param wsSecurityHandler
-	 *            the WS-Security handler.
+	 *            the WS-Security handler. Not used anymore.
 	 * @param serviceRealm
 	 *            the optional service realm.
+	 * @deprecated the secure conversation token is passed via the SOAP message
+	 *             context. Use
+	 *             {@link SecureConversationHandler#SecureConversationHandler(SecurityTokenProvider, String)}
+	 *             instead.
 	 */
+	@Deprecated
 	public SecureConversationHandler(
 			SecurityTokenProvider securityTokenProvider,
 			WSSecurityHandler wsSecurityHandler, String serviceRealm) {
-		this.securityTokenProvider = securityTokenProvider;
-		this.wsSecurityHandler = wsSecurityHandler;
-		this.serviceRealm = serviceRealm;
+		this(securityTokenProvider, serviceRealm);
 	}
 
 	/**
@@ -101,7 +119,9 @@ public class SecureConversationHandler implements InformatieVlaanderenSOAPHandle
 	private void handleOutboundMessage(SOAPMessageContext context) {
 		String location = (String) context
 				.get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY);
-		LOG.debug("location: " + location);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("location: " + location);
+		}
 
 		String serviceRealm;
 		if (null != this.serviceRealm) {
@@ -109,12 +129,15 @@ public class SecureConversationHandler implements InformatieVlaanderenSOAPHandle
 		} else {
 			serviceRealm = location;
 		}
-		LOG.debug("service realm: " + serviceRealm);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("service realm: " + serviceRealm);
+		}
 
 		SecurityToken secureConversationToken = this.securityTokenProvider
 				.getSecureConversationToken(location, serviceRealm);
 
-		this.wsSecurityHandler.setKey(secureConversationToken.getKey(),
+		WSSecurityHandler.setKey(context,
+				ImmutableSecurityToken.getSharedKey(secureConversationToken),
 				secureConversationToken.getAttachedReference(),
 				secureConversationToken.getToken(), false);
 	}
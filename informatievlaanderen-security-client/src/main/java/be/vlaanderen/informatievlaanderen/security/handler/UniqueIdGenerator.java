@@ -0,0 +1,102 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.ws.security.WsuIdAllocator;
+
+/**
+ * Generator of unique identifiers for WS-Addressing MessageID values and
+ * wsu:Id attributes.
+ * <p>
+ * {@link UUID#randomUUID()} draws from a single shared {@link java.security.SecureRandom}
+ * and the WSS4J default identifier allocator is a synchronized counter, so
+ * both serialize all threads that are securing messages. Here every thread
+ * uses its own {@link ThreadLocalRandom}. These identifiers only have to be
+ * unique, not unpredictable.
+ * <p>
+ * WSS4J asks for a secure identifier via
+ * {@link #createSecureId(String, Object)} when the identifier has to be
+ * unpredictable. These are drawn from a {@link SecureRandom} per thread, so
+ * they do not serialize the threads either.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public final class UniqueIdGenerator implements WsuIdAllocator {
+
+	static final UniqueIdGenerator INSTANCE = new UniqueIdGenerator();
+
+	private static final ThreadLocal<SecureRandom> SECURE_RANDOM = new ThreadLocal<SecureRandom>() {
+
+		@Override
+		protected SecureRandom initialValue() {
+			return new SecureRandom();
+		}
+	};
+
+	private UniqueIdGenerator() {
+		super();
+	}
+
+	/**
+	 * Creates a new random (type 4) UUID.
+	 * 
+	 * @return the UUID in its string representation.
+	 */
+	public static String createUUID() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return createUUID(random.nextLong(), random.nextLong());
+	}
+
+	/**
+	 * Creates a new random (type 4) UUID that is unpredictable.
+	 * 
+	 * @return the UUID in its string representation.
+	 */
+	private static String createSecureUUID() {
+		SecureRandom random = SECURE_RANDOM.get();
+		return createUUID(random.nextLong(), random.nextLong());
+	}
+
+	private static String createUUID(long mostSigBits, long leastSigBits) {
+		// version 4
+		mostSigBits = (mostSigBits & 0xffffffffffff0fffL) | 0x0000000000004000L;
+		// IETF variant
+		leastSigBits = (leastSigBits & 0x3fffffffffffffffL) | 0x8000000000000000L;
+		return new UUID(mostSigBits, leastSigBits).toString();
+	}
+
+	public String createId(String prefix, Object o) {
+		if (null == prefix) {
+			return "_" + createUUID();
+		}
+		return prefix + createUUID();
+	}
+
+	public String createSecureId(String prefix, Object o) {
+		if (null == prefix) {
+			return createSecureUUID();
+		}
+		return prefix + createSecureUUID();
+	}
+}
@@ -20,29 +20,24 @@ package be.vlaanderen.informatievlaanderen.security.handler;
 
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.JAXBException;
 import javax.xml.namespace.QName;
-import javax.xml.soap.SOAPElement;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
-import javax.xml.soap.SOAPFactory;
 import javax.xml.soap.SOAPHeader;
-import javax.xml.soap.SOAPHeaderElement;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.ws.ProtocolException;
 import javax.xml.ws.handler.MessageContext;
 import javax.xml.ws.handler.soap.SOAPMessageContext;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Element;
 
 import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
-import be.vlaanderen.informatievlaanderen.security.jaxb.wsaddr.ObjectFactory;
-import be.vlaanderen.informatievlaanderen.security.jaxb.wsaddr.RelatesToType;
 
 /**
  * A JAX-WS SOAP handler that implements the WS-Addressing.
@@ -60,23 +55,16 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 	private static final String MESSAGE_ID_CONTEXT_ATTRIBUTE = WSAddressingHandler.class
 			.getName() + ".messageId";
 
-	private final JAXBContext jaxbContext;
+	private static final String ACTION_CONTEXT_ATTRIBUTE = WSAddressingHandler.class
+			.getName() + ".action";
+
+	private static final String TO_CONTEXT_ATTRIBUTE = WSAddressingHandler.class
+			.getName() + ".to";
 
 	private String action;
 
 	private String to;
 
-	/**
-	 * Default constructor.
-	 */
-	public WSAddressingHandler() {
-		try {
-			this.jaxbContext = JAXBContext.newInstance(ObjectFactory.class);
-		} catch (JAXBException e) {
-			throw new ProtocolException(e);
-		}
-	}
-
 	public boolean handleMessage(SOAPMessageContext context) {
 		Boolean outboundProperty = (Boolean) context
 				.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY);
@@ -85,31 +73,49 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 				handleOutboundMessage(context);
 			} catch (SOAPException e) {
 				throw new ProtocolException(e);
+			} catch (ParserConfigurationException e) {
+				throw new ProtocolException(e);
 			}
 		} else {
-			handleInboundMessage(context);
+			try {
+				handleInboundMessage(context);
+			} catch (SOAPException e) {
+				throw new ProtocolException(e);
+			} catch (XMLStreamException e) {
+				throw new ProtocolException(e);
+			}
 		}
 		return true;
 	}
 
-	private void handleInboundMessage(SOAPMessageContext context) {
+	private void handleInboundMessage(SOAPMessageContext context)
+			throws SOAPException, XMLStreamException {
 		String messageId = (String) context.get(MESSAGE_ID_CONTEXT_ATTRIBUTE);
 		LOG.debug("checking RelatesTo message id: " + messageId);
-		Object[] headers = context.getHeaders(new QName(
-				WSConstants.WS_ADDR_NAMESPACE, "RelatesTo"), this.jaxbContext,
-				false);
-		for (Object headerObject : headers) {
-			JAXBElement<RelatesToType> element = (JAXBElement<RelatesToType>) headerObject;
-			RelatesToType relatesTo = element.getValue();
-			if (false == messageId.equals(relatesTo.getValue())) {
+		/*
+		 * Only the SOAP header is read, so large responses do not get parsed
+		 * completely just to check the RelatesTo value.
+		 */
+		InboundHeaderReader headerReader = InboundHeaderReader.read(context
+				.getMessage());
+		for (String relatesTo : headerReader.getRelatesTo()) {
+			if (false == messageId.equals(relatesTo)) {
 				throw new ProtocolException("incorrect a:RelatesTo value");
 			}
 		}
 	}
 
 	private void handleOutboundMessage(SOAPMessageContext context)
-			throws SOAPException {
+			throws SOAPException, ParserConfigurationException {
 		LOG.debug("adding WS-Addressing headers");
+		String action = (String) context.get(ACTION_CONTEXT_ATTRIBUTE);
+		String to;
+		if (null != action) {
+			to = (String) context.get(TO_CONTEXT_ATTRIBUTE);
+		} else {
+			action = this.action;
+			to = this.to;
+		}
 		SOAPEnvelope envelope = context.getMessage().getSOAPPart()
 				.getEnvelope();
 		SOAPHeader header = envelope.getHeader();
@@ -119,9 +125,11 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 
 		String wsuPrefix = null;
 		String wsAddrPrefix = null;
+		Set<String> namespacePrefixes = new HashSet<String>();
 		Iterator namespacePrefixesIter = envelope.getNamespacePrefixes();
 		while (namespacePrefixesIter.hasNext()) {
 			String namespacePrefix = (String) namespacePrefixesIter.next();
+			namespacePrefixes.add(namespacePrefix);
 			String namespace = envelope.getNamespaceURI(namespacePrefix);
 			if (WSConstants.WS_ADDR_NAMESPACE.equals(namespace)) {
 				wsAddrPrefix = namespacePrefix;
@@ -131,7 +139,7 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 			}
 		}
 		if (null == wsAddrPrefix) {
-			wsAddrPrefix = getUniquePrefix("a", envelope);
+			wsAddrPrefix = getUniquePrefix("a", namespacePrefixes);
 			envelope.addNamespaceDeclaration(wsAddrPrefix,
 					WSConstants.WS_ADDR_NAMESPACE);
 		}
@@ -147,37 +155,13 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 					WSConstants.WS_SECURITY_UTILITY_NAMESPACE);
 		}
 
-		SOAPFactory factory = SOAPFactory.newInstance();
-
-		SOAPHeaderElement actionHeaderElement = header
-				.addHeaderElement(new QName(WSConstants.WS_ADDR_NAMESPACE,
-						"Action", wsAddrPrefix));
-		actionHeaderElement.setMustUnderstand(true);
-		actionHeaderElement.addTextNode(this.action);
-
-		SOAPHeaderElement messageIdElement = header.addHeaderElement(new QName(
-				WSConstants.WS_ADDR_NAMESPACE, "MessageID", wsAddrPrefix));
-		String messageId = "urn:uuid:" + UUID.randomUUID().toString();
+		WSAddressingHeaderTemplate template = WSAddressingHeaderTemplate
+				.getInstance(envelope.getNamespaceURI(), envelope.getPrefix(),
+						wsAddrPrefix, action, to);
+		String messageId = "urn:uuid:" + UniqueIdGenerator.createUUID();
 		context.put(MESSAGE_ID_CONTEXT_ATTRIBUTE, messageId);
-		messageIdElement.addTextNode(messageId);
-
-		SOAPHeaderElement replyToElement = header.addHeaderElement(new QName(
-				WSConstants.WS_ADDR_NAMESPACE, "ReplyTo", wsAddrPrefix));
-		SOAPElement addressElement = factory.createElement("Address",
-				wsAddrPrefix, WSConstants.WS_ADDR_NAMESPACE);
-		addressElement
-				.addTextNode("http://www.w3.org/2005/08/addressing/anonymous");
-		replyToElement.addChildElement(addressElement);
-
-		SOAPHeaderElement toElement = header.addHeaderElement(new QName(
-				WSConstants.WS_ADDR_NAMESPACE, "To", wsAddrPrefix));
-		toElement.setMustUnderstand(true);
-
-		toElement.addTextNode(this.to);
-
-		String toIdentifier = "to-id-" + UUID.randomUUID().toString();
-		toElement.addAttribute(new QName(
-				WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Id", wsuPrefix),
+		String toIdentifier = "to-id-" + UniqueIdGenerator.createUUID();
+		Element toElement = template.appendTo(header, messageId, wsuPrefix,
 				toIdentifier);
 		try {
 			toElement.setIdAttributeNS(
@@ -189,25 +173,14 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 		context.put(TO_ID_CONTEXT_ATTRIBUTE, toIdentifier);
 	}
 
-	private String getUniquePrefix(String preferredPrefix, SOAPEnvelope envelope) {
-		int suffixNr = 0;
-		boolean conflict;
+	private String getUniquePrefix(String preferredPrefix,
+			Set<String> namespacePrefixes) {
 		String prefix = preferredPrefix;
-		do {
-			conflict = false;
-			Iterator namespacePrefixesIter = envelope.getNamespacePrefixes();
-			while (namespacePrefixesIter.hasNext()) {
-				String existingPrefix = (String) namespacePrefixesIter.next();
-				if (prefix.equals(existingPrefix)) {
-					conflict = true;
-					break;
-				}
-			}
-			if (conflict) {
-				suffixNr++;
-				prefix = preferredPrefix + suffixNr;
-			}
-		} while (conflict);
+		int suffixNr = 0;
+		while (namespacePrefixes.contains(prefix)) {
+			suffixNr++;
+			prefix = preferredPrefix + suffixNr;
+		}
 		return prefix;
 	}
 
@@ -239,6 +212,49 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 		this.to = to;
 	}
 
+	/**
+	 * Sets the WS-Addressing parameters for a single request. The parameters
+	 * are kept within the given (request) context, so that a single handler
+	 * instance can serve concurrent requests.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 * @param action
+	 *            the WS-Addressing Action element value.
+	 * @param to
+	 *            the WS-Addressing To element value
+	 */
+	public static void setAddressing(Map<String, Object> context,
+			String action, String to) {
+		context.put(ACTION_CONTEXT_ATTRIBUTE, action);
+		context.put(TO_CONTEXT_ATTRIBUTE, to);
+	}
+
+	/**
+	 * Gives back the WS-Addressing Action value set for a single request.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 * @return the Action value, or <code>null</code> if no WS-Addressing
+	 *         parameters were set for the request.
+	 * @see WSAddressingHandler#setAddressing(Map, String, String)
+	 */
+	public static String getAction(Map<String, ?> context) {
+		return (String) context.get(ACTION_CONTEXT_ATTRIBUTE);
+	}
+
+	/**
+	 * Gives back the WS-Addressing To value set for a single request.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 * @return the To value.
+	 * @see WSAddressingHandler#setAddressing(Map, String, String)
+	 */
+	public static String getTo(Map<String, ?> context) {
+		return (String) context.get(TO_CONTEXT_ATTRIBUTE);
+	}
+
 	/**
 	 * Gives back the u:Id attribute value of the WS-Addressing To element.
 	 * 
@@ -246,7 +262,40 @@ public class WSAddressingHandler implements InformatieVlaanderenSOAPHandler {
 	 *            the JAX-WS SOAP message context.
 	 * @return the Id attribute value of the To element.
 	 */
-	public static String getToIdentifier(SOAPMessageContext context) {
+	public static String getToIdentifier(Map<String, ?> context) {
 		return (String) context.get(TO_ID_CONTEXT_ATTRIBUTE);
 	}
+
+	/**
+	 * Appends the WS-Addressing Action, MessageID, ReplyTo and To headers to
+	 * the given SOAP header element. This is meant for SOAP stack integrations
+	 * that add their SOAP headers themselves instead of running this handler.
+	 * The SOAP header element is not part of the SOAP envelope, so every
+	 * appended header element declares its own namespaces.
+	 * 
+	 * @param soapHeader
+	 *            the SOAP header element, having the namespace and prefix of
+	 *            the SOAP envelope.
+	 * @param action
+	 *            the WS-Addressing Action value.
+	 * @param to
+	 *            the WS-Addressing To value.
+	 * @return the WS-Addressing MessageID value, against which the RelatesTo
+	 *         value of the response should be checked.
+	 * @throws ParserConfigurationException
+	 */
+	public static String appendHeaders(Element soapHeader, String action,
+			String to) throws ParserConfigurationException {
+		WSAddressingHeaderTemplate template = WSAddressingHeaderTemplate
+				.getInstance(soapHeader.getNamespaceURI(),
+						soapHeader.getPrefix(), "a", action, to);
+		String messageId = "urn:uuid:" + UniqueIdGenerator.createUUID();
+		/*
+		 * Using "wsu" is very important for the IP-STS X509 credential. See
+		 * handleOutboundMessage.
+		 */
+		template.appendDetachedTo(soapHeader, messageId, "wsu", "to-id-"
+				+ UniqueIdGenerator.createUUID());
+		return messageId;
+	}
 }
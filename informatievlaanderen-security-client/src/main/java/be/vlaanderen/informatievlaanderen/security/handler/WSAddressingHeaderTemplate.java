@@ -0,0 +1,299 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPHeaderElement;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+
+/**
+ * Pre-built WS-Addressing Action, MessageID, ReplyTo and To header elements for
+ * a given action and endpoint.
+ * <p>
+ * The elements are built once and afterwards only imported into the SOAP
+ * messages, after which the MessageID value and the wsu:Id attribute of the To
+ * element are filled in. The template document itself is never modified after
+ * construction, so templates can be shared between threads. SAAJ
+ * implementations that do not import into SAAJ elements, like the one of
+ * Axis2, get the header elements built via the SAAJ API instead.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class WSAddressingHeaderTemplate {
+
+	private static final Log LOG = LogFactory
+			.getLog(WSAddressingHeaderTemplate.class);
+
+	private static final ConcurrentMap<String, WSAddressingHeaderTemplate> templates = new ConcurrentHashMap<String, WSAddressingHeaderTemplate>();
+
+	private final String soapNamespace;
+
+	private final String soapPrefix;
+
+	private final String wsAddrPrefix;
+
+	private final String action;
+
+	private final String to;
+
+	private final Element actionElement;
+
+	private final Element messageIdElement;
+
+	private final Element replyToElement;
+
+	private final Element toElement;
+
+	private WSAddressingHeaderTemplate(String soapNamespace,
+			String soapPrefix, String wsAddrPrefix, String action, String to)
+			throws ParserConfigurationException {
+		this.soapNamespace = soapNamespace;
+		this.soapPrefix = soapPrefix;
+		this.wsAddrPrefix = wsAddrPrefix;
+		this.action = action;
+		this.to = to;
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.newDocument();
+		String mustUnderstand;
+		if (SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE.equals(soapNamespace)) {
+			mustUnderstand = "true";
+		} else {
+			mustUnderstand = "1";
+		}
+
+		this.actionElement = createElement(document, wsAddrPrefix, "Action");
+		this.actionElement.setAttributeNS(soapNamespace, soapPrefix
+				+ ":mustUnderstand", mustUnderstand);
+		this.actionElement.appendChild(document.createTextNode(action));
+
+		this.messageIdElement = createElement(document, wsAddrPrefix,
+				"MessageID");
+
+		this.replyToElement = createElement(document, wsAddrPrefix, "ReplyTo");
+		Element addressElement = createElement(document, wsAddrPrefix,
+				"Address");
+		addressElement.appendChild(document
+				.createTextNode("http://www.w3.org/2005/08/addressing/anonymous"));
+		this.replyToElement.appendChild(addressElement);
+
+		this.toElement = createElement(document, wsAddrPrefix, "To");
+		this.toElement.setAttributeNS(soapNamespace, soapPrefix
+				+ ":mustUnderstand", mustUnderstand);
+		this.toElement.appendChild(document.createTextNode(to));
+	}
+
+	private static Element createElement(Document document,
+			String wsAddrPrefix, String localName) {
+		Element element = document.createElementNS(
+				WSConstants.WS_ADDR_NAMESPACE, wsAddrPrefix + ":" + localName);
+		/*
+		 * Makes sure the attribute map exists, so that importing the element
+		 * afterwards only reads from the template document.
+		 */
+		element.getAttributes();
+		return element;
+	}
+
+	/**
+	 * Gives back the template for the given SOAP envelope namespace, namespace
+	 * prefixes, action and endpoint.
+	 * 
+	 * @param soapNamespace
+	 *            the SOAP envelope namespace.
+	 * @param soapPrefix
+	 *            the namespace prefix of the SOAP envelope.
+	 * @param wsAddrPrefix
+	 *            the WS-Addressing namespace prefix.
+	 * @param action
+	 *            the WS-Addressing Action value.
+	 * @param to
+	 *            the WS-Addressing To value.
+	 * @return the header template.
+	 * @throws ParserConfigurationException
+	 */
+	static WSAddressingHeaderTemplate getInstance(String soapNamespace,
+			String soapPrefix, String wsAddrPrefix, String action, String to)
+			throws ParserConfigurationException {
+		String key = soapNamespace + " " + soapPrefix + " " + wsAddrPrefix
+				+ " " + action + " " + to;
+		WSAddressingHeaderTemplate template = templates.get(key);
+		if (null != template) {
+			return template;
+		}
+		LOG.debug("creating WS-Addressing header template for action: "
+				+ action + " to: " + to);
+		template = new WSAddressingHeaderTemplate(soapNamespace, soapPrefix,
+				wsAddrPrefix, action, to);
+		WSAddressingHeaderTemplate existingTemplate = templates.putIfAbsent(
+				key, template);
+		if (null != existingTemplate) {
+			return existingTemplate;
+		}
+		return template;
+	}
+
+	/**
+	 * Appends the WS-Addressing header elements to the given SOAP header.
+	 * 
+	 * @param header
+	 *            the SOAP header.
+	 * @param messageId
+	 *            the WS-Addressing MessageID value.
+	 * @param wsuPrefix
+	 *            the WS-Security utility namespace prefix.
+	 * @param toIdentifier
+	 *            the wsu:Id attribute value of the To element.
+	 * @return the To element within the SOAP header.
+	 * @throws SOAPException
+	 */
+	Element appendTo(SOAPHeader header, String messageId, String wsuPrefix,
+			String toIdentifier) throws SOAPException {
+		Document document = header.getOwnerDocument();
+
+		Node actionNode = document.importNode(this.actionElement, true);
+		if (false == actionNode instanceof SOAPElement) {
+			/*
+			 * Axis2 SAAJ imports as plain DOM elements, and copying those into
+			 * its SOAP header never ends.
+			 */
+			return addHeaderElements(header, messageId, wsuPrefix,
+					toIdentifier);
+		}
+		header.appendChild(actionNode);
+
+		Element messageIdElement = (Element) document.importNode(
+				this.messageIdElement, true);
+		messageIdElement.appendChild(document.createTextNode(messageId));
+		header.appendChild(messageIdElement);
+
+		header.appendChild(document.importNode(this.replyToElement, true));
+
+		Element toElement = (Element) document
+				.importNode(this.toElement, true);
+		toElement.setAttributeNS(WSConstants.WS_SECURITY_UTILITY_NAMESPACE,
+				wsuPrefix + ":Id", toIdentifier);
+		header.appendChild(toElement);
+		return toElement;
+	}
+
+	/**
+	 * Appends the WS-Addressing header elements to the given SOAP header
+	 * element that is not part of a SOAP envelope. SOAP stack integrations add
+	 * the header elements one by one to their messages, so every header
+	 * element declares the namespaces it uses.
+	 * 
+	 * @param header
+	 *            the detached SOAP header element.
+	 * @param messageId
+	 *            the WS-Addressing MessageID value.
+	 * @param wsuPrefix
+	 *            the WS-Security utility namespace prefix.
+	 * @param toIdentifier
+	 *            the wsu:Id attribute value of the To element.
+	 * @return the To element within the SOAP header.
+	 */
+	Element appendDetachedTo(Element header, String messageId,
+			String wsuPrefix, String toIdentifier) {
+		Document document = header.getOwnerDocument();
+
+		Element actionElement = (Element) document.importNode(
+				this.actionElement, true);
+		declareNamespaces(actionElement, true);
+		header.appendChild(actionElement);
+
+		Element messageIdElement = (Element) document.importNode(
+				this.messageIdElement, true);
+		declareNamespaces(messageIdElement, false);
+		messageIdElement.appendChild(document.createTextNode(messageId));
+		header.appendChild(messageIdElement);
+
+		Element replyToElement = (Element) document.importNode(
+				this.replyToElement, true);
+		declareNamespaces(replyToElement, false);
+		header.appendChild(replyToElement);
+
+		Element toElement = (Element) document
+				.importNode(this.toElement, true);
+		declareNamespaces(toElement, true);
+		toElement.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:"
+				+ wsuPrefix, WSConstants.WS_SECURITY_UTILITY_NAMESPACE);
+		toElement.setAttributeNS(WSConstants.WS_SECURITY_UTILITY_NAMESPACE,
+				wsuPrefix + ":Id", toIdentifier);
+		header.appendChild(toElement);
+		return toElement;
+	}
+
+	private void declareNamespaces(Element element, boolean mustUnderstand) {
+		element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:"
+				+ this.wsAddrPrefix, WSConstants.WS_ADDR_NAMESPACE);
+		if (mustUnderstand) {
+			element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+					"xmlns:" + this.soapPrefix, this.soapNamespace);
+		}
+	}
+
+	private Element addHeaderElements(SOAPHeader header, String messageId,
+			String wsuPrefix, String toIdentifier) throws SOAPException {
+		SOAPHeaderElement actionElement = header.addHeaderElement(new QName(
+				WSConstants.WS_ADDR_NAMESPACE, "Action", this.wsAddrPrefix));
+		actionElement.setMustUnderstand(true);
+		actionElement.addTextNode(this.action);
+
+		SOAPHeaderElement messageIdElement = header.addHeaderElement(new QName(
+				WSConstants.WS_ADDR_NAMESPACE, "MessageID", this.wsAddrPrefix));
+		messageIdElement.addTextNode(messageId);
+
+		SOAPHeaderElement replyToElement = header.addHeaderElement(new QName(
+				WSConstants.WS_ADDR_NAMESPACE, "ReplyTo", this.wsAddrPrefix));
+		replyToElement.addChildElement(
+				new QName(WSConstants.WS_ADDR_NAMESPACE, "Address",
+						this.wsAddrPrefix)).addTextNode(
+				"http://www.w3.org/2005/08/addressing/anonymous");
+
+		SOAPHeaderElement toElement = header.addHeaderElement(new QName(
+				WSConstants.WS_ADDR_NAMESPACE, "To", this.wsAddrPrefix));
+		toElement.setMustUnderstand(true);
+		toElement.addTextNode(this.to);
+		toElement.addAttribute(new QName(
+				WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Id", wsuPrefix),
+				toIdentifier);
+		return toElement;
+	}
+}
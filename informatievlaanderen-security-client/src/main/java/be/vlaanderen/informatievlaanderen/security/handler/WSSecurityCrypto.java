@@ -60,6 +60,21 @@ public class WSSecurityCrypto implements Crypto {
 		this.certificate = certificate;
 	}
 
+	/**
+	 * Checks whether this crypto provides the given key material.
+	 * 
+	 * @param privateKey
+	 *            the private key.
+	 * @param certificate
+	 *            the X509 certificate.
+	 * @return <code>true</code> if this crypto can be reused for the given key
+	 *         material.
+	 */
+	boolean isFor(PrivateKey privateKey, X509Certificate certificate) {
+		return this.privateKey == privateKey
+				&& this.certificate == certificate;
+	}
+
 	public byte[] getBytesFromCertificates(X509Certificate[] certs)
 			throws WSSecurityException {
 		LOG.debug("getBytesFromCertificates");
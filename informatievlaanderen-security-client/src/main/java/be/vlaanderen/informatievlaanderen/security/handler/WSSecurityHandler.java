@@ -20,10 +20,12 @@ package be.vlaanderen.informatievlaanderen.security.handler;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -35,6 +37,7 @@ import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPHeader;
 import javax.xml.soap.SOAPMessage;
 import javax.xml.soap.SOAPPart;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.ws.ProtocolException;
 import javax.xml.ws.handler.MessageContext;
 import javax.xml.ws.handler.soap.SOAPMessageContext;
@@ -56,6 +59,8 @@ import org.apache.ws.security.message.token.Timestamp;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.signature.XMLSignatureException;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.w3c.dom.Element;
 
 /**
@@ -69,6 +74,55 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 
 	private static final Log LOG = LogFactory.getLog(WSSecurityHandler.class);
 
+	private static final String KEY_CONTEXT_ATTRIBUTE = WSSecurityHandler.class
+			.getName() + ".key";
+
+	private static final String TOKEN_IDENTIFIER_CONTEXT_ATTRIBUTE = WSSecurityHandler.class
+			.getName() + ".tokenIdentifier";
+
+	private static final String TOKEN_CONTEXT_ATTRIBUTE = WSSecurityHandler.class
+			.getName() + ".token";
+
+	private static final String SAML_REFERENCE_CONTEXT_ATTRIBUTE = WSSecurityHandler.class
+			.getName() + ".samlReference";
+
+	private static final String PRIVATE_KEY_CONTEXT_ATTRIBUTE = WSSecurityHandler.class
+			.getName() + ".privateKey";
+
+	private static final String CERTIFICATE_CONTEXT_ATTRIBUTE = WSSecurityHandler.class
+			.getName() + ".certificate";
+
+	private static final Set<QName> HEADERS = Collections
+			.singleton(new QName(
+					be.vlaanderen.informatievlaanderen.security.client.WSConstants.WS_SECURITY_NAMESPACE,
+					"Security"));
+
+	/*
+	 * The WSS4J configurations are only read during signing, so they can be
+	 * shared between all requests.
+	 */
+	private static final WSSConfig WSS_CONFIG = WSSConfig
+			.getNewInstance();
+
+	private static final WSSConfig X509_WSS_CONFIG = WSSConfig
+			.getNewInstance();
+
+	static {
+		WSS_CONFIG.setIdAllocator(UniqueIdGenerator.INSTANCE);
+		X509_WSS_CONFIG.setIdAllocator(UniqueIdGenerator.INSTANCE);
+		X509_WSS_CONFIG.setWsiBSPCompliant(false);
+	}
+
+	/*
+	 * Same time-to-live values as the WSS4J timestamp validation.
+	 */
+	private static final long TIMESTAMP_TTL = 300 * 1000;
+
+	private static final long TIMESTAMP_FUTURE_TTL = 60 * 1000;
+
+	private static final DateTimeFormatter DATE_TIME_PARSER = ISODateTimeFormat
+			.dateTimeParser();
+
 	private String username;
 
 	private String password;
@@ -85,6 +139,48 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 
 	private boolean samlReference;
 
+	private volatile WSSecurityCrypto crypto;
+
+	private final WSSecurityMode wsSecurityMode;
+
+	private final InboundSecurityMode inboundSecurityMode;
+
+	/**
+	 * Default constructor. The WS-Security header gets built via the WSS4J DOM
+	 * API.
+	 */
+	public WSSecurityHandler() {
+		this(WSSecurityMode.DOM);
+	}
+
+	/**
+	 * Constructor. The WS-Security header of inbound messages gets fully
+	 * processed.
+	 * 
+	 * @param wsSecurityMode
+	 *            the way to build the WS-Security header of outbound
+	 *            messages.
+	 */
+	public WSSecurityHandler(WSSecurityMode wsSecurityMode) {
+		this(wsSecurityMode, InboundSecurityMode.FULL);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param wsSecurityMode
+	 *            the way to build the WS-Security header of outbound
+	 *            messages.
+	 * @param inboundSecurityMode
+	 *            the way to verify the WS-Security header of inbound
+	 *            messages.
+	 */
+	public WSSecurityHandler(WSSecurityMode wsSecurityMode,
+			InboundSecurityMode inboundSecurityMode) {
+		this.wsSecurityMode = wsSecurityMode;
+		this.inboundSecurityMode = inboundSecurityMode;
+	}
+
 	public boolean handleMessage(SOAPMessageContext context) {
 		Boolean outboundProperty = (Boolean) context
 				.get(MessageContext.MESSAGE_OUTBOUND_PROPERTY);
@@ -107,9 +203,16 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 		return true;
 	}
 
-	private void handleInboundMessage(SOAPMessageContext context)
-			throws WSSecurityException {
+	/**
+	 * Verifies the WS-Security header of the inbound message.
+	 */
+	void handleInboundMessage(SOAPMessageContext context)
+			throws WSSecurityException, SOAPException, XMLStreamException {
 		LOG.debug("checking WS-Security header");
+		if (InboundSecurityMode.TIMESTAMP_ONLY == this.inboundSecurityMode) {
+			verifyTimestamp(context);
+			return;
+		}
 		SOAPMessage soapMessage = context.getMessage();
 		SOAPPart soapPart = soapMessage.getSOAPPart();
 
@@ -138,9 +241,111 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 				+ receivedTimestamp.getExpires());
 	}
 
+	/**
+	 * Checks the WS-Security timestamp the same way as WSS4J does, but only
+	 * reads the SOAP header. The SOAP body is passed through as is.
+	 */
+	private void verifyTimestamp(SOAPMessageContext context)
+			throws SOAPException, XMLStreamException {
+		verifyTimestamp(InboundHeaderReader.read(context.getMessage()));
+	}
+
+	/**
+	 * Verifies the timestamp of the given WS-Security header, for SOAP stacks
+	 * that parse the SOAP headers themselves. This corresponds with
+	 * {@link InboundSecurityMode#TIMESTAMP_ONLY}.
+	 * 
+	 * @param securityElement
+	 *            the wsse:Security header element of the inbound message.
+	 * @throws SecurityException
+	 *             in case of a missing or invalid timestamp.
+	 */
+	public void verifySecurityHeader(Element securityElement) {
+		verifyTimestamp(InboundHeaderReader.read(securityElement));
+	}
+
+	private void verifyTimestamp(InboundHeaderReader headerReader) {
+		if (false == headerReader.hasSecurityHeader()) {
+			throw new SecurityException("no WS-Security header");
+		}
+		if (false == headerReader.hasTimestamp()) {
+			throw new SecurityException("no WS-Security timestamp");
+		}
+		if (null == headerReader.getCreated()) {
+			throw new SecurityException("no WS-Security timestamp created");
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("WS-Security timestamp created: "
+					+ headerReader.getCreated());
+			LOG.debug("WS-Security timestamp expires: "
+					+ headerReader.getExpires());
+		}
+		long now = System.currentTimeMillis();
+		long created = DATE_TIME_PARSER.parseMillis(headerReader.getCreated());
+		if (created > now + TIMESTAMP_FUTURE_TTL) {
+			throw new SecurityException(
+					"WS-Security timestamp created in the future");
+		}
+		if (created < now - TIMESTAMP_TTL) {
+			throw new SecurityException("WS-Security timestamp too old");
+		}
+		if (null != headerReader.getExpires()
+				&& DATE_TIME_PARSER.parseMillis(headerReader.getExpires()) <= now) {
+			throw new SecurityException("WS-Security timestamp expired");
+		}
+	}
+
 	private void handleOutboundMessage(SOAPMessageContext context)
 			throws WSSecurityException, ConversationException, SOAPException,
-			IOException, XMLSignatureException, XMLSecurityException {
+			IOException, XMLSignatureException, XMLSecurityException,
+			XMLStreamException, GeneralSecurityException {
+		/*
+		 * Per-request state set via the request context takes precedence over
+		 * the state configured on this handler instance.
+		 */
+		byte[] key = (byte[]) context.get(KEY_CONTEXT_ATTRIBUTE);
+		String tokenIdentifier;
+		Element token;
+		boolean samlReference;
+		if (null != key) {
+			tokenIdentifier = (String) context
+					.get(TOKEN_IDENTIFIER_CONTEXT_ATTRIBUTE);
+			token = (Element) context.get(TOKEN_CONTEXT_ATTRIBUTE);
+			Boolean samlReferenceAttribute = (Boolean) context
+					.get(SAML_REFERENCE_CONTEXT_ATTRIBUTE);
+			samlReference = null == samlReferenceAttribute
+					|| samlReferenceAttribute;
+		} else {
+			key = this.key;
+			tokenIdentifier = this.tokenIdentifier;
+			token = this.token;
+			samlReference = this.samlReference;
+		}
+		X509Certificate certificate = (X509Certificate) context
+				.get(CERTIFICATE_CONTEXT_ATTRIBUTE);
+		PrivateKey privateKey;
+		if (null != certificate) {
+			privateKey = (PrivateKey) context
+					.get(PRIVATE_KEY_CONTEXT_ATTRIBUTE);
+		} else {
+			certificate = this.certificate;
+			privateKey = this.privateKey;
+		}
+		secureMessage(context, key, tokenIdentifier, token, samlReference,
+				privateKey, certificate);
+	}
+
+	/**
+	 * Adds the WS-Security header to the outbound message, using the given
+	 * security token and credentials instead of the ones configured on the
+	 * handler or the message context.
+	 */
+	void secureMessage(SOAPMessageContext context, byte[] key,
+			String tokenIdentifier, Element token, boolean samlReference,
+			PrivateKey privateKey, X509Certificate certificate)
+			throws WSSecurityException, ConversationException, SOAPException,
+			IOException, XMLSignatureException, XMLSecurityException,
+			XMLStreamException, GeneralSecurityException {
 		LOG.debug("adding WS-Security header");
 		SOAPMessage soapMessage = context.getMessage();
 		SOAPPart soapPart = soapMessage.getSOAPPart();
@@ -154,20 +359,27 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 			soapHeader = soapEnvelope.addHeader();
 		}
 
+		if (WSSecurityMode.STREAMING == this.wsSecurityMode) {
+			writeSecurityHeader(context, soapHeader, key, tokenIdentifier,
+					token, samlReference, privateKey, certificate);
+			return;
+		}
+
 		WSSecHeader wsSecHeader = new WSSecHeader();
 		Element securityElement = wsSecHeader.insertSecurityHeader(soapPart);
 
-		addToken(context, securityElement);
+		addToken(token, securityElement);
 
 		addUsernamePassword(context, soapPart, wsSecHeader);
 
-		WSSecTimestamp wsSecTimeStamp = new WSSecTimestamp();
+		WSSecTimestamp wsSecTimeStamp = new WSSecTimestamp(WSS_CONFIG);
 		wsSecTimeStamp.build(soapPart, wsSecHeader);
 
-		addProofOfPossessionSignature(context, soapMessage, soapPart,
-				wsSecHeader, wsSecTimeStamp);
+		addProofOfPossessionSignature(soapMessage, soapPart, wsSecHeader,
+				wsSecTimeStamp, key, tokenIdentifier, samlReference);
 
-		addCertificateSignature(context, soapPart, wsSecHeader, wsSecTimeStamp);
+		addCertificateSignature(context, soapPart, wsSecHeader, wsSecTimeStamp,
+				privateKey, certificate);
 
 		/*
 		 * Really needs to be at the end for Axis2 to work. Axiom bug?
@@ -175,6 +387,62 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 		appendSecurityHeader(soapHeader, securityElement);
 	}
 
+	/**
+	 * Writes the WS-Security header into the given SOAP header element, for
+	 * SOAP stacks that do not run the JAX-WS SOAP handlers. The header is
+	 * always written the {@link WSSecurityMode#STREAMING} way, so the given
+	 * SOAP header element can be detached from the rest of the SOAP envelope.
+	 * 
+	 * @param soapHeader
+	 *            the SOAP header DOM element.
+	 * @param key
+	 *            the optional proof-of-possession key.
+	 * @param tokenIdentifier
+	 *            the identifier of the security token.
+	 * @param token
+	 *            the optional security token.
+	 * @param samlReference
+	 *            <code>true</code> to refer to the token as SAML assertion.
+	 * @throws XMLStreamException
+	 * @throws GeneralSecurityException
+	 */
+	public void writeSecurityHeader(Element soapHeader, byte[] key,
+			String tokenIdentifier, Element token, boolean samlReference)
+			throws XMLStreamException, GeneralSecurityException {
+		writeSecurityHeader(null, soapHeader, key, tokenIdentifier, token,
+				samlReference, null, null);
+	}
+
+	private void writeSecurityHeader(SOAPMessageContext context,
+			Element soapHeader, byte[] key, String tokenIdentifier,
+			Element token, boolean samlReference, PrivateKey privateKey,
+			X509Certificate certificate) throws XMLStreamException,
+			GeneralSecurityException {
+		WSSecurityHeaderWriter headerWriter = new WSSecurityHeaderWriter(
+				soapHeader, WSS_CONFIG.getIdAllocator());
+		headerWriter.writeStart();
+		if (null != this.username) {
+			LOG.debug("adding Username token");
+			headerWriter.writeUsernameToken(this.username, this.password);
+		}
+		if (null != token) {
+			LOG.debug("adding WS-Security token");
+			headerWriter.writeToken(token);
+		}
+		if (null != key) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("token identifier: " + tokenIdentifier);
+			}
+			headerWriter.writeProofOfPossessionSignature(key,
+					tokenIdentifier, samlReference);
+		}
+		if (null != certificate) {
+			headerWriter.writeCertificateSignature(privateKey, certificate,
+					WSAddressingHandler.getToIdentifier(context));
+		}
+		headerWriter.writeEnd();
+	}
+
 	private void appendSecurityHeader(SOAPHeader soapHeader,
 			Element securityElement) {
 		soapHeader.removeChild(securityElement);
@@ -183,56 +451,65 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 
 	private void addCertificateSignature(SOAPMessageContext context,
 			SOAPPart soapPart, WSSecHeader wsSecHeader,
-			WSSecTimestamp wsSecTimeStamp) throws WSSecurityException {
-		if (null == this.certificate) {
+			WSSecTimestamp wsSecTimeStamp, PrivateKey privateKey,
+			X509Certificate certificate) throws WSSecurityException {
+		if (null == certificate) {
 			return;
 		}
 		String toIdentifier = WSAddressingHandler.getToIdentifier(context);
-		LOG.debug("wsa:To/@wsu:Id = " + toIdentifier);
-		WSSecurityCrypto crypto = new WSSecurityCrypto(this.privateKey,
-				this.certificate);
-		WSSConfig wssConfig = new WSSConfig();
-		wssConfig.setWsiBSPCompliant(false);
-		WSSecSignature sign = new WSSecSignature(wssConfig);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("wsa:To/@wsu:Id = " + toIdentifier);
+		}
+		WSSecSignature sign = new WSSecSignature(X509_WSS_CONFIG);
 		sign.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
-		sign.prepare(soapPart, crypto, wsSecHeader);
+		sign.prepare(soapPart, getCrypto(privateKey, certificate), wsSecHeader);
 		sign.appendBSTElementToHeader(wsSecHeader);
 		Vector<WSEncryptionPart> signParts = new Vector<WSEncryptionPart>();
 		signParts.add(new WSEncryptionPart(wsSecTimeStamp.getId()));
 		signParts.add(new WSEncryptionPart(toIdentifier));
-		sign.addReferencesToSign(signParts, wsSecHeader);
 		List<Reference> referenceList = sign.addReferencesToSign(signParts,
 				wsSecHeader);
 		sign.computeSignature(referenceList, false, null);
 	}
 
-	private void addProofOfPossessionSignature(SOAPMessageContext context,
-			SOAPMessage soapMessage, SOAPPart soapPart,
-			WSSecHeader wsSecHeader, WSSecTimestamp wsSecTimeStamp)
-			throws SOAPException, IOException, WSSecurityException {
-		if (null == this.key) {
+	private WSSecurityCrypto getCrypto(PrivateKey privateKey,
+			X509Certificate certificate) {
+		WSSecurityCrypto crypto = this.crypto;
+		if (null == crypto || false == crypto.isFor(privateKey, certificate)) {
+			crypto = new WSSecurityCrypto(privateKey, certificate);
+			this.crypto = crypto;
+		}
+		return crypto;
+	}
+
+	private void addProofOfPossessionSignature(SOAPMessage soapMessage,
+			SOAPPart soapPart, WSSecHeader wsSecHeader,
+			WSSecTimestamp wsSecTimeStamp, byte[] key, String tokenIdentifier,
+			boolean samlReference) throws SOAPException, IOException,
+			WSSecurityException {
+		if (null == key) {
 			return;
 		}
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-		soapMessage.writeTo(outputStream);
-		LOG.debug("SOAP message before signing: "
-				+ new String(outputStream.toByteArray()));
+		if (LOG.isDebugEnabled()) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			soapMessage.writeTo(outputStream);
+			LOG.debug("SOAP message before signing: "
+					+ new String(outputStream.toByteArray()));
+			LOG.debug("token identifier: " + tokenIdentifier);
+		}
 		Vector<WSEncryptionPart> signParts = new Vector<WSEncryptionPart>();
 		signParts.add(new WSEncryptionPart(wsSecTimeStamp.getId()));
 
-		LOG.debug("token identifier: " + this.tokenIdentifier);
-
-		WSSConfig wssConfig = new WSSConfig();
-		WSSecSignature sign = new WSSecSignature(wssConfig);
-		if (this.samlReference) {
+		WSSecSignature sign = new WSSecSignature(WSS_CONFIG);
+		if (samlReference) {
 			sign.setKeyIdentifierType(WSConstants.CUSTOM_KEY_IDENTIFIER);
 			sign.setCustomTokenValueType(WSConstants.WSS_SAML_KI_VALUE_TYPE);
 		} else {
 			sign.setKeyIdentifierType(WSConstants.CUSTOM_SYMM_SIGNING);
 		}
-		sign.setSecretKey(this.key);
+		sign.setSecretKey(key);
 		sign.setSignatureAlgorithm(SignatureMethod.HMAC_SHA1);
-		sign.setCustomTokenId(this.tokenIdentifier);
+		sign.setCustomTokenId(tokenIdentifier);
 		sign.prepare(soapPart, null, wsSecHeader);
 		sign.setParts(signParts);
 		List<Reference> referenceList = sign.addReferencesToSign(signParts,
@@ -246,7 +523,7 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 			return;
 		}
 		LOG.debug("adding Username token");
-		WSSecUsernameToken usernameToken = new WSSecUsernameToken();
+		WSSecUsernameToken usernameToken = new WSSecUsernameToken(WSS_CONFIG);
 		usernameToken.setUserInfo(this.username, this.password);
 		// WSConstants.PASSWORD_DIGEST is not supported by Informatie Vlaanderen IP-STS
 		usernameToken.setPasswordType(WSConstants.PASSWORD_TEXT);
@@ -254,11 +531,11 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 		usernameToken.prependToHeader(wsSecHeader);
 	}
 
-	private void addToken(SOAPMessageContext context, Element securityElement) {
-		if (null != this.token) {
+	private void addToken(Element token, Element securityElement) {
+		if (null != token) {
 			LOG.debug("adding WS-Security token");
 			securityElement.appendChild(securityElement.getOwnerDocument()
-					.importNode(this.token, true));
+					.importNode(token, true));
 		}
 	}
 
@@ -270,11 +547,7 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 	}
 
 	public Set<QName> getHeaders() {
-		Set<QName> headers = new HashSet<QName>();
-		headers.add(new QName(
-				be.vlaanderen.informatievlaanderen.security.client.WSConstants.WS_SECURITY_NAMESPACE,
-				"Security"));
-		return headers;
+		return HEADERS;
 	}
 
 	/**
@@ -293,7 +566,9 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 
 	/**
 	 * Sets the SAML token and proof of possession key used to sign requests via
-	 * WS-Security.
+	 * WS-Security. The key applies to all requests passing this handler,
+	 * unless a request carries its own key via
+	 * {@link WSSecurityHandler#setKey(Map, byte[], String, Element, boolean)}.
 	 * 
 	 * @param key
 	 *            the proof-of-possession key.
@@ -308,7 +583,9 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 
 	/**
 	 * Sets the token and proof of possession key used to sign requests via
-	 * WS-Security.
+	 * WS-Security. The key applies to all requests passing this handler,
+	 * unless a request carries its own key via
+	 * {@link WSSecurityHandler#setKey(Map, byte[], String, Element, boolean)}.
 	 * 
 	 * @param key
 	 *            the proof of possession key for WS-Security signing.
@@ -340,4 +617,74 @@ public class WSSecurityHandler implements InformatieVlaanderenSOAPHandler {
 		this.privateKey = privateKey;
 		this.certificate = certificate;
 	}
+
+	/**
+	 * Sets the token and proof of possession key used to sign a single request
+	 * via WS-Security. Unlike
+	 * {@link WSSecurityHandler#setKey(byte[], String, Element, boolean)} the
+	 * key is kept within the given (request) context, so that a single handler
+	 * instance can serve concurrent requests.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 * @param key
+	 *            the proof of possession key for WS-Security signing.
+	 * @param tokenIdentifier
+	 *            the token identifier
+	 * @param token
+	 *            the security or secure conversation token
+	 * @param samlReference
+	 *            <code>true</code> if the WS-Security signature should refer to
+	 *            the token as being a SAML token.
+	 */
+	public static void setKey(Map<String, Object> context, byte[] key,
+			String tokenIdentifier, Element token, boolean samlReference) {
+		context.put(KEY_CONTEXT_ATTRIBUTE, key);
+		context.put(TOKEN_IDENTIFIER_CONTEXT_ATTRIBUTE, tokenIdentifier);
+		context.put(TOKEN_CONTEXT_ATTRIBUTE, token);
+		context.put(SAML_REFERENCE_CONTEXT_ATTRIBUTE, samlReference);
+	}
+
+	/**
+	 * Sets the WS-Security X509 credentials used to sign a single request.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 * @param privateKey
+	 * @param certificate
+	 * @see WSSecurityHandler#setKey(Map, byte[], String, Element, boolean)
+	 */
+	public static void setCredentials(Map<String, Object> context,
+			PrivateKey privateKey, X509Certificate certificate) {
+		context.put(PRIVATE_KEY_CONTEXT_ATTRIBUTE, privateKey);
+		context.put(CERTIFICATE_CONTEXT_ATTRIBUTE, certificate);
+	}
+
+	/**
+	 * Gives back the X509 certificate set for a single request.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 * @return the certificate, or <code>null</code> if no X509 credentials
+	 *         were set for the request.
+	 * @see WSSecurityHandler#setCredentials(Map, PrivateKey, X509Certificate)
+	 */
+	public static X509Certificate getCertificate(Map<String, ?> context) {
+		return (X509Certificate) context.get(CERTIFICATE_CONTEXT_ATTRIBUTE);
+	}
+
+	/**
+	 * Removes all per-request WS-Security state from the given context.
+	 * 
+	 * @param context
+	 *            the JAX-WS request context or message context.
+	 */
+	public static void clear(Map<String, Object> context) {
+		context.remove(KEY_CONTEXT_ATTRIBUTE);
+		context.remove(TOKEN_IDENTIFIER_CONTEXT_ATTRIBUTE);
+		context.remove(TOKEN_CONTEXT_ATTRIBUTE);
+		context.remove(SAML_REFERENCE_CONTEXT_ATTRIBUTE);
+		context.remove(PRIVATE_KEY_CONTEXT_ATTRIBUTE);
+		context.remove(CERTIFICATE_CONTEXT_ATTRIBUTE);
+	}
 }
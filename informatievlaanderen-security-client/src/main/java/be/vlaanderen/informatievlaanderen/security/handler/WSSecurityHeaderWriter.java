@@ -0,0 +1,544 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.XMLConstants;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WsuIdAllocator;
+import org.apache.xml.security.Init;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a WS-Security header via a StAX writer. Produces the same header as
+ * the WSS4J based DOM path of the {@link WSSecurityHandler}, but only visits
+ * the SOAP header. The SOAP body is never looked at, and the digests and
+ * signatures are computed over the canonicalized header elements only.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class WSSecurityHeaderWriter {
+
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory
+			.newInstance();
+
+	private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormat
+			.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(DateTimeZone.UTC);
+
+	private static final long TIMESTAMP_TTL = 300 * 1000;
+
+	private static final String EC_PREFIX = "ec";
+
+	private static final String X509_V3_TYPE = WSConstants.X509TOKEN_NS
+			+ "#X509v3";
+
+	private static final String BASE64_ENCODING = WSConstants.SOAPMESSAGE_NS
+			+ "#Base64Binary";
+
+	static {
+		// the canonicalizers are only registered by the xmlsec initialization
+		Init.init();
+	}
+
+	private final Element soapHeader;
+
+	private final WsuIdAllocator idAllocator;
+
+	private final XMLStreamWriter writer;
+
+	private final String soapPrefix;
+
+	private Element securityElement;
+
+	private Element timestampElement;
+
+	private String timestampId;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param soapHeader
+	 *            the SOAP header to which the WS-Security header gets appended.
+	 *            Can also be a detached SOAP header DOM element.
+	 * @param idAllocator
+	 *            the allocator of the wsu:Id values.
+	 * @throws XMLStreamException
+	 */
+	WSSecurityHeaderWriter(Element soapHeader, WsuIdAllocator idAllocator)
+			throws XMLStreamException {
+		this.soapHeader = soapHeader;
+		this.idAllocator = idAllocator;
+		this.writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(new DOMResult(
+				soapHeader));
+		this.soapPrefix = soapHeader.getPrefix();
+	}
+
+	/**
+	 * Starts the WS-Security header, and adds the timestamp.
+	 * 
+	 * @throws XMLStreamException
+	 */
+	void writeStart() throws XMLStreamException {
+		this.writer.writeStartElement(WSConstants.WSSE_PREFIX, "Security",
+				WSConstants.WSSE_NS);
+		this.writer.writeNamespace(WSConstants.WSSE_PREFIX,
+				WSConstants.WSSE_NS);
+		if (false == WSConstants.WSU_NS.equals(this.soapHeader
+				.lookupNamespaceURI(WSConstants.WSU_PREFIX))) {
+			this.writer.writeNamespace(WSConstants.WSU_PREFIX,
+					WSConstants.WSU_NS);
+		}
+		String mustUnderstand;
+		if (SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE.equals(this.soapHeader
+				.getNamespaceURI())) {
+			mustUnderstand = "true";
+		} else {
+			mustUnderstand = "1";
+		}
+		this.writer.writeAttribute(this.soapPrefix,
+				this.soapHeader.getNamespaceURI(), "mustUnderstand",
+				mustUnderstand);
+		this.writer.flush();
+		this.securityElement = (Element) this.soapHeader.getLastChild();
+
+		this.timestampId = this.idAllocator.createId("TS-", null);
+		long now = System.currentTimeMillis();
+		this.writer.writeStartElement(WSConstants.WSU_PREFIX, "Timestamp",
+				WSConstants.WSU_NS);
+		this.writer.writeAttribute(WSConstants.WSU_PREFIX, WSConstants.WSU_NS,
+				"Id", this.timestampId);
+		writeTextElement(WSConstants.WSU_PREFIX, WSConstants.WSU_NS,
+				"Created", DATE_TIME_FORMATTER.print(now));
+		writeTextElement(WSConstants.WSU_PREFIX, WSConstants.WSU_NS,
+				"Expires", DATE_TIME_FORMATTER.print(now + TIMESTAMP_TTL));
+		this.writer.writeEndElement();
+		this.writer.flush();
+		this.timestampElement = (Element) this.securityElement.getLastChild();
+	}
+
+	/**
+	 * Adds a username token with a plain text password.
+	 * 
+	 * @param username
+	 * @param password
+	 * @throws XMLStreamException
+	 */
+	void writeUsernameToken(String username, String password)
+			throws XMLStreamException {
+		this.writer.writeStartElement(WSConstants.WSSE_PREFIX,
+				"UsernameToken", WSConstants.WSSE_NS);
+		this.writer.writeAttribute(WSConstants.WSU_PREFIX, WSConstants.WSU_NS,
+				"Id", this.idAllocator.createId("UsernameToken-", null));
+		writeTextElement(WSConstants.WSSE_PREFIX, WSConstants.WSSE_NS,
+				"Username", username);
+		this.writer.writeStartElement(WSConstants.WSSE_PREFIX, "Password",
+				WSConstants.WSSE_NS);
+		this.writer.writeAttribute("Type", WSConstants.PASSWORD_TEXT);
+		this.writer.writeCharacters(password);
+		this.writer.writeEndElement();
+		this.writer.writeEndElement();
+	}
+
+	/**
+	 * Adds a copy of the given security token.
+	 * 
+	 * @param token
+	 * @throws XMLStreamException
+	 */
+	void writeToken(Element token) throws XMLStreamException {
+		writeNode(token);
+	}
+
+	/**
+	 * Adds an HMAC-SHA1 signature over the timestamp, using the given proof of
+	 * possession key.
+	 * 
+	 * @param key
+	 * @param tokenIdentifier
+	 * @param samlReference
+	 * @throws XMLStreamException
+	 * @throws GeneralSecurityException
+	 */
+	void writeProofOfPossessionSignature(byte[] key, String tokenIdentifier,
+			boolean samlReference) throws XMLStreamException,
+			GeneralSecurityException {
+		String signedInfoPrefixes = getInclusivePrefixes(this.securityElement,
+				false);
+		String timestampPrefixes = getInclusivePrefixes(this.timestampElement,
+				true);
+		byte[] timestampDigest = digest(this.timestampElement,
+				timestampPrefixes);
+
+		Element signedInfoElement = writeSignedInfo(WSConstants.HMAC_SHA1,
+				signedInfoPrefixes, this.timestampId, timestampPrefixes,
+				timestampDigest, null, null);
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(key, "HmacSHA1"));
+		byte[] signatureValue = mac.doFinal(canonicalize(signedInfoElement,
+				signedInfoPrefixes));
+		writeTextElement(WSConstants.SIG_PREFIX, WSConstants.SIG_NS,
+				"SignatureValue",
+				DatatypeConverter.printBase64Binary(signatureValue));
+
+		writeStartKeyInfo(samlReference);
+		if (samlReference) {
+			this.writer.writeStartElement(WSConstants.WSSE_PREFIX,
+					"KeyIdentifier", WSConstants.WSSE_NS);
+			this.writer.writeAttribute("ValueType",
+					WSConstants.WSS_SAML_KI_VALUE_TYPE);
+			this.writer.writeCharacters(tokenIdentifier);
+			this.writer.writeEndElement();
+		} else {
+			this.writer.writeStartElement(WSConstants.WSSE_PREFIX,
+					"Reference", WSConstants.WSSE_NS);
+			this.writer.writeAttribute("URI", "#" + tokenIdentifier);
+			this.writer.writeEndElement();
+		}
+		writeEndKeyInfo();
+	}
+
+	/**
+	 * Adds a binary security token, and an RSA-SHA1 signature over the
+	 * timestamp and the WS-Addressing To header.
+	 * 
+	 * @param privateKey
+	 * @param certificate
+	 * @param toIdentifier
+	 *            the wsu:Id of the WS-Addressing To header.
+	 * @throws XMLStreamException
+	 * @throws GeneralSecurityException
+	 */
+	void writeCertificateSignature(PrivateKey privateKey,
+			X509Certificate certificate, String toIdentifier)
+			throws XMLStreamException, GeneralSecurityException {
+		String bstId = this.idAllocator.createId("X509-", certificate);
+		this.writer.writeStartElement(WSConstants.WSSE_PREFIX,
+				"BinarySecurityToken", WSConstants.WSSE_NS);
+		this.writer.writeAttribute("EncodingType", BASE64_ENCODING);
+		this.writer.writeAttribute("ValueType", X509_V3_TYPE);
+		this.writer.writeAttribute(WSConstants.WSU_PREFIX, WSConstants.WSU_NS,
+				"Id", bstId);
+		this.writer.writeCharacters(DatatypeConverter
+				.printBase64Binary(certificate.getEncoded()));
+		this.writer.writeEndElement();
+
+		byte[] timestampDigest = digest(this.timestampElement, null);
+		byte[] toDigest = null;
+		if (null != toIdentifier) {
+			Element toElement = findHeaderElement(toIdentifier);
+			if (null == toElement) {
+				throw new SecurityException("missing WS-Addressing To header");
+			}
+			toDigest = digest(toElement, null);
+		}
+
+		Element signedInfoElement = writeSignedInfo(WSConstants.RSA_SHA1,
+				null, this.timestampId, null, timestampDigest, toIdentifier,
+				toDigest);
+		Signature signature = Signature.getInstance("SHA1withRSA");
+		signature.initSign(privateKey);
+		signature.update(canonicalize(signedInfoElement, null));
+		writeTextElement(WSConstants.SIG_PREFIX, WSConstants.SIG_NS,
+				"SignatureValue",
+				DatatypeConverter.printBase64Binary(signature.sign()));
+
+		writeStartKeyInfo(false);
+		this.writer.writeStartElement(WSConstants.WSSE_PREFIX, "Reference",
+				WSConstants.WSSE_NS);
+		this.writer.writeAttribute("URI", "#" + bstId);
+		this.writer.writeAttribute("ValueType", X509_V3_TYPE);
+		this.writer.writeEndElement();
+		writeEndKeyInfo();
+	}
+
+	/**
+	 * Ends the WS-Security header.
+	 * 
+	 * @throws XMLStreamException
+	 */
+	void writeEnd() throws XMLStreamException {
+		this.writer.writeEndElement();
+		this.writer.flush();
+		this.writer.close();
+	}
+
+	private Element writeSignedInfo(String signatureMethod,
+			String signedInfoPrefixes, String timestampId,
+			String timestampPrefixes, byte[] timestampDigest,
+			String toIdentifier, byte[] toDigest) throws XMLStreamException {
+		this.writer.writeStartElement(WSConstants.SIG_PREFIX, "Signature",
+				WSConstants.SIG_NS);
+		this.writer.writeNamespace(WSConstants.SIG_PREFIX, WSConstants.SIG_NS);
+		this.writer.writeAttribute("Id",
+				this.idAllocator.createId("SIG-", null));
+		this.writer.writeStartElement(WSConstants.SIG_PREFIX, "SignedInfo",
+				WSConstants.SIG_NS);
+		writeAlgorithmElement("CanonicalizationMethod",
+				WSConstants.C14N_EXCL_OMIT_COMMENTS, signedInfoPrefixes);
+		writeAlgorithmElement("SignatureMethod", signatureMethod, null);
+		writeReference(timestampId, timestampPrefixes, timestampDigest);
+		if (null != toIdentifier) {
+			writeReference(toIdentifier, null, toDigest);
+		}
+		this.writer.writeEndElement();
+		this.writer.flush();
+		Element signatureElement = (Element) this.securityElement
+				.getLastChild();
+		return (Element) signatureElement.getLastChild();
+	}
+
+	private void writeReference(String id, String inclusivePrefixes,
+			byte[] digest) throws XMLStreamException {
+		this.writer.writeStartElement(WSConstants.SIG_PREFIX, "Reference",
+				WSConstants.SIG_NS);
+		this.writer.writeAttribute("URI", "#" + id);
+		this.writer.writeStartElement(WSConstants.SIG_PREFIX, "Transforms",
+				WSConstants.SIG_NS);
+		writeAlgorithmElement("Transform", WSConstants.C14N_EXCL_OMIT_COMMENTS,
+				inclusivePrefixes);
+		this.writer.writeEndElement();
+		writeAlgorithmElement("DigestMethod", WSConstants.SHA1, null);
+		writeTextElement(WSConstants.SIG_PREFIX, WSConstants.SIG_NS,
+				"DigestValue", DatatypeConverter.printBase64Binary(digest));
+		this.writer.writeEndElement();
+	}
+
+	private void writeAlgorithmElement(String localName, String algorithm,
+			String inclusivePrefixes) throws XMLStreamException {
+		this.writer.writeStartElement(WSConstants.SIG_PREFIX, localName,
+				WSConstants.SIG_NS);
+		this.writer.writeAttribute("Algorithm", algorithm);
+		if (null != inclusivePrefixes) {
+			this.writer.writeStartElement(EC_PREFIX, "InclusiveNamespaces",
+					WSConstants.C14N_EXCL_OMIT_COMMENTS);
+			this.writer.writeNamespace(EC_PREFIX,
+					WSConstants.C14N_EXCL_OMIT_COMMENTS);
+			this.writer.writeAttribute("PrefixList", inclusivePrefixes);
+			this.writer.writeEndElement();
+		}
+		this.writer.writeEndElement();
+	}
+
+	private void writeStartKeyInfo(boolean samlReference)
+			throws XMLStreamException {
+		this.writer.writeStartElement(WSConstants.SIG_PREFIX, "KeyInfo",
+				WSConstants.SIG_NS);
+		this.writer.writeAttribute("Id",
+				this.idAllocator.createId("KI-", null));
+		this.writer.writeStartElement(WSConstants.WSSE_PREFIX,
+				"SecurityTokenReference", WSConstants.WSSE_NS);
+		if (samlReference) {
+			this.writer.writeNamespace(WSConstants.WSSE11_PREFIX,
+					WSConstants.WSSE11_NS);
+			this.writer.writeAttribute(WSConstants.WSSE11_PREFIX,
+					WSConstants.WSSE11_NS, WSConstants.TOKEN_TYPE,
+					WSConstants.WSS_SAML_TOKEN_TYPE);
+		}
+		this.writer.writeAttribute(WSConstants.WSU_PREFIX, WSConstants.WSU_NS,
+				"Id", this.idAllocator.createId("STR-", null));
+		this.writer.writeNamespace(WSConstants.WSSE_PREFIX,
+				WSConstants.WSSE_NS);
+		this.writer.writeNamespace(WSConstants.WSU_PREFIX, WSConstants.WSU_NS);
+	}
+
+	private void writeEndKeyInfo() throws XMLStreamException {
+		// SecurityTokenReference
+		this.writer.writeEndElement();
+		// KeyInfo
+		this.writer.writeEndElement();
+		// Signature
+		this.writer.writeEndElement();
+	}
+
+	private void writeTextElement(String prefix, String namespace,
+			String localName, String text) throws XMLStreamException {
+		this.writer.writeStartElement(prefix, localName, namespace);
+		this.writer.writeCharacters(text);
+		this.writer.writeEndElement();
+	}
+
+	private void writeNode(Node node) throws XMLStreamException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			String prefix = node.getPrefix();
+			if (null == prefix) {
+				prefix = "";
+			}
+			String namespace = node.getNamespaceURI();
+			if (null == namespace) {
+				namespace = "";
+			}
+			this.writer.writeStartElement(prefix, node.getLocalName(),
+					namespace);
+			NamedNodeMap attributes = node.getAttributes();
+			for (int idx = 0; idx < attributes.getLength(); idx++) {
+				Attr attribute = (Attr) attributes.item(idx);
+				if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI
+						.equals(attribute.getNamespaceURI())) {
+					if (XMLConstants.XMLNS_ATTRIBUTE.equals(attribute
+							.getNodeName())) {
+						this.writer.writeDefaultNamespace(attribute.getValue());
+					} else {
+						this.writer.writeNamespace(attribute.getLocalName(),
+								attribute.getValue());
+					}
+				} else if (null == attribute.getNamespaceURI()) {
+					this.writer.writeAttribute(attribute.getNodeName(),
+							attribute.getValue());
+				} else {
+					this.writer.writeAttribute(attribute.getPrefix(),
+							attribute.getNamespaceURI(),
+							attribute.getLocalName(), attribute.getValue());
+				}
+			}
+			for (Node child = node.getFirstChild(); null != child; child = child
+					.getNextSibling()) {
+				writeNode(child);
+			}
+			this.writer.writeEndElement();
+			break;
+		case Node.TEXT_NODE:
+			this.writer.writeCharacters(node.getNodeValue());
+			break;
+		case Node.CDATA_SECTION_NODE:
+			this.writer.writeCData(node.getNodeValue());
+			break;
+		case Node.COMMENT_NODE:
+			this.writer.writeComment(node.getNodeValue());
+			break;
+		default:
+			break;
+		}
+	}
+
+	private Element findHeaderElement(String id) {
+		for (Node node = this.soapHeader.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			Element element = (Element) node;
+			if (id.equals(element.getAttributeNS(WSConstants.WSU_NS, "Id"))) {
+				return element;
+			}
+		}
+		return null;
+	}
+
+	private static byte[] digest(Element element, String inclusivePrefixes)
+			throws GeneralSecurityException {
+		MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+		return messageDigest.digest(canonicalize(element, inclusivePrefixes));
+	}
+
+	private static byte[] canonicalize(Element element,
+			String inclusivePrefixes) throws GeneralSecurityException {
+		try {
+			Canonicalizer canonicalizer = Canonicalizer
+					.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+			return canonicalizer.canonicalizeSubtree(element,
+					inclusivePrefixes);
+		} catch (Exception e) {
+			throw new GeneralSecurityException("canonicalization error: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gives back the same inclusive namespace prefix list as WSS4J uses: the
+	 * prefixes declared on the ancestors of the given element, optionally
+	 * without the prefixes visibly used by the element itself.
+	 */
+	private static String getInclusivePrefixes(Element element,
+			boolean excludeVisible) {
+		List<String> prefixes = new ArrayList<String>();
+		for (Node parent = element.getParentNode(); null != parent
+				&& Node.ELEMENT_NODE == parent.getNodeType(); parent = parent
+				.getParentNode()) {
+			NamedNodeMap attributes = parent.getAttributes();
+			for (int idx = 0; idx < attributes.getLength(); idx++) {
+				Node attribute = attributes.item(idx);
+				if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI
+						.equals(attribute.getNamespaceURI())) {
+					if (XMLConstants.XMLNS_ATTRIBUTE.equals(attribute
+							.getNodeName())) {
+						prefixes.add("#default");
+					} else {
+						prefixes.add(attribute.getLocalName());
+					}
+				}
+			}
+		}
+		if (excludeVisible) {
+			NamedNodeMap attributes = element.getAttributes();
+			for (int idx = 0; idx < attributes.getLength(); idx++) {
+				Node attribute = attributes.item(idx);
+				if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI
+						.equals(attribute.getNamespaceURI())) {
+					if (XMLConstants.XMLNS_ATTRIBUTE.equals(attribute
+							.getNodeName())) {
+						prefixes.remove("#default");
+					} else {
+						prefixes.remove(attribute.getLocalName());
+					}
+				} else if (null != attribute.getPrefix()) {
+					prefixes.remove(attribute.getPrefix());
+				}
+			}
+			if (null == element.getPrefix()) {
+				prefixes.remove("#default");
+			} else {
+				prefixes.remove(element.getPrefix());
+			}
+		}
+		StringBuilder stringBuilder = new StringBuilder();
+		for (String prefix : prefixes) {
+			if (stringBuilder.length() > 0) {
+				stringBuilder.append(' ');
+			}
+			stringBuilder.append(prefix);
+		}
+		return stringBuilder.toString();
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.handler;
+
+/**
+ * The way the {@link WSSecurityHandler} builds the WS-Security header of
+ * outbound messages.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum WSSecurityMode {
+
+	/**
+	 * The WS-Security header is built via the WSS4J DOM API. This is the
+	 * default.
+	 */
+	DOM,
+
+	/**
+	 * The WS-Security header is written via a StAX writer. Only the SOAP
+	 * header is visited, which makes a difference for large SOAP bodies.
+	 * 
+	 * @see InboundSecurityMode
+	 */
+	STREAMING
+}
@@ -18,6 +18,7 @@
 
 package be.vlaanderen.informatievlaanderen.security.handler;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
@@ -26,9 +27,9 @@ import javax.xml.soap.SOAPElement;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 import javax.xml.soap.SOAPPart;
-import javax.xml.transform.TransformerException;
 import javax.xml.ws.ProtocolException;
 import javax.xml.ws.handler.MessageContext;
+import javax.xml.ws.handler.MessageContext.Scope;
 import javax.xml.ws.handler.soap.SOAPMessageContext;
 
 import org.apache.commons.logging.Log;
@@ -37,13 +38,16 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponse;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponseParser;
 import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
 
 /**
  * A JAX-WS based SOAP handler that implements parts of WS-Trust.
  * <p>
  * This SOAP handler is basically used to retrieve WS-Trust tokens from incoming
- * STS response messages.
+ * STS response messages. The parsed response is made available via the
+ * response context, see {@link WSTrustHandler#getResponse(Map)}.
  * 
  * @author Frank Cornelis
  * 
@@ -52,7 +56,13 @@ public class WSTrustHandler implements InformatieVlaanderenSOAPHandler {
 
 	private final static Log LOG = LogFactory.getLog(WSTrustHandler.class);
 
-	private Element requestedSecurityToken;
+	private static final String REQUESTED_SECURITY_TOKEN_CONTEXT_ATTRIBUTE = WSTrustHandler.class
+			.getName() + ".requestedSecurityToken";
+
+	private static final String RESPONSE_CONTEXT_ATTRIBUTE = WSTrustHandler.class
+			.getName() + ".response";
+
+	private volatile Element requestedSecurityToken;
 
 	private NodeList secondaryParametersNodeList;
 
@@ -102,23 +112,37 @@ public class WSTrustHandler implements InformatieVlaanderenSOAPHandler {
 	}
 
 	private void handleInboundMessage(SOAPMessageContext context)
-			throws SOAPException, TransformerException {
-		Element bodyElement = context.getMessage().getSOAPBody();
-
-		/*
-		 * First tried this via an xalan XPathAPI expression. But we received
-		 * some DOM error when using Axis2.
-		 */
-		NodeList nodeList = bodyElement.getElementsByTagNameNS(
-				WSConstants.WSTRUST_NAMESPACE, "RequestedSecurityToken");
-		Element requestedSecurityTokenElement;
-		if (nodeList.getLength() > 0) {
-			requestedSecurityTokenElement = (Element) nodeList.item(0)
-					.getFirstChild();
-		} else {
-			requestedSecurityTokenElement = null;
+			throws SOAPException {
+		SOAPBody soapBody = context.getMessage().getSOAPBody();
+		if (null == soapBody) {
+			return;
+		}
+		Element responseElement = null;
+		for (Node node = soapBody.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE == node.getNodeType()) {
+				responseElement = (Element) node;
+				break;
+			}
+		}
+		if (null == responseElement) {
+			return;
+		}
+		RequestSecurityTokenResponse response = RequestSecurityTokenResponseParser
+				.parse(responseElement);
+		if (null == response) {
+			return;
+		}
+		context.put(RESPONSE_CONTEXT_ATTRIBUTE, response);
+		context.setScope(RESPONSE_CONTEXT_ATTRIBUTE, Scope.APPLICATION);
+		Element requestedSecurityTokenElement = response
+				.getRequestedSecurityToken();
+		if (null != requestedSecurityTokenElement) {
+			context.put(REQUESTED_SECURITY_TOKEN_CONTEXT_ATTRIBUTE,
+					requestedSecurityTokenElement);
+			context.setScope(REQUESTED_SECURITY_TOKEN_CONTEXT_ATTRIBUTE,
+					Scope.APPLICATION);
 		}
-
 		this.requestedSecurityToken = requestedSecurityTokenElement;
 	}
 
@@ -138,11 +162,40 @@ public class WSTrustHandler implements InformatieVlaanderenSOAPHandler {
 	 * Returns the captured WS-Trust requested security token.
 	 * 
 	 * @return the token as DOM element.
+	 * @deprecated the handler can be shared by concurrent requests. Use
+	 *             {@link WSTrustHandler#getRequestedSecurityToken(Map)} on the
+	 *             response context instead.
 	 */
+	@Deprecated
 	public Element getRequestedSecurityToken() {
 		return this.requestedSecurityToken;
 	}
 
+	/**
+	 * Returns the WS-Trust requested security token captured for a single
+	 * request.
+	 * 
+	 * @param context
+	 *            the JAX-WS response context or message context.
+	 * @return the token as DOM element, or <code>null</code> if absent.
+	 */
+	public static Element getRequestedSecurityToken(Map<String, Object> context) {
+		return (Element) context.get(REQUESTED_SECURITY_TOKEN_CONTEXT_ATTRIBUTE);
+	}
+
+	/**
+	 * Returns the WS-Trust response captured for a single request.
+	 * 
+	 * @param context
+	 *            the JAX-WS response context or message context.
+	 * @return the parsed WS-Trust response, or <code>null</code> if absent.
+	 */
+	public static RequestSecurityTokenResponse getResponse(
+			Map<String, Object> context) {
+		return (RequestSecurityTokenResponse) context
+				.get(RESPONSE_CONTEXT_ATTRIBUTE);
+	}
+
 	/**
 	 * Sets the DOM node list that will be used as SecondaryParameters.
 	 * 
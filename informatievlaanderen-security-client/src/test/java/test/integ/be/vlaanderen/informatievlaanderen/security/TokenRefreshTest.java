@@ -0,0 +1,357 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.KeyGenerator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SharedMemoryTokenStore;
+
+public class TokenRefreshTest {
+
+	private static final Log LOG = LogFactory.getLog(TokenRefreshTest.class);
+
+	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/refresh/local";
+
+	private static final long TOKEN_LIFETIME = 5000;
+
+	private static final long TOKEN_RETIREMENT_DURATION = 2000;
+
+	private static final long REFRESH_AHEAD_DURATION = 1000;
+
+	private static final long STS_LATENCY = 300;
+
+	private static LocalSTS localSTS;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	private InformatieVlaanderenSecurity informatieVlaanderenSecurity;
+
+	@BeforeClass
+	public static void startSTS() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopSTS() {
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		localSTS.setLatency(0, 0);
+		localSTS.failNext(0);
+		localSTS.setTokenLifetime(TOKEN_LIFETIME);
+		localSTS.resetCounters();
+		this.informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		this.informatieVlaanderenSecurity
+				.setTokenRetirementDuration(TOKEN_RETIREMENT_DURATION);
+	}
+
+	@After
+	public void tearDown() {
+		this.informatieVlaanderenSecurity.stopTokenRefresh();
+	}
+
+	@Test
+	public void testRefreshBeforeRetirement() throws Exception {
+		// setup
+		this.informatieVlaanderenSecurity.startTokenRefresh(1,
+				REFRESH_AHEAD_DURATION);
+		SecurityToken securityToken = this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+		long retirementTime = securityToken.getExpires().getTime()
+				- TOKEN_RETIREMENT_DURATION;
+		localSTS.setLatency(STS_LATENCY, STS_LATENCY);
+
+		// operate
+		long refreshTime = waitForRefresh(securityToken);
+
+		// verify
+		LOG.debug("refreshed " + (retirementTime - refreshTime)
+				+ " ms before retirement");
+		// within the refresh-ahead window, allowing for timer slack
+		assertTrue(refreshTime >= retirementTime - REFRESH_AHEAD_DURATION);
+		assertTrue(refreshTime <= retirementTime + STS_LATENCY + 250);
+		// no request by the caller
+		assertEquals(2, localSTS.getIssueCount());
+	}
+
+	@Test
+	public void testFailedRefreshRescheduled() throws Exception {
+		// setup
+		this.informatieVlaanderenSecurity.setTokenRefreshRetryDelay(200);
+		this.informatieVlaanderenSecurity.startTokenRefresh(1,
+				REFRESH_AHEAD_DURATION);
+		SecurityToken securityToken = this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+
+		// prepare
+		localSTS.failNext(1);
+
+		// operate
+		while (localSTS.getIssueCount() < 2) {
+			// only the background refresh can issue a token here
+			assertTrue("no token refresh", System.currentTimeMillis() < securityToken
+					.getExpires().getTime());
+			Thread.sleep(10);
+		}
+		// give the refresh the time to store the token
+		Thread.sleep(100);
+
+		// verify
+		assertEquals(1, localSTS.getFailureCount());
+		SecurityToken refreshedToken = this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+		assertNotEquals(securityToken.getAttachedReference(),
+				refreshedToken.getAttachedReference());
+		assertEquals(2, localSTS.getIssueCount());
+	}
+
+	@Test
+	public void testStopCancelsPendingRefresh() throws Exception {
+		// setup
+		this.informatieVlaanderenSecurity.startTokenRefresh(1,
+				REFRESH_AHEAD_DURATION);
+		SecurityToken securityToken = this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+		localSTS.resetCounters();
+
+		// operate
+		this.informatieVlaanderenSecurity.stopTokenRefresh();
+
+		// verify
+		long retirementTime = securityToken.getExpires().getTime()
+				- TOKEN_RETIREMENT_DURATION;
+		Thread.sleep(retirementTime + 500 - System.currentTimeMillis());
+		assertEquals(0, localSTS.getRequestCount());
+	}
+
+	@Test
+	public void testStopLetsRunningRefreshComplete() throws Exception {
+		// setup
+		this.informatieVlaanderenSecurity.startTokenRefresh(1, 0);
+		SecurityToken securityToken = this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+		localSTS.resetCounters();
+
+		// prepare
+		localSTS.setLatency(1000, 1000);
+		while (0 == localSTS.getRequestCount()) {
+			Thread.sleep(10);
+		}
+
+		// operate
+		this.informatieVlaanderenSecurity.stopTokenRefresh();
+
+		// verify
+		assertEquals(1, localSTS.getIssueCount());
+		assertEquals(0, localSTS.getFailureCount());
+		SecurityToken refreshedToken = this.informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+		assertNotEquals(securityToken.getAttachedReference(),
+				refreshedToken.getAttachedReference());
+		assertEquals(1, localSTS.getRequestCount());
+	}
+
+	@Test
+	public void testRefreshOnTokenExecutor() throws Exception {
+		// setup
+		final ExecutorService executorService = Executors.newCachedThreadPool();
+		final AtomicInteger taskCount = new AtomicInteger();
+		this.informatieVlaanderenSecurity.setTokenExecutor(new Executor() {
+
+			public void execute(Runnable runnable) {
+				taskCount.incrementAndGet();
+				executorService.execute(runnable);
+			}
+		});
+		this.informatieVlaanderenSecurity.setTokenRefreshConcurrency(1);
+		for (int idx = 0; idx < 3; idx++) {
+			this.informatieVlaanderenSecurity.getSecurityToken(SERVICE_REALM
+					+ "/" + idx);
+		}
+		localSTS.resetCounters();
+		localSTS.setLatency(STS_LATENCY, STS_LATENCY);
+
+		// operate
+		long startTime = System.currentTimeMillis();
+		this.informatieVlaanderenSecurity.refreshSecurityTokens();
+		long duration = System.currentTimeMillis() - startTime;
+
+		// verify
+		assertEquals(3, localSTS.getIssueCount());
+		assertEquals(3, taskCount.get());
+		// one refresh at a time
+		assertTrue(duration >= 3 * STS_LATENCY);
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testEvictionCancelsOnTokenExecutor() throws Exception {
+		// setup
+		final List<Runnable> tokenTasks = new LinkedList<Runnable>();
+		this.informatieVlaanderenSecurity.setTokenExecutor(new Executor() {
+
+			public void execute(Runnable runnable) {
+				tokenTasks.add(runnable);
+			}
+		});
+		this.informatieVlaanderenSecurity.setMaxCachedTokens(1);
+		this.informatieVlaanderenSecurity.getSecureConversationToken(
+				localSTS.getLocation(), SERVICE_REALM);
+
+		// operate
+		this.informatieVlaanderenSecurity.getSecureConversationToken(
+				localSTS.getLocation() + "?second", SERVICE_REALM);
+
+		// verify
+		assertEquals(0, localSTS.getCancelCount());
+		assertEquals(1, tokenTasks.size());
+		tokenTasks.get(0).run();
+		assertEquals(1, localSTS.getCancelCount());
+	}
+
+	@Test
+	public void testEvictionPerServiceRealm() throws Exception {
+		// setup
+		final List<Runnable> tokenTasks = new LinkedList<Runnable>();
+		this.informatieVlaanderenSecurity.setTokenExecutor(new Executor() {
+
+			public void execute(Runnable runnable) {
+				tokenTasks.add(runnable);
+			}
+		});
+		this.informatieVlaanderenSecurity.setMaxCachedTokens(1);
+		this.informatieVlaanderenSecurity.getSecureConversationToken(
+				localSTS.getLocation(), SERVICE_REALM);
+
+		// operate
+		this.informatieVlaanderenSecurity.getSecureConversationToken(
+				localSTS.getLocation(), SERVICE_REALM + "/second");
+
+		// verify
+		assertNull(this.informatieVlaanderenSecurity.getTokenStore()
+				.getSecurityToken(
+						this.informatieVlaanderenSecurity.getCredential(),
+						SERVICE_REALM, localSTS.getLocation()));
+		assertEquals(1, tokenTasks.size());
+		tokenTasks.get(0).run();
+		assertEquals(1, localSTS.getCancelCount());
+	}
+
+	@Test
+	public void testEvictionKeepsSharedTokens() throws Exception {
+		// setup
+		File storeFile = File.createTempFile("token-store-", ".bin");
+		storeFile.delete();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				storeFile, keyGenerator.generateKey());
+		this.informatieVlaanderenSecurity.setTokenStore(tokenStore);
+		final List<Runnable> tokenTasks = new LinkedList<Runnable>();
+		this.informatieVlaanderenSecurity.setTokenExecutor(new Executor() {
+
+			public void execute(Runnable runnable) {
+				tokenTasks.add(runnable);
+			}
+		});
+		this.informatieVlaanderenSecurity.setMaxCachedTokens(1);
+		try {
+			this.informatieVlaanderenSecurity.getSecureConversationToken(
+					localSTS.getLocation(), SERVICE_REALM);
+
+			// operate
+			this.informatieVlaanderenSecurity.getSecureConversationToken(
+					localSTS.getLocation() + "?second", SERVICE_REALM);
+			this.informatieVlaanderenSecurity.cancelSecureConversationTokens();
+
+			// verify
+			assertNotNull(tokenStore.getSecurityToken(
+					this.informatieVlaanderenSecurity.getCredential(),
+					SERVICE_REALM, localSTS.getLocation()));
+			assertNotNull(tokenStore.getSecurityToken(
+					this.informatieVlaanderenSecurity.getCredential(),
+					SERVICE_REALM, localSTS.getLocation() + "?second"));
+			assertEquals(0, tokenTasks.size());
+			assertEquals(0, localSTS.getCancelCount());
+		} finally {
+			tokenStore.close();
+			storeFile.delete();
+		}
+	}
+
+	/**
+	 * Waits until the cache gives back another token than the given one. With
+	 * the STS latency set, a refresh by the calling thread itself shows up as
+	 * a slow lookup.
+	 */
+	private long waitForRefresh(SecurityToken securityToken)
+			throws InterruptedException {
+		while (true) {
+			long startTime = System.currentTimeMillis();
+			SecurityToken cachedToken = this.informatieVlaanderenSecurity
+					.getSecurityToken(SERVICE_REALM);
+			long now = System.currentTimeMillis();
+			assertTrue("token request by the caller",
+					now - startTime < STS_LATENCY);
+			if (false == securityToken.getAttachedReference().equals(
+					cachedToken.getAttachedReference())) {
+				return now;
+			}
+			assertTrue("no token refresh", now < securityToken.getExpires()
+					.getTime());
+			Thread.sleep(10);
+		}
+	}
+}
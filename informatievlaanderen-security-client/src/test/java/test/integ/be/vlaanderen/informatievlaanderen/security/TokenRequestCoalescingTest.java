@@ -0,0 +1,251 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SharedMemoryTokenStore;
+
+public class TokenRequestCoalescingTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(TokenRequestCoalescingTest.class);
+
+	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/coalescing/local";
+
+	private static LocalSTS localSTS;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	@BeforeClass
+	public static void startSTS() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopSTS() {
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		localSTS.setLatency(0, 0);
+		localSTS.setTokenLifetime(1000 * 60 * 60);
+		localSTS.resetCounters();
+	}
+
+	@Test
+	public void testSingleRequestForExpiredToken() throws Exception {
+		// setup
+		int threadCount = 16;
+		final InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		informatieVlaanderenSecurity.setTokenRetirementDuration(0);
+		localSTS.setTokenLifetime(1000);
+		SecurityToken expiredToken = informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+		while (expiredToken.getExpires().getTime() >= System
+				.currentTimeMillis()) {
+			Thread.sleep(100);
+		}
+
+		// prepare
+		localSTS.setTokenLifetime(1000 * 60 * 60);
+		// keeps the token request in flight while all threads arrive
+		localSTS.setLatency(500, 500);
+		localSTS.resetCounters();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		List<Callable<SecurityToken>> callables = new ArrayList<Callable<SecurityToken>>();
+		for (int idx = 0; idx < threadCount; idx++) {
+			callables.add(new Callable<SecurityToken>() {
+
+				public SecurityToken call() throws Exception {
+					startLatch.await();
+					return informatieVlaanderenSecurity
+							.getSecurityToken(SERVICE_REALM);
+				}
+			});
+		}
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(threadCount);
+		List<Future<SecurityToken>> futures = new ArrayList<Future<SecurityToken>>();
+		try {
+			for (Callable<SecurityToken> callable : callables) {
+				futures.add(executorService.submit(callable));
+			}
+
+			// operate
+			startLatch.countDown();
+
+			// verify
+			SecurityToken securityToken = futures.get(0).get();
+			assertNotEquals(expiredToken.getAttachedReference(),
+					securityToken.getAttachedReference());
+			for (Future<SecurityToken> future : futures) {
+				assertEquals(securityToken.getAttachedReference(), future
+						.get().getAttachedReference());
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		assertEquals(1, localSTS.getIssueCount());
+	}
+
+	@Test
+	public void testValidTokenReusedDuringRefresh() throws Exception {
+		// setup
+		final InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		// every token is due for a refresh, but remains valid
+		informatieVlaanderenSecurity
+				.setTokenRetirementDuration(1000 * 60 * 60 * 2);
+		SecurityToken oldToken = informatieVlaanderenSecurity
+				.getSecurityToken(SERVICE_REALM);
+
+		// prepare
+		localSTS.setLatency(2000, 2000);
+		localSTS.resetCounters();
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			Future<SecurityToken> refresh = executorService
+					.submit(new Callable<SecurityToken>() {
+
+						public SecurityToken call() throws Exception {
+							return informatieVlaanderenSecurity
+									.getSecurityToken(SERVICE_REALM);
+						}
+					});
+			while (0 == localSTS.getRequestCount()) {
+				Thread.sleep(10);
+			}
+
+			// operate
+			long startTime = System.currentTimeMillis();
+			SecurityToken securityToken = informatieVlaanderenSecurity
+					.getSecurityToken(SERVICE_REALM);
+			long duration = System.currentTimeMillis() - startTime;
+
+			// verify
+			LOG.debug("duration: " + duration + " ms");
+			assertTrue(duration < 1000);
+			assertEquals(oldToken.getAttachedReference(),
+					securityToken.getAttachedReference());
+			assertNotEquals(oldToken.getAttachedReference(), refresh.get()
+					.getAttachedReference());
+		} finally {
+			executorService.shutdown();
+		}
+		assertEquals(1, localSTS.getIssueCount());
+	}
+
+	@Test
+	public void testSingleRequestAcrossSharedTokenStores() throws Exception {
+		// setup
+		int threadCount = 16;
+		File storeFile = File.createTempFile("token-store-", ".bin");
+		storeFile.delete();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		SecretKey secretKey = keyGenerator.generateKey();
+		// each component plays the part of another process
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				storeFile, secretKey);
+		SharedMemoryTokenStore otherTokenStore = new SharedMemoryTokenStore(
+				storeFile, secretKey);
+		final InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		informatieVlaanderenSecurity.setTokenStore(tokenStore);
+		final InformatieVlaanderenSecurity otherInformatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		otherInformatieVlaanderenSecurity.setTokenStore(otherTokenStore);
+
+		// prepare
+		// keeps the token request in flight while all threads arrive
+		localSTS.setLatency(500, 500);
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		List<Callable<SecurityToken>> callables = new ArrayList<Callable<SecurityToken>>();
+		for (int idx = 0; idx < threadCount; idx++) {
+			final InformatieVlaanderenSecurity component = 0 == idx % 2 ? informatieVlaanderenSecurity
+					: otherInformatieVlaanderenSecurity;
+			callables.add(new Callable<SecurityToken>() {
+
+				public SecurityToken call() throws Exception {
+					startLatch.await();
+					return component.getSecurityToken(SERVICE_REALM);
+				}
+			});
+		}
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(threadCount);
+		List<Future<SecurityToken>> futures = new ArrayList<Future<SecurityToken>>();
+		try {
+			for (Callable<SecurityToken> callable : callables) {
+				futures.add(executorService.submit(callable));
+			}
+
+			// operate
+			startLatch.countDown();
+
+			// verify
+			SecurityToken securityToken = futures.get(0).get();
+			for (Future<SecurityToken> future : futures) {
+				assertEquals(securityToken.getAttachedReference(), future
+						.get().getAttachedReference());
+			}
+		} finally {
+			executorService.shutdown();
+			tokenStore.close();
+			otherTokenStore.close();
+			storeFile.delete();
+		}
+		assertEquals(1, localSTS.getIssueCount());
+	}
+}
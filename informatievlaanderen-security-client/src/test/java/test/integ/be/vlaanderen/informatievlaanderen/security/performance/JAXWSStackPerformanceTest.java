@@ -0,0 +1,57 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.performance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs the cross-stack performance scenario on the JAX-WS RI of the JDK, with
+ * the JAX-WS SOAP handler chain.
+ */
+public class JAXWSStackPerformanceTest {
+
+	@Test
+	public void testPerformance() throws Exception {
+		// setup
+		StackPerformanceScenario scenario = new StackPerformanceScenario(
+				"jaxws-ri");
+
+		// prepare
+		scenario.setWarmUpIterations(50);
+		scenario.setIterations(50);
+		scenario.setRuns(3);
+
+		// operate
+		List<StackPerformanceResult> results = scenario.run();
+		scenario.publish(results);
+
+		// verify
+		assertEquals(Workload.values().length, results.size());
+		for (StackPerformanceResult result : results) {
+			assertTrue(result.getThroughput() > 0);
+		}
+		// regressions only fail with -Dstack.performance.failOnRegression=true
+		scenario.verifyBaseline(results);
+	}
+}
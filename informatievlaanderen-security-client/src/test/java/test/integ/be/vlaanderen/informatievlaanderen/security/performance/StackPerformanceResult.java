@@ -0,0 +1,96 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.performance;
+
+/**
+ * The measurement of a single workload on a single SOAP stack.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class StackPerformanceResult {
+
+	private final String stack;
+
+	private final Workload workload;
+
+	private final double throughput;
+
+	private final long p50Latency;
+
+	private final long p99Latency;
+
+	private final long allocatedBytes;
+
+	StackPerformanceResult(String stack, Workload workload, double throughput,
+			long p50Latency, long p99Latency, long allocatedBytes) {
+		this.stack = stack;
+		this.workload = workload;
+		this.throughput = throughput;
+		this.p50Latency = p50Latency;
+		this.p99Latency = p99Latency;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	public String getStack() {
+		return this.stack;
+	}
+
+	public Workload getWorkload() {
+		return this.workload;
+	}
+
+	/**
+	 * Gives back the median number of calls per second over the measurement
+	 * runs.
+	 */
+	public double getThroughput() {
+		return this.throughput;
+	}
+
+	/**
+	 * Gives back the median latency in microseconds.
+	 */
+	public long getP50Latency() {
+		return this.p50Latency;
+	}
+
+	/**
+	 * Gives back the 99th percentile latency in microseconds.
+	 */
+	public long getP99Latency() {
+		return this.p99Latency;
+	}
+
+	/**
+	 * Gives back the bytes allocated by the calling thread per call, or -1 if
+	 * the JVM does not support measuring this.
+	 */
+	public long getAllocatedBytes() {
+		return this.allocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%s %s: %.1f calls/s, p50 %d us, p99 %d us, %d bytes/call",
+				this.stack, this.workload, this.throughput, this.p50Latency,
+				this.p99Latency, this.allocatedBytes);
+	}
+}
@@ -0,0 +1,450 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.performance;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.soap.AddressingFeature;
+import javax.xml.ws.soap.SOAPBinding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.helpers.DefaultHandler;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+/**
+ * Cross-stack performance scenario. Runs the same secured {@link Workload}s
+ * against local stand-in services, on whatever JAX-WS implementation is on the
+ * classpath, so the SOAP stack test modules can publish comparable numbers.
+ * <p>
+ * The calls go over a JAX-WS Dispatch, secured via
+ * {@link InformatieVlaanderenSecurity} with the SOAP stack integrations
+ * enabled, so CXF, Metro and Axis2 use their native integration, and the
+ * JAX-WS RI the SOAP handler chain. All stacks use the streaming WS-Security
+ * header and timestamp-only inbound verification, the only configuration the
+ * native integrations support. The calls are made sequentially from a
+ * single thread, so the latencies are not distorted by the number of CPUs.
+ * Every response is read completely. The allocated bytes are those of the
+ * calling thread only. The measured calls are split over several runs. The
+ * reported throughput is the median of the runs, so a single hiccup, like a
+ * garbage collection or a busy build machine, does not skew it.
+ * <p>
+ * The results are written to
+ * <code>target/stack-performance-&lt;stack&gt;.properties</code>. When the
+ * system property {@value #BASELINE_PROPERTY} points to a directory with the
+ * reports of an earlier run, {@link #checkBaseline(List)} reports the
+ * workloads of which the median throughput dropped by more than 20%, or of
+ * which the allocated bytes per call grew by more than 10%. These regressions
+ * are logged as warnings. {@link #verifyBaseline(List)} only fails on them
+ * when the system property {@value #FAIL_ON_REGRESSION_PROPERTY} is set to
+ * <code>true</code>: the allocated bytes are stable enough to gate a build
+ * on, but even the median throughput of several runs varies a lot on shared
+ * build machines.
+ * <p>
+ * The scenarios are skipped by default, the one of the client module included.
+ * Run the scenario of a module via
+ * <code>mvn test -Dstack.tests.skip=false -Dtest=*StackPerformanceTest</code>.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class StackPerformanceScenario {
+
+	private static final Log LOG = LogFactory
+			.getLog(StackPerformanceScenario.class);
+
+	public static final String BASELINE_PROPERTY = "stack.performance.baseline";
+
+	public static final String FAIL_ON_REGRESSION_PROPERTY = "stack.performance.failOnRegression";
+
+	private static final double TOLERANCE = 0.2;
+
+	private static final double ALLOCATION_TOLERANCE = 0.1;
+
+	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/performance/local";
+
+	private final String stack;
+
+	private int warmUpIterations;
+
+	private int iterations;
+
+	private int runs;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param stack
+	 *            the name of the SOAP stack under test, used in the reports.
+	 */
+	public StackPerformanceScenario(String stack) {
+		this.stack = stack;
+		this.warmUpIterations = 200;
+		this.iterations = 200;
+		this.runs = 5;
+	}
+
+	/**
+	 * Sets the number of calls per workload before the measurement. Default is
+	 * 200.
+	 * 
+	 * @param warmUpIterations
+	 *            the number of warm-up calls.
+	 */
+	public void setWarmUpIterations(int warmUpIterations) {
+		if (warmUpIterations < 0) {
+			throw new IllegalArgumentException("negative warm-up iterations");
+		}
+		this.warmUpIterations = warmUpIterations;
+	}
+
+	/**
+	 * Sets the number of measured calls per workload and per run. Default is
+	 * 200.
+	 * 
+	 * @param iterations
+	 *            the number of measured calls per run.
+	 */
+	public void setIterations(int iterations) {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("at least one iteration required");
+		}
+		this.iterations = iterations;
+	}
+
+	/**
+	 * Sets the number of measurement runs per workload. The reported
+	 * throughput is the median throughput of these runs. Default is 5.
+	 * 
+	 * @param runs
+	 *            the number of measurement runs.
+	 */
+	public void setRuns(int runs) {
+		if (runs < 1) {
+			throw new IllegalArgumentException("at least one run required");
+		}
+		this.runs = runs;
+	}
+
+	/**
+	 * Runs all workloads.
+	 * 
+	 * @return the results, one per workload.
+	 * @throws Exception
+	 */
+	public List<StackPerformanceResult> run() throws Exception {
+		LocalSTS localSTS = new LocalSTS();
+		localSTS.start();
+		try {
+			KeyPair keyPair = LocalCredential.generateKeyPair();
+			X509Certificate certificate = LocalCredential
+					.generateSelfSignedCertificate(keyPair);
+			InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+					localSTS.getLocation(), certificate, keyPair.getPrivate());
+			informatieVlaanderenSecurity.setSOAPStackIntegration(true);
+			informatieVlaanderenSecurity
+					.setInboundSecurityMode(InboundSecurityMode.TIMESTAMP_ONLY);
+
+			List<StackPerformanceResult> results = new LinkedList<StackPerformanceResult>();
+			for (Workload workload : Workload.values()) {
+				WorkloadService workloadService = new WorkloadService(
+						workload, localSTS);
+				workloadService.start();
+				try {
+					results.add(measure(informatieVlaanderenSecurity,
+							workload, workloadService));
+				} finally {
+					workloadService.stop();
+				}
+			}
+			return results;
+		} finally {
+			localSTS.stop();
+		}
+	}
+
+	private StackPerformanceResult measure(
+			InformatieVlaanderenSecurity informatieVlaanderenSecurity,
+			Workload workload, WorkloadService workloadService)
+			throws Exception {
+		Dispatch<Source> dispatch = createDispatch(workload,
+				workloadService.getLocation());
+		informatieVlaanderenSecurity.enable(dispatch,
+				workloadService.getLocation(), false, SERVICE_REALM,
+				WSSecurityMode.STREAMING);
+		Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+
+		DOMResult domResult = new DOMResult();
+		transformer.transform(invoke(dispatch, workload), domResult);
+		NodeList responseNodeList = ((Document) domResult.getNode())
+				.getElementsByTagNameNS(workload.getNamespace(),
+						workload.getOperation() + "Response");
+		if (1 != responseNodeList.getLength()) {
+			throw new IllegalStateException("unexpected response for "
+					+ workload);
+		}
+		for (int idx = 0; idx < this.warmUpIterations; idx++) {
+			transformer.transform(invoke(dispatch, workload), new SAXResult(
+					new DefaultHandler()));
+		}
+		workloadService.resetCounters();
+
+		long[] latencies = new long[this.runs * this.iterations];
+		double[] throughputs = new double[this.runs];
+		long allocatedBytes = getAllocatedBytes();
+		for (int run = 0; run < this.runs; run++) {
+			long startTime = System.nanoTime();
+			for (int idx = 0; idx < this.iterations; idx++) {
+				long callStartTime = System.nanoTime();
+				transformer.transform(invoke(dispatch, workload),
+						new SAXResult(new DefaultHandler()));
+				latencies[run * this.iterations + idx] = System.nanoTime()
+						- callStartTime;
+			}
+			long duration = System.nanoTime() - startTime;
+			throughputs[run] = this.iterations * 1000000000.0 / duration;
+		}
+		if (-1 != allocatedBytes) {
+			allocatedBytes = (getAllocatedBytes() - allocatedBytes)
+					/ latencies.length;
+		}
+
+		if (0 != workloadService.getRejectedCount()) {
+			throw new IllegalStateException("rejected requests: "
+					+ workloadService.getRejectedCount());
+		}
+		Arrays.sort(latencies);
+		StackPerformanceResult result = new StackPerformanceResult(this.stack,
+				workload, getMedian(throughputs),
+				getPercentile(latencies, 50) / 1000, getPercentile(latencies,
+						99) / 1000, allocatedBytes);
+		LOG.info(result);
+		return result;
+	}
+
+	private Dispatch<Source> createDispatch(Workload workload, String location) {
+		QName serviceName = new QName(workload.getNamespace(), "Service");
+		QName portName = new QName(workload.getNamespace(), "Port");
+		Service service = Service.create(serviceName);
+		service.addPort(portName, SOAPBinding.SOAP12HTTP_BINDING, location);
+		/*
+		 * Message mode, as the JAX-WS RI does not process the WS-Addressing
+		 * headers of the response for payload mode dispatches.
+		 */
+		Dispatch<Source> dispatch = service.createDispatch(portName,
+				Source.class, Service.Mode.MESSAGE, new AddressingFeature());
+		dispatch.getRequestContext().put(
+				BindingProvider.SOAPACTION_USE_PROPERTY, Boolean.TRUE);
+		dispatch.getRequestContext().put(
+				BindingProvider.SOAPACTION_URI_PROPERTY, workload.getAction());
+		return dispatch;
+	}
+
+	private Source invoke(Dispatch<Source> dispatch, Workload workload) {
+		/*
+		 * The empty SOAP header is required by Axis2. Its message mode
+		 * dispatch otherwise wraps the SOAP body in the WS-Addressing header.
+		 */
+		String request = "<s:Envelope xmlns:s=\"" + WSConstants.SOAP12_NAMESPACE + "\">"
+				+ "<s:Header/><s:Body>" + workload.getRequest() + "</s:Body>"
+				+ "</s:Envelope>";
+		return dispatch.invoke(new StreamSource(new StringReader(request)));
+	}
+
+	private static long getPercentile(long[] sortedValues, int percentile) {
+		int idx = (int) Math.ceil(sortedValues.length * percentile / 100.0) - 1;
+		return sortedValues[Math.max(0, idx)];
+	}
+
+	private static double getMedian(double[] values) {
+		double[] sortedValues = values.clone();
+		Arrays.sort(sortedValues);
+		int middle = sortedValues.length / 2;
+		if (0 == sortedValues.length % 2) {
+			return (sortedValues[middle - 1] + sortedValues[middle]) / 2;
+		}
+		return sortedValues[middle];
+	}
+
+	private static long getAllocatedBytes() {
+		ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (false == threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return -1;
+		}
+		return ((com.sun.management.ThreadMXBean) threadMXBean)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Writes the results to
+	 * <code>target/stack-performance-&lt;stack&gt;.properties</code>.
+	 * 
+	 * @param results
+	 *            the results of {@link #run()}.
+	 * @return the report file.
+	 * @throws IOException
+	 */
+	public File publish(List<StackPerformanceResult> results)
+			throws IOException {
+		Properties properties = new Properties();
+		for (StackPerformanceResult result : results) {
+			String prefix = result.getWorkload().name() + ".";
+			properties.setProperty(prefix + "throughput",
+					Double.toString(result.getThroughput()));
+			properties.setProperty(prefix + "p50",
+					Long.toString(result.getP50Latency()));
+			properties.setProperty(prefix + "p99",
+					Long.toString(result.getP99Latency()));
+			properties.setProperty(prefix + "allocated",
+					Long.toString(result.getAllocatedBytes()));
+		}
+		File reportFile = new File("target", getReportFileName());
+		reportFile.getParentFile().mkdirs();
+		OutputStream outputStream = new FileOutputStream(reportFile);
+		try {
+			properties.store(outputStream, "stack performance: " + this.stack);
+		} finally {
+			outputStream.close();
+		}
+		LOG.info("stack performance report: " + reportFile.getAbsolutePath());
+		return reportFile;
+	}
+
+	/**
+	 * Compares the median throughput and the allocated bytes per call with the
+	 * baseline report of the same stack, if configured via the
+	 * {@value #BASELINE_PROPERTY} system property.
+	 * 
+	 * @param results
+	 *            the results of {@link #run()}.
+	 * @return the regressions, empty if none or if no baseline is configured.
+	 * @throws IOException
+	 */
+	public List<String> checkBaseline(List<StackPerformanceResult> results)
+			throws IOException {
+		List<String> regressions = new LinkedList<String>();
+		String baselineDirectory = System.getProperty(BASELINE_PROPERTY);
+		if (null == baselineDirectory) {
+			return regressions;
+		}
+		File baselineFile = new File(baselineDirectory, getReportFileName());
+		if (false == baselineFile.exists()) {
+			LOG.warn("no baseline: " + baselineFile.getAbsolutePath());
+			return regressions;
+		}
+		Properties baseline = new Properties();
+		InputStream inputStream = new FileInputStream(baselineFile);
+		try {
+			baseline.load(inputStream);
+		} finally {
+			inputStream.close();
+		}
+		for (StackPerformanceResult result : results) {
+			String prefix = result.getWorkload().name() + ".";
+			String baselineThroughput = baseline.getProperty(prefix
+					+ "throughput");
+			if (null != baselineThroughput) {
+				double minimumThroughput = Double
+						.parseDouble(baselineThroughput) * (1 - TOLERANCE);
+				if (result.getThroughput() < minimumThroughput) {
+					String regression = String.format(
+							"%s %s: %.1f calls/s, baseline %s calls/s",
+							this.stack, result.getWorkload(),
+							result.getThroughput(), baselineThroughput);
+					LOG.warn("throughput regression: " + regression);
+					regressions.add(regression);
+				}
+			}
+			String baselineAllocated = baseline.getProperty(prefix
+					+ "allocated");
+			if (null != baselineAllocated && result.getAllocatedBytes() >= 0) {
+				long allocated = Long.parseLong(baselineAllocated);
+				if (allocated >= 0
+						&& result.getAllocatedBytes() > allocated
+								* (1 + ALLOCATION_TOLERANCE)) {
+					String regression = String.format(
+							"%s %s: %d bytes/call, baseline %d bytes/call",
+							this.stack, result.getWorkload(),
+							result.getAllocatedBytes(), allocated);
+					LOG.warn("allocation regression: " + regression);
+					regressions.add(regression);
+				}
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * Checks the results against the baseline via {@link #checkBaseline(List)}.
+	 * The regressions only fail the test when the
+	 * {@value #FAIL_ON_REGRESSION_PROPERTY} system property is set to
+	 * <code>true</code>.
+	 * 
+	 * @param results
+	 *            the results of {@link #run()}.
+	 * @throws IOException
+	 */
+	public void verifyBaseline(List<StackPerformanceResult> results)
+			throws IOException {
+		List<String> regressions = checkBaseline(results);
+		if (Boolean.getBoolean(FAIL_ON_REGRESSION_PROPERTY)) {
+			assertTrue("performance regressions: " + regressions,
+					regressions.isEmpty());
+		}
+	}
+
+	private String getReportFileName() {
+		return "stack-performance-" + this.stack + ".properties";
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.performance;
+
+/**
+ * The secured workloads of the cross-stack performance scenario, modelled
+ * after typical calls on the Informatie Vlaanderen web services.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum Workload {
+
+	/**
+	 * A CRAB GetStraat call: small request, small response.
+	 */
+	CRAB_GET_STRAAT("/read/crabreadservice.svc/wsfed",
+			"http://Gisvl.CrabDecentraal.CrabRead",
+			"http://Gisvl.CrabDecentraal.CrabRead/ICrabRead/GetStraat", 1) {
+
+		@Override
+		String getRequest() {
+			return "<GetStraat xmlns=\"" + getNamespace() + "\">"
+					+ "<straatId>48086</straatId>" + "</GetStraat>";
+		}
+
+		@Override
+		void appendResult(StringBuilder body, int payloadSize) {
+			body.append("<GetStraatResult>");
+			body.append("<Id>48086</Id>");
+			body.append("<Naam>Kerkstraat</Naam>");
+			body.append("<GemeenteId>23</GemeenteId>");
+			body.append("<StatusId>3</StatusId>");
+			body.append("</GetStraatResult>");
+		}
+	},
+
+	/**
+	 * A GIPOD ListWerkopdracht call: small request, large response.
+	 */
+	GIPOD_LIST_WERKOPDRACHT("/soap/GipodService.svc/wsfed",
+			"http://www.agiv.be/Gipod/2010/06/service",
+			"http://www.agiv.be/Gipod/2010/06/service/IGipodService/ListWerkopdracht",
+			1000) {
+
+		@Override
+		String getRequest() {
+			return "<ListWerkopdracht xmlns=\"" + getNamespace() + "\">"
+					+ "<request xmlns:g=\"http://www.agiv.be/Gipod/2010/06\">"
+					+ "<g:StatusId>1</g:StatusId>" + "</request>"
+					+ "</ListWerkopdracht>";
+		}
+
+		@Override
+		void appendResult(StringBuilder body, int payloadSize) {
+			body.append("<ListWerkopdrachtResult>");
+			body.append("<Werkopdrachten xmlns=\"http://www.agiv.be/Gipod/2010/06\">");
+			for (int idx = 0; idx < payloadSize; idx++) {
+				body.append("<Werkopdracht>");
+				body.append("<GipodId>").append(1000000 + idx)
+						.append("</GipodId>");
+				body.append("<Omschrijving>Vernieuwen riolering, fase ")
+						.append(idx).append("</Omschrijving>");
+				body.append("<StartDatum>2017-01-01T08:00:00</StartDatum>");
+				body.append("<EindDatum>2017-06-30T17:00:00</EindDatum>");
+				body.append("<StatusId>1</StatusId>");
+				body.append("</Werkopdracht>");
+			}
+			body.append("</Werkopdrachten>");
+			body.append("</ListWerkopdrachtResult>");
+		}
+	};
+
+	private final String path;
+
+	private final String namespace;
+
+	private final String action;
+
+	private final int payloadSize;
+
+	private Workload(String path, String namespace, String action,
+			int payloadSize) {
+		this.path = path;
+		this.namespace = namespace;
+		this.action = action;
+		this.payloadSize = payloadSize;
+	}
+
+	/**
+	 * Gives back the context path of the stand-in service.
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Gives back the namespace of the service messages.
+	 */
+	public String getNamespace() {
+		return this.namespace;
+	}
+
+	/**
+	 * Gives back the WS-Addressing action, also used as SOAP action.
+	 */
+	public String getAction() {
+		return this.action;
+	}
+
+	/**
+	 * Gives back the operation name.
+	 */
+	public String getOperation() {
+		return this.action.substring(this.action.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Gives back the number of items in the response.
+	 */
+	public int getPayloadSize() {
+		return this.payloadSize;
+	}
+
+	/**
+	 * Gives back the payload of the request.
+	 */
+	abstract String getRequest();
+
+	/**
+	 * Appends the result element of the response.
+	 */
+	abstract void appendResult(StringBuilder body, int payloadSize);
+}
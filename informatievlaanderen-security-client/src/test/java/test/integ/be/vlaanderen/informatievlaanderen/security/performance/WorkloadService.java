@@ -0,0 +1,68 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.performance;
+
+import java.io.IOException;
+
+import org.w3c.dom.Element;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.LocalSecuredService;
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.ProofKeyResolver;
+
+/**
+ * Embedded stand-in service that answers the operation of a single
+ * {@link Workload}.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class WorkloadService extends LocalSecuredService {
+
+	private final Workload workload;
+
+	/**
+	 * Creates a stand-in service for the given workload on a free port.
+	 * 
+	 * @param workload
+	 *            the workload.
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys, typically the
+	 *            LocalSTS.
+	 * @throws IOException
+	 */
+	public WorkloadService(Workload workload, ProofKeyResolver proofKeyResolver)
+			throws IOException {
+		super(workload.getPath(), proofKeyResolver, 0);
+		this.workload = workload;
+		setPayloadSize(workload.getPayloadSize());
+	}
+
+	@Override
+	protected boolean appendResponse(String operation, Element request,
+			StringBuilder body) {
+		if (false == this.workload.getOperation().equals(operation)) {
+			return false;
+		}
+		body.append("<").append(operation).append("Response xmlns=\"")
+				.append(this.workload.getNamespace()).append("\">");
+		this.workload.appendResult(body, getPayloadSize());
+		body.append("</").append(operation).append("Response>");
+		return true;
+	}
+}
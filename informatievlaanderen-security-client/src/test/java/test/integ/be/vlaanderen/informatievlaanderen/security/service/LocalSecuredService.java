@@ -0,0 +1,533 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.xml.security.Init;
+import org.apache.xml.security.signature.SignedInfo;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.utils.Constants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded stand-in for an Informatie Vlaanderen web service, secured the way
+ * the live services are. Allows for measuring secured web service calls end to
+ * end on a single machine.
+ * <p>
+ * Every request must carry a WS-Security header as added by the
+ * WSSecurityHandler: a valid timestamp, signed with the proof-of-possession key
+ * of the security token. The key is looked up via the {@link ProofKeyResolver}
+ * , typically the LocalSTS that issued the security token. Requests that fail
+ * validation are answered with a SOAP fault.
+ * <p>
+ * Valid requests are dispatched on the operation name, taken from the
+ * WS-Addressing Action header. Following the document/literal wrapped
+ * convention of the WSDL, the response of an operation the subclass does not
+ * answer itself is an empty <code>&lt;Operation&gt;Response</code> element.
+ * Latency and the size of the synthetic data can be tuned via
+ * {@link #setLatency(long, long)} and {@link #setPayloadSize(int)}.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public abstract class LocalSecuredService {
+
+	private static final Log LOG = LogFactory.getLog(LocalSecuredService.class);
+
+	private static final String SOAP12_CONTENT_TYPE = "application/soap+xml; charset=utf-8";
+
+	private static final String FAULT_ACTION = "http://www.w3.org/2005/08/addressing/soap/fault";
+
+	private static final long TIMESTAMP_TTL = 5 * 60 * 1000;
+
+	private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+	private static final DateTimeFormatter DATE_TIME_FORMATTER = ISODateTimeFormat
+			.dateTime().withZone(DateTimeZone.UTC);
+
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+
+	static {
+		/*
+		 * Without TCP_NODELAY, the response body written after the response
+		 * headers waits for the delayed ACK of the client, adding about 40 ms
+		 * to every call. Only effective before the first HttpServer is
+		 * created.
+		 */
+		if (null == System.getProperty(NO_DELAY_PROPERTY)) {
+			System.setProperty(NO_DELAY_PROPERTY, "true");
+		}
+		Init.init();
+		DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+		DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+	}
+
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	private final String path;
+
+	private final ProofKeyResolver proofKeyResolver;
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	private final HttpServer httpServer;
+
+	private final ExecutorService executorService;
+
+	private final AtomicInteger requestCount;
+
+	private final AtomicInteger rejectedCount;
+
+	private volatile long minimumLatency;
+
+	private volatile long maximumLatency;
+
+	private volatile int payloadSize = 10;
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param path
+	 *            the context path of the service.
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys.
+	 * @param port
+	 *            the local port to listen on, or 0 for a free port.
+	 * @throws IOException
+	 */
+	protected LocalSecuredService(String path,
+			ProofKeyResolver proofKeyResolver, int port) throws IOException {
+		this.path = path;
+		this.proofKeyResolver = proofKeyResolver;
+		this.wsSecurityHandler = new WSSecurityHandler();
+		this.httpServer = HttpServer.create(new InetSocketAddress("localhost",
+				port), 0);
+		this.httpServer.createContext(path, new ServiceHandler());
+		this.executorService = Executors
+				.newCachedThreadPool(new ThreadFactory() {
+
+					private final AtomicInteger threadCount = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "local-service-"
+								+ this.threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.httpServer.setExecutor(this.executorService);
+		this.requestCount = new AtomicInteger();
+		this.rejectedCount = new AtomicInteger();
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		this.httpServer.start();
+		LOG.debug("local service started at: " + getLocation());
+	}
+
+	/**
+	 * Stops the service. Requests still being handled are given one second to
+	 * complete.
+	 */
+	public void stop() {
+		this.httpServer.stop(1);
+		this.executorService.shutdownNow();
+	}
+
+	/**
+	 * Gives back the location of the service.
+	 *
+	 * @return the location of the service.
+	 */
+	public String getLocation() {
+		return "http://localhost:" + this.httpServer.getAddress().getPort()
+				+ this.path;
+	}
+
+	/**
+	 * Sets the latency of every response. The latency of a single response is
+	 * taken at random between the given bounds.
+	 *
+	 * @param minimumLatency
+	 *            the minimum latency in milliseconds.
+	 * @param maximumLatency
+	 *            the maximum latency in milliseconds.
+	 */
+	public void setLatency(long minimumLatency, long maximumLatency) {
+		if (minimumLatency < 0 || maximumLatency < minimumLatency) {
+			throw new IllegalArgumentException("invalid latency: "
+					+ minimumLatency + " - " + maximumLatency);
+		}
+		this.minimumLatency = minimumLatency;
+		this.maximumLatency = maximumLatency;
+	}
+
+	/**
+	 * Sets the number of synthetic entries within a list response.
+	 *
+	 * @param payloadSize
+	 *            the number of entries.
+	 */
+	public void setPayloadSize(int payloadSize) {
+		if (payloadSize < 0) {
+			throw new IllegalArgumentException("invalid payload size: "
+					+ payloadSize);
+		}
+		this.payloadSize = payloadSize;
+	}
+
+	/**
+	 * Gives back the number of synthetic entries within a list response.
+	 *
+	 * @return the number of entries.
+	 */
+	public int getPayloadSize() {
+		return this.payloadSize;
+	}
+
+	/**
+	 * Gives back the number of received requests.
+	 *
+	 * @return the request count.
+	 */
+	public int getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * Gives back the number of requests that failed the WS-Security
+	 * validation.
+	 *
+	 * @return the rejected request count.
+	 */
+	public int getRejectedCount() {
+		return this.rejectedCount.get();
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+	public void resetCounters() {
+		this.requestCount.set(0);
+		this.rejectedCount.set(0);
+	}
+
+	/**
+	 * Appends the response element of the given operation.
+	 *
+	 * @param operation
+	 *            the name of the operation.
+	 * @param request
+	 *            the request element within the SOAP body.
+	 * @param body
+	 *            the SOAP body to append the response element to.
+	 * @return <code>false</code> if the operation is not answered by this
+	 *         service, so an empty response element is to be returned.
+	 */
+	protected abstract boolean appendResponse(String operation,
+			Element request, StringBuilder body);
+
+	private class ServiceHandler implements HttpHandler {
+
+		public void handle(HttpExchange httpExchange) throws IOException {
+			try {
+				handleRequest(httpExchange);
+			} catch (Exception e) {
+				LOG.error("local service error: " + e.getMessage(), e);
+				try {
+					sendResponse(httpExchange, 500,
+							createFault(null, "Receiver", e.getMessage()));
+				} catch (IOException e2) {
+					// response already sent
+				}
+			} finally {
+				httpExchange.close();
+			}
+		}
+	}
+
+	private void handleRequest(HttpExchange httpExchange) throws Exception {
+		this.requestCount.incrementAndGet();
+		Document document = DOCUMENT_BUILDER.get().parse(
+				httpExchange.getRequestBody());
+		Element header = getChildElement(document.getDocumentElement(),
+				WSConstants.SOAP12_NAMESPACE, "Header");
+		Element soapBody = getChildElement(document.getDocumentElement(),
+				WSConstants.SOAP12_NAMESPACE, "Body");
+		String action = getChildText(header, WSConstants.WS_ADDR_NAMESPACE,
+				"Action");
+		String messageId = getChildText(header, WSConstants.WS_ADDR_NAMESPACE,
+				"MessageID");
+
+		String failure = validateSecurityHeader(header);
+		if (null != failure) {
+			this.rejectedCount.incrementAndGet();
+			LOG.debug("rejected request: " + failure);
+			sendResponse(httpExchange, 500,
+					createFault(messageId, "Sender", failure));
+			return;
+		}
+		waitLatency();
+
+		Element request = getChildElement(soapBody, null, null);
+		if (null == action || null == request) {
+			sendResponse(httpExchange, 500,
+					createFault(messageId, "Sender", "missing operation"));
+			return;
+		}
+		String operation = action.substring(action.lastIndexOf('/') + 1);
+		StringBuilder body = new StringBuilder();
+		if (false == appendResponse(operation, request, body)) {
+			body.append("<").append(operation).append("Response xmlns=\"")
+					.append(request.getNamespaceURI()).append("\"/>");
+		}
+		sendResponse(httpExchange, 200,
+				createEnvelope(action + "Response", messageId, body.toString()));
+	}
+
+	/**
+	 * Validates the WS-Security header the way the live services do for the
+	 * WS2007FederationHttpBinding: a timestamp signed with the proof key of
+	 * the security token.
+	 *
+	 * @return the reason of the validation failure, or <code>null</code>.
+	 */
+	private String validateSecurityHeader(Element header) throws Exception {
+		Element securityElement = getChildElement(header,
+				WSConstants.WS_SECURITY_NAMESPACE, "Security");
+		if (null == securityElement) {
+			return "missing WS-Security header";
+		}
+		try {
+			this.wsSecurityHandler.verifySecurityHeader(securityElement);
+		} catch (SecurityException e) {
+			return e.getMessage();
+		}
+		Element timestampElement = getChildElement(securityElement,
+				WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Timestamp");
+		String timestampId = timestampElement.getAttributeNS(
+				WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Id");
+		timestampElement.setIdAttributeNS(
+				WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Id", true);
+
+		Element signatureElement = getChildElement(securityElement,
+				Constants.SignatureSpecNS, "Signature");
+		if (null == signatureElement) {
+			return "missing signature";
+		}
+		XMLSignature xmlSignature = new XMLSignature(signatureElement, null);
+		SignedInfo signedInfo = xmlSignature.getSignedInfo();
+		boolean timestampSigned = false;
+		for (int idx = 0; idx < signedInfo.getLength(); idx++) {
+			if (("#" + timestampId).equals(signedInfo.item(idx).getURI())) {
+				timestampSigned = true;
+			}
+		}
+		if (false == timestampSigned) {
+			return "timestamp not signed";
+		}
+
+		String tokenReference = getTokenReference(signatureElement);
+		if (null == tokenReference) {
+			return "missing security token reference";
+		}
+		byte[] key = this.proofKeyResolver.getProofKey(tokenReference);
+		if (null == key) {
+			return "unknown security token: " + tokenReference;
+		}
+		if (false == xmlSignature.checkSignatureValue(new SecretKeySpec(key,
+				"HmacSHA1"))) {
+			return "invalid signature";
+		}
+		return null;
+	}
+
+	private static String getTokenReference(Element signatureElement) {
+		Element keyInfo = getChildElement(signatureElement,
+				Constants.SignatureSpecNS, "KeyInfo");
+		Element securityTokenReference = getChildElement(keyInfo,
+				WSConstants.WS_SECURITY_NAMESPACE, "SecurityTokenReference");
+		String keyIdentifier = getChildText(securityTokenReference,
+				WSConstants.WS_SECURITY_NAMESPACE, "KeyIdentifier");
+		if (null != keyIdentifier) {
+			return keyIdentifier;
+		}
+		Element reference = getChildElement(securityTokenReference,
+				WSConstants.WS_SECURITY_NAMESPACE, "Reference");
+		if (null == reference) {
+			return null;
+		}
+		String uri = reference.getAttribute("URI");
+		if (uri.startsWith("#")) {
+			return uri.substring(1);
+		}
+		return uri;
+	}
+
+	private void waitLatency() throws InterruptedException {
+		long minimumLatency = this.minimumLatency;
+		long maximumLatency = this.maximumLatency;
+		if (0 == maximumLatency) {
+			return;
+		}
+		long latency = minimumLatency;
+		if (maximumLatency > minimumLatency) {
+			latency += ThreadLocalRandom.current().nextLong(
+					maximumLatency - minimumLatency + 1);
+		}
+		TimeUnit.MILLISECONDS.sleep(latency);
+	}
+
+	/**
+	 * Gives back the first child element with the given name, or the first
+	 * child element at all if no name is given.
+	 */
+	private static Element getChildElement(Element parent, String namespace,
+			String localName) {
+		if (null == parent) {
+			return null;
+		}
+		for (Node node = parent.getFirstChild(); null != node; node = node
+				.getNextSibling()) {
+			if (Node.ELEMENT_NODE != node.getNodeType()) {
+				continue;
+			}
+			if (null == localName
+					|| (namespace.equals(node.getNamespaceURI()) && localName
+							.equals(node.getLocalName()))) {
+				return (Element) node;
+			}
+		}
+		return null;
+	}
+
+	private static String getChildText(Element parent, String namespace,
+			String localName) {
+		Element element = getChildElement(parent, namespace, localName);
+		if (null == element) {
+			return null;
+		}
+		return element.getTextContent().trim();
+	}
+
+	private String createEnvelope(String action, String relatesTo, String body) {
+		long now = System.currentTimeMillis();
+		StringBuilder envelope = new StringBuilder();
+		envelope.append("<s:Envelope xmlns:s=\"")
+				.append(WSConstants.SOAP12_NAMESPACE).append("\" xmlns:a=\"")
+				.append(WSConstants.WS_ADDR_NAMESPACE).append("\" xmlns:u=\"")
+				.append(WSConstants.WS_SECURITY_UTILITY_NAMESPACE)
+				.append("\">");
+		envelope.append("<s:Header>");
+		envelope.append("<a:Action s:mustUnderstand=\"1\">")
+				.append(escape(action)).append("</a:Action>");
+		if (null != relatesTo) {
+			envelope.append("<a:RelatesTo>").append(escape(relatesTo))
+					.append("</a:RelatesTo>");
+		}
+		envelope.append("<o:Security s:mustUnderstand=\"1\" xmlns:o=\"")
+				.append(WSConstants.WS_SECURITY_NAMESPACE).append("\">");
+		envelope.append("<u:Timestamp u:Id=\"_0\"><u:Created>")
+				.append(DATE_TIME_FORMATTER.print(now))
+				.append("</u:Created><u:Expires>")
+				.append(DATE_TIME_FORMATTER.print(now + TIMESTAMP_TTL))
+				.append("</u:Expires></u:Timestamp>");
+		envelope.append("</o:Security>");
+		envelope.append("</s:Header>");
+		envelope.append("<s:Body>").append(body).append("</s:Body>");
+		envelope.append("</s:Envelope>");
+		return envelope.toString();
+	}
+
+	private String createFault(String relatesTo, String code, String reason) {
+		StringBuilder body = new StringBuilder();
+		body.append("<s:Fault><s:Code><s:Value>s:").append(code)
+				.append("</s:Value></s:Code>");
+		body.append("<s:Reason><s:Text xml:lang=\"en\">")
+				.append(escape(reason)).append("</s:Text></s:Reason>");
+		body.append("</s:Fault>");
+		return createEnvelope(FAULT_ACTION, relatesTo, body.toString());
+	}
+
+	private static void sendResponse(HttpExchange httpExchange,
+			int statusCode, String response) throws IOException {
+		byte[] responseData = response.getBytes("UTF-8");
+		httpExchange.getResponseHeaders().set("Content-Type",
+				SOAP12_CONTENT_TYPE);
+		httpExchange.sendResponseHeaders(statusCode, responseData.length);
+		OutputStream outputStream = httpExchange.getResponseBody();
+		outputStream.write(responseData);
+		outputStream.close();
+	}
+
+	/**
+	 * Escapes the given value for use within XML text or attribute content.
+	 *
+	 * @param value
+	 *            the value.
+	 * @return the escaped value.
+	 */
+	protected static String escape(String value) {
+		if (null == value) {
+			return "";
+		}
+		return value.replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.handler.Handler;
+import javax.xml.ws.soap.AddressingFeature;
+import javax.xml.ws.soap.SOAPBinding;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+public class LocalSecuredServiceTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(LocalSecuredServiceTest.class);
+
+	private static final String APPLIES_TO = "urn:informatievlaanderen.be/test/local";
+
+	private static final String NAMESPACE = "urn:test";
+
+	private static LocalSTS localSTS;
+
+	private static TestService testService;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	@BeforeClass
+	public static void startServices() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		testService = new TestService(localSTS);
+		testService.start();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopServices() {
+		testService.stop();
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		testService.setLatency(0, 0);
+		testService.setPayloadSize(10);
+		testService.resetCounters();
+	}
+
+	@Test
+	public void testSecuredCall() throws Exception {
+		for (WSSecurityMode wsSecurityMode : WSSecurityMode.values()) {
+			// setup
+			InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+					localSTS.getLocation(), certificate, keyPair.getPrivate());
+			Dispatch<SOAPMessage> dispatch = createDispatch();
+
+			// prepare
+			informatieVlaanderenSecurity.enable(dispatch,
+					testService.getLocation(), false, APPLIES_TO,
+					wsSecurityMode);
+			testService.setPayloadSize(25);
+
+			// operate
+			SOAPMessage response = dispatch.invoke(createRequest());
+
+			// verify
+			Element responseElement = (Element) response.getSOAPBody()
+					.getFirstChild();
+			assertEquals("ListResponse", responseElement.getLocalName());
+			assertEquals(25,
+					responseElement.getElementsByTagNameNS(NAMESPACE, "Item")
+							.getLength());
+		}
+		assertEquals(WSSecurityMode.values().length,
+				testService.getRequestCount());
+		assertEquals(0, testService.getRejectedCount());
+	}
+
+	@Test
+	public void testUnknownOperation() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		Dispatch<SOAPMessage> dispatch = createDispatch();
+		dispatch.getRequestContext().put(
+				BindingProvider.SOAPACTION_URI_PROPERTY, NAMESPACE + "/Other");
+
+		// prepare
+		informatieVlaanderenSecurity.enable(dispatch,
+				testService.getLocation(), APPLIES_TO);
+
+		// operate
+		SOAPMessage response = dispatch.invoke(createRequest());
+
+		// verify
+		Element responseElement = (Element) response.getSOAPBody()
+				.getFirstChild();
+		assertEquals("OtherResponse", responseElement.getLocalName());
+		assertEquals(NAMESPACE, responseElement.getNamespaceURI());
+	}
+
+	@Test
+	public void testUnsignedRequestRejected() throws Exception {
+		// setup
+		Dispatch<SOAPMessage> dispatch = createDispatch();
+		dispatch.getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
+				testService.getLocation());
+		List<Handler> handlerChain = dispatch.getBinding().getHandlerChain();
+		// timestamp only, no proof-of-possession signature
+		handlerChain.add(new WSSecurityHandler());
+		dispatch.getBinding().setHandlerChain(handlerChain);
+
+		// operate
+		try {
+			dispatch.invoke(createRequest());
+			fail();
+		} catch (SOAPFaultException e) {
+			// verify
+			LOG.debug("expected fault: " + e.getMessage());
+			assertTrue(e.getMessage().contains("missing signature"));
+		}
+		assertEquals(1, testService.getRejectedCount());
+	}
+
+	@Test
+	public void testLatency() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		Dispatch<SOAPMessage> dispatch = createDispatch();
+		informatieVlaanderenSecurity.enable(dispatch,
+				testService.getLocation(), APPLIES_TO);
+		dispatch.invoke(createRequest());
+
+		// prepare
+		testService.setLatency(200, 300);
+
+		// operate
+		long startTime = System.currentTimeMillis();
+		dispatch.invoke(createRequest());
+		long duration = System.currentTimeMillis() - startTime;
+
+		// verify
+		LOG.debug("duration: " + duration + " ms");
+		assertTrue(duration >= 200);
+	}
+
+	private Dispatch<SOAPMessage> createDispatch() {
+		QName serviceName = new QName(NAMESPACE, "TestService");
+		QName portName = new QName(NAMESPACE, "TestPort");
+		Service service = Service.create(serviceName);
+		service.addPort(portName, SOAPBinding.SOAP12HTTP_BINDING,
+				testService.getLocation());
+		Dispatch<SOAPMessage> dispatch = service.createDispatch(portName,
+				SOAPMessage.class, Service.Mode.MESSAGE,
+				new AddressingFeature());
+		dispatch.getRequestContext().put(
+				BindingProvider.SOAPACTION_USE_PROPERTY, Boolean.TRUE);
+		dispatch.getRequestContext().put(
+				BindingProvider.SOAPACTION_URI_PROPERTY, NAMESPACE + "/List");
+		return dispatch;
+	}
+
+	private SOAPMessage createRequest() throws Exception {
+		SOAPMessage request = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage();
+		request.getSOAPBody().addChildElement("List", "t", NAMESPACE);
+		return request;
+	}
+
+	private static class TestService extends LocalSecuredService {
+
+		public TestService(ProofKeyResolver proofKeyResolver)
+				throws IOException {
+			super("/test", proofKeyResolver, 0);
+		}
+
+		@Override
+		protected boolean appendResponse(String operation, Element request,
+				StringBuilder body) {
+			if (false == "List".equals(operation)) {
+				return false;
+			}
+			body.append("<ListResponse xmlns=\"").append(NAMESPACE)
+					.append("\">");
+			for (int idx = 0; idx < getPayloadSize(); idx++) {
+				body.append("<Item>item ").append(idx).append("</Item>");
+			}
+			body.append("</ListResponse>");
+			return true;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.service;
+
+/**
+ * Gives the stand-in services access to the proof-of-possession keys of the
+ * security tokens, as a real service would get them out of the encrypted
+ * security token.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public interface ProofKeyResolver {
+
+	/**
+	 * Gives back the proof-of-possession key of a security token.
+	 *
+	 * @param tokenReference
+	 *            the SAML assertion identifier, or the identifier of the
+	 *            secure conversation token.
+	 * @return the key, or <code>null</code> for an unknown security token.
+	 */
+	byte[] getProofKey(String tokenReference);
+}
@@ -0,0 +1,48 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.sts;
+
+/**
+ * The way the {@link LocalSTS} fails a request when failure injection kicks
+ * in.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public enum FailureMode {
+
+	/**
+	 * Answers with a SOAP 1.2 receiver fault, like an STS that cannot issue a
+	 * token.
+	 */
+	SOAP_FAULT,
+
+	/**
+	 * Answers with an HTTP 503 without content, like an overloaded load
+	 * balancer.
+	 */
+	HTTP_ERROR,
+
+	/**
+	 * Closes the connection without any response, like a crashed STS node.
+	 * Keep in mind that the JDK HTTP client retries a POST once on a dropped
+	 * connection.
+	 */
+	CONNECTION_CLOSE
+}
@@ -0,0 +1,105 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.sts;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.RSAKeyGenParameterSpec;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.util.PrivateKeyFactory;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.bc.BcRSAContentSignerBuilder;
+import org.joda.time.DateTime;
+
+/**
+ * Generates the X509 credentials towards the LocalSTS. The LocalSTS does not
+ * validate the signatures of the requests, so a self-signed certificate will
+ * do.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class LocalCredential {
+
+	private LocalCredential() {
+		super();
+	}
+
+	/**
+	 * Generates a 1024 bit RSA key pair.
+	 * 
+	 * @return the key pair.
+	 * @throws Exception
+	 */
+	public static KeyPair generateKeyPair() throws Exception {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(new RSAKeyGenParameterSpec(1024,
+				RSAKeyGenParameterSpec.F4), new SecureRandom());
+		return keyPairGenerator.generateKeyPair();
+	}
+
+	/**
+	 * Generates a self-signed certificate, valid for one month.
+	 * 
+	 * @param keyPair
+	 *            the key pair of the certificate.
+	 * @return the certificate.
+	 * @throws Exception
+	 */
+	public static X509Certificate generateSelfSignedCertificate(
+			KeyPair keyPair) throws Exception {
+		X500Name subject = new X500Name("CN=Test");
+		byte[] serialValue = new byte[8];
+		new SecureRandom().nextBytes(serialValue);
+		DateTime notBefore = new DateTime();
+		X509v3CertificateBuilder x509v3CertificateBuilder = new X509v3CertificateBuilder(
+				subject, new BigInteger(serialValue), notBefore.toDate(),
+				notBefore.plusMonths(1).toDate(), subject,
+				SubjectPublicKeyInfo.getInstance(keyPair.getPublic()
+						.getEncoded()));
+		AlgorithmIdentifier sigAlgId = new DefaultSignatureAlgorithmIdentifierFinder()
+				.find("SHA1withRSA");
+		AlgorithmIdentifier digAlgId = new DefaultDigestAlgorithmIdentifierFinder()
+				.find(sigAlgId);
+		AsymmetricKeyParameter asymmetricKeyParameter = PrivateKeyFactory
+				.createKey(keyPair.getPrivate().getEncoded());
+		ContentSigner contentSigner = new BcRSAContentSignerBuilder(sigAlgId,
+				digAlgId).build(asymmetricKeyParameter);
+		X509CertificateHolder x509CertificateHolder = x509v3CertificateBuilder
+				.build(contentSigner);
+		CertificateFactory certificateFactory = CertificateFactory
+				.getInstance("X.509");
+		return (X509Certificate) certificateFactory
+				.generateCertificate(new ByteArrayInputStream(
+						x509CertificateHolder.getEncoded()));
+	}
+}
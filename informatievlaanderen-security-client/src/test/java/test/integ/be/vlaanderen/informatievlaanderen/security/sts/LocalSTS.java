@@ -0,0 +1,790 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.sts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ws.security.conversation.ConversationException;
+import org.apache.ws.security.conversation.dkalgo.P_SHA1;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.ProofKeyResolver;
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded stand-in for the Informatie Vlaanderen R-STS and the
+ * WS-SecureConversation endpoints of the Informatie Vlaanderen web services.
+ * Allows for running the WS-Trust clients, and everything built on top of
+ * them, without access to the live STS.
+ * <p>
+ * The STS answers the WS-Trust 1.3 issue and cancel requests as sent by the
+ * RSTSClient and the SecureConversationClient:
+ * <ul>
+ * <li>R-STS issue with client entropy: SAML 1.1 assertion, with a PSHA1
+ * computed key based on the server entropy.</li>
+ * <li>R-STS issue without client entropy: SAML 1.1 assertion, with the key
+ * as binary secret proof token.</li>
+ * <li>WS-SecureConversation issue: secure conversation token, with a PSHA1
+ * computed key.</li>
+ * <li>WS-SecureConversation cancel: cancels a previously issued secure
+ * conversation token, or faults for an unknown one.</li>
+ * </ul>
+ * The SAML assertions are not signed nor encrypted, and the signatures of the
+ * requests are not validated. The proof-of-possession keys of the issued
+ * tokens are kept, so stand-in services can validate the signatures made with
+ * them. Latency and failures can be injected via
+ * {@link #setLatency(long, long)}, {@link #setFailureRate(double)} and
+ * {@link #failNext(int)}.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class LocalSTS implements ProofKeyResolver {
+
+	private static final Log LOG = LogFactory.getLog(LocalSTS.class);
+
+	private static final String PATH = "/sts";
+
+	private static final String SOAP12_CONTENT_TYPE = "application/soap+xml; charset=utf-8";
+
+	private static final String ISSUE_FINAL_ACTION = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/RSTRC/IssueFinal";
+
+	private static final String SEC_CONV_ISSUE_RESPONSE_ACTION = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/RSTR/SCT";
+
+	private static final String SEC_CONV_CANCEL_RESPONSE_ACTION = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/RSTR/SCT/Cancel";
+
+	private static final String CANCEL_FINAL_ACTION = "http://docs.oasis-open.org/ws-sx/ws-trust/200512/RSTR/CancelFinal";
+
+	private static final String FAULT_ACTION = "http://www.w3.org/2005/08/addressing/soap/fault";
+
+	private static final String SAML_TOKEN_TYPE = "urn:oasis:names:tc:SAML:1.0:assertion";
+
+	private static final String SAML_NAMESPACE = "urn:oasis:names:tc:SAML:1.0:assertion";
+
+	private static final long TIMESTAMP_TTL = 5 * 60 * 1000;
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory
+			.newInstance();
+
+	/*
+	 * Joda formatters are immutable and thread-safe.
+	 */
+	private static final DateTimeFormatter DATE_TIME_FORMATTER = ISODateTimeFormat
+			.dateTime().withZone(DateTimeZone.UTC);
+
+	static {
+		// TCP_NODELAY, as for the LocalSecuredService
+		if (null == System.getProperty("sun.net.httpserver.nodelay")) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer httpServer;
+
+	private final ExecutorService executorService;
+
+	private final SecureRandom secureRandom;
+
+	private final ConcurrentMap<String, String> secureConversationTokens;
+
+	private final ConcurrentMap<String, byte[]> proofKeys;
+
+	private final AtomicInteger requestCount;
+
+	private final AtomicInteger issueCount;
+
+	private final AtomicInteger secureConversationIssueCount;
+
+	private final AtomicInteger cancelCount;
+
+	private final AtomicInteger failureCount;
+
+	private final AtomicInteger failNextCount;
+
+	private volatile long minimumLatency;
+
+	private volatile long maximumLatency;
+
+	private volatile double failureRate;
+
+	private volatile FailureMode failureMode = FailureMode.SOAP_FAULT;
+
+	private volatile long tokenLifetime = 60 * 60 * 1000;
+
+	private volatile String issuer = "urn:local-sts";
+
+	/**
+	 * Creates a local STS on a free port.
+	 * 
+	 * @throws IOException
+	 */
+	public LocalSTS() throws IOException {
+		this(0);
+	}
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param port
+	 *            the local port to listen on, or 0 for a free port.
+	 * @throws IOException
+	 */
+	public LocalSTS(int port) throws IOException {
+		this.httpServer = HttpServer.create(new InetSocketAddress("localhost",
+				port), 0);
+		this.httpServer.createContext(PATH, new STSHandler());
+		this.executorService = Executors
+				.newCachedThreadPool(new ThreadFactory() {
+
+					private final AtomicInteger threadCount = new AtomicInteger();
+
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "local-sts-"
+								+ this.threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.httpServer.setExecutor(this.executorService);
+		this.secureRandom = new SecureRandom();
+		this.secureConversationTokens = new ConcurrentHashMap<String, String>();
+		this.proofKeys = new ConcurrentHashMap<String, byte[]>();
+		this.requestCount = new AtomicInteger();
+		this.issueCount = new AtomicInteger();
+		this.secureConversationIssueCount = new AtomicInteger();
+		this.cancelCount = new AtomicInteger();
+		this.failureCount = new AtomicInteger();
+		this.failNextCount = new AtomicInteger();
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		this.httpServer.start();
+		LOG.debug("local STS started at: " + getLocation());
+	}
+
+	/**
+	 * Stops the STS. Requests still being handled are given one second to
+	 * complete.
+	 */
+	public void stop() {
+		this.httpServer.stop(1);
+		this.executorService.shutdownNow();
+	}
+
+	/**
+	 * Gives back the location of the STS. The same location serves as R-STS
+	 * and as WS-SecureConversation endpoint.
+	 * 
+	 * @return the location of the STS.
+	 */
+	public String getLocation() {
+		return "http://localhost:" + this.httpServer.getAddress().getPort()
+				+ PATH;
+	}
+
+	/**
+	 * Sets the latency of every response. The latency of a single response is
+	 * taken at random between the given bounds.
+	 * 
+	 * @param minimumLatency
+	 *            the minimum latency in milliseconds.
+	 * @param maximumLatency
+	 *            the maximum latency in milliseconds.
+	 */
+	public void setLatency(long minimumLatency, long maximumLatency) {
+		if (minimumLatency < 0 || maximumLatency < minimumLatency) {
+			throw new IllegalArgumentException("invalid latency: "
+					+ minimumLatency + " - " + maximumLatency);
+		}
+		this.minimumLatency = minimumLatency;
+		this.maximumLatency = maximumLatency;
+	}
+
+	/**
+	 * Sets the fraction of requests that should fail.
+	 * 
+	 * @param failureRate
+	 *            the failure rate, between 0 and 1.
+	 */
+	public void setFailureRate(double failureRate) {
+		if (failureRate < 0 || failureRate > 1) {
+			throw new IllegalArgumentException("invalid failure rate: "
+					+ failureRate);
+		}
+		this.failureRate = failureRate;
+	}
+
+	/**
+	 * Lets the next requests fail, regardless of the failure rate.
+	 * 
+	 * @param count
+	 *            the number of requests to fail.
+	 */
+	public void failNext(int count) {
+		this.failNextCount.set(count);
+	}
+
+	/**
+	 * Sets how requests fail. Defaults to {@link FailureMode#SOAP_FAULT}.
+	 * 
+	 * @param failureMode
+	 *            the failure mode.
+	 */
+	public void setFailureMode(FailureMode failureMode) {
+		if (null == failureMode) {
+			throw new IllegalArgumentException("missing failure mode");
+		}
+		this.failureMode = failureMode;
+	}
+
+	/**
+	 * Sets the lifetime of the issued tokens. Defaults to one hour.
+	 * 
+	 * @param tokenLifetime
+	 *            the token lifetime in milliseconds.
+	 */
+	public void setTokenLifetime(long tokenLifetime) {
+		if (tokenLifetime <= 0) {
+			throw new IllegalArgumentException("invalid token lifetime: "
+					+ tokenLifetime);
+		}
+		this.tokenLifetime = tokenLifetime;
+	}
+
+	/**
+	 * Sets the issuer of the SAML assertions.
+	 * 
+	 * @param issuer
+	 *            the SAML issuer.
+	 */
+	public void setIssuer(String issuer) {
+		this.issuer = issuer;
+	}
+
+	/**
+	 * Gives back the number of received requests, including the failed ones.
+	 * 
+	 * @return the request count.
+	 */
+	public int getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * Gives back the number of issued SAML tokens.
+	 * 
+	 * @return the issue count.
+	 */
+	public int getIssueCount() {
+		return this.issueCount.get();
+	}
+
+	/**
+	 * Gives back the number of issued secure conversation tokens.
+	 * 
+	 * @return the secure conversation issue count.
+	 */
+	public int getSecureConversationIssueCount() {
+		return this.secureConversationIssueCount.get();
+	}
+
+	/**
+	 * Gives back the number of cancelled secure conversation tokens.
+	 * 
+	 * @return the cancel count.
+	 */
+	public int getCancelCount() {
+		return this.cancelCount.get();
+	}
+
+	/**
+	 * Gives back the number of injected failures.
+	 * 
+	 * @return the failure count.
+	 */
+	public int getFailureCount() {
+		return this.failureCount.get();
+	}
+
+	public byte[] getProofKey(String tokenReference) {
+		return this.proofKeys.get(tokenReference);
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+	public void resetCounters() {
+		this.requestCount.set(0);
+		this.issueCount.set(0);
+		this.secureConversationIssueCount.set(0);
+		this.cancelCount.set(0);
+		this.failureCount.set(0);
+	}
+
+	private class STSHandler implements HttpHandler {
+
+		public void handle(HttpExchange httpExchange) throws IOException {
+			try {
+				handleRequest(httpExchange);
+			} catch (Exception e) {
+				LOG.error("local STS error: " + e.getMessage(), e);
+				try {
+					sendResponse(httpExchange, 500,
+							createFault(null, "Receiver", e.getMessage()));
+				} catch (IOException e2) {
+					// response already sent
+				}
+			} finally {
+				httpExchange.close();
+			}
+		}
+	}
+
+	private void handleRequest(HttpExchange httpExchange) throws Exception {
+		this.requestCount.incrementAndGet();
+		STSRequest request = STSRequest.parse(httpExchange.getRequestBody());
+		waitLatency();
+		if (isFailing()) {
+			this.failureCount.incrementAndGet();
+			switch (this.failureMode) {
+			case HTTP_ERROR:
+				httpExchange.sendResponseHeaders(503, -1);
+				return;
+			case CONNECTION_CLOSE:
+				// closing the exchange without a response drops the
+				// connection
+				return;
+			default:
+				sendResponse(httpExchange, 500,
+						createFault(request.messageId, "Receiver",
+								"injected failure"));
+				return;
+			}
+		}
+		if (false == request.securityHeader) {
+			sendResponse(httpExchange, 500,
+					createFault(request.messageId, "Sender",
+							"missing WS-Security header"));
+			return;
+		}
+		String response;
+		if (WSConstants.CANCEL_REQUEST_TYPE.equals(request.requestType)) {
+			String tokenId = null;
+			if (null != request.cancelTarget) {
+				tokenId = this.secureConversationTokens
+						.remove(request.cancelTarget);
+			}
+			if (null == tokenId) {
+				sendResponse(httpExchange, 500,
+						createFault(request.messageId, "Sender",
+								"unknown secure conversation token: "
+										+ request.cancelTarget));
+				return;
+			}
+			this.proofKeys.remove(tokenId);
+			this.cancelCount.incrementAndGet();
+			response = createCancelResponse(request);
+		} else if (WSConstants.SECURE_CONVERSATION_TOKEN_TYPE
+				.equals(request.tokenType)
+				|| WSConstants.SEC_CONV_ISSUE_ACTION.equals(request.action)) {
+			this.secureConversationIssueCount.incrementAndGet();
+			response = createSecureConversationResponse(request);
+		} else {
+			this.issueCount.incrementAndGet();
+			response = createIssueResponse(request);
+		}
+		sendResponse(httpExchange, 200, response);
+	}
+
+	private void waitLatency() throws InterruptedException {
+		long minimumLatency = this.minimumLatency;
+		long maximumLatency = this.maximumLatency;
+		if (0 == maximumLatency) {
+			return;
+		}
+		long latency = minimumLatency;
+		if (maximumLatency > minimumLatency) {
+			latency += ThreadLocalRandom.current().nextLong(
+					maximumLatency - minimumLatency + 1);
+		}
+		TimeUnit.MILLISECONDS.sleep(latency);
+	}
+
+	private boolean isFailing() {
+		int failNext = this.failNextCount.get();
+		while (failNext > 0) {
+			if (this.failNextCount.compareAndSet(failNext, failNext - 1)) {
+				return true;
+			}
+			failNext = this.failNextCount.get();
+		}
+		double failureRate = this.failureRate;
+		return failureRate > 0
+				&& ThreadLocalRandom.current().nextDouble() < failureRate;
+	}
+
+	private String createIssueResponse(STSRequest request)
+			throws ConversationException {
+		long now = System.currentTimeMillis();
+		String created = DATE_TIME_FORMATTER.print(now);
+		String expires = DATE_TIME_FORMATTER.print(now + this.tokenLifetime);
+		String assertionId = "_" + UUID.randomUUID().toString();
+		String appliesTo = request.appliesTo;
+		if (null == appliesTo) {
+			appliesTo = getLocation();
+		}
+
+		StringBuilder body = new StringBuilder();
+		body.append("<trust:RequestSecurityTokenResponseCollection xmlns:trust=\"")
+				.append(WSConstants.WSTRUST_NAMESPACE).append("\">");
+		body.append("<trust:RequestSecurityTokenResponse>");
+		body.append("<trust:KeySize>256</trust:KeySize>");
+		appendLifetime(body, created, expires);
+		body.append("<wsp:AppliesTo xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\"><a:EndpointReference><a:Address>")
+				.append(escape(appliesTo))
+				.append("</a:Address></a:EndpointReference></wsp:AppliesTo>");
+		body.append("<trust:RequestedSecurityToken>");
+		body.append("<saml:Assertion MajorVersion=\"1\" MinorVersion=\"1\" AssertionID=\"")
+				.append(assertionId).append("\" Issuer=\"")
+				.append(escape(this.issuer)).append("\" IssueInstant=\"")
+				.append(created).append("\" xmlns:saml=\"")
+				.append(SAML_NAMESPACE).append("\">");
+		body.append("<saml:Conditions NotBefore=\"").append(created)
+				.append("\" NotOnOrAfter=\"").append(expires).append("\">");
+		body.append("<saml:AudienceRestrictionCondition><saml:Audience>")
+				.append(escape(appliesTo))
+				.append("</saml:Audience></saml:AudienceRestrictionCondition>");
+		body.append("</saml:Conditions>");
+		body.append("<saml:AttributeStatement><saml:Subject><saml:SubjectConfirmation>");
+		body.append("<saml:ConfirmationMethod>urn:oasis:names:tc:SAML:1.0:cm:holder-of-key</saml:ConfirmationMethod>");
+		body.append("</saml:SubjectConfirmation></saml:Subject>");
+		body.append("<saml:Attribute AttributeName=\"name\" AttributeNamespace=\"http://schemas.xmlsoap.org/ws/2005/05/identity/claims\">");
+		body.append("<saml:AttributeValue>local-sts-subject</saml:AttributeValue></saml:Attribute>");
+		body.append("</saml:AttributeStatement>");
+		body.append("</saml:Assertion>");
+		body.append("</trust:RequestedSecurityToken>");
+		byte[] key;
+		if (null != request.entropy) {
+			key = appendComputedKey(body, request.entropy);
+		} else {
+			key = createSecret();
+			body.append("<trust:RequestedProofToken><trust:BinarySecret>")
+					.append(DatatypeConverter.printBase64Binary(key))
+					.append("</trust:BinarySecret></trust:RequestedProofToken>");
+		}
+		this.proofKeys.put(assertionId, key);
+		appendSamlReference(body, "RequestedAttachedReference", assertionId);
+		appendSamlReference(body, "RequestedUnattachedReference", assertionId);
+		body.append("<trust:TokenType>").append(SAML_TOKEN_TYPE)
+				.append("</trust:TokenType>");
+		body.append("<trust:RequestType>")
+				.append(WSConstants.ISSUE_REQUEST_TYPE)
+				.append("</trust:RequestType>");
+		body.append("<trust:KeyType>").append(WSConstants.KEY_TYPE_SYMMETRIC)
+				.append("</trust:KeyType>");
+		body.append("</trust:RequestSecurityTokenResponse>");
+		body.append("</trust:RequestSecurityTokenResponseCollection>");
+		return createEnvelope(ISSUE_FINAL_ACTION, request.messageId,
+				body.toString());
+	}
+
+	private String createSecureConversationResponse(STSRequest request)
+			throws ConversationException {
+		long now = System.currentTimeMillis();
+		long expiresMillis = now + this.tokenLifetime;
+		String tokenId = "uuid-" + UUID.randomUUID().toString();
+		String identifier = "urn:uuid:" + UUID.randomUUID().toString();
+		this.secureConversationTokens.put(identifier, tokenId);
+
+		StringBuilder body = new StringBuilder();
+		body.append("<trust:RequestSecurityTokenResponseCollection xmlns:trust=\"")
+				.append(WSConstants.WSTRUST_NAMESPACE).append("\">");
+		body.append("<trust:RequestSecurityTokenResponse>");
+		body.append("<trust:TokenType>")
+				.append(WSConstants.SECURE_CONVERSATION_TOKEN_TYPE)
+				.append("</trust:TokenType>");
+		body.append("<trust:RequestedSecurityToken>");
+		body.append("<SecurityContextToken u:Id=\"").append(tokenId)
+				.append("\" xmlns=\"").append(WSConstants.SEC_CONV_NAMESPACE)
+				.append("\"><Identifier>").append(identifier)
+				.append("</Identifier></SecurityContextToken>");
+		body.append("</trust:RequestedSecurityToken>");
+		body.append("<trust:RequestedAttachedReference><o:SecurityTokenReference xmlns:o=\"")
+				.append(WSConstants.WS_SECURITY_NAMESPACE)
+				.append("\"><o:Reference URI=\"#").append(tokenId)
+				.append("\"/></o:SecurityTokenReference></trust:RequestedAttachedReference>");
+		body.append("<trust:RequestedUnattachedReference><o:SecurityTokenReference xmlns:o=\"")
+				.append(WSConstants.WS_SECURITY_NAMESPACE)
+				.append("\"><o:Reference URI=\"").append(identifier)
+				.append("\" ValueType=\"")
+				.append(WSConstants.SECURE_CONVERSATION_TOKEN_TYPE)
+				.append("\"/></o:SecurityTokenReference></trust:RequestedUnattachedReference>");
+		byte[] key = appendComputedKey(body, request.entropy);
+		if (null != key) {
+			this.proofKeys.put(tokenId, key);
+		}
+		appendLifetime(body, DATE_TIME_FORMATTER.print(now),
+				DATE_TIME_FORMATTER.print(expiresMillis));
+		body.append("<trust:KeySize>256</trust:KeySize>");
+		body.append("</trust:RequestSecurityTokenResponse>");
+		body.append("</trust:RequestSecurityTokenResponseCollection>");
+		return createEnvelope(SEC_CONV_ISSUE_RESPONSE_ACTION,
+				request.messageId, body.toString());
+	}
+
+	private String createCancelResponse(STSRequest request) {
+		String action;
+		if (WSConstants.SEC_CONV_CANCEL_ACTION.equals(request.action)) {
+			action = SEC_CONV_CANCEL_RESPONSE_ACTION;
+		} else {
+			action = CANCEL_FINAL_ACTION;
+		}
+		StringBuilder body = new StringBuilder();
+		body.append("<trust:RequestSecurityTokenResponse xmlns:trust=\"")
+				.append(WSConstants.WSTRUST_NAMESPACE).append("\">");
+		body.append("<trust:RequestedTokenCancelled/>");
+		body.append("</trust:RequestSecurityTokenResponse>");
+		return createEnvelope(action, request.messageId, body.toString());
+	}
+
+	private void appendLifetime(StringBuilder body, String created,
+			String expires) {
+		body.append("<trust:Lifetime><u:Created>").append(created)
+				.append("</u:Created><u:Expires>").append(expires)
+				.append("</u:Expires></trust:Lifetime>");
+	}
+
+	private byte[] appendComputedKey(StringBuilder body, String clientEntropy)
+			throws ConversationException {
+		byte[] serverSecret = createSecret();
+		body.append("<trust:RequestedProofToken><trust:ComputedKey>")
+				.append(WSConstants.COMP_KEY_ALGO_PSHA1)
+				.append("</trust:ComputedKey></trust:RequestedProofToken>");
+		body.append("<trust:Entropy><trust:BinarySecret Type=\"")
+				.append(WSConstants.SECRET_TYPE_NONCE).append("\">")
+				.append(DatatypeConverter.printBase64Binary(serverSecret))
+				.append("</trust:BinarySecret></trust:Entropy>");
+		if (null == clientEntropy) {
+			return null;
+		}
+		// same key derivation as the RSTSClient and SecureConversationClient
+		P_SHA1 p_SHA1 = new P_SHA1();
+		return p_SHA1.createKey(
+				DatatypeConverter.parseBase64Binary(clientEntropy),
+				serverSecret, 0, 256 / 8);
+	}
+
+	private void appendSamlReference(StringBuilder body, String elementName,
+			String assertionId) {
+		body.append("<trust:").append(elementName)
+				.append("><o:SecurityTokenReference xmlns:o=\"")
+				.append(WSConstants.WS_SECURITY_NAMESPACE)
+				.append("\"><o:KeyIdentifier ValueType=\"")
+				.append(WSConstants.SAML_KEY_IDENTIFIER_TYPE).append("\">")
+				.append(assertionId)
+				.append("</o:KeyIdentifier></o:SecurityTokenReference></trust:")
+				.append(elementName).append(">");
+	}
+
+	private byte[] createSecret() {
+		byte[] secret = new byte[256 / 8];
+		this.secureRandom.nextBytes(secret);
+		return secret;
+	}
+
+	private String createEnvelope(String action, String relatesTo, String body) {
+		long now = System.currentTimeMillis();
+		StringBuilder envelope = new StringBuilder();
+		envelope.append("<s:Envelope xmlns:s=\"")
+				.append(WSConstants.SOAP12_NAMESPACE).append("\" xmlns:a=\"")
+				.append(WSConstants.WS_ADDR_NAMESPACE).append("\" xmlns:u=\"")
+				.append(WSConstants.WS_SECURITY_UTILITY_NAMESPACE)
+				.append("\">");
+		envelope.append("<s:Header>");
+		envelope.append("<a:Action s:mustUnderstand=\"1\">").append(action)
+				.append("</a:Action>");
+		if (null != relatesTo) {
+			envelope.append("<a:RelatesTo>").append(escape(relatesTo))
+					.append("</a:RelatesTo>");
+		}
+		envelope.append("<o:Security s:mustUnderstand=\"1\" xmlns:o=\"")
+				.append(WSConstants.WS_SECURITY_NAMESPACE).append("\">");
+		envelope.append("<u:Timestamp u:Id=\"_0\"><u:Created>")
+				.append(DATE_TIME_FORMATTER.print(now))
+				.append("</u:Created><u:Expires>")
+				.append(DATE_TIME_FORMATTER.print(now + TIMESTAMP_TTL))
+				.append("</u:Expires></u:Timestamp>");
+		envelope.append("</o:Security>");
+		envelope.append("</s:Header>");
+		envelope.append("<s:Body>").append(body).append("</s:Body>");
+		envelope.append("</s:Envelope>");
+		return envelope.toString();
+	}
+
+	private String createFault(String relatesTo, String code, String reason) {
+		StringBuilder body = new StringBuilder();
+		body.append("<s:Fault><s:Code><s:Value>s:").append(code)
+				.append("</s:Value></s:Code>");
+		body.append("<s:Reason><s:Text xml:lang=\"en\">")
+				.append(escape(reason)).append("</s:Text></s:Reason>");
+		body.append("</s:Fault>");
+		return createEnvelope(FAULT_ACTION, relatesTo, body.toString());
+	}
+
+	private static void sendResponse(HttpExchange httpExchange,
+			int statusCode, String response) throws IOException {
+		byte[] responseData = response.getBytes("UTF-8");
+		httpExchange.getResponseHeaders().set("Content-Type",
+				SOAP12_CONTENT_TYPE);
+		httpExchange.sendResponseHeaders(statusCode, responseData.length);
+		OutputStream outputStream = httpExchange.getResponseBody();
+		outputStream.write(responseData);
+		outputStream.close();
+	}
+
+	private static String escape(String value) {
+		if (null == value) {
+			return "";
+		}
+		return value.replace("&", "&amp;").replace("<", "&lt;")
+				.replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	/**
+	 * The parts of a WS-Trust request the local STS cares about. Read via StAX
+	 * in a single pass.
+	 */
+	private static class STSRequest {
+
+		private String action;
+
+		private String messageId;
+
+		private boolean securityHeader;
+
+		private String requestType;
+
+		private String tokenType;
+
+		private String entropy;
+
+		private String appliesTo;
+
+		private String cancelTarget;
+
+		static STSRequest parse(InputStream inputStream)
+				throws XMLStreamException {
+			STSRequest request = new STSRequest();
+			XMLStreamReader reader = XML_INPUT_FACTORY
+					.createXMLStreamReader(inputStream);
+			try {
+				boolean entropy = false;
+				boolean appliesTo = false;
+				boolean cancelTarget = false;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (XMLStreamConstants.END_ELEMENT == event) {
+						String localName = reader.getLocalName();
+						if ("Entropy".equals(localName)) {
+							entropy = false;
+						} else if ("AppliesTo".equals(localName)) {
+							appliesTo = false;
+						} else if ("CancelTarget".equals(localName)) {
+							cancelTarget = false;
+						}
+						continue;
+					}
+					if (XMLStreamConstants.START_ELEMENT != event) {
+						continue;
+					}
+					String namespace = reader.getNamespaceURI();
+					String localName = reader.getLocalName();
+					if (WSConstants.WS_ADDR_NAMESPACE.equals(namespace)) {
+						if ("Action".equals(localName)) {
+							request.action = reader.getElementText().trim();
+						} else if ("MessageID".equals(localName)) {
+							request.messageId = reader.getElementText()
+									.trim();
+						} else if (appliesTo && "Address".equals(localName)) {
+							request.appliesTo = reader.getElementText()
+									.trim();
+						}
+					} else if (WSConstants.WS_SECURITY_NAMESPACE
+							.equals(namespace)) {
+						if ("Security".equals(localName)) {
+							request.securityHeader = true;
+						} else if (cancelTarget
+								&& "Reference".equals(localName)) {
+							request.cancelTarget = reader.getAttributeValue(
+									null, "URI");
+						}
+					} else if (WSConstants.WSTRUST_NAMESPACE.equals(namespace)) {
+						if ("RequestType".equals(localName)) {
+							request.requestType = reader.getElementText()
+									.trim();
+						} else if ("TokenType".equals(localName)) {
+							request.tokenType = reader.getElementText().trim();
+						} else if ("Entropy".equals(localName)) {
+							entropy = true;
+						} else if (entropy && "BinarySecret".equals(localName)) {
+							request.entropy = reader.getElementText().trim();
+						} else if ("CancelTarget".equals(localName)) {
+							cancelTarget = true;
+						}
+					} else if ("AppliesTo".equals(localName)) {
+						appliesTo = true;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return request;
+		}
+	}
+}
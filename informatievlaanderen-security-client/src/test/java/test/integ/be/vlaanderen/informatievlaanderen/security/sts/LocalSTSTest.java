@@ -0,0 +1,226 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.sts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.client.RSTSClient;
+import be.vlaanderen.informatievlaanderen.security.client.SecureConversationClient;
+
+public class LocalSTSTest {
+
+	private static final Log LOG = LogFactory.getLog(LocalSTSTest.class);
+
+	private static final String APPLIES_TO = "urn:informatievlaanderen.be/claimsawareservice/local";
+
+	private static LocalSTS localSTS;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	@BeforeClass
+	public static void startSTS() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopSTS() {
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		localSTS.setLatency(0, 0);
+		localSTS.setFailureRate(0);
+		localSTS.failNext(0);
+		localSTS.setFailureMode(FailureMode.SOAP_FAULT);
+		localSTS.resetCounters();
+	}
+
+	@Test
+	public void testIssue() throws Exception {
+		// setup
+		RSTSClient rStsClient = new RSTSClient(localSTS.getLocation());
+
+		// operate
+		SecurityToken securityToken = rStsClient.getSecurityToken(certificate,
+				keyPair.getPrivate(), APPLIES_TO);
+
+		// verify
+		assertNotNull(securityToken.getKey());
+		assertEquals(256 / 8, securityToken.getKey().length);
+		assertTrue(securityToken.getAttachedReference().startsWith("_"));
+		assertEquals("Assertion", securityToken.getToken().getLocalName());
+		assertTrue(securityToken.getExpires().after(securityToken.getCreated()));
+		assertEquals(APPLIES_TO, securityToken.getRealm());
+		assertEquals(1, localSTS.getIssueCount());
+	}
+
+	@Test
+	public void testIssueWithIPSTSToken() throws Exception {
+		// setup
+		RSTSClient rStsClient = new RSTSClient(localSTS.getLocation());
+		SecurityToken ipStsSecurityToken = rStsClient.getSecurityToken(
+				certificate, keyPair.getPrivate(), APPLIES_TO);
+
+		// operate
+		SecurityToken securityToken = rStsClient.getSecurityToken(
+				ipStsSecurityToken, APPLIES_TO);
+
+		// verify
+		assertNotNull(securityToken.getKey());
+		assertEquals(256 / 8, securityToken.getKey().length);
+		assertEquals(ipStsSecurityToken,
+				securityToken.getParentSecurityToken());
+		assertEquals(2, localSTS.getIssueCount());
+	}
+
+	@Test
+	public void testSecureConversation() throws Exception {
+		// setup
+		RSTSClient rStsClient = new RSTSClient(localSTS.getLocation());
+		SecurityToken rStsSecurityToken = rStsClient.getSecurityToken(
+				certificate, keyPair.getPrivate(), APPLIES_TO);
+		SecureConversationClient secureConversationClient = new SecureConversationClient(
+				localSTS.getLocation());
+
+		// operate
+		SecurityToken secureConversationToken = secureConversationClient
+				.getSecureConversationToken(rStsSecurityToken);
+
+		// verify
+		assertNotNull(secureConversationToken.getKey());
+		assertFalse(secureConversationToken.getAttachedReference()
+				.startsWith("#"));
+		assertTrue(secureConversationToken.getUnattachedReference()
+				.startsWith("urn:uuid:"));
+		assertEquals("SecurityContextToken", secureConversationToken
+				.getToken().getLocalName());
+		assertEquals(1, localSTS.getSecureConversationIssueCount());
+
+		// operate
+		secureConversationClient
+				.cancelSecureConversationToken(secureConversationToken);
+
+		// verify
+		assertEquals(1, localSTS.getCancelCount());
+		try {
+			secureConversationClient
+					.cancelSecureConversationToken(secureConversationToken);
+			fail();
+		} catch (SOAPFaultException e) {
+			LOG.debug("expected SOAP fault: " + e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInformatieVlaanderenSecurity() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+
+		// operate
+		SecurityToken secureConversationToken = informatieVlaanderenSecurity
+				.getSecureConversationToken(localSTS.getLocation(), APPLIES_TO);
+		SecurityToken cachedSecureConversationToken = informatieVlaanderenSecurity
+				.getSecureConversationToken(localSTS.getLocation(), APPLIES_TO);
+
+		// verify
+		assertNotNull(secureConversationToken.getKey());
+		assertEquals(secureConversationToken.getAttachedReference(),
+				cachedSecureConversationToken.getAttachedReference());
+		assertEquals(1, localSTS.getIssueCount());
+		assertEquals(1, localSTS.getSecureConversationIssueCount());
+	}
+
+	@Test
+	public void testFailureInjection() throws Exception {
+		// setup
+		RSTSClient rStsClient = new RSTSClient(localSTS.getLocation());
+
+		int expectedFailureCount = 0;
+		for (FailureMode failureMode : FailureMode.values()) {
+			// prepare
+			localSTS.setFailureMode(failureMode);
+			int failureCount = 1;
+			if (FailureMode.CONNECTION_CLOSE == failureMode) {
+				// the JDK HTTP client retries once on a dropped connection
+				failureCount = 2;
+			}
+			localSTS.failNext(failureCount);
+			expectedFailureCount += failureCount;
+
+			// operate & verify
+			try {
+				rStsClient.getSecurityToken(certificate, keyPair.getPrivate(),
+						APPLIES_TO);
+				fail();
+			} catch (WebServiceException e) {
+				LOG.debug("expected failure for " + failureMode + ": "
+						+ e.getMessage());
+			}
+			assertNotNull(rStsClient.getSecurityToken(certificate,
+					keyPair.getPrivate(), APPLIES_TO));
+		}
+		assertEquals(expectedFailureCount, localSTS.getFailureCount());
+	}
+
+	@Test
+	public void testLatency() throws Exception {
+		// setup
+		RSTSClient rStsClient = new RSTSClient(localSTS.getLocation());
+		rStsClient.getSecurityToken(certificate, keyPair.getPrivate(),
+				APPLIES_TO);
+		localSTS.setLatency(200, 300);
+
+		// operate
+		long startTime = System.currentTimeMillis();
+		rStsClient.getSecurityToken(certificate, keyPair.getPrivate(),
+				APPLIES_TO);
+		long duration = System.currentTimeMillis() - startTime;
+
+		// verify
+		LOG.debug("duration: " + duration + " ms");
+		assertTrue(duration >= 200);
+	}
+}
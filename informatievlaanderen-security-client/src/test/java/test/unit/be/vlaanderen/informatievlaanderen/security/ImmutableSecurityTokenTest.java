@@ -0,0 +1,143 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+
+public class ImmutableSecurityTokenTest {
+
+	@Test
+	public void testRefreshDeadline() throws Exception {
+		// setup
+		long now = System.currentTimeMillis();
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(new byte[] { 1, 2, 3 });
+		securityToken.setCreated(new Date(now));
+		securityToken.setExpires(new Date(now + 10000));
+		securityToken.setAttachedReference("_reference");
+
+		// operate
+		ImmutableSecurityToken result = new ImmutableSecurityToken(
+				securityToken, 1000);
+
+		// verify
+		assertEquals(now + 9000, result.getRefreshDeadline());
+		assertEquals(now + 10000, result.getExpiresTime());
+		assertTrue(result.isUsable(now));
+		assertTrue(result.isUsable(now + 8999));
+		assertFalse(result.isUsable(now + 9000));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, result.getKey());
+		assertEquals("_reference", result.getAttachedReference());
+		assertEquals(new Date(now), result.getCreated());
+	}
+
+	@Test
+	public void testImmutable() throws Exception {
+		// setup
+		long now = System.currentTimeMillis();
+		SecurityToken parentSecurityToken = new SecurityToken();
+		parentSecurityToken.setExpires(new Date(now + 10000));
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(new byte[] { 1, 2, 3 });
+		securityToken.setExpires(new Date(now + 10000));
+		securityToken.setParentSecurityToken(parentSecurityToken);
+
+		// operate
+		ImmutableSecurityToken result = new ImmutableSecurityToken(
+				securityToken, 1000);
+		securityToken.getKey()[0] = 9;
+		securityToken.getExpires().setTime(0);
+		result.getExpires().setTime(0);
+		result.getKey()[1] = 9;
+
+		// verify
+		assertEquals(1, result.getKey()[0]);
+		assertEquals(2, result.getKey()[1]);
+		assertEquals(now + 10000, result.getExpires().getTime());
+		assertTrue(result.getParentSecurityToken() instanceof ImmutableSecurityToken);
+		assertNotSame(parentSecurityToken, result.getParentSecurityToken());
+		try {
+			result.setRealm("realm");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			result.setExpires(new Date());
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testValueOf() throws Exception {
+		// setup
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setExpires(new Date(System.currentTimeMillis() + 10000));
+		ImmutableSecurityToken immutableSecurityToken = new ImmutableSecurityToken(
+				securityToken, 1000);
+
+		// operate & verify
+		assertSame(immutableSecurityToken,
+				ImmutableSecurityToken.valueOf(immutableSecurityToken, 1000));
+		assertEquals(2000,
+				ImmutableSecurityToken.valueOf(immutableSecurityToken, 2000)
+						.getRetirementDuration());
+		assertSame(immutableSecurityToken,
+				ImmutableSecurityToken.valueOf(immutableSecurityToken));
+		assertEquals(0, ImmutableSecurityToken.valueOf(securityToken)
+				.getRetirementDuration());
+	}
+
+	@Test
+	public void testSharedKey() throws Exception {
+		// setup
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(new byte[] { 1, 2, 3 });
+		securityToken.setExpires(new Date(System.currentTimeMillis() + 10000));
+		ImmutableSecurityToken immutableSecurityToken = new ImmutableSecurityToken(
+				securityToken, 1000);
+
+		// operate
+		byte[] sharedKey = ImmutableSecurityToken
+				.getSharedKey(immutableSecurityToken);
+
+		// verify
+		assertArrayEquals(new byte[] { 1, 2, 3 }, sharedKey);
+		assertSame(sharedKey,
+				ImmutableSecurityToken.getSharedKey(immutableSecurityToken));
+		assertNotSame(sharedKey, immutableSecurityToken.getKey());
+		assertSame(securityToken.getKey(),
+				ImmutableSecurityToken.getSharedKey(securityToken));
+	}
+}
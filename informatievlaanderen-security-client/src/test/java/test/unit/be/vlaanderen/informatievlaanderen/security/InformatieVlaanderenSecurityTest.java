@@ -0,0 +1,246 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.ExternalIPSTSClient;
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.TokenSnapshot;
+
+public class InformatieVlaanderenSecurityTest {
+
+	private static final String R_STS_LOCATION = "http://localhost:1/sts";
+
+	private File snapshotFile;
+
+	private TokenSnapshot tokenSnapshot;
+
+	private InformatieVlaanderenSecurity testedInstance;
+
+	@Before
+	public void setUp() throws Exception {
+		this.snapshotFile = File.createTempFile("token-snapshot-", ".bin");
+		this.snapshotFile.delete();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		SecretKey secretKey = keyGenerator.generateKey();
+		this.tokenSnapshot = new TokenSnapshot(this.snapshotFile, secretKey);
+		ExternalIPSTSClient mockExternalIpStsClient = EasyMock
+				.createMock(ExternalIPSTSClient.class);
+		this.testedInstance = new InformatieVlaanderenSecurity(
+				mockExternalIpStsClient, R_STS_LOCATION);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.tokenSnapshot.close();
+		this.snapshotFile.delete();
+	}
+
+	@Test
+	public void testEvictIdleTokens() throws Exception {
+		// setup
+		this.tokenSnapshot.store(this.testedInstance.getCredential(),
+				TokenSnapshot.R_STS_CACHE, "realm",
+				createSecurityToken("realm"));
+		this.testedInstance.setTokenSnapshot(this.tokenSnapshot);
+		assertNotNull(getStoredToken("realm"));
+		this.testedInstance.setTokenIdleTimeout(0);
+		Thread.sleep(10);
+
+		// operate
+		this.testedInstance.evictIdleTokens();
+
+		// verify
+		assertNull(getStoredToken("realm"));
+		assertTrue(this.tokenSnapshot.getTokens(
+				this.testedInstance.getCredential(), TokenSnapshot.R_STS_CACHE)
+				.isEmpty());
+	}
+
+	@Test
+	public void testKeepUsedTokens() throws Exception {
+		// setup
+		this.tokenSnapshot.store(this.testedInstance.getCredential(),
+				TokenSnapshot.R_STS_CACHE, "realm",
+				createSecurityToken("realm"));
+		this.testedInstance.setTokenSnapshot(this.tokenSnapshot);
+
+		// operate
+		this.testedInstance.evictIdleTokens();
+
+		// verify
+		assertNotNull(getStoredToken("realm"));
+		assertTrue(this.testedInstance.getSecurityToken("realm") instanceof ImmutableSecurityToken);
+	}
+
+	@Test
+	public void testRestoreOwnTokensOnly() throws Exception {
+		// setup
+		this.tokenSnapshot.store("x509:other", TokenSnapshot.R_STS_CACHE,
+				"realm", createSecurityToken("realm"));
+
+		// operate
+		this.testedInstance.setTokenSnapshot(this.tokenSnapshot);
+
+		// verify
+		assertNull(getStoredToken("realm"));
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		// setup
+		this.testedInstance.setMaxCachedTokens(1);
+		this.tokenSnapshot.store(this.testedInstance.getCredential(),
+				TokenSnapshot.R_STS_CACHE, "realm-1",
+				createSecurityToken("realm-1"));
+		this.tokenSnapshot.store(this.testedInstance.getCredential(),
+				TokenSnapshot.R_STS_CACHE, "realm-2",
+				createSecurityToken("realm-2"));
+
+		// operate
+		this.testedInstance.setTokenSnapshot(this.tokenSnapshot);
+
+		// verify
+		Map<String, SecurityToken> snapshotTokens = this.tokenSnapshot
+				.getTokens(this.testedInstance.getCredential(),
+						TokenSnapshot.R_STS_CACHE);
+		assertEquals(1, snapshotTokens.size());
+		String remainingRealm = snapshotTokens.keySet().iterator().next();
+		assertNotNull(getStoredToken(remainingRealm));
+	}
+
+	@Test
+	public void testAsyncCachedToken() throws Exception {
+		// setup
+		this.tokenSnapshot.store(this.testedInstance.getCredential(),
+				TokenSnapshot.R_STS_CACHE, "realm",
+				createSecurityToken("realm"));
+		this.testedInstance.setTokenSnapshot(this.tokenSnapshot);
+
+		// operate
+		CompletableFuture<SecurityToken> result = this.testedInstance
+				.getSecurityTokenAsync("realm");
+
+		// verify
+		assertTrue(result.isDone());
+		assertSame(getStoredToken("realm"), result.get());
+	}
+
+	@Test
+	public void testAsyncTokenRequestFailure() throws Exception {
+		// setup
+		this.testedInstance.setTokenExecutor(new Executor() {
+
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+
+		// operate
+		CompletableFuture<SecurityToken> result = this.testedInstance
+				.getSecurityTokenAsync("realm");
+
+		// verify
+		assertTrue(result.isCompletedExceptionally());
+		assertNull(getStoredToken("realm"));
+	}
+
+	@Test
+	public void testAsyncCallerCancel() throws Exception {
+		// setup
+		final List<Runnable> tokenTasks = new LinkedList<Runnable>();
+		this.testedInstance.setTokenExecutor(new Executor() {
+
+			public void execute(Runnable command) {
+				tokenTasks.add(command);
+			}
+		});
+		CompletableFuture<SecurityToken> future = this.testedInstance
+				.getSecurityTokenAsync("realm");
+		CompletableFuture<SecurityToken> otherFuture = this.testedInstance
+				.getSecurityTokenAsync("realm");
+
+		// operate
+		future.cancel(true);
+
+		// verify
+		assertNotSame(future, otherFuture);
+		assertEquals(1, tokenTasks.size());
+		assertFalse(otherFuture.isDone());
+		tokenTasks.get(0).run();
+		assertTrue(future.isCancelled());
+		assertFalse(otherFuture.isCancelled());
+		assertTrue(otherFuture.isCompletedExceptionally());
+	}
+
+	private SecurityToken getStoredToken(String realm) {
+		return this.testedInstance.getTokenStore().getSecurityToken(
+				this.testedInstance.getCredential(), realm,
+				"R-STS " + R_STS_LOCATION);
+	}
+
+	private SecurityToken createSecurityToken(String realm) throws Exception {
+		Document document = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().newDocument();
+		Element tokenElement = document.createElementNS(
+				"urn:oasis:names:tc:SAML:1.0:assertion", "saml:Assertion");
+		tokenElement.setAttributeNS(null, "AssertionID", "_" + realm);
+		document.appendChild(tokenElement);
+
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(new byte[] { 1, 2, 3, 4 });
+		long now = System.currentTimeMillis();
+		securityToken.setCreated(new Date(now));
+		securityToken.setExpires(new Date(now + 60 * 60 * 1000));
+		securityToken.setToken(tokenElement);
+		securityToken.setAttachedReference("_" + realm);
+		securityToken.setRealm(realm);
+		securityToken.setStsLocation(R_STS_LOCATION);
+		return securityToken;
+	}
+}
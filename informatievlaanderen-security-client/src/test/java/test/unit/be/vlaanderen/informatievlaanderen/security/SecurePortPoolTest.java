@@ -0,0 +1,236 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.xml.ws.Binding;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.EndpointReference;
+import javax.xml.ws.handler.Handler;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import be.vlaanderen.informatievlaanderen.security.ExternalIPSTSClient;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurePort;
+import be.vlaanderen.informatievlaanderen.security.SecurePortPool;
+import be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler;
+
+public class SecurePortPoolTest {
+
+	private static final String LOCATION = "https://localhost/service";
+
+	private InformatieVlaanderenSecurity informatieVlaanderenSecurity;
+
+	private AtomicInteger createdPorts;
+
+	private Supplier<TestPort> portFactory;
+
+	@Before
+	public void setUp() throws Exception {
+		ExternalIPSTSClient mockExternalIpStsClient = EasyMock
+				.createMock(ExternalIPSTSClient.class);
+		this.informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				mockExternalIpStsClient, "http://localhost:1/sts");
+		this.createdPorts = new AtomicInteger();
+		this.portFactory = new Supplier<TestPort>() {
+
+			public TestPort get() {
+				SecurePortPoolTest.this.createdPorts.incrementAndGet();
+				return new TestPort();
+			}
+		};
+	}
+
+	@Test
+	public void testBorrowRelease() throws Exception {
+		// setup
+		SecurePortPool<TestPort> testedInstance = this.informatieVlaanderenSecurity
+				.securePorts(this.portFactory, LOCATION, "urn:realm", false);
+
+		// operate
+		TestPort port = testedInstance.borrow();
+		testedInstance.release(port);
+		TestPort result = testedInstance.borrow();
+
+		// verify
+		assertSame(port, result);
+		assertEquals(1, this.createdPorts.get());
+		assertEquals(LOCATION, result.getRequestContext().get(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY));
+		List<Handler> handlerChain = result.getBinding().getHandlerChain();
+		assertTrue(handlerChain.get(0) instanceof AuthenticationHandler);
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		// setup
+		SecurePortPool<TestPort> testedInstance = this.informatieVlaanderenSecurity
+				.securePorts(this.portFactory, LOCATION, null, true, 1);
+
+		// operate
+		TestPort port = testedInstance.borrow();
+		TestPort result = testedInstance.borrow(10, TimeUnit.MILLISECONDS);
+
+		// verify
+		assertNull(result);
+		assertTrue(port.getBinding().getHandlerChain().get(0) instanceof SecureConversationHandler);
+
+		// operate
+		testedInstance.invalidate(port);
+		result = testedInstance.borrow(10, TimeUnit.MILLISECONDS);
+
+		// verify
+		assertNotNull(result);
+		assertNotSame(port, result);
+		assertEquals(2, this.createdPorts.get());
+	}
+
+	@Test
+	public void testIgnoreUnknownPorts() throws Exception {
+		// setup
+		SecurePortPool<TestPort> testedInstance = this.informatieVlaanderenSecurity
+				.securePorts(this.portFactory, LOCATION, null, false, 1);
+
+		// operate
+		TestPort port = testedInstance.borrow();
+		testedInstance.release(port);
+		testedInstance.release(port);
+		testedInstance.invalidate(port);
+		testedInstance.release(new TestPort());
+		TestPort result = testedInstance.borrow();
+
+		// verify
+		assertSame(port, result);
+		assertEquals(0, testedInstance.getIdleCount());
+		assertNull(testedInstance.borrow(10, TimeUnit.MILLISECONDS));
+
+		// operate
+		testedInstance.invalidate(result);
+		testedInstance.release(result);
+		result = testedInstance.borrow(10, TimeUnit.MILLISECONDS);
+
+		// verify
+		assertNotNull(result);
+		assertNotSame(port, result);
+		assertNull(testedInstance.borrow(10, TimeUnit.MILLISECONDS));
+		assertEquals(2, this.createdPorts.get());
+	}
+
+	@Test
+	public void testScopedUse() throws Exception {
+		// setup
+		SecurePortPool<TestPort> testedInstance = this.informatieVlaanderenSecurity
+				.securePorts(this.portFactory, LOCATION, null, false, 1);
+
+		// operate
+		TestPort port;
+		try (SecurePort<TestPort> securePort = testedInstance.acquire()) {
+			port = securePort.getPort();
+		}
+
+		// verify
+		assertEquals(1, testedInstance.getIdleCount());
+		assertSame(port, testedInstance.borrow());
+	}
+
+	@Test
+	public void testWarmUp() throws Exception {
+		// setup
+		SecurePortPool<TestPort> testedInstance = this.informatieVlaanderenSecurity
+				.securePorts(this.portFactory, LOCATION, null, false, 4);
+
+		// operate
+		testedInstance.warmUp(10);
+
+		// verify
+		assertEquals(4, testedInstance.getIdleCount());
+		assertEquals(4, this.createdPorts.get());
+
+		// operate
+		testedInstance.warmUp(10);
+
+		// verify
+		assertEquals(4, this.createdPorts.get());
+	}
+
+	private static class TestPort implements BindingProvider {
+
+		private final Map<String, Object> requestContext = new HashMap<String, Object>();
+
+		private final Binding binding = new TestBinding();
+
+		public Map<String, Object> getRequestContext() {
+			return this.requestContext;
+		}
+
+		public Map<String, Object> getResponseContext() {
+			return new HashMap<String, Object>();
+		}
+
+		public Binding getBinding() {
+			return this.binding;
+		}
+
+		public EndpointReference getEndpointReference() {
+			throw new UnsupportedOperationException();
+		}
+
+		public <E extends EndpointReference> E getEndpointReference(
+				Class<E> clazz) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class TestBinding implements Binding {
+
+		private List<Handler> handlerChain = new LinkedList<Handler>();
+
+		@SuppressWarnings("rawtypes")
+		public List<Handler> getHandlerChain() {
+			return new LinkedList<Handler>(this.handlerChain);
+		}
+
+		@SuppressWarnings("rawtypes")
+		public void setHandlerChain(List<Handler> handlerChain) {
+			this.handlerChain = new LinkedList<Handler>(handlerChain);
+		}
+
+		public String getBindingID() {
+			return "http://schemas.xmlsoap.org/wsdl/soap/http";
+		}
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SharedMemoryTokenStore;
+
+public class SharedMemoryTokenStoreTest {
+
+	private File storeFile;
+
+	private SecretKey secretKey;
+
+	@Before
+	public void setUp() throws Exception {
+		this.storeFile = File.createTempFile("token-store-", ".bin");
+		this.storeFile.delete();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		this.secretKey = keyGenerator.generateKey();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.storeFile.delete();
+	}
+
+	@Test
+	public void testShareBetweenStores() throws Exception {
+		// setup
+		SharedMemoryTokenStore issuingStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey);
+		SharedMemoryTokenStore reusingStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey);
+		SecurityToken securityToken = createSecurityToken("realm",
+				60 * 60 * 1000);
+
+		// operate
+		issuingStore.storeSecurityToken("credential", "realm",
+				"https://sts", securityToken);
+		SecurityToken result = reusingStore.getSecurityToken("credential",
+				"realm", "https://sts");
+
+		// verify
+		assertNotNull(result);
+		assertTrue(result instanceof ImmutableSecurityToken);
+		assertArrayEquals(securityToken.getKey(), result.getKey());
+		assertEquals(securityToken.getExpires(), result.getExpires());
+		assertEquals(securityToken.getAttachedReference(),
+				result.getAttachedReference());
+		assertEquals("_realm", result.getToken().getAttribute("AssertionID"));
+		assertSame(result, reusingStore.getSecurityToken("credential",
+				"realm", "https://sts"));
+		assertNull(reusingStore.getSecurityToken("other-credential", "realm",
+				"https://sts"));
+		assertNull(reusingStore.getSecurityToken("credential", "realm",
+				"https://service"));
+		issuingStore.close();
+		reusingStore.close();
+	}
+
+	@Test
+	public void testReplaceAndRemove() throws Exception {
+		// setup
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey, 2, 16 * 1024);
+		SharedMemoryTokenStore otherTokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey, 2, 16 * 1024);
+		tokenStore.storeSecurityToken("credential", "realm-1", "https://sts",
+				createSecurityToken("realm-1", 60 * 60 * 1000));
+		tokenStore.storeSecurityToken("credential", "realm-2", "https://sts",
+				createSecurityToken("realm-2", 60 * 60 * 1000));
+		assertNotNull(otherTokenStore.getSecurityToken("credential",
+				"realm-1", "https://sts"));
+
+		// operate
+		tokenStore.storeSecurityToken("credential", "realm-1", "https://sts",
+				createSecurityToken("realm-1b", 60 * 60 * 1000));
+		tokenStore.removeSecurityToken("credential", "realm-2", "https://sts");
+
+		// verify
+		SecurityToken result = otherTokenStore.getSecurityToken("credential",
+				"realm-1", "https://sts");
+		assertEquals("_realm-1b", result.getToken()
+				.getAttribute("AssertionID"));
+		assertNull(otherTokenStore.getSecurityToken("credential", "realm-2",
+				"https://sts"));
+		tokenStore.close();
+		otherTokenStore.close();
+	}
+
+	@Test
+	public void testEvictWhenFull() throws Exception {
+		// setup
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey, 2, 16 * 1024);
+		tokenStore.storeSecurityToken("credential", "realm-1", "https://sts",
+				createSecurityToken("realm-1", 60 * 60 * 1000));
+		tokenStore.storeSecurityToken("credential", "realm-2", "https://sts",
+				createSecurityToken("realm-2", 2 * 60 * 60 * 1000));
+
+		// operate
+		tokenStore.storeSecurityToken("credential", "realm-3", "https://sts",
+				createSecurityToken("realm-3", 60 * 60 * 1000));
+
+		// verify
+		assertNull(tokenStore.getSecurityToken("credential", "realm-1",
+				"https://sts"));
+		assertNotNull(tokenStore.getSecurityToken("credential", "realm-2",
+				"https://sts"));
+		assertNotNull(tokenStore.getSecurityToken("credential", "realm-3",
+				"https://sts"));
+		tokenStore.close();
+	}
+
+	@Test
+	public void testWrongKey() throws Exception {
+		// setup
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey);
+		tokenStore.storeSecurityToken("credential", "realm", "https://sts",
+				createSecurityToken("realm", 60 * 60 * 1000));
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		SharedMemoryTokenStore otherTokenStore = new SharedMemoryTokenStore(
+				this.storeFile, keyGenerator.generateKey());
+
+		// operate
+		SecurityToken result = otherTokenStore.getSecurityToken("credential",
+				"realm", "https://sts");
+
+		// verify
+		assertNull(result);
+		tokenStore.close();
+		otherTokenStore.close();
+	}
+
+	@Test
+	public void testKeepSlotsOfOtherKey() throws Exception {
+		// setup
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey, 2, 16 * 1024);
+		tokenStore.storeSecurityToken("credential", "realm-1", "https://sts",
+				createSecurityToken("realm-1", 2 * 60 * 60 * 1000));
+		tokenStore.storeSecurityToken("credential", "realm-2", "https://sts",
+				createSecurityToken("realm-2", 60 * 60 * 1000));
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		SharedMemoryTokenStore otherTokenStore = new SharedMemoryTokenStore(
+				this.storeFile, keyGenerator.generateKey(), 2, 16 * 1024);
+
+		// operate
+		otherTokenStore.storeSecurityToken("credential", "realm-3",
+				"https://sts",
+				createSecurityToken("realm-3", 60 * 60 * 1000));
+
+		// verify
+		// the token that expires first got evicted
+		assertNotNull(tokenStore.getSecurityToken("credential", "realm-1",
+				"https://sts"));
+		assertNull(tokenStore.getSecurityToken("credential", "realm-2",
+				"https://sts"));
+		assertNotNull(otherTokenStore.getSecurityToken("credential",
+				"realm-3", "https://sts"));
+		assertNull(otherTokenStore.getSecurityToken("credential", "realm-1",
+				"https://sts"));
+		tokenStore.close();
+		otherTokenStore.close();
+	}
+
+	@Test
+	public void testRepairTornSlot() throws Exception {
+		// setup
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey, 1, 16 * 1024);
+		tokenStore.storeSecurityToken("credential", "realm", "https://sts",
+				createSecurityToken("realm", 60 * 60 * 1000));
+		tokenStore.close();
+
+		// prepare
+		// odd sequence number of a writer that crashed halfway
+		RandomAccessFile randomAccessFile = new RandomAccessFile(
+				this.storeFile, "rw");
+		try {
+			randomAccessFile.seek(64);
+			randomAccessFile.writeLong(3);
+		} finally {
+			randomAccessFile.close();
+		}
+		tokenStore = new SharedMemoryTokenStore(this.storeFile,
+				this.secretKey, 1, 16 * 1024);
+
+		// operate
+		SecurityToken result = tokenStore.getSecurityToken("credential",
+				"realm", "https://sts");
+
+		// verify
+		assertNull(result);
+		randomAccessFile = new RandomAccessFile(this.storeFile, "r");
+		try {
+			randomAccessFile.seek(64);
+			assertEquals(0, randomAccessFile.readLong() & 1);
+		} finally {
+			randomAccessFile.close();
+		}
+		tokenStore.storeSecurityToken("credential", "realm", "https://sts",
+				createSecurityToken("realm", 60 * 60 * 1000));
+		assertNotNull(tokenStore.getSecurityToken("credential", "realm",
+				"https://sts"));
+		tokenStore.close();
+	}
+
+	@Test
+	public void testRepairCorruptSlot() throws Exception {
+		// setup
+		SharedMemoryTokenStore tokenStore = new SharedMemoryTokenStore(
+				this.storeFile, this.secretKey, 1, 16 * 1024);
+		tokenStore.storeSecurityToken("credential", "realm", "https://sts",
+				createSecurityToken("realm", 60 * 60 * 1000));
+		tokenStore.close();
+
+		// prepare
+		RandomAccessFile randomAccessFile = new RandomAccessFile(
+				this.storeFile, "rw");
+		long sequence;
+		try {
+			randomAccessFile.seek(64);
+			sequence = randomAccessFile.readLong();
+			// slot checksum no longer matches
+			int checksum = randomAccessFile.readInt();
+			randomAccessFile.seek(64 + 8);
+			randomAccessFile.writeInt(checksum ^ 1);
+		} finally {
+			randomAccessFile.close();
+		}
+		tokenStore = new SharedMemoryTokenStore(this.storeFile,
+				this.secretKey, 1, 16 * 1024);
+
+		// operate
+		SecurityToken result = tokenStore.getSecurityToken("credential",
+				"realm", "https://sts");
+
+		// verify
+		assertNull(result);
+		randomAccessFile = new RandomAccessFile(this.storeFile, "r");
+		try {
+			randomAccessFile.seek(64);
+			// rewritten as tombstone
+			assertEquals(sequence + 2, randomAccessFile.readLong());
+		} finally {
+			randomAccessFile.close();
+		}
+		tokenStore.storeSecurityToken("credential", "realm", "https://sts",
+				createSecurityToken("realm", 60 * 60 * 1000));
+		assertNotNull(tokenStore.getSecurityToken("credential", "realm",
+				"https://sts"));
+		tokenStore.close();
+	}
+
+	private SecurityToken createSecurityToken(String realm, long validity)
+			throws Exception {
+		Document document = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().newDocument();
+		Element tokenElement = document.createElementNS(
+				"urn:oasis:names:tc:SAML:1.0:assertion", "saml:Assertion");
+		tokenElement.setAttributeNS(null, "AssertionID", "_" + realm);
+		document.appendChild(tokenElement);
+
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(new byte[] { 1, 2, 3, 4 });
+		long now = System.currentTimeMillis();
+		securityToken.setCreated(new Date(now));
+		securityToken.setExpires(new Date(now + validity));
+		securityToken.setToken(tokenElement);
+		securityToken.setAttachedReference("_" + realm);
+		securityToken.setRealm(realm);
+		securityToken.setStsLocation("https://sts");
+		return securityToken;
+	}
+}
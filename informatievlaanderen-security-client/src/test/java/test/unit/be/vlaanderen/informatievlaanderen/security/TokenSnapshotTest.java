@@ -0,0 +1,251 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Map;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.TokenSnapshot;
+
+public class TokenSnapshotTest {
+
+	private static final String CREDENTIAL = "x509:credential";
+
+	private File snapshotFile;
+
+	private SecretKey secretKey;
+
+	@Before
+	public void setUp() throws Exception {
+		this.snapshotFile = File.createTempFile("token-snapshot-", ".bin");
+		this.snapshotFile.delete();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		this.secretKey = keyGenerator.generateKey();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.snapshotFile.delete();
+	}
+
+	@Test
+	public void testRestore() throws Exception {
+		// setup
+		SecurityToken rStsSecurityToken = createSecurityToken("realm",
+				60 * 60 * 1000);
+		SecurityToken secureConversationToken = createSecurityToken(
+				"https://location", 60 * 60 * 1000);
+		secureConversationToken.setParentSecurityToken(rStsSecurityToken);
+		TokenSnapshot tokenSnapshot = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "realm",
+				rStsSecurityToken);
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.SECURE_CONVERSATION_CACHE,
+				"https://location", secureConversationToken);
+		tokenSnapshot.close();
+
+		// operate
+		TokenSnapshot result = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+
+		// verify
+		Map<String, SecurityToken> rStsSecurityTokens = result
+				.getTokens(CREDENTIAL, TokenSnapshot.R_STS_CACHE);
+		assertEquals(1, rStsSecurityTokens.size());
+		assertToken(rStsSecurityToken, rStsSecurityTokens.get("realm"));
+		Map<String, SecurityToken> secureConversationTokens = result
+				.getTokens(CREDENTIAL, TokenSnapshot.SECURE_CONVERSATION_CACHE);
+		assertEquals(1, secureConversationTokens.size());
+		SecurityToken resultSecureConversationToken = secureConversationTokens
+				.get("https://location");
+		assertToken(secureConversationToken, resultSecureConversationToken);
+		assertTrue(resultSecureConversationToken instanceof ImmutableSecurityToken);
+		assertToken(rStsSecurityToken,
+				resultSecureConversationToken.getParentSecurityToken());
+		result.close();
+	}
+
+	@Test
+	public void testSkipExpiredAndRemovedTokens() throws Exception {
+		// setup
+		TokenSnapshot tokenSnapshot = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "expired",
+				createSecurityToken("expired", -1000));
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "removed",
+				createSecurityToken("removed", 60 * 60 * 1000));
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "valid",
+				createSecurityToken("valid", 60 * 60 * 1000));
+		tokenSnapshot.remove(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "removed");
+		tokenSnapshot.close();
+
+		// operate
+		TokenSnapshot result = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+
+		// verify
+		Map<String, SecurityToken> rStsSecurityTokens = result
+				.getTokens(CREDENTIAL, TokenSnapshot.R_STS_CACHE);
+		assertEquals(1, rStsSecurityTokens.size());
+		assertNotNull(rStsSecurityTokens.get("valid"));
+		result.close();
+	}
+
+	@Test
+	public void testWrongKey() throws Exception {
+		// setup
+		TokenSnapshot tokenSnapshot = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "realm",
+				createSecurityToken("realm", 60 * 60 * 1000));
+		tokenSnapshot.close();
+		KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+		keyGenerator.init(128);
+		SecretKey otherSecretKey = keyGenerator.generateKey();
+
+		// operate
+		TokenSnapshot result = new TokenSnapshot(this.snapshotFile,
+				otherSecretKey);
+
+		// verify
+		assertTrue(result.getTokens(CREDENTIAL, TokenSnapshot.R_STS_CACHE).isEmpty());
+		result.close();
+	}
+
+	@Test
+	public void testSeparateCredentials() throws Exception {
+		// setup
+		SecurityToken securityToken = createSecurityToken("realm",
+				60 * 60 * 1000);
+		SecurityToken otherSecurityToken = createSecurityToken("other-realm",
+				60 * 60 * 1000);
+		TokenSnapshot tokenSnapshot = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+		tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE, "realm",
+				securityToken);
+		tokenSnapshot.store("x509:other", TokenSnapshot.R_STS_CACHE, "realm",
+				otherSecurityToken);
+		tokenSnapshot.remove("x509:other", TokenSnapshot.R_STS_CACHE,
+				"realm");
+		tokenSnapshot.store("x509:other", TokenSnapshot.R_STS_CACHE, "realm",
+				otherSecurityToken);
+		tokenSnapshot.close();
+
+		// operate
+		TokenSnapshot result = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+
+		// verify
+		assertToken(securityToken,
+				result.getTokens(CREDENTIAL, TokenSnapshot.R_STS_CACHE).get(
+						"realm"));
+		assertToken(otherSecurityToken,
+				result.getTokens("x509:other", TokenSnapshot.R_STS_CACHE)
+						.get("realm"));
+		assertTrue(result.getTokens("x509:unknown",
+				TokenSnapshot.R_STS_CACHE).isEmpty());
+		result.close();
+	}
+
+	@Test
+	public void testCompactionReplacesJournal() throws Exception {
+		// setup
+		TokenSnapshot tokenSnapshot = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+		for (int idx = 0; idx < 300; idx++) {
+			tokenSnapshot.store(CREDENTIAL, TokenSnapshot.R_STS_CACHE,
+					"realm", createSecurityToken("realm-" + idx,
+							60 * 60 * 1000));
+		}
+		tokenSnapshot.close();
+
+		// operate
+		TokenSnapshot result = new TokenSnapshot(this.snapshotFile,
+				this.secretKey);
+
+		// verify
+		Map<String, SecurityToken> rStsSecurityTokens = result.getTokens(
+				CREDENTIAL, TokenSnapshot.R_STS_CACHE);
+		assertEquals(1, rStsSecurityTokens.size());
+		assertEquals("_realm-299", rStsSecurityTokens.get("realm")
+				.getAttachedReference());
+		assertFalse(new File(this.snapshotFile.getPath() + ".tmp").exists());
+		result.close();
+	}
+
+	private SecurityToken createSecurityToken(String realm, long validity)
+			throws Exception {
+		Document document = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().newDocument();
+		Element tokenElement = document.createElementNS(
+				"urn:oasis:names:tc:SAML:1.0:assertion", "saml:Assertion");
+		tokenElement.setAttributeNS(null, "AssertionID", "_" + realm);
+		document.appendChild(tokenElement);
+
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(new byte[] { 1, 2, 3, 4 });
+		long now = System.currentTimeMillis();
+		securityToken.setCreated(new Date(now));
+		securityToken.setExpires(new Date(now + validity));
+		securityToken.setToken(tokenElement);
+		securityToken.setAttachedReference("_" + realm);
+		securityToken.setRealm(realm);
+		securityToken.setStsLocation("https://sts");
+		return securityToken;
+	}
+
+	private void assertToken(SecurityToken expected, SecurityToken actual) {
+		assertNotNull(actual);
+		assertArrayEquals(expected.getKey(), actual.getKey());
+		assertEquals(expected.getCreated(), actual.getCreated());
+		assertEquals(expected.getExpires(), actual.getExpires());
+		assertEquals(expected.getAttachedReference(),
+				actual.getAttachedReference());
+		assertEquals(expected.getUnattachedReference(),
+				actual.getUnattachedReference());
+		assertEquals(expected.getRealm(), actual.getRealm());
+		assertEquals(expected.getStsLocation(), actual.getStsLocation());
+		assertEquals(expected.getToken().getLocalName(), actual.getToken()
+				.getLocalName());
+		assertEquals(expected.getToken().getNamespaceURI(), actual.getToken()
+				.getNamespaceURI());
+		assertEquals(expected.getToken().getAttribute("AssertionID"), actual
+				.getToken().getAttribute("AssertionID"));
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponse;
+import be.vlaanderen.informatievlaanderen.security.client.RequestSecurityTokenResponseParser;
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+
+public class RequestSecurityTokenResponseParserTest {
+
+	@Test
+	public void testParseRSTSResponse() throws Exception {
+		// setup
+		Element responseElement = loadResponse("/r-sts-response.xml");
+
+		// operate
+		RequestSecurityTokenResponse result = RequestSecurityTokenResponseParser
+				.parse(responseElement);
+
+		// verify
+		assertNotNull(result);
+		assertEquals(new DateTime("2011-12-19T08:43:06.195Z").toDate(),
+				result.getCreated());
+		assertEquals(new DateTime("2011-12-19T09:43:06.195Z").toDate(),
+				result.getExpires());
+		assertEquals("_531aedea-6d60-4c1a-99c2-84e0204135d9",
+				result.getAttachedReference());
+		assertEquals("_531aedea-6d60-4c1a-99c2-84e0204135d9",
+				result.getUnattachedReference());
+		assertEquals(256 / 8, result.getProofToken().length);
+		assertNull(result.getEntropy());
+		assertEquals("EncryptedData", result.getRequestedSecurityToken()
+				.getLocalName());
+		assertFalse(result.isRequestedTokenCancelled());
+	}
+
+	@Test
+	public void testParseSecureConversationResponse() throws Exception {
+		// setup
+		Element responseElement = loadResponse("/secure-conversation-response.xml");
+
+		// operate
+		RequestSecurityTokenResponse result = RequestSecurityTokenResponseParser
+				.parse(responseElement);
+
+		// verify
+		assertNotNull(result);
+		assertEquals(new DateTime("2011-12-19T08:43:13.928Z").toDate(),
+				result.getCreated());
+		assertEquals(new DateTime("2011-12-19T23:43:13.928Z").toDate(),
+				result.getExpires());
+		assertEquals("#uuid-3650465b-543a-48cc-b0c2-bad58e051e07-4",
+				result.getAttachedReference());
+		assertEquals("urn:uuid:c75d9758-b247-4031-8fe5-cf13ff847b02",
+				result.getUnattachedReference());
+		assertEquals(256 / 8, result.getEntropy().length);
+		assertEquals("SecurityContextToken", result
+				.getRequestedSecurityToken().getLocalName());
+	}
+
+	private Element loadResponse(String resource) throws Exception {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		InputStream inputStream = RequestSecurityTokenResponseParserTest.class
+				.getResourceAsStream(resource);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.parse(inputStream);
+		NodeList nodeList = document.getElementsByTagNameNS(
+				WSConstants.WSTRUST_NAMESPACE,
+				"RequestSecurityTokenResponseCollection");
+		return (Element) nodeList.item(0);
+	}
+}
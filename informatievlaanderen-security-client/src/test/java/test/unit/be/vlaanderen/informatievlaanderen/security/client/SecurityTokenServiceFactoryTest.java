@@ -19,6 +19,8 @@
 package test.unit.be.vlaanderen.informatievlaanderen.security.client;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 import be.vlaanderen.informatievlaanderen.security.jaxws.wstrust.SecurityTokenService_Service;
@@ -36,4 +38,25 @@ public class SecurityTokenServiceFactoryTest {
 		// verify
 		assertNotNull(service);
 	}
+
+	@Test
+	public void testCachedInstance() {
+		// operate
+		SecurityTokenService_Service service = SecurityTokenServiceFactory
+				.getInstance();
+		SecurityTokenService_Service service2 = SecurityTokenServiceFactory
+				.getInstance();
+		SecurityTokenService_Service newService = SecurityTokenServiceFactory
+				.newInstance();
+
+		// verify
+		assertSame(service, service2);
+		assertNotSame(service, newService);
+	}
+
+	@Test
+	public void testWarmUp() {
+		// operate
+		SecurityTokenServiceFactory.warmUp("http://localhost:1/sts");
+	}
 }
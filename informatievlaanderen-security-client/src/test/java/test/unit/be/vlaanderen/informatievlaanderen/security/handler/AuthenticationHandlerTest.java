@@ -0,0 +1,155 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security.handler;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+public class AuthenticationHandlerTest {
+
+	private static final String KEY = WSSecurityHandler.class.getName()
+			+ ".key";
+
+	private static final String TOKEN_IDENTIFIER = WSSecurityHandler.class
+			.getName() + ".tokenIdentifier";
+
+	private static final String TOKEN = WSSecurityHandler.class.getName()
+			+ ".token";
+
+	private static final String SAML_REFERENCE = WSSecurityHandler.class
+			.getName() + ".samlReference";
+
+	@Test
+	public void testSecurityTokenPerRequest() throws Exception {
+		// setup
+		SecurityTokenProvider mockSecurityTokenProvider = EasyMock
+				.createMock(SecurityTokenProvider.class);
+		AuthenticationHandler testedInstance = new AuthenticationHandler(
+				mockSecurityTokenProvider, null);
+
+		SecurityToken securityToken1 = createSecurityToken("_1");
+		SecurityToken securityToken2 = createSecurityToken("_2");
+		EasyMock.expect(
+				mockSecurityTokenProvider.getSecurityToken("https://service1"))
+				.andReturn(securityToken1);
+		EasyMock.expect(
+				mockSecurityTokenProvider.getSecurityToken("https://service2"))
+				.andReturn(securityToken2);
+
+		SOAPMessageContext mockContext1 = createMockContext("https://service1",
+				securityToken1, true);
+		SOAPMessageContext mockContext2 = createMockContext("https://service2",
+				securityToken2, true);
+
+		// prepare
+		EasyMock.replay(mockSecurityTokenProvider, mockContext1, mockContext2);
+
+		// operate
+		testedInstance.handleMessage(mockContext1);
+		testedInstance.handleMessage(mockContext2);
+
+		// verify
+		EasyMock.verify(mockSecurityTokenProvider, mockContext1, mockContext2);
+	}
+
+	@Test
+	public void testSecureConversationTokenPerRequest() throws Exception {
+		// setup
+		SecurityTokenProvider mockSecurityTokenProvider = EasyMock
+				.createMock(SecurityTokenProvider.class);
+		SecureConversationHandler testedInstance = new SecureConversationHandler(
+				mockSecurityTokenProvider, "urn:realm");
+
+		SecurityToken securityToken1 = createSecurityToken("_1");
+		SecurityToken securityToken2 = createSecurityToken("_2");
+		EasyMock.expect(
+				mockSecurityTokenProvider.getSecureConversationToken(
+						"https://service1", "urn:realm")).andReturn(
+				securityToken1);
+		EasyMock.expect(
+				mockSecurityTokenProvider.getSecureConversationToken(
+						"https://service2", "urn:realm")).andReturn(
+				securityToken2);
+
+		SOAPMessageContext mockContext1 = createMockContext("https://service1",
+				securityToken1, false);
+		SOAPMessageContext mockContext2 = createMockContext("https://service2",
+				securityToken2, false);
+
+		// prepare
+		EasyMock.replay(mockSecurityTokenProvider, mockContext1, mockContext2);
+
+		// operate
+		testedInstance.handleMessage(mockContext1);
+		testedInstance.handleMessage(mockContext2);
+
+		// verify
+		EasyMock.verify(mockSecurityTokenProvider, mockContext1, mockContext2);
+	}
+
+	private SOAPMessageContext createMockContext(String location,
+			SecurityToken securityToken, boolean samlReference) {
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.TRUE);
+		EasyMock.expect(
+				mockContext.get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY))
+				.andStubReturn(location);
+		EasyMock.expect(mockContext.put(KEY, securityToken.getKey()))
+				.andReturn(null);
+		EasyMock.expect(
+				mockContext.put(TOKEN_IDENTIFIER,
+						securityToken.getAttachedReference())).andReturn(null);
+		EasyMock.expect(mockContext.put(TOKEN, securityToken.getToken()))
+				.andReturn(null);
+		EasyMock.expect(mockContext.put(SAML_REFERENCE, samlReference))
+				.andReturn(null);
+		return mockContext;
+	}
+
+	private SecurityToken createSecurityToken(String identifier)
+			throws Exception {
+		Document document = DocumentBuilderFactory.newInstance()
+				.newDocumentBuilder().newDocument();
+		Element tokenElement = document.createElementNS(
+				"urn:oasis:names:tc:SAML:1.0:assertion", "saml:Assertion");
+		tokenElement.setAttributeNS(null, "AssertionID", identifier);
+		document.appendChild(tokenElement);
+
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(identifier.getBytes());
+		securityToken.setAttachedReference(identifier);
+		securityToken.setToken(tokenElement);
+		return securityToken;
+	}
+}
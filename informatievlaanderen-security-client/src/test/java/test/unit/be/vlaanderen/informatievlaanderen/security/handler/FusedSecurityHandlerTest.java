@@ -0,0 +1,195 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+
+import javax.xml.crypto.dsig.SignatureMethod;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.utils.Constants;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import test.unit.be.vlaanderen.informatievlaanderen.security.client.TestUtils;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.handler.FusedSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+public class FusedSecurityHandlerTest {
+
+	private static final String REQUEST = "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<S:Body><test xmlns=\"urn:test\"/></S:Body>" + "</S:Envelope>";
+
+	@Test
+	public void testSecurityToken() throws Exception {
+		// setup
+		SecurityTokenProvider mockSecurityTokenProvider = EasyMock
+				.createMock(SecurityTokenProvider.class);
+		FusedSecurityHandler testedInstance = new FusedSecurityHandler(
+				mockSecurityTokenProvider, null, false, WSSecurityMode.DOM);
+
+		SecurityToken securityToken = createSecurityToken("_saml-token");
+		EasyMock.expect(
+				mockSecurityTokenProvider.getSecurityToken("https://service"))
+				.andReturn(securityToken);
+
+		SOAPMessage soapMessage = createMessage();
+		SOAPMessageContext mockContext = createMockContext("https://service",
+				soapMessage);
+
+		// prepare
+		EasyMock.replay(mockSecurityTokenProvider, mockContext);
+
+		// operate
+		boolean result = testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockSecurityTokenProvider, mockContext);
+		assertTrue(result);
+		Document resultDocument = toDocument(soapMessage);
+		assertEquals(
+				1,
+				resultDocument.getElementsByTagNameNS(
+						"urn:oasis:names:tc:SAML:1.0:assertion", "Assertion")
+						.getLength());
+		assertTrue(checkSignature(resultDocument, securityToken.getKey()));
+	}
+
+	@Test
+	public void testSecureConversationTokenStreaming() throws Exception {
+		// setup
+		SecurityTokenProvider mockSecurityTokenProvider = EasyMock
+				.createMock(SecurityTokenProvider.class);
+		FusedSecurityHandler testedInstance = new FusedSecurityHandler(
+				mockSecurityTokenProvider, "urn:realm", true,
+				WSSecurityMode.STREAMING);
+
+		SecurityToken securityToken = createSecurityToken("urn:uuid:sct");
+		EasyMock.expect(
+				mockSecurityTokenProvider.getSecureConversationToken(
+						"https://service", "urn:realm")).andReturn(
+				securityToken);
+
+		SOAPMessage soapMessage = createMessage();
+		SOAPMessageContext mockContext = createMockContext("https://service",
+				soapMessage);
+
+		// prepare
+		EasyMock.replay(mockSecurityTokenProvider, mockContext);
+
+		// operate
+		boolean result = testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockSecurityTokenProvider, mockContext);
+		assertTrue(result);
+		Document resultDocument = toDocument(soapMessage);
+		NodeList referenceNodeList = resultDocument.getElementsByTagNameNS(
+				"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd",
+				"Reference");
+		assertEquals(1, referenceNodeList.getLength());
+		assertEquals("#urn:uuid:sct",
+				((Element) referenceNodeList.item(0)).getAttribute("URI"));
+		assertTrue(checkSignature(resultDocument, securityToken.getKey()));
+	}
+
+	private SOAPMessageContext createMockContext(String location,
+			SOAPMessage soapMessage) {
+		/*
+		 * A strict mock: the security token is not passed via the context.
+		 */
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.TRUE);
+		EasyMock.expect(
+				mockContext.get(BindingProvider.ENDPOINT_ADDRESS_PROPERTY))
+				.andStubReturn(location);
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+		return mockContext;
+	}
+
+	private SOAPMessage createMessage() throws Exception {
+		return MessageFactory.newInstance(SOAPConstants.SOAP_1_1_PROTOCOL)
+				.createMessage(null,
+						new ByteArrayInputStream(REQUEST.getBytes("UTF-8")));
+	}
+
+	private Document toDocument(SOAPMessage soapMessage) throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		soapMessage.writeTo(outputStream);
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder().parse(
+				new ByteArrayInputStream(outputStream.toByteArray()));
+		TestUtils.markAllIdAttributesAsId(document);
+		return document;
+	}
+
+	private boolean checkSignature(Document document, byte[] key)
+			throws Exception {
+		NodeList signatureNodeList = document.getElementsByTagNameNS(
+				Constants.SignatureSpecNS, "Signature");
+		assertEquals(1, signatureNodeList.getLength());
+		XMLSignature xmlSignature = new XMLSignature(
+				(Element) signatureNodeList.item(0), null);
+		return xmlSignature.checkSignatureValue(WSSecurityUtil
+				.prepareSecretKey(SignatureMethod.HMAC_SHA1, key));
+	}
+
+	private SecurityToken createSecurityToken(String identifier)
+			throws Exception {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.newDocument();
+		Element tokenElement = document.createElementNS(
+				"urn:oasis:names:tc:SAML:1.0:assertion", "saml:Assertion");
+		tokenElement.setAttributeNS(null, "AssertionID", identifier);
+		document.appendChild(tokenElement);
+
+		byte[] key = new byte[256 / 8];
+		new SecureRandom().nextBytes(key);
+		SecurityToken securityToken = new SecurityToken();
+		securityToken.setKey(key);
+		securityToken.setAttachedReference(identifier);
+		securityToken.setToken(tokenElement);
+		return securityToken;
+	}
+}
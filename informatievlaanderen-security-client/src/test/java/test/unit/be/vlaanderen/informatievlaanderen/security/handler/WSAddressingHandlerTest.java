@@ -0,0 +1,278 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.unit.be.vlaanderen.informatievlaanderen.security.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPHeader;
+import javax.xml.soap.SOAPHeaderElement;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.ProtocolException;
+import javax.xml.ws.handler.soap.SOAPMessageContext;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
+
+public class WSAddressingHandlerTest {
+
+	private WSAddressingHandler testedInstance;
+
+	@Before
+	public void setUp() throws Exception {
+		this.testedInstance = new WSAddressingHandler();
+	}
+
+	@Test
+	public void testRelatesTo() throws Exception {
+		// setup
+		SOAPMessageContext mockContext = createInboundContext(
+				"urn:uuid:message-id",
+				createMessage("urn:uuid:message-id"));
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		boolean result = this.testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockContext);
+		assertTrue(result);
+		// only the SOAP header got read
+		assertTrue(mockContext.getMessage().getSOAPPart().getContent() instanceof StreamSource);
+	}
+
+	@Test
+	public void testIncorrectRelatesTo() throws Exception {
+		// setup
+		SOAPMessage soapMessage = createMessage("urn:uuid:other-message-id");
+		soapMessage.getSOAPPart().getEnvelope();
+		SOAPMessageContext mockContext = createInboundContext(
+				"urn:uuid:message-id", soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		try {
+			this.testedInstance.handleMessage(mockContext);
+			fail();
+		} catch (ProtocolException e) {
+			// verify
+			EasyMock.verify(mockContext);
+		}
+	}
+
+	@Test
+	public void testOutbound() throws Exception {
+		// setup
+		Map<String, Object> requestContext = new HashMap<String, Object>();
+		WSAddressingHandler.setAddressing(requestContext, "urn:test:action",
+				"https://localhost/sts");
+		String firstMessageId = null;
+
+		for (int idx = 0; idx < 2; idx++) {
+			SOAPMessage soapMessage = MessageFactory.newInstance(
+					SOAPConstants.SOAP_1_2_PROTOCOL).createMessage();
+			SOAPMessageContext mockContext = EasyMock
+					.createMock(SOAPMessageContext.class);
+			EasyMock.expect(
+					mockContext.get("javax.xml.ws.handler.message.outbound"))
+					.andStubReturn(Boolean.TRUE);
+			EasyMock.expect(
+					mockContext.get(WSAddressingHandler.class.getName()
+							+ ".action")).andStubReturn(
+					requestContext.get(WSAddressingHandler.class.getName()
+							+ ".action"));
+			EasyMock.expect(
+					mockContext.get(WSAddressingHandler.class.getName()
+							+ ".to")).andStubReturn(
+					requestContext.get(WSAddressingHandler.class.getName()
+							+ ".to"));
+			EasyMock.expect(mockContext.getMessage())
+					.andStubReturn(soapMessage);
+			Capture<Object> messageIdCapture = Capture.newInstance();
+			EasyMock.expect(
+					mockContext.put(
+							EasyMock.eq(WSAddressingHandler.class.getName()
+									+ ".messageId"),
+							EasyMock.capture(messageIdCapture))).andReturn(
+					null);
+			Capture<Object> toIdCapture = Capture.newInstance();
+			EasyMock.expect(
+					mockContext.put(
+							EasyMock.eq(WSAddressingHandler.class.getName()
+									+ ".toId"), EasyMock.capture(toIdCapture)))
+					.andReturn(null);
+
+			// prepare
+			EasyMock.replay(mockContext);
+
+			// operate
+			boolean result = this.testedInstance.handleMessage(mockContext);
+
+			// verify
+			EasyMock.verify(mockContext);
+			assertTrue(result);
+			String messageId = (String) messageIdCapture.getValue();
+			assertTrue(messageId
+					.matches("urn:uuid:[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}"));
+			if (null == firstMessageId) {
+				firstMessageId = messageId;
+			} else {
+				assertFalse(firstMessageId.equals(messageId));
+			}
+
+			SOAPHeader soapHeader = soapMessage.getSOAPHeader();
+			NodeList childNodes = soapHeader.getChildNodes();
+			assertEquals(4, childNodes.getLength());
+			String[] localNames = { "Action", "MessageID", "ReplyTo", "To" };
+			for (int childIdx = 0; childIdx < localNames.length; childIdx++) {
+				Element element = (Element) childNodes.item(childIdx);
+				assertEquals(WSConstants.WS_ADDR_NAMESPACE,
+						element.getNamespaceURI());
+				assertEquals(localNames[childIdx], element.getLocalName());
+			}
+			assertEquals("urn:test:action", childNodes.item(0)
+					.getTextContent());
+			assertEquals(messageId, childNodes.item(1).getTextContent());
+			assertEquals("http://www.w3.org/2005/08/addressing/anonymous",
+					childNodes.item(2).getTextContent());
+			Element toElement = (Element) childNodes.item(3);
+			assertEquals("https://localhost/sts", toElement.getTextContent());
+			assertEquals(toIdCapture.getValue(), toElement.getAttributeNS(
+					WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Id"));
+			assertEquals(toElement, soapMessage.getSOAPPart().getElementById(
+					(String) toIdCapture.getValue()));
+			int mustUnderstandCount = 0;
+			java.util.Iterator<?> headerElementIter = soapHeader
+					.examineMustUnderstandHeaderElements(null);
+			while (headerElementIter.hasNext()) {
+				SOAPHeaderElement headerElement = (SOAPHeaderElement) headerElementIter
+						.next();
+				assertTrue(headerElement.getMustUnderstand());
+				mustUnderstandCount++;
+			}
+			assertEquals(2, mustUnderstandCount);
+		}
+	}
+
+	@Test
+	public void testAppendHeaders() throws Exception {
+		// setup
+		Map<String, Object> requestContext = new HashMap<String, Object>();
+		WSAddressingHandler.setAddressing(requestContext, "urn:test:action",
+				"https://localhost/sts");
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.newDocument();
+		Element soapHeader = document.createElementNS(
+				SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE, "soap:Header");
+
+		// operate
+		String messageId = WSAddressingHandler.appendHeaders(soapHeader,
+				WSAddressingHandler.getAction(requestContext),
+				WSAddressingHandler.getTo(requestContext));
+
+		// verify
+		NodeList childNodes = soapHeader.getChildNodes();
+		assertEquals(4, childNodes.getLength());
+		String[] localNames = { "Action", "MessageID", "ReplyTo", "To" };
+		Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+		for (int childIdx = 0; childIdx < localNames.length; childIdx++) {
+			// every header element can be written on its own
+			StringWriter stringWriter = new StringWriter();
+			transformer.transform(new DOMSource(childNodes.item(childIdx)),
+					new StreamResult(stringWriter));
+			Element element = documentBuilderFactory
+					.newDocumentBuilder()
+					.parse(new InputSource(new StringReader(stringWriter
+							.toString()))).getDocumentElement();
+			assertEquals(WSConstants.WS_ADDR_NAMESPACE,
+					element.getNamespaceURI());
+			assertEquals(localNames[childIdx], element.getLocalName());
+		}
+		assertEquals("urn:test:action", childNodes.item(0).getTextContent());
+		assertEquals("1", ((Element) childNodes.item(0)).getAttributeNS(
+				SOAPConstants.URI_NS_SOAP_1_1_ENVELOPE, "mustUnderstand"));
+		assertEquals(messageId, childNodes.item(1).getTextContent());
+		Element toElement = (Element) childNodes.item(3);
+		assertEquals("https://localhost/sts", toElement.getTextContent());
+		assertTrue(toElement.getAttributeNS(
+				WSConstants.WS_SECURITY_UTILITY_NAMESPACE, "Id").startsWith(
+				"to-id-"));
+	}
+
+	private SOAPMessageContext createInboundContext(String messageId,
+			SOAPMessage soapMessage) {
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+		EasyMock.expect(
+				mockContext.get(WSAddressingHandler.class.getName()
+						+ ".messageId")).andStubReturn(messageId);
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+		return mockContext;
+	}
+
+	private SOAPMessage createMessage(String relatesTo) throws Exception {
+		String message = "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\" xmlns:a=\"http://www.w3.org/2005/08/addressing\">"
+				+ "<s:Header>"
+				+ "<a:Action s:mustUnderstand=\"1\">urn:test:response</a:Action>"
+				+ "<a:RelatesTo>"
+				+ relatesTo
+				+ "</a:RelatesTo>"
+				+ "</s:Header>"
+				+ "<s:Body><test/></s:Body>" + "</s:Envelope>";
+		return MessageFactory.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL)
+				.createMessage(null,
+						new ByteArrayInputStream(message.getBytes("UTF-8")));
+	}
+}
@@ -19,6 +19,7 @@
 package test.unit.be.vlaanderen.informatievlaanderen.security.handler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -54,6 +55,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.ws.ProtocolException;
 import javax.xml.ws.handler.soap.SOAPMessageContext;
 
@@ -86,8 +88,10 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import test.unit.be.vlaanderen.informatievlaanderen.security.client.TestUtils;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
 import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
 import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
 
 import com.sun.org.apache.xpath.internal.XPathAPI;
 
@@ -96,6 +100,20 @@ public class WSSecurityHandlerTest {
 	private static final Log LOG = LogFactory
 			.getLog(WSSecurityHandlerTest.class);
 
+	private static final String SOAP12_TO_ENVELOPE = "<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" xmlns:wsa=\"http://www.w3.org/2005/08/addressing\" xmlns:wsu=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd\">"
+			+ "<soap:Header>"
+			+ "<wsa:To soap:mustUnderstand=\"1\" wsu:Id=\"toId\">destination</wsa:To>"
+			+ "</soap:Header>"
+			+ "<soap:Body>test</soap:Body>"
+			+ "</soap:Envelope>";
+
+	private static final String SOAP11_TO_ENVELOPE = "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+			+ "<S:Header>"
+			+ "<To xmlns=\"http://www.w3.org/2005/08/addressing\" xmlns:wsu=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd\" wsu:Id=\"toId\">destination</To>"
+			+ "</S:Header>"
+			+ "<S:Body>test</S:Body>"
+			+ "</S:Envelope>";
+
 	private WSSecurityHandler testedInstance;
 
 	@BeforeClass
@@ -206,6 +224,210 @@ public class WSSecurityHandlerTest {
 		}
 	}
 
+	@Test
+	public void testTimestampOnlyVerifyTimestamp() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler(
+				WSSecurityMode.DOM, InboundSecurityMode.TIMESTAMP_ONLY);
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+
+		byte[] message = createTimestampedMessage();
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage(null,
+				new ByteArrayInputStream(message));
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		boolean result = testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockContext);
+		assertTrue(result);
+		// the SOAP body did not get parsed, and is still available
+		assertTrue(soapMessage.getSOAPPart().getContent() instanceof StreamSource);
+		assertEquals("test", soapMessage.getSOAPBody().getFirstChild()
+				.getLocalName());
+	}
+
+	@Test
+	public void testStreamingVerifiesFullHeader() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler(
+				WSSecurityMode.STREAMING);
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage(null,
+				new ByteArrayInputStream(createTimestampedMessage()));
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		boolean result = testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockContext);
+		assertTrue(result);
+		// processed by WSS4J, so the complete message got parsed
+		assertFalse(soapMessage.getSOAPPart().getContent() instanceof StreamSource);
+	}
+
+	@Test
+	public void testTimestampOnlyVerifyTimestampParsedMessage() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler(
+				WSSecurityMode.DOM, InboundSecurityMode.TIMESTAMP_ONLY);
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage(null,
+				new ByteArrayInputStream(createTimestampedMessage()));
+		soapMessage.getSOAPPart().getEnvelope();
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		boolean result = testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockContext);
+		assertTrue(result);
+	}
+
+	@Test
+	public void testTimestampOnlyVerifyTimestampExpired() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler(
+				WSSecurityMode.DOM, InboundSecurityMode.TIMESTAMP_ONLY);
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+
+		InputStream requestInputStream = WSSecurityHandlerTest.class
+				.getResourceAsStream("/ip-sts-response.xml");
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage(null,
+				requestInputStream);
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		try {
+			testedInstance.handleMessage(mockContext);
+			fail();
+		} catch (ProtocolException e) {
+			// verify
+			EasyMock.verify(mockContext);
+		}
+	}
+
+	@Test
+	public void testTimestampOnlyVerifyTimestampMissing() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler(
+				WSSecurityMode.DOM, InboundSecurityMode.TIMESTAMP_ONLY);
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+
+		SOAPMessage soapMessage = MessageFactory
+				.newInstance(SOAPConstants.SOAP_1_2_PROTOCOL)
+				.createMessage(
+						null,
+						new ByteArrayInputStream(
+								"<Envelope xmlns=\"http://www.w3.org/2003/05/soap-envelope\"><Body>test</Body></Envelope>"
+										.getBytes()));
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		try {
+			testedInstance.handleMessage(mockContext);
+			fail();
+		} catch (ProtocolException e) {
+			// verify
+			EasyMock.verify(mockContext);
+		}
+	}
+
+	@Test
+	public void testTimestampOnlyRejectsDoctype() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler(
+				WSSecurityMode.DOM, InboundSecurityMode.TIMESTAMP_ONLY);
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.FALSE);
+
+		String message = new String(createTimestampedMessage(), "UTF-8");
+		// skips a possible XML declaration
+		int envelopeIndex = message.indexOf('<', message.startsWith("<?") ? 1
+				: 0);
+		message = message.substring(0, envelopeIndex)
+				+ "<!DOCTYPE Envelope [<!ENTITY test \"test\">]>"
+				+ message.substring(envelopeIndex);
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage(null,
+				new ByteArrayInputStream(message.getBytes("UTF-8")));
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		try {
+			testedInstance.handleMessage(mockContext);
+			fail();
+		} catch (ProtocolException e) {
+			// verify
+			EasyMock.verify(mockContext);
+			assertTrue(e.getCause().getMessage().contains("DOCTYPE"));
+		}
+	}
+
+	private byte[] createTimestampedMessage() throws Exception {
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage();
+		soapMessage.getSOAPBody().addBodyElement(new QName("test"));
+		SOAPPart soapPart = soapMessage.getSOAPPart();
+		WSSecHeader secHeader = new WSSecHeader();
+		secHeader.insertSecurityHeader(soapPart);
+		WSSecTimestamp timestamp = new WSSecTimestamp();
+		timestamp.build(soapPart, secHeader);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		soapMessage.writeTo(outputStream);
+		return outputStream.toByteArray();
+	}
+
 	@Test
 	public void testSignature() throws Exception {
 		// setup
@@ -223,6 +445,13 @@ public class WSSecurityHandlerTest {
 		String tokenIdentifier = "#saml-token-test";
 		this.testedInstance.setKey(secret, tokenIdentifier, null, false);
 
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName() + ".key"))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".certificate")).andStubReturn(null);
+
 		InputStream requestInputStream = WSSecurityHandlerTest.class
 				.getResourceAsStream("/r-sts-request-before-signing.xml");
 		SOAPMessage soapMessage = MessageFactory.newInstance(
@@ -268,6 +497,76 @@ public class WSSecurityHandlerTest {
 		LOG.debug("signed SOAP: " + toString(resultDocument));
 	}
 
+	@Test
+	public void testSignatureRequestContextKey() throws Exception {
+		// setup
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.TRUE);
+
+		byte[] secret = new byte[256 / 8];
+		SecureRandom secureRandom = new SecureRandom();
+		secureRandom.nextBytes(secret);
+
+		this.testedInstance.setKey(new byte[256 / 8], "#other-token", null,
+				false);
+
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName() + ".key"))
+				.andStubReturn(secret);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".tokenIdentifier")).andStubReturn(
+				"#saml-token-test");
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName() + ".token"))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".samlReference")).andStubReturn(Boolean.FALSE);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".certificate")).andStubReturn(null);
+
+		InputStream requestInputStream = WSSecurityHandlerTest.class
+				.getResourceAsStream("/r-sts-request-before-signing.xml");
+		SOAPMessage soapMessage = MessageFactory.newInstance(
+				SOAPConstants.SOAP_1_2_PROTOCOL).createMessage(null,
+				requestInputStream);
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		// prepare
+		EasyMock.replay(mockContext);
+
+		// operate
+		boolean result = this.testedInstance.handleMessage(mockContext);
+
+		// verify
+		EasyMock.verify(mockContext);
+		assertTrue(result);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		soapMessage.writeTo(outputStream);
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document resultDocument = documentBuilderFactory.newDocumentBuilder()
+				.parse(new ByteArrayInputStream(outputStream.toByteArray()));
+		TestUtils.markAllIdAttributesAsId(resultDocument);
+
+		NodeList signatureNodeList = resultDocument.getElementsByTagNameNS(
+				Constants.SignatureSpecNS, "Signature");
+		assertEquals(1, signatureNodeList.getLength());
+		XMLSignature xmlSignature = new XMLSignature(
+				(Element) signatureNodeList.item(0), null);
+		Key key = WSSecurityUtil.prepareSecretKey(SignatureMethod.HMAC_SHA1,
+				secret);
+		assertTrue(xmlSignature.checkSignatureValue(key));
+	}
+
 	@Test
 	public void testCertificateSignature() throws Exception {
 		// setup
@@ -301,6 +600,13 @@ public class WSSecurityHandlerTest {
 		X509Certificate certificate = generateSelfSignedCertificate(keyPair);
 		this.testedInstance.setCredentials(privateKey, certificate);
 
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName() + ".key"))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".certificate")).andStubReturn(null);
+
 		// prepare
 		EasyMock.replay(mockContext);
 
@@ -352,6 +658,13 @@ public class WSSecurityHandlerTest {
 
 		testedInstance.setCredentials(testUsername, "password");
 
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName() + ".key"))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".certificate")).andStubReturn(null);
+
 		SOAPMessage soapMessage = MessageFactory
 				.newInstance(SOAPConstants.SOAP_1_1_PROTOCOL)
 				.createMessage(
@@ -511,6 +824,211 @@ public class WSSecurityHandlerTest {
 		EasyMock.verify(mockContext);
 	}
 
+	@Test
+	public void testStreamingSamlSignature() throws Exception {
+		// setup
+		byte[] secret = new byte[256 / 8];
+		new SecureRandom().nextBytes(secret);
+		Element token = createSamlAssertion("_saml-token-test");
+		WSSecurityHandler domHandler = new WSSecurityHandler();
+		domHandler.setKey(secret, "_saml-token-test", token, true);
+		WSSecurityHandler streamingHandler = new WSSecurityHandler(
+				WSSecurityMode.STREAMING);
+		streamingHandler.setKey(secret, "_saml-token-test", token, true);
+
+		// operate
+		String domResult = secure(domHandler, SOAPConstants.SOAP_1_2_PROTOCOL,
+				SOAP12_TO_ENVELOPE, null);
+		String streamingResult = secure(streamingHandler,
+				SOAPConstants.SOAP_1_2_PROTOCOL, SOAP12_TO_ENVELOPE, null);
+
+		// verify
+		assertEquals(normalize(domResult), normalize(streamingResult));
+		XMLSignature xmlSignature = getSignature(streamingResult);
+		assertTrue(xmlSignature.checkSignatureValue(WSSecurityUtil
+				.prepareSecretKey(SignatureMethod.HMAC_SHA1, secret)));
+	}
+
+	@Test
+	public void testStreamingSecureConversationSignature() throws Exception {
+		// setup
+		byte[] secret = new byte[256 / 8];
+		new SecureRandom().nextBytes(secret);
+		WSSecurityHandler domHandler = new WSSecurityHandler();
+		domHandler.setKey(secret, "urn:uuid:sct-test", null, false);
+		domHandler.setCredentials("username", "password");
+		WSSecurityHandler streamingHandler = new WSSecurityHandler(
+				WSSecurityMode.STREAMING);
+		streamingHandler.setKey(secret, "urn:uuid:sct-test", null, false);
+		streamingHandler.setCredentials("username", "password");
+
+		// operate
+		String domResult = secure(domHandler, SOAPConstants.SOAP_1_1_PROTOCOL,
+				SOAP11_TO_ENVELOPE, null);
+		String streamingResult = secure(streamingHandler,
+				SOAPConstants.SOAP_1_1_PROTOCOL, SOAP11_TO_ENVELOPE, null);
+
+		// verify
+		assertEquals(normalize(domResult), normalize(streamingResult));
+		XMLSignature xmlSignature = getSignature(streamingResult);
+		assertTrue(xmlSignature.checkSignatureValue(WSSecurityUtil
+				.prepareSecretKey(SignatureMethod.HMAC_SHA1, secret)));
+	}
+
+	@Test
+	public void testStreamingCertificateSignature() throws Exception {
+		// setup
+		KeyPair keyPair = generateKeyPair();
+		X509Certificate certificate = generateSelfSignedCertificate(keyPair);
+		WSSecurityHandler domHandler = new WSSecurityHandler();
+		domHandler.setCredentials(keyPair.getPrivate(), certificate);
+		WSSecurityHandler streamingHandler = new WSSecurityHandler(
+				WSSecurityMode.STREAMING);
+		streamingHandler.setCredentials(keyPair.getPrivate(), certificate);
+
+		// operate
+		String domResult = secure(domHandler, SOAPConstants.SOAP_1_2_PROTOCOL,
+				SOAP12_TO_ENVELOPE, "toId");
+		String streamingResult = secure(streamingHandler,
+				SOAPConstants.SOAP_1_2_PROTOCOL, SOAP12_TO_ENVELOPE, "toId");
+
+		// verify
+		assertEquals(normalize(domResult), normalize(streamingResult));
+		XMLSignature xmlSignature = getSignature(streamingResult);
+		assertTrue(xmlSignature.checkSignatureValue(certificate));
+	}
+
+	@Test
+	public void testDetachedSecurityHeader() throws Exception {
+		// setup
+		byte[] secret = new byte[256 / 8];
+		new SecureRandom().nextBytes(secret);
+		Element token = createSamlAssertion("_saml-token-test");
+		WSSecurityHandler testedInstance = new WSSecurityHandler();
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.newDocument();
+		Element soapHeader = document.createElementNS(
+				SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE, "soap:Header");
+		soapHeader.setAttributeNS("http://www.w3.org/2000/xmlns/",
+				"xmlns:soap", SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE);
+		document.appendChild(soapHeader);
+
+		// operate
+		testedInstance.writeSecurityHeader(soapHeader, secret,
+				"_saml-token-test", token, true);
+
+		// verify
+		Element securityElement = (Element) soapHeader.getFirstChild();
+		assertEquals("Security", securityElement.getLocalName());
+		String soapMessage = "<soap:Envelope xmlns:soap=\""
+				+ SOAPConstants.URI_NS_SOAP_1_2_ENVELOPE + "\">"
+				+ toXml(soapHeader) + "<soap:Body/></soap:Envelope>";
+		LOG.debug("SOAP message: " + soapMessage);
+		XMLSignature xmlSignature = getSignature(soapMessage);
+		assertTrue(xmlSignature.checkSignatureValue(WSSecurityUtil
+				.prepareSecretKey(SignatureMethod.HMAC_SHA1, secret)));
+
+		testedInstance.verifySecurityHeader(securityElement);
+	}
+
+	@Test
+	public void testVerifyExpiredSecurityHeader() throws Exception {
+		// setup
+		WSSecurityHandler testedInstance = new WSSecurityHandler();
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder().parse(
+				WSSecurityHandlerTest.class
+						.getResourceAsStream("/ip-sts-response.xml"));
+		Element securityElement = (Element) document.getElementsByTagNameNS(
+				"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd",
+				"Security").item(0);
+
+		// operate
+		try {
+			testedInstance.verifySecurityHeader(securityElement);
+			fail();
+		} catch (SecurityException e) {
+			// verify
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+	}
+
+	private String secure(WSSecurityHandler handler, String soapProtocol,
+			String envelope, String toIdentifier) throws Exception {
+		SOAPMessageContext mockContext = EasyMock
+				.createMock(SOAPMessageContext.class);
+		EasyMock.expect(
+				mockContext.get("javax.xml.ws.handler.message.outbound"))
+				.andStubReturn(Boolean.TRUE);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName() + ".key"))
+				.andStubReturn(null);
+		EasyMock.expect(
+				mockContext.get(WSSecurityHandler.class.getName()
+						+ ".certificate")).andStubReturn(null);
+		EasyMock.expect(
+				mockContext.get(WSAddressingHandler.class.getName() + ".toId"))
+				.andStubReturn(toIdentifier);
+		SOAPMessage soapMessage = MessageFactory.newInstance(soapProtocol)
+				.createMessage(null,
+						new ByteArrayInputStream(envelope.getBytes()));
+		EasyMock.expect(mockContext.getMessage()).andStubReturn(soapMessage);
+
+		EasyMock.replay(mockContext);
+		assertTrue(handler.handleMessage(mockContext));
+		EasyMock.verify(mockContext);
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		soapMessage.writeTo(outputStream);
+		String result = new String(outputStream.toByteArray(), "UTF-8");
+		LOG.debug("SOAP message: " + result);
+		return result;
+	}
+
+	/**
+	 * Masks the values that differ between two runs: the generated wsu:Id
+	 * values, the timestamp, and the digest and signature values that depend
+	 * on the timestamp.
+	 */
+	private String normalize(String soapMessage) {
+		return soapMessage.replaceAll(
+				"(TS|SIG|KI|STR|X509|UsernameToken)-[0-9a-f-]+", "$1-ID")
+				.replaceAll(
+						"(Created|Expires|DigestValue|SignatureValue)>[^<]*<",
+						"$1>value<");
+	}
+
+	private XMLSignature getSignature(String soapMessage) throws Exception {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder().parse(
+				new ByteArrayInputStream(soapMessage.getBytes("UTF-8")));
+		TestUtils.markAllIdAttributesAsId(document);
+		NodeList signatureNodeList = document.getElementsByTagNameNS(
+				Constants.SignatureSpecNS, "Signature");
+		assertEquals(1, signatureNodeList.getLength());
+		return new XMLSignature((Element) signatureNodeList.item(0), null);
+	}
+
+	private Element createSamlAssertion(String assertionId) throws Exception {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		Document document = documentBuilderFactory.newDocumentBuilder()
+				.newDocument();
+		Element assertionElement = document.createElementNS(
+				"urn:oasis:names:tc:SAML:1.0:assertion", "saml:Assertion");
+		assertionElement.setAttributeNS(null, "AssertionID", assertionId);
+		document.appendChild(assertionElement);
+		return assertionElement;
+	}
+
 	private String toString(Document document) throws TransformerException {
 		StringWriter stringWriter = new StringWriter();
 		StreamResult streamResult = new StreamResult(stringWriter);
@@ -525,4 +1043,14 @@ public class WSSecurityHandlerTest {
 		transformer.transform(new DOMSource(document), streamResult);
 		return stringWriter.toString();
 	}
-}
\ No newline at end of file
+
+	private String toXml(Element element) throws TransformerException {
+		StringWriter stringWriter = new StringWriter();
+		Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		transformer.transform(new DOMSource(element), new StreamResult(
+				stringWriter));
+		return stringWriter.toString();
+	}
+}
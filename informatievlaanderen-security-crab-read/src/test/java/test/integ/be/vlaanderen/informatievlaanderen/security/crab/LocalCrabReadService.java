@@ -0,0 +1,90 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.crab;
+
+import java.io.IOException;
+
+import org.w3c.dom.Element;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.LocalSecuredService;
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.ProofKeyResolver;
+
+/**
+ * Embedded stand-in for the CRAB read web service, serving synthetic data.
+ * <p>
+ * The ListGemeente operation gives back as many municipalities as configured
+ * via {@link #setPayloadSize(int)}. All other operations of the ICrabRead
+ * service give back an empty response.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public class LocalCrabReadService extends LocalSecuredService {
+
+	private static final String SERVICE_NAMESPACE = "http://Gisvl.CrabDecentraal.CrabRead";
+
+	private static final String ARRAYS_NAMESPACE = "http://schemas.microsoft.com/2003/10/Serialization/Arrays";
+
+	/**
+	 * Creates a local CRAB read service on a free port.
+	 *
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys, typically the
+	 *            LocalSTS.
+	 * @throws IOException
+	 */
+	public LocalCrabReadService(ProofKeyResolver proofKeyResolver)
+			throws IOException {
+		this(proofKeyResolver, 0);
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys, typically the
+	 *            LocalSTS.
+	 * @param port
+	 *            the local port to listen on, or 0 for a free port.
+	 * @throws IOException
+	 */
+	public LocalCrabReadService(ProofKeyResolver proofKeyResolver, int port)
+			throws IOException {
+		super("/read/crabreadservice.svc/wsfed", proofKeyResolver, port);
+	}
+
+	@Override
+	protected boolean appendResponse(String operation, Element request,
+			StringBuilder body) {
+		if (false == "ListGemeente".equals(operation)) {
+			return false;
+		}
+		body.append("<ListGemeenteResponse xmlns=\"").append(SERVICE_NAMESPACE)
+				.append("\">");
+		body.append("<ListGemeenteResult xmlns:a=\"").append(ARRAYS_NAMESPACE)
+				.append("\">");
+		for (int idx = 0; idx < getPayloadSize(); idx++) {
+			body.append("<a:string>Gemeente ").append(idx)
+					.append("</a:string>");
+		}
+		body.append("</ListGemeenteResult>");
+		body.append("</ListGemeenteResponse>");
+		return true;
+	}
+}
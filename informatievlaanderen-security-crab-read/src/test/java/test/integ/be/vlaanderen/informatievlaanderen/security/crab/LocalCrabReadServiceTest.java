@@ -0,0 +1,188 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.crab;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.AddressingFeature;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+
+import com.microsoft.schemas._2003._10.serialization.arrays.ArrayOfstring;
+
+import crabread.crabdecentraal.gisvl.CrabReadService;
+import crabread.crabdecentraal.gisvl.ICrabRead;
+
+public class LocalCrabReadServiceTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(LocalCrabReadServiceTest.class);
+
+	private static final String SERVICE_REALM = "urn:agiv.be/crab/local";
+
+	private static LocalSTS localSTS;
+
+	private static LocalCrabReadService localCrabReadService;
+
+	private static CrabReadService crabReadService;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	@BeforeClass
+	public static void startServices() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		localCrabReadService = new LocalCrabReadService(localSTS);
+		localCrabReadService.start();
+		crabReadService = new CrabReadService();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopServices() {
+		localCrabReadService.stop();
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		localCrabReadService.setLatency(0, 0);
+		localCrabReadService.setPayloadSize(10);
+		localCrabReadService.resetCounters();
+	}
+
+	@Test
+	public void testListGemeente() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		ICrabRead iCrabRead = createPort(informatieVlaanderenSecurity);
+
+		// prepare
+		localCrabReadService.setPayloadSize(100);
+
+		// operate
+		ArrayOfstring gemeentes = iCrabRead.listGemeente();
+
+		// verify
+		assertEquals(100, gemeentes.getString().size());
+		assertEquals("Gemeente 99", gemeentes.getString().get(99));
+		assertEquals(0, localCrabReadService.getRejectedCount());
+	}
+
+	@Test
+	public void testUnsecuredCallRejected() throws Exception {
+		// setup
+		ICrabRead iCrabRead = crabReadService
+				.getWS2007FederationHttpBindingICrabRead(new AddressingFeature());
+		((BindingProvider) iCrabRead).getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
+				localCrabReadService.getLocation());
+
+		// operate
+		try {
+			iCrabRead.listGemeente();
+			fail();
+		} catch (WebServiceException e) {
+			// verify
+			LOG.debug("expected failure: " + e.getMessage());
+		}
+		assertEquals(1, localCrabReadService.getRejectedCount());
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		// setup
+		int threadCount = 4;
+		final int callCount = 100;
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		// warm up, and fetch the security token
+		createPort(informatieVlaanderenSecurity).listGemeente();
+		localCrabReadService.resetCounters();
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(threadCount);
+		List<Callable<Void>> callables = new ArrayList<Callable<Void>>();
+		for (int threadIdx = 0; threadIdx < threadCount; threadIdx++) {
+			// creating a port is expensive, so not part of the measurement
+			final ICrabRead iCrabRead = createPort(informatieVlaanderenSecurity);
+			callables.add(new Callable<Void>() {
+
+				public Void call() throws Exception {
+					for (int callIdx = 0; callIdx < callCount; callIdx++) {
+						iCrabRead.listGemeente();
+					}
+					return null;
+				}
+			});
+		}
+
+		// operate
+		long startTime = System.nanoTime();
+		try {
+			for (Future<Void> future : executorService.invokeAll(callables)) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		long duration = System.nanoTime() - startTime;
+
+		// verify
+		int totalCallCount = threadCount * callCount;
+		LOG.debug("secured CRAB read calls: " + totalCallCount + " in "
+				+ duration / 1000000 + " ms: " + totalCallCount * 1000000000L
+				/ duration + " calls/s");
+		assertEquals(totalCallCount, localCrabReadService.getRequestCount());
+		assertEquals(0, localCrabReadService.getRejectedCount());
+	}
+
+	private static ICrabRead createPort(
+			InformatieVlaanderenSecurity informatieVlaanderenSecurity) {
+		ICrabRead iCrabRead = crabReadService
+				.getWS2007FederationHttpBindingICrabRead(new AddressingFeature());
+		informatieVlaanderenSecurity.enable((BindingProvider) iCrabRead,
+				localCrabReadService.getLocation(), SERVICE_REALM);
+		return iCrabRead;
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPConstants;
+import javax.xml.soap.SOAPMessage;
+import javax.xml.soap.SOAPPart;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.BindingType;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Provider;
+import javax.xml.ws.Service;
+import javax.xml.ws.ServiceMode;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.WebServiceProvider;
+import javax.xml.ws.handler.Handler;
+import javax.xml.ws.soap.SOAPBinding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.jaxws.DispatchImpl;
+import org.apache.cxf.jaxws.EndpointImpl;
+import org.apache.cxf.phase.Phase;
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.message.WSSecHeader;
+import org.apache.ws.security.message.WSSecTimestamp;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.cxf.CXFSOAPStackIntegration;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
+import be.vlaanderen.informatievlaanderen.security.handler.LoggingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+
+/**
+ * Compares the throughput of the JAX-WS SOAP handler chain with the CXF
+ * interceptors, against a local CXF endpoint. No STS is involved: both paths
+ * get the same secure conversation token from a stub security token provider.
+ */
+public class CXFSOAPStackIntegrationTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(CXFSOAPStackIntegrationTest.class);
+
+	private static final String ADDRESS = "http://localhost:9191/echo";
+
+	private static final QName SERVICE_NAME = new QName("urn:test", "Echo");
+
+	private static final QName PORT_NAME = new QName("urn:test", "EchoPort");
+
+	private static final String REQUEST = "<echo xmlns=\"urn:test\">hello world</echo>";
+
+	private static final int WARM_UP_ITERATIONS = 1000;
+
+	private static final int ITERATIONS = 5000;
+
+	private static EndpointImpl endpoint;
+
+	@BeforeClass
+	public static void publishEndpoint() {
+		endpoint = new EndpointImpl(new EchoProvider());
+		endpoint.getInInterceptors().add(new AbstractSoapInterceptor(
+				Phase.PRE_PROTOCOL) {
+
+			public void handleMessage(SoapMessage message) throws Fault {
+			}
+
+			@Override
+			public Set<QName> getUnderstoodHeaders() {
+				return Collections.singleton(new QName(WSConstants.WSSE_NS,
+						"Security"));
+			}
+		});
+		endpoint.publish(ADDRESS);
+	}
+
+	@AfterClass
+	public static void stopEndpoint() {
+		endpoint.stop();
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		SecurityTokenProvider securityTokenProvider = new StubSecurityTokenProvider();
+
+		Dispatch<Source> handlerDispatch = createDispatch();
+		List<Handler> handlerChain = handlerDispatch.getBinding()
+				.getHandlerChain();
+		handlerChain.add(new SecureConversationHandler(securityTokenProvider,
+				null));
+		handlerChain.add(new WSSecurityHandler());
+		handlerChain.add(new LoggingHandler());
+		handlerDispatch.getBinding().setHandlerChain(handlerChain);
+
+		Dispatch<Source> interceptorDispatch = createDispatch();
+		new CXFSOAPStackIntegration().enable(interceptorDispatch,
+				securityTokenProvider, null, true);
+
+		invoke(handlerDispatch, WARM_UP_ITERATIONS);
+		invoke(interceptorDispatch, WARM_UP_ITERATIONS);
+
+		long handlerTime = invoke(handlerDispatch, ITERATIONS);
+		long interceptorTime = invoke(interceptorDispatch, ITERATIONS);
+
+		LOG.info("JAX-WS handlers: " + ITERATIONS * 1000000000L / handlerTime
+				+ " requests per second");
+		LOG.info("CXF interceptors: " + ITERATIONS * 1000000000L
+				/ interceptorTime + " requests per second");
+	}
+
+	@Test
+	public void testDisable() throws Exception {
+		Dispatch<Source> dispatch = createDispatch();
+		CXFSOAPStackIntegration integration = new CXFSOAPStackIntegration();
+		assertEquals(true, integration.isSupported(dispatch));
+		int outInterceptorCount = getOutInterceptorCount(dispatch);
+
+		integration.enable(dispatch, new StubSecurityTokenProvider(), null,
+				true);
+		integration.disable(dispatch);
+
+		assertEquals(outInterceptorCount, getOutInterceptorCount(dispatch));
+	}
+
+	@Test
+	public void testRefuseX509Credentials() throws Exception {
+		// setup
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		Dispatch<Source> dispatch = createDispatch();
+		new CXFSOAPStackIntegration().enable(dispatch,
+				new StubSecurityTokenProvider(), null, true);
+
+		// prepare
+		WSSecurityHandler.setCredentials(dispatch.getRequestContext(),
+				keyPair.getPrivate(), certificate);
+
+		// operate & verify
+		try {
+			dispatch.invoke(new StreamSource(new StringReader(REQUEST)));
+			fail();
+		} catch (WebServiceException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFallbackToHandlerChain() throws Exception {
+		// setup
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				"https://localhost/sts", certificate, keyPair.getPrivate());
+		informatieVlaanderenSecurity.setSOAPStackIntegration(true);
+		Dispatch<Source> handlerDispatch = createDispatch();
+		Dispatch<Source> interceptorDispatch = createDispatch();
+		int outInterceptorCount = getOutInterceptorCount(handlerDispatch);
+
+		// operate
+		informatieVlaanderenSecurity.enable(handlerDispatch, false, null);
+		informatieVlaanderenSecurity
+				.setInboundSecurityMode(InboundSecurityMode.TIMESTAMP_ONLY);
+		informatieVlaanderenSecurity.enable(interceptorDispatch, false, null,
+				WSSecurityMode.STREAMING);
+
+		// verify
+		assertFalse(handlerDispatch.getBinding().getHandlerChain().isEmpty());
+		assertEquals(outInterceptorCount,
+				getOutInterceptorCount(handlerDispatch));
+		assertTrue(interceptorDispatch.getBinding().getHandlerChain()
+				.isEmpty());
+		assertTrue(getOutInterceptorCount(interceptorDispatch) > outInterceptorCount);
+	}
+
+	private int getOutInterceptorCount(Dispatch<Source> dispatch) {
+		return ((DispatchImpl<Source>) dispatch)
+				.getClient().getOutInterceptors().size();
+	}
+
+	private Dispatch<Source> createDispatch() {
+		Service service = Service.create(SERVICE_NAME);
+		service.addPort(PORT_NAME, SOAPBinding.SOAP12HTTP_BINDING, ADDRESS);
+		Dispatch<Source> dispatch = service.createDispatch(PORT_NAME,
+				Source.class, Service.Mode.PAYLOAD);
+		dispatch.getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY, ADDRESS);
+		return dispatch;
+	}
+
+	private long invoke(Dispatch<Source> dispatch, int iterations) {
+		long time = System.nanoTime();
+		for (int idx = 0; idx < iterations; idx++) {
+			dispatch.invoke(new StreamSource(new StringReader(REQUEST)));
+		}
+		return System.nanoTime() - time;
+	}
+
+	private static class StubSecurityTokenProvider implements
+			SecurityTokenProvider {
+
+		private final SecurityToken securityToken;
+
+		public StubSecurityTokenProvider() {
+			byte[] key = new byte[256 / 8];
+			new SecureRandom().nextBytes(key);
+			this.securityToken = new SecurityToken();
+			this.securityToken.setKey(key);
+			this.securityToken.setAttachedReference("urn:uuid:sct-test");
+		}
+
+		public SecurityToken getSecurityToken(String serviceRealm) {
+			return this.securityToken;
+		}
+
+		public SecurityToken getSecureConversationToken(String location,
+				String serviceRealm) {
+			return this.securityToken;
+		}
+	}
+
+	/**
+	 * Echoes the request payload, with a WS-Security timestamp like the
+	 * Informatie Vlaanderen services add.
+	 */
+	@WebServiceProvider(serviceName = "Echo", portName = "EchoPort", targetNamespace = "urn:test")
+	@ServiceMode(Service.Mode.MESSAGE)
+	@BindingType(SOAPBinding.SOAP12HTTP_BINDING)
+	public static class EchoProvider implements Provider<SOAPMessage> {
+
+		public SOAPMessage invoke(SOAPMessage request) {
+			try {
+				SOAPMessage response = MessageFactory.newInstance(
+						SOAPConstants.SOAP_1_2_PROTOCOL).createMessage();
+				response.getSOAPBody().addDocument(
+						request.getSOAPBody().extractContentAsDocument());
+				SOAPPart soapPart = response.getSOAPPart();
+				WSSecHeader wsSecHeader = new WSSecHeader();
+				wsSecHeader.insertSecurityHeader(soapPart);
+				WSSecTimestamp wsSecTimestamp = new WSSecTimestamp();
+				wsSecTimestamp.build(soapPart, wsSecHeader);
+				return response;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.xml.ws.spi.Provider;
+
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.performance.StackPerformanceResult;
+import test.integ.be.vlaanderen.informatievlaanderen.security.performance.StackPerformanceScenario;
+import test.integ.be.vlaanderen.informatievlaanderen.security.performance.Workload;
+
+/**
+ * Runs the cross-stack performance scenario on CXF, with the CXF SOAP
+ * stack integration.
+ */
+public class CXFStackPerformanceTest {
+
+	@Test
+	public void testPerformance() throws Exception {
+		// setup
+		StackPerformanceScenario scenario = new StackPerformanceScenario(
+				"cxf");
+		// make sure we measure CXF, not the JAX-WS RI of the JDK
+		String providerClassName = Provider.provider().getClass().getName();
+		assertTrue(providerClassName,
+				providerClassName.startsWith("org.apache.cxf.jaxws"));
+
+		// operate
+		List<StackPerformanceResult> results = scenario.run();
+		scenario.publish(results);
+
+		// verify
+		assertEquals(Workload.values().length, results.size());
+		for (StackPerformanceResult result : results) {
+			assertTrue(result.getThroughput() > 0);
+		}
+		// regressions only fail with -Dstack.performance.failOnRegression=true
+		scenario.verifyBaseline(results);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.cxf;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.ws.BindingProvider;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.endpoint.Client;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.jaxws.DispatchImpl;
+import org.apache.cxf.message.Message;
+
+import be.vlaanderen.informatievlaanderen.security.handler.SOAPStackIntegration;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+
+/**
+ * Apache CXF integration. Secures CXF JAX-WS ports and dispatches via CXF
+ * interceptors instead of JAX-WS SOAP handlers, so CXF does not have to
+ * convert the messages to SAAJ.
+ * <p>
+ * Gets used by the
+ * {@link be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity}
+ * component when this module is on the classpath and the SOAP stack
+ * integrations are enabled on it.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class CXFSOAPStackIntegration implements SOAPStackIntegration {
+
+	private static final Log LOG = LogFactory
+			.getLog(CXFSOAPStackIntegration.class);
+
+	public boolean isSupported(BindingProvider bindingProvider) {
+		return null != getClient(bindingProvider);
+	}
+
+	public void enable(BindingProvider bindingProvider,
+			SecurityTokenProvider securityTokenProvider, String serviceRealm,
+			boolean useWsSecureConversation) {
+		Client client = getClient(bindingProvider);
+		for (Interceptor<? extends Message> interceptor : client
+				.getOutInterceptors()) {
+			if (interceptor instanceof SecurityOutInterceptor) {
+				LOG.warn("security already enabled");
+				SecurityOutInterceptor securityOutInterceptor = (SecurityOutInterceptor) interceptor;
+				if (securityTokenProvider != securityOutInterceptor
+						.getSecurityTokenProvider()) {
+					throw new SecurityException(
+							"security on JAX-WS stub already enabled by another InformatieVlaanderenSecurity instance");
+				}
+				return;
+			}
+		}
+		LOG.debug("enabling security via CXF interceptors");
+		client.getOutInterceptors().add(new WSAddressingOutInterceptor());
+		client.getOutInterceptors().add(
+				new SecurityOutInterceptor(securityTokenProvider,
+						serviceRealm, useWsSecureConversation));
+		client.getInInterceptors().add(new SecurityInInterceptor());
+		client.getInInterceptors().add(new WSAddressingInInterceptor());
+	}
+
+	public void disable(BindingProvider bindingProvider) {
+		Client client = getClient(bindingProvider);
+		removeInterceptors(client.getOutInterceptors());
+		removeInterceptors(client.getInInterceptors());
+	}
+
+	private static void removeInterceptors(
+			List<Interceptor<? extends Message>> interceptors) {
+		/*
+		 * CXF keeps the interceptors in a copy-on-write list, of which the
+		 * iterator does not support removal.
+		 */
+		for (Interceptor<? extends Message> interceptor : new ArrayList<Interceptor<? extends Message>>(
+				interceptors)) {
+			if (interceptor instanceof SecurityOutInterceptor
+					|| interceptor instanceof SecurityInInterceptor
+					|| interceptor instanceof WSAddressingOutInterceptor
+					|| interceptor instanceof WSAddressingInInterceptor) {
+				interceptors.remove(interceptor);
+			}
+		}
+	}
+
+	private static Client getClient(BindingProvider bindingProvider) {
+		if (bindingProvider instanceof DispatchImpl) {
+			return ((DispatchImpl<?>) bindingProvider).getClient();
+		}
+		if (false == Proxy.isProxyClass(bindingProvider.getClass())) {
+			return null;
+		}
+		InvocationHandler invocationHandler = Proxy
+				.getInvocationHandler(bindingProvider);
+		if (invocationHandler instanceof ClientProxy) {
+			return ((ClientProxy) invocationHandler).getClient();
+		}
+		return null;
+	}
+}
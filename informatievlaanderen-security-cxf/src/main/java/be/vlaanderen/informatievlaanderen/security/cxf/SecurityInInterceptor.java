@@ -0,0 +1,83 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.cxf;
+
+import java.util.Collections;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
+import org.apache.cxf.headers.Header;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.phase.Phase;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+/**
+ * CXF interceptor that verifies the WS-Security timestamp of inbound messages,
+ * like the {@link WSSecurityHandler} does. Only looks at the SOAP headers as
+ * already parsed by CXF.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityInInterceptor extends AbstractSoapInterceptor {
+
+	private static final Log LOG = LogFactory
+			.getLog(SecurityInInterceptor.class);
+
+	private static final QName SECURITY_HEADER = new QName(
+			WSConstants.WS_SECURITY_NAMESPACE, "Security");
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	/**
+	 * Default constructor.
+	 */
+	public SecurityInInterceptor() {
+		super(Phase.PRE_PROTOCOL);
+		this.wsSecurityHandler = new WSSecurityHandler();
+	}
+
+	public void handleMessage(SoapMessage message) throws Fault {
+		LOG.debug("checking WS-Security header");
+		Header securityHeader = message.getHeader(SECURITY_HEADER);
+		if (null == securityHeader) {
+			throw new Fault(new SecurityException("no WS-Security header"));
+		}
+		try {
+			this.wsSecurityHandler
+					.verifySecurityHeader((Element) securityHeader
+							.getObject());
+		} catch (SecurityException e) {
+			throw new Fault(e);
+		}
+	}
+
+	@Override
+	public Set<QName> getUnderstoodHeaders() {
+		return Collections.singleton(SECURITY_HEADER);
+	}
+}
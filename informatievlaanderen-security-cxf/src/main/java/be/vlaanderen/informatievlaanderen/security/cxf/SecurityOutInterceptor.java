@@ -0,0 +1,164 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.cxf;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.binding.soap.SoapHeader;
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.binding.soap.SoapVersion;
+import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.Phase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenConsumer;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+/**
+ * CXF interceptor that selects the security token and adds the WS-Security
+ * header to outbound messages. Does what the {@link
+ * be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler}
+ * or {@link
+ * be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler}
+ * and the {@link WSSecurityHandler} do, but without SAAJ.
+ * <p>
+ * The WS-Security header is built as a separate DOM element and handed to CXF
+ * as SOAP header, which CXF serializes together with the rest of the
+ * StAX-written message. The SOAP body is never looked at. Requests that carry
+ * X509 credentials via
+ * {@link WSSecurityHandler#setCredentials(java.util.Map, java.security.PrivateKey, java.security.cert.X509Certificate)}
+ * are refused.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityOutInterceptor extends AbstractSoapInterceptor implements
+		SecurityTokenConsumer {
+
+	private static final Log LOG = LogFactory
+			.getLog(SecurityOutInterceptor.class);
+
+	/**
+	 * The SOAP envelope prefix written by CXF. The CXF SOAP version header
+	 * names carry no prefix.
+	 */
+	static final String SOAP_PREFIX = "soap";
+
+	private static final QName SECURITY_HEADER = new QName(
+			WSConstants.WS_SECURITY_NAMESPACE, "Security");
+
+	private final SecurityTokenProvider securityTokenProvider;
+
+	private final String serviceRealm;
+
+	private final boolean useWsSecureConversation;
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	/**
+	 * Main constructor.
+	 * <p>
+	 * If no service realm is specified, the service location will be used as
+	 * service realm towards the R-STS.
+	 * 
+	 * @param securityTokenProvider
+	 *            the provider of the security tokens.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 */
+	public SecurityOutInterceptor(SecurityTokenProvider securityTokenProvider,
+			String serviceRealm, boolean useWsSecureConversation) {
+		super(Phase.PRE_PROTOCOL);
+		this.securityTokenProvider = securityTokenProvider;
+		this.serviceRealm = serviceRealm;
+		this.useWsSecureConversation = useWsSecureConversation;
+		this.wsSecurityHandler = new WSSecurityHandler();
+	}
+
+	public void handleMessage(SoapMessage message) throws Fault {
+		if (null != WSSecurityHandler.getCertificate(message)) {
+			throw new Fault(new SecurityException(
+					"X509 request signing requires the JAX-WS handler chain"));
+		}
+		String location = (String) message.get(Message.ENDPOINT_ADDRESS);
+		String serviceRealm;
+		if (null != this.serviceRealm) {
+			serviceRealm = this.serviceRealm;
+		} else {
+			serviceRealm = location;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("location: " + location);
+			LOG.debug("service realm: " + serviceRealm);
+		}
+
+		SecurityToken securityToken;
+		if (this.useWsSecureConversation) {
+			securityToken = this.securityTokenProvider
+					.getSecureConversationToken(location, serviceRealm);
+		} else {
+			securityToken = this.securityTokenProvider
+					.getSecurityToken(serviceRealm);
+		}
+
+		SoapVersion soapVersion = message.getVersion();
+		Document document = DOMUtils.createDocument();
+		/*
+		 * The detached SOAP header element gives the WS-Security header the
+		 * same in-scope SOAP namespace as it will have within the envelope
+		 * written by CXF, so the exclusive canonicalization matches.
+		 */
+		Element soapHeader = document.createElementNS(
+				soapVersion.getNamespace(), SOAP_PREFIX + ":Header");
+		soapHeader.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+				"xmlns:" + SOAP_PREFIX, soapVersion.getNamespace());
+		document.appendChild(soapHeader);
+		try {
+			this.wsSecurityHandler.writeSecurityHeader(soapHeader,
+					ImmutableSecurityToken.getSharedKey(securityToken),
+					securityToken.getAttachedReference(),
+					securityToken.getToken(),
+					false == this.useWsSecureConversation);
+		} catch (Exception e) {
+			LOG.error("outbound exception: " + e.getMessage(), e);
+			throw new Fault(e);
+		}
+		Element securityElement = (Element) soapHeader.getLastChild();
+		message.getHeaders().add(
+				new SoapHeader(SECURITY_HEADER, securityElement));
+	}
+
+	public SecurityTokenProvider getSecurityTokenProvider() {
+		return this.securityTokenProvider;
+	}
+}
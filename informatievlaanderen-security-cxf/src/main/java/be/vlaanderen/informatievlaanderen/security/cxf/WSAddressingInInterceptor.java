@@ -0,0 +1,97 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.cxf;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.ProtocolException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
+import org.apache.cxf.headers.Header;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.phase.Phase;
+import org.w3c.dom.Element;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+
+/**
+ * CXF interceptor that checks the WS-Addressing RelatesTo headers of inbound
+ * messages against the MessageID of the request, like the
+ * {@link be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler}
+ * does.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class WSAddressingInInterceptor extends AbstractSoapInterceptor {
+
+	private static final Log LOG = LogFactory
+			.getLog(WSAddressingInInterceptor.class);
+
+	private static final QName RELATES_TO_HEADER = new QName(
+			WSConstants.WS_ADDR_NAMESPACE, "RelatesTo");
+
+	private static final Set<QName> UNDERSTOOD_HEADERS;
+
+	static {
+		Set<QName> understoodHeaders = new HashSet<QName>();
+		understoodHeaders
+				.add(new QName(WSConstants.WS_ADDR_NAMESPACE, "Action"));
+		understoodHeaders.add(new QName(WSConstants.WS_ADDR_NAMESPACE, "To"));
+		UNDERSTOOD_HEADERS = understoodHeaders;
+	}
+
+	/**
+	 * Default constructor.
+	 */
+	public WSAddressingInInterceptor() {
+		super(Phase.PRE_PROTOCOL);
+	}
+
+	public void handleMessage(SoapMessage message) throws Fault {
+		String messageId = (String) message.getExchange().get(
+				WSAddressingOutInterceptor.MESSAGE_ID_EXCHANGE_ATTRIBUTE);
+		if (null == messageId) {
+			// no WS-Addressing on the request
+			return;
+		}
+		LOG.debug("checking RelatesTo message id: " + messageId);
+		for (Header header : message.getHeaders()) {
+			if (false == RELATES_TO_HEADER.equals(header.getName())) {
+				continue;
+			}
+			String relatesTo = ((Element) header.getObject()).getTextContent()
+					.trim();
+			if (false == messageId.equals(relatesTo)) {
+				throw new Fault(new ProtocolException(
+						"incorrect a:RelatesTo value"));
+			}
+		}
+	}
+
+	@Override
+	public Set<QName> getUnderstoodHeaders() {
+		return UNDERSTOOD_HEADERS;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.cxf;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.cxf.binding.soap.SoapHeader;
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.binding.soap.SoapVersion;
+import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
+import org.apache.cxf.headers.Header;
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.phase.Phase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
+
+/**
+ * CXF interceptor that adds the WS-Addressing headers to outbound messages,
+ * like the {@link WSAddressingHandler} does. Only active for requests of which
+ * the WS-Addressing parameters were set via
+ * {@link WSAddressingHandler#setAddressing(java.util.Map, String, String)} on
+ * the JAX-WS request context.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class WSAddressingOutInterceptor extends AbstractSoapInterceptor {
+
+	private static final Log LOG = LogFactory
+			.getLog(WSAddressingOutInterceptor.class);
+
+	static final String MESSAGE_ID_EXCHANGE_ATTRIBUTE = WSAddressingOutInterceptor.class
+			.getName() + ".messageId";
+
+	/**
+	 * Default constructor.
+	 */
+	public WSAddressingOutInterceptor() {
+		super(Phase.PRE_PROTOCOL);
+	}
+
+	public void handleMessage(SoapMessage message) throws Fault {
+		String action = WSAddressingHandler.getAction(message);
+		if (null == action) {
+			return;
+		}
+		String to = WSAddressingHandler.getTo(message);
+		LOG.debug("adding WS-Addressing headers");
+
+		SoapVersion soapVersion = message.getVersion();
+		Document document = DOMUtils.createDocument();
+		Element soapHeader = document.createElementNS(
+				soapVersion.getNamespace(), SecurityOutInterceptor.SOAP_PREFIX
+						+ ":Header");
+		String messageId;
+		try {
+			messageId = WSAddressingHandler.appendHeaders(soapHeader, action,
+					to);
+		} catch (ParserConfigurationException e) {
+			throw new Fault(e);
+		}
+		message.getExchange().put(MESSAGE_ID_EXCHANGE_ATTRIBUTE, messageId);
+		List<Header> headers = message.getHeaders();
+		Node headerNode = soapHeader.getFirstChild();
+		while (null != headerNode) {
+			Element headerElement = (Element) headerNode;
+			headers.add(new SoapHeader(new QName(headerElement
+					.getNamespaceURI(), headerElement.getLocalName()),
+					headerElement));
+			headerNode = headerNode.getNextSibling();
+		}
+	}
+}
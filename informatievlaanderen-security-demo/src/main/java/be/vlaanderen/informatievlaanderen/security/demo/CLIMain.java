@@ -30,7 +30,7 @@ import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
 
 public class CLIMain {
 
-	private static final String RSTS_LOCATION = "https://beta.auth.vlaanderen.be/sts/Services/SalvadorSecurityTokenServiceConfiguration.svc/CertificateMessage";	
+	static final String RSTS_LOCATION = "https://beta.auth.vlaanderen.be/sts/Services/SalvadorSecurityTokenServiceConfiguration.svc/CertificateMessage";	
 	private static final String SERVICE_LOCATION = "https://beta.auth.vlaanderen.be/ClaimsAwareService/Service.svc/wsfed";
 	private static final String SC_SERVICE_LOCATION = "https://beta.auth.vlaanderen.be/ClaimsAwareService/Service.svc/wsfedsc";        
 	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/claimsawareservice/beta";
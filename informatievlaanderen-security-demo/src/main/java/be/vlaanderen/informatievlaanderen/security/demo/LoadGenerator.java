@@ -0,0 +1,260 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.demo;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.soap.AddressingFeature;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tempuri.IService;
+import org.tempuri.Service;
+
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+
+/**
+ * Load generator for the claims aware service. Every thread makes secured
+ * getData calls over its own JAX-WS port, with all ports sharing a single
+ * InformatieVlaanderenSecurity component, as the service ports of a web
+ * application do.
+ * <p>
+ * The threads are started evenly spread over the ramp-up period. The calls
+ * made during the ramp-up warm up the token caches and the JVM, and are not
+ * part of the measurement.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class LoadGenerator {
+
+	private static final Log LOG = LogFactory.getLog(LoadGenerator.class);
+
+	private final InformatieVlaanderenSecurity informatieVlaanderenSecurity;
+
+	private final String serviceLocation;
+
+	private final String serviceRealm;
+
+	private int threads;
+
+	private long duration;
+
+	private long rampUp;
+
+	private boolean secureConversation;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param informatieVlaanderenSecurity
+	 *            the Informatie Vlaanderen Security component to secure the
+	 *            calls with.
+	 * @param serviceLocation
+	 *            the location of the claims aware service.
+	 * @param serviceRealm
+	 *            the service realm of the claims aware service.
+	 */
+	public LoadGenerator(
+			InformatieVlaanderenSecurity informatieVlaanderenSecurity,
+			String serviceLocation, String serviceRealm) {
+		this.informatieVlaanderenSecurity = informatieVlaanderenSecurity;
+		this.serviceLocation = serviceLocation;
+		this.serviceRealm = serviceRealm;
+		this.threads = 1;
+		this.duration = 10 * 1000;
+	}
+
+	/**
+	 * Sets the number of concurrent threads. Default is 1.
+	 * 
+	 * @param threads
+	 *            the number of threads.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("at least one thread required");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the duration of the measurement, not including the ramp-up.
+	 * Default is 10 seconds.
+	 * 
+	 * @param duration
+	 *            the duration in milliseconds.
+	 */
+	public void setDuration(long duration) {
+		if (duration <= 0) {
+			throw new IllegalArgumentException("duration should be positive");
+		}
+		this.duration = duration;
+	}
+
+	/**
+	 * Sets the ramp-up period, over which the threads get started. Default is
+	 * no ramp-up.
+	 * 
+	 * @param rampUp
+	 *            the ramp-up period in milliseconds.
+	 */
+	public void setRampUp(long rampUp) {
+		if (rampUp < 0) {
+			throw new IllegalArgumentException("negative ramp-up");
+		}
+		this.rampUp = rampUp;
+	}
+
+	/**
+	 * Sets whether to use WS-SecureConversation. Default is
+	 * <code>false</code>.
+	 * 
+	 * @param secureConversation
+	 *            <code>true</code> to use WS-SecureConversation.
+	 */
+	public void setSecureConversation(boolean secureConversation) {
+		this.secureConversation = secureConversation;
+	}
+
+	/**
+	 * Runs the load, and waits for all threads to finish.
+	 * 
+	 * @return the load report.
+	 * @throws InterruptedException
+	 */
+	public LoadReport run() throws InterruptedException {
+		STSCallCounter stsCallCounter = new STSCallCounter();
+		this.informatieVlaanderenSecurity.addSTSListener(stsCallCounter);
+
+		// creating the ports is expensive, so not part of the run
+		Service service = ClaimsAwareServiceFactory.getInstanceNoWSPolicy();
+		List<Worker> workers = new LinkedList<Worker>();
+		for (int idx = 0; idx < this.threads; idx++) {
+			IService iservice = service
+					.getWS2007FederationHttpBindingIService(new AddressingFeature());
+			this.informatieVlaanderenSecurity.enable(
+					(BindingProvider) iservice, this.serviceLocation,
+					this.secureConversation, this.serviceRealm);
+			workers.add(new Worker(iservice, idx));
+		}
+
+		long startTime = System.currentTimeMillis();
+		long measurementStartTime = startTime + this.rampUp;
+		long endTime = measurementStartTime + this.duration;
+		int workerIdx = 0;
+		for (Worker worker : workers) {
+			worker.setTimes(startTime + this.rampUp * workerIdx / this.threads,
+					measurementStartTime, endTime);
+			worker.start();
+			workerIdx++;
+		}
+
+		Histogram histogram = new Histogram(3);
+		long callCount = 0;
+		long errorCount = 0;
+		for (Worker worker : workers) {
+			worker.join();
+			histogram.add(worker.getHistogram());
+			callCount += worker.getCallCount();
+			errorCount += worker.getErrorCount();
+		}
+		return new LoadReport(histogram, callCount, errorCount, this.duration,
+				stsCallCounter);
+	}
+
+	private static class Worker extends Thread {
+
+		private final IService iservice;
+
+		private final Histogram histogram;
+
+		private long startTime;
+
+		private long measurementStartTime;
+
+		private long endTime;
+
+		private long callCount;
+
+		private long errorCount;
+
+		public Worker(IService iservice, int idx) {
+			super("load-generator-" + idx);
+			this.iservice = iservice;
+			this.histogram = new Histogram(3);
+		}
+
+		public void setTimes(long startTime, long measurementStartTime,
+				long endTime) {
+			this.startTime = startTime;
+			this.measurementStartTime = measurementStartTime;
+			this.endTime = endTime;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long delay = this.startTime - System.currentTimeMillis();
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+			while (true) {
+				long callStartTime = System.currentTimeMillis();
+				if (callStartTime >= this.endTime) {
+					return;
+				}
+				boolean measured = callStartTime >= this.measurementStartTime;
+				long callStartNanoTime = System.nanoTime();
+				try {
+					this.iservice.getData(0);
+				} catch (RuntimeException e) {
+					LOG.debug("call failed: " + e.getMessage(), e);
+					if (measured) {
+						this.errorCount++;
+					}
+					continue;
+				}
+				if (measured) {
+					long latency = (System.nanoTime() - callStartNanoTime) / 1000;
+					this.histogram.recordValue(latency);
+					this.callCount++;
+				}
+			}
+		}
+
+		public Histogram getHistogram() {
+			return this.histogram;
+		}
+
+		public long getCallCount() {
+			return this.callCount;
+		}
+
+		public long getErrorCount() {
+			return this.errorCount;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.demo;
+
+import java.io.File;
+
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+
+/**
+ * Command line load generator for the claims aware service. Usage:
+ * 
+ * <pre>
+ * LoadMain [options] pkcs12-file pkcs12-password
+ * 
+ * -threads n          number of concurrent threads, default 1
+ * -duration seconds   duration of the measurement, default 10
+ * -rampup seconds     period over which the threads get started, default 0
+ * -sct                use WS-SecureConversation
+ * -retirement seconds token retirement duration, default 300
+ * -sts location       R-STS location
+ * -service location   claims aware service location
+ * -realm realm        claims aware service realm
+ * </pre>
+ * 
+ * The report is printed to standard output, with the latency distribution in
+ * the HdrHistogram percentile format.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class LoadMain {
+
+	private static final String USAGE = "usage: LoadMain [-threads n] [-duration seconds] [-rampup seconds] [-sct]"
+			+ " [-retirement seconds] [-sts location] [-service location] [-realm realm]"
+			+ " pkcs12-file pkcs12-password";
+
+	public static void main(String[] args) throws Exception {
+		int threads = 1;
+		long duration = 10;
+		long rampUp = 0;
+		boolean secureConversation = false;
+		long tokenRetirementDuration = InformatieVlaanderenSecurity.DEFAULT_TOKEN_RETIREMENT_DURATION / 1000;
+		String rStsLocation = CLIMain.RSTS_LOCATION;
+		String serviceLocation = null;
+		String serviceRealm = ClaimsAwareServiceFactory.SERVICE_REALM;
+
+		int argIdx = 0;
+		while (argIdx < args.length && args[argIdx].startsWith("-")) {
+			String option = args[argIdx++];
+			if ("-sct".equals(option)) {
+				secureConversation = true;
+				continue;
+			}
+			if (argIdx == args.length) {
+				throw new IllegalArgumentException(USAGE);
+			}
+			String value = args[argIdx++];
+			if ("-threads".equals(option)) {
+				threads = Integer.parseInt(value);
+			} else if ("-duration".equals(option)) {
+				duration = Long.parseLong(value);
+			} else if ("-rampup".equals(option)) {
+				rampUp = Long.parseLong(value);
+			} else if ("-retirement".equals(option)) {
+				tokenRetirementDuration = Long.parseLong(value);
+			} else if ("-sts".equals(option)) {
+				rStsLocation = value;
+			} else if ("-service".equals(option)) {
+				serviceLocation = value;
+			} else if ("-realm".equals(option)) {
+				serviceRealm = value;
+			} else {
+				throw new IllegalArgumentException(USAGE);
+			}
+		}
+		if (args.length - argIdx != 2) {
+			throw new IllegalArgumentException(USAGE);
+		}
+		File pkcs12File = new File(args[argIdx]);
+		String pkcs12Password = args[argIdx + 1];
+		if (null == serviceLocation) {
+			if (secureConversation) {
+				serviceLocation = ClaimsAwareServiceFactory.SERVICE_SC_LOCATION;
+			} else {
+				serviceLocation = ClaimsAwareServiceFactory.SERVICE_LOCATION;
+			}
+		}
+
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				rStsLocation, pkcs12File, pkcs12Password);
+		informatieVlaanderenSecurity
+				.setTokenRetirementDuration(tokenRetirementDuration * 1000);
+
+		LoadGenerator loadGenerator = new LoadGenerator(
+				informatieVlaanderenSecurity, serviceLocation, serviceRealm);
+		loadGenerator.setThreads(threads);
+		loadGenerator.setDuration(duration * 1000);
+		loadGenerator.setRampUp(rampUp * 1000);
+		loadGenerator.setSecureConversation(secureConversation);
+
+		System.out.println("threads: " + threads);
+		System.out.println("service location: " + serviceLocation);
+		System.out.println("secure conversation: " + secureConversation);
+		LoadReport loadReport = loadGenerator.run();
+		loadReport.print(System.out);
+
+		if (secureConversation) {
+			informatieVlaanderenSecurity.cancelSecureConversationTokens();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.demo;
+
+import java.io.PrintStream;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * The outcome of a {@link LoadGenerator} run. Only the calls made after the
+ * ramp-up are part of the latency histogram and the throughput. The STS call
+ * counts cover the entire run, as most tokens get requested during the
+ * ramp-up.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class LoadReport {
+
+	private final Histogram histogram;
+
+	private final long callCount;
+
+	private final long errorCount;
+
+	private final long duration;
+
+	private final STSCallCounter stsCallCounter;
+
+	LoadReport(Histogram histogram, long callCount, long errorCount,
+			long duration, STSCallCounter stsCallCounter) {
+		this.histogram = histogram;
+		this.callCount = callCount;
+		this.errorCount = errorCount;
+		this.duration = duration;
+		this.stsCallCounter = stsCallCounter;
+	}
+
+	/**
+	 * Gives back the latency histogram of the successful calls, in
+	 * microseconds.
+	 * 
+	 * @return the latency histogram.
+	 */
+	public Histogram getHistogram() {
+		return this.histogram;
+	}
+
+	/**
+	 * Gives back the number of successful calls.
+	 * 
+	 * @return the number of successful calls.
+	 */
+	public long getCallCount() {
+		return this.callCount;
+	}
+
+	/**
+	 * Gives back the number of failed calls.
+	 * 
+	 * @return the number of failed calls.
+	 */
+	public long getErrorCount() {
+		return this.errorCount;
+	}
+
+	/**
+	 * Gives back the duration of the measurement, excluding the ramp-up.
+	 * 
+	 * @return the duration in milliseconds.
+	 */
+	public long getDuration() {
+		return this.duration;
+	}
+
+	/**
+	 * Gives back the STS token request counts.
+	 * 
+	 * @return the STS call counter.
+	 */
+	public STSCallCounter getSTSCallCounter() {
+		return this.stsCallCounter;
+	}
+
+	/**
+	 * Gives back the number of successful calls per second.
+	 * 
+	 * @return the throughput.
+	 */
+	public double getThroughput() {
+		if (0 == this.duration) {
+			return 0;
+		}
+		return this.callCount * 1000.0 / this.duration;
+	}
+
+	/**
+	 * Prints the report. The latency distribution is printed in the
+	 * HdrHistogram percentile format, in milliseconds, so it can be plotted
+	 * with the HdrHistogram plotter.
+	 * 
+	 * @param printStream
+	 *            the print stream.
+	 */
+	public void print(PrintStream printStream) {
+		printStream.println("calls: " + this.callCount);
+		printStream.println("errors: " + this.errorCount);
+		printStream.println("duration: " + this.duration + " ms");
+		printStream.println(String.format("throughput: %.1f calls/s",
+				getThroughput()));
+		printStream.println(String.format("latency p50: %.3f ms",
+				this.histogram.getValueAtPercentile(50) / 1000.0));
+		printStream.println(String.format("latency p99: %.3f ms",
+				this.histogram.getValueAtPercentile(99) / 1000.0));
+		printStream.println(String.format("latency p999: %.3f ms",
+				this.histogram.getValueAtPercentile(99.9) / 1000.0));
+		printStream.println("IP-STS calls: "
+				+ this.stsCallCounter.getIPSTSCount());
+		printStream.println("R-STS calls: "
+				+ this.stsCallCounter.getRSTSCount());
+		printStream.println("secure conversation calls: "
+				+ this.stsCallCounter.getSecureConversationCount());
+		printStream.println();
+		this.histogram.outputPercentileDistribution(printStream, 1000.0);
+	}
+}
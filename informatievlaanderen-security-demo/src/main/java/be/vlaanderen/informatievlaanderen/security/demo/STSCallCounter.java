@@ -0,0 +1,77 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.demo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import be.vlaanderen.informatievlaanderen.security.STSListener;
+
+/**
+ * STS listener that counts the STS token requests.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class STSCallCounter implements STSListener {
+
+	private final AtomicInteger ipStsCount = new AtomicInteger();
+
+	private final AtomicInteger rStsCount = new AtomicInteger();
+
+	private final AtomicInteger secureConversationCount = new AtomicInteger();
+
+	public void requestingIPSTSToken() {
+		this.ipStsCount.incrementAndGet();
+	}
+
+	public void requestingRSTSToken() {
+		this.rStsCount.incrementAndGet();
+	}
+
+	public void requestingSecureConversationToken() {
+		this.secureConversationCount.incrementAndGet();
+	}
+
+	/**
+	 * Gives back the number of IP-STS token requests.
+	 * 
+	 * @return the number of IP-STS token requests.
+	 */
+	public int getIPSTSCount() {
+		return this.ipStsCount.get();
+	}
+
+	/**
+	 * Gives back the number of R-STS token requests.
+	 * 
+	 * @return the number of R-STS token requests.
+	 */
+	public int getRSTSCount() {
+		return this.rStsCount.get();
+	}
+
+	/**
+	 * Gives back the number of secure conversation token requests.
+	 * 
+	 * @return the number of secure conversation token requests.
+	 */
+	public int getSecureConversationCount() {
+		return this.secureConversationCount.get();
+	}
+}
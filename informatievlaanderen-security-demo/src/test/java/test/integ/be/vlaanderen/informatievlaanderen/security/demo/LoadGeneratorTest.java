@@ -0,0 +1,131 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.demo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.demo.LoadGenerator;
+import be.vlaanderen.informatievlaanderen.security.demo.LoadReport;
+
+public class LoadGeneratorTest {
+
+	private static final Log LOG = LogFactory.getLog(LoadGeneratorTest.class);
+
+	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/claimsawareservice/local";
+
+	private static LocalSTS localSTS;
+
+	private static LocalClaimsAwareService localClaimsAwareService;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	@BeforeClass
+	public static void startServices() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		localClaimsAwareService = new LocalClaimsAwareService(localSTS);
+		localClaimsAwareService.start();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopServices() {
+		localClaimsAwareService.stop();
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		localClaimsAwareService.resetCounters();
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		LoadGenerator loadGenerator = new LoadGenerator(
+				informatieVlaanderenSecurity,
+				localClaimsAwareService.getLocation(), SERVICE_REALM);
+
+		// prepare
+		loadGenerator.setThreads(4);
+		loadGenerator.setRampUp(1000);
+		loadGenerator.setDuration(2000);
+
+		// operate
+		LoadReport loadReport = loadGenerator.run();
+
+		// verify
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		loadReport.print(new PrintStream(outputStream));
+		LOG.debug("load report:\n" + outputStream.toString());
+		assertTrue(loadReport.getCallCount() > 0);
+		assertEquals(0, loadReport.getErrorCount());
+		assertEquals(loadReport.getCallCount(), loadReport.getHistogram()
+				.getTotalCount());
+		assertTrue(loadReport.getThroughput() > 0);
+		// all threads share the cached R-STS token
+		assertEquals(1, loadReport.getSTSCallCounter().getRSTSCount());
+		assertEquals(0, loadReport.getSTSCallCounter().getIPSTSCount());
+		assertTrue(localClaimsAwareService.getRequestCount() >= loadReport
+				.getCallCount());
+		assertEquals(0, localClaimsAwareService.getRejectedCount());
+		assertTrue(outputStream.toString().contains("Percentile"));
+		assertTrue(outputStream.toString().contains("Total count"));
+	}
+
+	@Test
+	public void testInvalidThreads() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		LoadGenerator loadGenerator = new LoadGenerator(
+				informatieVlaanderenSecurity,
+				localClaimsAwareService.getLocation(), SERVICE_REALM);
+
+		// operate
+		try {
+			loadGenerator.setThreads(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
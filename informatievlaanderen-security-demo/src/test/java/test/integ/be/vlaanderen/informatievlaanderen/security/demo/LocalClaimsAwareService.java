@@ -0,0 +1,73 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.demo;
+
+import java.io.IOException;
+
+import org.w3c.dom.Element;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.LocalSecuredService;
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.ProofKeyResolver;
+
+/**
+ * Embedded stand-in for the claims aware service. The GetData operation gives
+ * back as many claims as configured via {@link #setPayloadSize(int)}.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class LocalClaimsAwareService extends LocalSecuredService {
+
+	private static final String NAMESPACE = "http://www.agiv.be";
+
+	/**
+	 * Creates a local claims aware service on a free port.
+	 * 
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys, typically the
+	 *            LocalSTS.
+	 * @throws IOException
+	 */
+	public LocalClaimsAwareService(ProofKeyResolver proofKeyResolver)
+			throws IOException {
+		super("/ClaimsAwareService/Service.svc/wsfed", proofKeyResolver, 0);
+	}
+
+	@Override
+	protected boolean appendResponse(String operation, Element request,
+			StringBuilder body) {
+		if (false == "GetData".equals(operation)) {
+			return false;
+		}
+		body.append("<GetDataResponse xmlns=\"").append(NAMESPACE)
+				.append("\">");
+		body.append("<GetDataResult>");
+		for (int idx = 0; idx < getPayloadSize(); idx++) {
+			body.append("<ClaimInfo>");
+			body.append("<Issuer>LocalSTS</Issuer>");
+			body.append("<Name>urn:claim:").append(idx).append("</Name>");
+			body.append("<OriginalIssuer>LocalSTS</OriginalIssuer>");
+			body.append("<Value>value ").append(idx).append("</Value>");
+			body.append("</ClaimInfo>");
+		}
+		body.append("</GetDataResult>");
+		body.append("</GetDataResponse>");
+		return true;
+	}
+}
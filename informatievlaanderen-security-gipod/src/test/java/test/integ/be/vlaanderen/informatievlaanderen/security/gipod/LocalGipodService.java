@@ -0,0 +1,92 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.gipod;
+
+import java.io.IOException;
+
+import org.w3c.dom.Element;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.LocalSecuredService;
+import test.integ.be.vlaanderen.informatievlaanderen.security.service.ProofKeyResolver;
+
+/**
+ * Embedded stand-in for the GIPOD web service, serving synthetic data.
+ * <p>
+ * The GetListLand operation gives back as many countries as configured via
+ * {@link #setPayloadSize(int)}. All other operations of the IGipodService give
+ * back an empty response.
+ *
+ * @author Frank Cornelis
+ *
+ */
+public class LocalGipodService extends LocalSecuredService {
+
+	private static final String SERVICE_NAMESPACE = "http://www.agiv.be/Gipod/2010/06/service";
+
+	private static final String NAMESPACE = "http://www.agiv.be/Gipod/2010/06";
+
+	/**
+	 * Creates a local GIPOD service on a free port.
+	 *
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys, typically the
+	 *            LocalSTS.
+	 * @throws IOException
+	 */
+	public LocalGipodService(ProofKeyResolver proofKeyResolver)
+			throws IOException {
+		this(proofKeyResolver, 0);
+	}
+
+	/**
+	 * Main constructor.
+	 *
+	 * @param proofKeyResolver
+	 *            the resolver of the proof-of-possession keys, typically the
+	 *            LocalSTS.
+	 * @param port
+	 *            the local port to listen on, or 0 for a free port.
+	 * @throws IOException
+	 */
+	public LocalGipodService(ProofKeyResolver proofKeyResolver, int port)
+			throws IOException {
+		super("/soap/GipodService.svc/wsfed", proofKeyResolver, port);
+	}
+
+	@Override
+	protected boolean appendResponse(String operation, Element request,
+			StringBuilder body) {
+		if (false == "GetListLand".equals(operation)) {
+			return false;
+		}
+		body.append("<GetListLandResponse xmlns=\"").append(SERVICE_NAMESPACE)
+				.append("\">");
+		body.append("<GetListLandResult>");
+		body.append("<Landen xmlns=\"").append(NAMESPACE).append("\">");
+		for (int idx = 0; idx < getPayloadSize(); idx++) {
+			body.append("<Land><Code>L").append(idx)
+					.append("</Code><Naam>Land ").append(idx)
+					.append("</Naam></Land>");
+		}
+		body.append("</Landen>");
+		body.append("</GetListLandResult>");
+		body.append("</GetListLandResponse>");
+		return true;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaanderen.security.gipod;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.AddressingFeature;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalSTS;
+import be.agiv.gipod._2010._06.GetListLandResponse;
+import be.agiv.gipod._2010._06.service.GipodService;
+import be.agiv.gipod._2010._06.service.IGipodService;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+
+public class LocalGipodServiceTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(LocalGipodServiceTest.class);
+
+	private static final String SERVICE_REALM = "urn:informatievlaanderen.be/gipod/service/local";
+
+	private static LocalSTS localSTS;
+
+	private static LocalGipodService localGipodService;
+
+	private static GipodService gipodService;
+
+	private static KeyPair keyPair;
+
+	private static X509Certificate certificate;
+
+	@BeforeClass
+	public static void startServices() throws Exception {
+		localSTS = new LocalSTS();
+		localSTS.start();
+		localGipodService = new LocalGipodService(localSTS);
+		localGipodService.start();
+		gipodService = new GipodService();
+		keyPair = LocalCredential.generateKeyPair();
+		certificate = LocalCredential.generateSelfSignedCertificate(keyPair);
+	}
+
+	@AfterClass
+	public static void stopServices() {
+		localGipodService.stop();
+		localSTS.stop();
+	}
+
+	@Before
+	public void setUp() {
+		localGipodService.setLatency(0, 0);
+		localGipodService.setPayloadSize(10);
+		localGipodService.resetCounters();
+	}
+
+	@Test
+	public void testGetListLand() throws Exception {
+		// setup
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		IGipodService iGipodService = createPort(informatieVlaanderenSecurity);
+
+		// prepare
+		localGipodService.setPayloadSize(100);
+
+		// operate
+		GetListLandResponse listLandResponse = iGipodService.getListLand();
+
+		// verify
+		assertEquals(100, listLandResponse.getLanden().getLand().size());
+		assertEquals("L99", listLandResponse.getLanden().getLand().get(99)
+				.getCode());
+		assertEquals(0, localGipodService.getRejectedCount());
+	}
+
+	@Test
+	public void testUnsecuredCallRejected() throws Exception {
+		// setup
+		IGipodService iGipodService = gipodService
+				.getGipodServiceWsfed(new AddressingFeature());
+		((BindingProvider) iGipodService).getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY,
+				localGipodService.getLocation());
+
+		// operate
+		try {
+			iGipodService.getListLand();
+			fail();
+		} catch (WebServiceException e) {
+			// verify
+			LOG.debug("expected failure: " + e.getMessage());
+		}
+		assertEquals(1, localGipodService.getRejectedCount());
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		// setup
+		int threadCount = 4;
+		final int callCount = 100;
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				localSTS.getLocation(), certificate, keyPair.getPrivate());
+		// warm up, and fetch the security token
+		createPort(informatieVlaanderenSecurity).getListLand();
+		localGipodService.resetCounters();
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(threadCount);
+		List<Callable<Void>> callables = new ArrayList<Callable<Void>>();
+		for (int threadIdx = 0; threadIdx < threadCount; threadIdx++) {
+			// creating a port is expensive, so not part of the measurement
+			final IGipodService iGipodService = createPort(informatieVlaanderenSecurity);
+			callables.add(new Callable<Void>() {
+
+				public Void call() throws Exception {
+					for (int callIdx = 0; callIdx < callCount; callIdx++) {
+						iGipodService.getListLand();
+					}
+					return null;
+				}
+			});
+		}
+
+		// operate
+		long startTime = System.nanoTime();
+		try {
+			for (Future<Void> future : executorService.invokeAll(callables)) {
+				future.get();
+			}
+		} finally {
+			executorService.shutdown();
+		}
+		long duration = System.nanoTime() - startTime;
+
+		// verify
+		int totalCallCount = threadCount * callCount;
+		LOG.debug("secured GIPOD calls: " + totalCallCount + " in "
+				+ duration / 1000000 + " ms: " + totalCallCount * 1000000000L
+				/ duration + " calls/s");
+		assertEquals(totalCallCount, localGipodService.getRequestCount());
+		assertEquals(0, localGipodService.getRejectedCount());
+	}
+
+	private static IGipodService createPort(
+			InformatieVlaanderenSecurity informatieVlaanderenSecurity) {
+		IGipodService iGipodService = gipodService
+				.getGipodServiceWsfed(new AddressingFeature());
+		informatieVlaanderenSecurity.enable((BindingProvider) iGipodService,
+				localGipodService.getLocation(), SERVICE_REALM);
+		return iGipodService;
+	}
+}
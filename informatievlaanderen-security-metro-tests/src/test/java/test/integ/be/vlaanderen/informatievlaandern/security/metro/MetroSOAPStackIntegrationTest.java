@@ -0,0 +1,265 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package test.integ.be.vlaanderen.informatievlaandern.security.metro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPBinding;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import test.integ.be.vlaanderen.informatievlaanderen.security.sts.LocalCredential;
+import be.vlaanderen.informatievlaanderen.security.InformatieVlaanderenSecurity;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.InboundSecurityMode;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityMode;
+import be.vlaanderen.informatievlaanderen.security.metro.MetroSOAPStackIntegration;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the Metro security tube against a local echo service. No STS is
+ * involved: the secure conversation token comes from a stub security token
+ * provider.
+ */
+public class MetroSOAPStackIntegrationTest {
+
+	private static final Log LOG = LogFactory
+			.getLog(MetroSOAPStackIntegrationTest.class);
+
+	private static final int PORT = 9193;
+
+	private static final String ADDRESS = "http://localhost:" + PORT + "/echo";
+
+	private static final QName SERVICE_NAME = new QName("urn:test", "Echo");
+
+	private static final QName PORT_NAME = new QName("urn:test", "EchoPort");
+
+	private static final String REQUEST = "<echo xmlns=\"urn:test\">hello world</echo>";
+
+	private static final AtomicInteger securedRequests = new AtomicInteger();
+
+	private static HttpServer httpServer;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		httpServer = HttpServer.create(new InetSocketAddress(PORT), 0);
+		httpServer.createContext("/echo", new EchoHandler());
+		httpServer.start();
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		httpServer.stop(0);
+	}
+
+	@Before
+	public void setUp() {
+		securedRequests.set(0);
+	}
+
+	@Test
+	public void testSecurityTube() throws Exception {
+		// setup
+		Dispatch<Source> dispatch = createDispatch();
+		MetroSOAPStackIntegration integration = new MetroSOAPStackIntegration();
+		assertTrue(integration.isSupported(dispatch));
+
+		// operate
+		integration.enable(dispatch, new StubSecurityTokenProvider(), null,
+				true);
+		dispatch.invoke(new StreamSource(new StringReader(REQUEST)));
+
+		// verify
+		assertEquals(1, securedRequests.get());
+		assertTrue(dispatch.getBinding().getHandlerChain().isEmpty());
+	}
+
+	@Test
+	public void testDisable() throws Exception {
+		// setup
+		Dispatch<Source> dispatch = createDispatch();
+		MetroSOAPStackIntegration integration = new MetroSOAPStackIntegration();
+		integration.enable(dispatch, new StubSecurityTokenProvider(), null,
+				true);
+
+		// operate
+		integration.disable(dispatch);
+		dispatch.invoke(new StreamSource(new StringReader(REQUEST)));
+
+		// verify
+		assertEquals(0, securedRequests.get());
+	}
+
+	@Test
+	public void testRefuseX509Credentials() throws Exception {
+		// setup
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		Dispatch<Source> dispatch = createDispatch();
+		new MetroSOAPStackIntegration().enable(dispatch,
+				new StubSecurityTokenProvider(), null, true);
+
+		// prepare
+		WSSecurityHandler.setCredentials(dispatch.getRequestContext(),
+				keyPair.getPrivate(), certificate);
+
+		// operate & verify
+		try {
+			dispatch.invoke(new StreamSource(new StringReader(REQUEST)));
+			fail();
+		} catch (WebServiceException e) {
+			// expected
+			LOG.debug("expected exception: " + e.getMessage());
+		}
+		assertEquals(0, securedRequests.get());
+	}
+
+	@Test
+	public void testFallbackToHandlerChain() throws Exception {
+		// setup
+		KeyPair keyPair = LocalCredential.generateKeyPair();
+		X509Certificate certificate = LocalCredential
+				.generateSelfSignedCertificate(keyPair);
+		InformatieVlaanderenSecurity informatieVlaanderenSecurity = new InformatieVlaanderenSecurity(
+				"https://localhost/sts", certificate, keyPair.getPrivate());
+		informatieVlaanderenSecurity.setSOAPStackIntegration(true);
+		Dispatch<Source> handlerDispatch = createDispatch();
+		Dispatch<Source> tubeDispatch = createDispatch();
+
+		// operate
+		informatieVlaanderenSecurity.enable(handlerDispatch, false, null);
+		informatieVlaanderenSecurity
+				.setInboundSecurityMode(InboundSecurityMode.TIMESTAMP_ONLY);
+		informatieVlaanderenSecurity.enable(tubeDispatch, false, null,
+				WSSecurityMode.STREAMING);
+
+		// verify
+		assertFalse(handlerDispatch.getBinding().getHandlerChain().isEmpty());
+		assertTrue(tubeDispatch.getBinding().getHandlerChain().isEmpty());
+	}
+
+	private Dispatch<Source> createDispatch() {
+		Service service = Service.create(SERVICE_NAME);
+		service.addPort(PORT_NAME, SOAPBinding.SOAP11HTTP_BINDING, ADDRESS);
+		Dispatch<Source> dispatch = service.createDispatch(PORT_NAME,
+				Source.class, Service.Mode.PAYLOAD);
+		dispatch.getRequestContext().put(
+				BindingProvider.ENDPOINT_ADDRESS_PROPERTY, ADDRESS);
+		return dispatch;
+	}
+
+	private static class StubSecurityTokenProvider implements
+			SecurityTokenProvider {
+
+		private final SecurityToken securityToken;
+
+		public StubSecurityTokenProvider() {
+			byte[] key = new byte[256 / 8];
+			new SecureRandom().nextBytes(key);
+			this.securityToken = new SecurityToken();
+			this.securityToken.setKey(key);
+			this.securityToken.setAttachedReference("urn:uuid:sct-test");
+		}
+
+		public SecurityToken getSecurityToken(String serviceRealm) {
+			return this.securityToken;
+		}
+
+		public SecurityToken getSecureConversationToken(String location,
+				String serviceRealm) {
+			return this.securityToken;
+		}
+	}
+
+	/**
+	 * Counts the requests that carry a WS-Security header, and answers every
+	 * request with a small SOAP response that carries a fresh WS-Security
+	 * timestamp.
+	 */
+	private static class EchoHandler implements HttpHandler {
+
+		public void handle(HttpExchange httpExchange) {
+			try {
+				String request = IOUtils.toString(
+						httpExchange.getRequestBody(), "UTF-8");
+				if (request.contains(WSConstants.WS_SECURITY_NAMESPACE)) {
+					securedRequests.incrementAndGet();
+				}
+				SimpleDateFormat dateFormat = new SimpleDateFormat(
+						"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+				dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+				long now = System.currentTimeMillis();
+				String response = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+						+ "<s:Header><o:Security s:mustUnderstand=\"1\" xmlns:o=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-secext-1.0.xsd\">"
+						+ "<u:Timestamp u:Id=\"_0\" xmlns:u=\"http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd\">"
+						+ "<u:Created>"
+						+ dateFormat.format(new Date(now))
+						+ "</u:Created><u:Expires>"
+						+ dateFormat.format(new Date(now + 5 * 60 * 1000))
+						+ "</u:Expires></u:Timestamp></o:Security></s:Header>"
+						+ "<s:Body><echoResponse xmlns=\"urn:test\"/></s:Body></s:Envelope>";
+				byte[] responseBytes = response.getBytes("UTF-8");
+				httpExchange.getResponseHeaders().set("Content-Type",
+						"text/xml; charset=UTF-8");
+				httpExchange.sendResponseHeaders(200, responseBytes.length);
+				OutputStream outputStream = httpExchange.getResponseBody();
+				outputStream.write(responseBytes);
+				outputStream.close();
+			} catch (Exception e) {
+				LOG.error("echo error: " + e.getMessage(), e);
+			} finally {
+				httpExchange.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.metro;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.SOAPStackIntegration;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+
+import com.sun.xml.ws.binding.BindingImpl;
+import com.sun.xml.ws.client.Stub;
+
+/**
+ * Enables the Informatie Vlaanderen security on Metro stubs via the
+ * {@link SecurityTube}, instead of via JAX-WS SOAP handlers.
+ * <p>
+ * The {@link SecurityTube} is part of every client tubeline assembled while
+ * this module is on the classpath. Enabling the security only sets the
+ * configuration of the tube on the request context of the stub.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class MetroSOAPStackIntegration implements SOAPStackIntegration {
+
+	private static final Log LOG = LogFactory
+			.getLog(MetroSOAPStackIntegration.class);
+
+	private static final QName[] KNOWN_HEADERS = {
+			new QName(WSConstants.WS_SECURITY_NAMESPACE, "Security"),
+			new QName(WSConstants.WS_ADDR_NAMESPACE, "Action"),
+			new QName(WSConstants.WS_ADDR_NAMESPACE, "To") };
+
+	public boolean isSupported(BindingProvider bindingProvider) {
+		Stub stub = getStub(bindingProvider);
+		if (null == stub) {
+			return false;
+		}
+		return SecurityTubelineAssembler.hasSecurityTube(stub);
+	}
+
+	public void enable(BindingProvider bindingProvider,
+			SecurityTokenProvider securityTokenProvider, String serviceRealm,
+			boolean useWsSecureConversation) {
+		SecurityTubeConfiguration configuration = (SecurityTubeConfiguration) bindingProvider
+				.getRequestContext().get(
+						SecurityTubeConfiguration.CONTEXT_ATTRIBUTE);
+		if (null != configuration) {
+			LOG.warn("security already enabled");
+			if (securityTokenProvider != configuration
+					.getSecurityTokenProvider()) {
+				throw new SecurityException(
+						"security on JAX-WS stub already enabled by another InformatieVlaanderenSecurity instance");
+			}
+			return;
+		}
+		LOG.debug("enabling security via Metro tube");
+		/*
+		 * The Metro MU tube checks the inbound headers before the response
+		 * reaches the security tube.
+		 */
+		BindingImpl binding = (BindingImpl) getStub(bindingProvider)
+				.getBinding();
+		for (QName knownHeader : KNOWN_HEADERS) {
+			binding.addKnownHeader(knownHeader);
+		}
+		bindingProvider.getRequestContext().put(
+				SecurityTubeConfiguration.CONTEXT_ATTRIBUTE,
+				new SecurityTubeConfiguration(securityTokenProvider,
+						serviceRealm, useWsSecureConversation));
+	}
+
+	public void disable(BindingProvider bindingProvider) {
+		bindingProvider.getRequestContext().remove(
+				SecurityTubeConfiguration.CONTEXT_ATTRIBUTE);
+	}
+
+	private static Stub getStub(BindingProvider bindingProvider) {
+		if (bindingProvider instanceof Stub) {
+			// Metro dispatch
+			return (Stub) bindingProvider;
+		}
+		if (false == Proxy.isProxyClass(bindingProvider.getClass())) {
+			return null;
+		}
+		InvocationHandler invocationHandler = Proxy
+				.getInvocationHandler(bindingProvider);
+		if (invocationHandler instanceof Stub) {
+			// Metro port proxy
+			return (Stub) invocationHandler;
+		}
+		return null;
+	}
+}
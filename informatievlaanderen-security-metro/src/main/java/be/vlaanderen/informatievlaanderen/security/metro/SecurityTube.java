@@ -0,0 +1,256 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.metro;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.ws.ProtocolException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import be.vlaanderen.informatievlaanderen.security.ImmutableSecurityToken;
+import be.vlaanderen.informatievlaanderen.security.SecurityToken;
+import be.vlaanderen.informatievlaanderen.security.client.WSConstants;
+import be.vlaanderen.informatievlaanderen.security.handler.WSAddressingHandler;
+import be.vlaanderen.informatievlaanderen.security.handler.WSSecurityHandler;
+
+import com.sun.xml.ws.api.SOAPVersion;
+import com.sun.xml.ws.api.message.Header;
+import com.sun.xml.ws.api.message.Headers;
+import com.sun.xml.ws.api.message.Message;
+import com.sun.xml.ws.api.message.MessageHeaders;
+import com.sun.xml.ws.api.message.Packet;
+import com.sun.xml.ws.api.pipe.NextAction;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubeCloner;
+import com.sun.xml.ws.api.pipe.helper.AbstractFilterTubeImpl;
+
+/**
+ * Metro tube that does what the {@link WSAddressingHandler}, the
+ * {@link be.vlaanderen.informatievlaanderen.security.handler.SecureConversationHandler}
+ * or
+ * {@link be.vlaanderen.informatievlaanderen.security.handler.AuthenticationHandler}
+ * and the {@link WSSecurityHandler} do, directly on the Metro message headers.
+ * <p>
+ * Only the SOAP headers are touched. The message body is never read, so Metro
+ * keeps writing and reading it in a streaming way, without SAAJ. Requests
+ * that carry X509 credentials via
+ * {@link WSSecurityHandler#setCredentials(java.util.Map, java.security.PrivateKey, java.security.cert.X509Certificate)}
+ * are refused.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityTube extends AbstractFilterTubeImpl {
+
+	private static final Log LOG = LogFactory.getLog(SecurityTube.class);
+
+	private static final String MESSAGE_ID_PROPERTY = SecurityTube.class
+			.getName() + ".messageId";
+
+	private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+
+	private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory
+			.newInstance();
+
+	static {
+		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory
+				.newInstance();
+		documentBuilderFactory.setNamespaceAware(true);
+		DOCUMENT_BUILDER_FACTORY = documentBuilderFactory;
+	}
+
+	private final SOAPVersion soapVersion;
+
+	private final WSSecurityHandler wsSecurityHandler;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param next
+	 *            the next tube within the client tubeline.
+	 * @param soapVersion
+	 *            the SOAP version of the binding.
+	 */
+	SecurityTube(Tube next, SOAPVersion soapVersion) {
+		super(next);
+		this.soapVersion = soapVersion;
+		this.wsSecurityHandler = new WSSecurityHandler();
+	}
+
+	private SecurityTube(SecurityTube that, TubeCloner cloner) {
+		super(that, cloner);
+		this.soapVersion = that.soapVersion;
+		this.wsSecurityHandler = new WSSecurityHandler();
+	}
+
+	@Override
+	public SecurityTube copy(TubeCloner cloner) {
+		return new SecurityTube(this, cloner);
+	}
+
+	@Override
+	public NextAction processRequest(Packet request) {
+		SecurityTubeConfiguration configuration = (SecurityTubeConfiguration) request.invocationProperties
+				.get(SecurityTubeConfiguration.CONTEXT_ATTRIBUTE);
+		Message message = request.getMessage();
+		if (null == configuration || null == message) {
+			return super.processRequest(request);
+		}
+		if (null != WSSecurityHandler
+				.getCertificate(request.invocationProperties)) {
+			throw new ProtocolException(new SecurityException(
+					"X509 request signing requires the JAX-WS handler chain"));
+		}
+		try {
+			Document document = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder()
+					.newDocument();
+			/*
+			 * The detached SOAP header element gives the headers the same
+			 * in-scope SOAP namespace as they will have within the envelope
+			 * written by Metro.
+			 */
+			Element soapHeader = document.createElementNS(
+					this.soapVersion.nsUri, "S:Header");
+			soapHeader.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+					"xmlns:S", this.soapVersion.nsUri);
+			document.appendChild(soapHeader);
+			MessageHeaders headers = message.getHeaders();
+			addAddressingHeaders(request, soapHeader, headers);
+			addSecurityHeader(request, configuration, soapHeader, headers);
+		} catch (ProtocolException e) {
+			throw e;
+		} catch (Exception e) {
+			LOG.error("outbound exception: " + e.getMessage(), e);
+			throw new ProtocolException(e);
+		}
+		return doInvoke(this.next, request);
+	}
+
+	@Override
+	public NextAction processResponse(Packet response) {
+		Message message = response.getMessage();
+		if (null == message
+				|| message.isFault()
+				|| null == response.invocationProperties
+						.get(SecurityTubeConfiguration.CONTEXT_ATTRIBUTE)) {
+			return super.processResponse(response);
+		}
+		MessageHeaders headers = message.getHeaders();
+		checkRelatesTo(response, headers);
+		Header securityHeader = headers.get(WSConstants.WS_SECURITY_NAMESPACE,
+				"Security", true);
+		if (null == securityHeader) {
+			throw new ProtocolException(new SecurityException(
+					"no WS-Security header"));
+		}
+		try {
+			this.wsSecurityHandler
+					.verifySecurityHeader(toElement(securityHeader));
+		} catch (Exception e) {
+			throw new ProtocolException(e);
+		}
+		return doReturnWith(response);
+	}
+
+	private void addSecurityHeader(Packet request,
+			SecurityTubeConfiguration configuration, Element soapHeader,
+			MessageHeaders headers) throws Exception {
+		String location = request.endpointAddress.toString();
+		String serviceRealm = configuration.getServiceRealm();
+		if (null == serviceRealm) {
+			serviceRealm = location;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("location: " + location);
+			LOG.debug("service realm: " + serviceRealm);
+		}
+
+		SecurityToken securityToken;
+		if (configuration.isUseWsSecureConversation()) {
+			securityToken = configuration.getSecurityTokenProvider()
+					.getSecureConversationToken(location, serviceRealm);
+		} else {
+			securityToken = configuration.getSecurityTokenProvider()
+					.getSecurityToken(serviceRealm);
+		}
+
+		this.wsSecurityHandler.writeSecurityHeader(soapHeader,
+				ImmutableSecurityToken.getSharedKey(securityToken),
+				securityToken.getAttachedReference(),
+				securityToken.getToken(),
+				false == configuration.isUseWsSecureConversation());
+		headers.add(Headers.create((Element) soapHeader.getLastChild()));
+	}
+
+	private void addAddressingHeaders(Packet request, Element soapHeader,
+			MessageHeaders headers) throws ParserConfigurationException {
+		String action = WSAddressingHandler
+				.getAction(request.invocationProperties);
+		if (null == action) {
+			return;
+		}
+		String to = WSAddressingHandler.getTo(request.invocationProperties);
+		LOG.debug("adding WS-Addressing headers");
+		String messageId = WSAddressingHandler.appendHeaders(soapHeader,
+				action, to);
+		request.invocationProperties.put(MESSAGE_ID_PROPERTY, messageId);
+		Node headerNode = soapHeader.getFirstChild();
+		while (null != headerNode) {
+			headers.add(Headers.create((Element) headerNode));
+			headerNode = headerNode.getNextSibling();
+		}
+	}
+
+	private void checkRelatesTo(Packet response, MessageHeaders headers) {
+		String messageId = (String) response.invocationProperties
+				.get(MESSAGE_ID_PROPERTY);
+		if (null == messageId) {
+			// no WS-Addressing on the request
+			return;
+		}
+		LOG.debug("checking RelatesTo message id: " + messageId);
+		Header relatesToHeader = headers.get(WSConstants.WS_ADDR_NAMESPACE,
+				"RelatesTo", true);
+		if (null != relatesToHeader
+				&& false == messageId.equals(relatesToHeader
+						.getStringContent().trim())) {
+			throw new ProtocolException("incorrect a:RelatesTo value");
+		}
+	}
+
+	private static Element toElement(Header header) throws XMLStreamException,
+			TransformerException, ParserConfigurationException {
+		DOMResult domResult = new DOMResult(DOCUMENT_BUILDER_FACTORY
+				.newDocumentBuilder().newDocument());
+		TRANSFORMER_FACTORY.newTransformer().transform(
+				new StAXSource(header.readHeader()), domResult);
+		return ((Document) domResult.getNode()).getDocumentElement();
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.metro;
+
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenConsumer;
+import be.vlaanderen.informatievlaanderen.security.handler.SecurityTokenProvider;
+
+/**
+ * The security configuration of a Metro stub, as set on its request context by
+ * the {@link MetroSOAPStackIntegration}. The {@link SecurityTube} leaves
+ * messages of stubs without such configuration untouched.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class SecurityTubeConfiguration implements SecurityTokenConsumer {
+
+	static final String CONTEXT_ATTRIBUTE = SecurityTubeConfiguration.class
+			.getName() + ".config";
+
+	private final SecurityTokenProvider securityTokenProvider;
+
+	private final String serviceRealm;
+
+	private final boolean useWsSecureConversation;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param securityTokenProvider
+	 *            the provider of the security tokens.
+	 * @param serviceRealm
+	 *            the optional service realm.
+	 * @param useWsSecureConversation
+	 *            set to <code>true</code> if WS-SecureConversation should be
+	 *            used.
+	 */
+	SecurityTubeConfiguration(SecurityTokenProvider securityTokenProvider,
+			String serviceRealm, boolean useWsSecureConversation) {
+		this.securityTokenProvider = securityTokenProvider;
+		this.serviceRealm = serviceRealm;
+		this.useWsSecureConversation = useWsSecureConversation;
+	}
+
+	public SecurityTokenProvider getSecurityTokenProvider() {
+		return this.securityTokenProvider;
+	}
+
+	String getServiceRealm() {
+		return this.serviceRealm;
+	}
+
+	boolean isUseWsSecureConversation() {
+		return this.useWsSecureConversation;
+	}
+}
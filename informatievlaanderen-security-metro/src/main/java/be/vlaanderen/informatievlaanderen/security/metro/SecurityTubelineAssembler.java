@@ -0,0 +1,80 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.metro;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.sun.xml.ws.api.pipe.ClientTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.ServerTubeAssemblerContext;
+import com.sun.xml.ws.api.pipe.Tube;
+import com.sun.xml.ws.api.pipe.TubelineAssembler;
+import com.sun.xml.ws.developer.WSBindingProvider;
+
+/**
+ * Tubeline assembler that puts the {@link SecurityTube} at the head of every
+ * client tubeline. The server tubelines are left as is.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+class SecurityTubelineAssembler implements TubelineAssembler {
+
+	private static final Map<WSBindingProvider, Boolean> securedBindingProviders = Collections
+			.synchronizedMap(new WeakHashMap<WSBindingProvider, Boolean>());
+
+	private final TubelineAssembler delegate;
+
+	/**
+	 * Main constructor.
+	 * 
+	 * @param delegate
+	 *            the tubeline assembler that assembles the actual tubeline.
+	 */
+	SecurityTubelineAssembler(TubelineAssembler delegate) {
+		this.delegate = delegate;
+	}
+
+	public Tube createClient(ClientTubeAssemblerContext context) {
+		Tube next = this.delegate.createClient(context);
+		WSBindingProvider bindingProvider = context.getBindingProvider();
+		if (null != bindingProvider) {
+			securedBindingProviders.put(bindingProvider, Boolean.TRUE);
+		}
+		return new SecurityTube(next, context.getBinding().getSOAPVersion());
+	}
+
+	public Tube createServer(ServerTubeAssemblerContext context) {
+		return this.delegate.createServer(context);
+	}
+
+	/**
+	 * Gives back whether the tubeline of the given Metro stub has the
+	 * {@link SecurityTube}. This is not the case if another tubeline
+	 * assembler factory took precedence when the stub was created.
+	 * 
+	 * @param bindingProvider
+	 *            the Metro stub.
+	 * @return <code>true</code> if the stub has the {@link SecurityTube}.
+	 */
+	static boolean hasSecurityTube(WSBindingProvider bindingProvider) {
+		return securedBindingProviders.containsKey(bindingProvider);
+	}
+}
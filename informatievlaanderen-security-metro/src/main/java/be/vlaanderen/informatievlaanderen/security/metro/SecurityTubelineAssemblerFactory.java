@@ -0,0 +1,61 @@
+/*
+ * Informatie Vlaanderen Java Security Project.
+ * Copyright (C) 2011-2017 Informatie Vlaanderen.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License version
+ * 3.0 as published by the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, see 
+ * http://www.gnu.org/licenses/.
+ */
+
+package be.vlaanderen.informatievlaanderen.security.metro;
+
+import com.sun.xml.ws.api.BindingID;
+import com.sun.xml.ws.api.pipe.TubelineAssembler;
+import com.sun.xml.ws.api.pipe.TubelineAssemblerFactory;
+import com.sun.xml.ws.assembler.MetroTubelineAssembler;
+import com.sun.xml.ws.util.ServiceFinder;
+
+/**
+ * Metro tubeline assembler factory that adds the {@link SecurityTube} in front
+ * of the client tubeline Metro would otherwise assemble.
+ * <p>
+ * Registered via <code>META-INF/services</code>. The tubeline itself is
+ * delegated to the next tubeline assembler factory found on the classpath, or
+ * to the default Metro tubeline assembler. The {@link SecurityTube} passes the
+ * messages of stubs on which the security was not enabled through untouched.
+ * 
+ * @author Frank Cornelis
+ * 
+ */
+public class SecurityTubelineAssemblerFactory extends TubelineAssemblerFactory {
+
+	@Override
+	public TubelineAssembler doCreate(BindingID bindingId) {
+		return new SecurityTubelineAssembler(getDelegate(bindingId));
+	}
+
+	private static TubelineAssembler getDelegate(BindingID bindingId) {
+		for (TubelineAssemblerFactory factory : ServiceFinder.find(
+				TubelineAssemblerFactory.class,
+				SecurityTubelineAssemblerFactory.class.getClassLoader())) {
+			if (factory instanceof SecurityTubelineAssemblerFactory) {
+				continue;
+			}
+			TubelineAssembler tubelineAssembler = factory.doCreate(bindingId);
+			if (null != tubelineAssembler) {
+				return tubelineAssembler;
+			}
+		}
+		return new MetroTubelineAssembler(bindingId,
+				MetroTubelineAssembler.JAXWS_TUBES_CONFIG_NAMES);
+	}
+}